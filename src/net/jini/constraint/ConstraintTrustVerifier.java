@@ -25,13 +25,16 @@ import java.util.Set;
 import javax.security.auth.x500.X500Principal;
 import javax.security.auth.kerberos.KerberosPrincipal;
 import net.jini.core.constraint.*;
+import net.jini.jeri.connection.Compression;
+import net.jini.jeri.connection.DescriptorCaching;
 import net.jini.security.TrustVerifier;
 
 /**
  * Trust verifier for instances of the constraint classes defined in the
  * {@link net.jini.core.constraint} package, and for the
- * {@link BasicMethodConstraints}, {@link X500Principal} and
- * {@link KerberosPrincipal} classes. This class is intended to be specified
+ * {@link BasicMethodConstraints}, {@link Compression},
+ * {@link DescriptorCaching}, {@link X500Principal}
+ * and {@link KerberosPrincipal} classes. This class is intended to be specified
  * in a resource to configure the operation of
  * {@link net.jini.security.Security#verifyObjectTrust
  * Security.verifyObjectTrust}.
@@ -58,10 +61,12 @@ public class ConstraintTrustVerifier implements TrustVerifier {
      * <li>{@link ClientAuthentication}
      * <li>{@link ClientMaxPrincipalType}
      * <li>{@link ClientMinPrincipalType}
+     * <li>{@link Compression}
      * <li>{@link Confidentiality}
      * <li>{@link DelegationAbsoluteTime}
      * <li>{@link DelegationRelativeTime}
      * <li>{@link Delegation}
+     * <li>{@link DescriptorCaching}
      * <li>{@link Integrity}
      * <li>{@link ServerAuthentication}
      * </ul>
@@ -108,7 +113,9 @@ public class ConstraintTrustVerifier implements TrustVerifier {
 		c == ClientMaxPrincipalType.class ||
 		c == Delegation.class ||
 		c == DelegationRelativeTime.class ||
-		c == DelegationAbsoluteTime.class)
+		c == DelegationAbsoluteTime.class ||
+		c == Compression.class ||
+		c == DescriptorCaching.class)
 	    {
 		return true;
 	    } else if (c == ServerMinPrincipal.class) {
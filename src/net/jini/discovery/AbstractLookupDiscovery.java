@@ -25,9 +25,10 @@ import org.apache.river.discovery.DiscoveryConstraints;
 import org.apache.river.discovery.DiscoveryProtocolException;
 import org.apache.river.discovery.EncodeIterator;
 import org.apache.river.discovery.MulticastAnnouncement;
+import org.apache.river.discovery.MulticastAnnouncementSummary;
 import org.apache.river.discovery.MulticastRequest;
 import org.apache.river.discovery.UnicastResponse;
-import org.apache.river.discovery.internal.MultiIPDiscovery;
+import org.apache.river.discovery.internal.UnicastConnector;
 import org.apache.river.logging.Levels;
 import org.apache.river.logging.LogUtil;
 import org.apache.river.thread.WakeupManager;
@@ -37,6 +38,7 @@ import java.io.InterruptedIOException;
 import java.net.DatagramPacket;
 import java.net.MulticastSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -70,6 +72,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
@@ -188,6 +191,12 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
      * Access synchronised on registrars.
      */
     private final ConcurrentMap<ServiceID,AnnouncementInfo> regInfo = new ConcurrentHashMap<ServiceID,AnnouncementInfo>(11);
+    /** Fingerprints of announcements from already-discovered lookup services
+     *  that were decoded and required no action; used by the
+     *  AnnouncementListener to recognize repeated announcements without
+     *  decoding them.
+     */
+    private final AnnouncementFingerprints knownAnnouncements = new AnnouncementFingerprints();
     /** Thread that monitors multicast announcements from already-discovered
      *  lookup services and, upon determining that those announcements have
      *  stopped, queues a reachability test with the UnicastDiscoveryTask
@@ -416,7 +425,10 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
      *  been discovered, the lookup service's member groups - as indicated
      *  in the announcements - are analyzed for changes that may result
      *  in either the lookup service being discarded, or in a changed event
-     *  being sent.
+     *  being sent.  Announcements identical to ones already processed are
+     *  recognized from the packet data, without being decoded, and only
+     *  refresh the time stamp of the lookup service; the packet buffer is
+     *  then reused for the next announcement.
      *  <p>
      *  Only 1 instance of this thread is run.
      */
@@ -570,6 +582,9 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
 		multicastAnnouncementConstraints.getMulticastMaxPacketSize(
 		    DEFAULT_MAX_PACKET_SIZE)];
 	    DatagramPacket pkt = new DatagramPacket(buf, buf.length);
+	    ByteBuffer view = ByteBuffer.wrap(buf);
+	    MulticastAnnouncementSummary summary =
+		new MulticastAnnouncementSummary();
             long endTime = System.currentTimeMillis() + nicRetryInterval;
 	    while (!isInterrupted()) {
 		try {
@@ -593,10 +608,14 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
 		    } catch (NullPointerException e) {
 			break; // workaround for bug 4190513
 		    }
+		    if (isKnownAnnouncement(view, pkt.getLength(), summary)) {
+			continue; // nothing new, reuse buffer
+		    }
 		    restoreContextAddTask(new DecodeAnnouncementTask(pkt));
 
 		    buf = new byte[buf.length];
 		    pkt = new DatagramPacket(buf, buf.length);
+		    view = ByteBuffer.wrap(buf);
 
 		} catch (SocketTimeoutException e) {//continue/retry bad NICs
 		} catch (InterruptedIOException e) {
@@ -892,6 +911,32 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
 	}
     }
 
+    /**
+     * Request handed to UnicastDiscoveryTask once a connection to a lookup
+     * service named in a multicast announcement has been established by
+     * the UnicastConnector; the locator remains in pendingDiscoveries until
+     * this request has been processed.  If unicast discovery fails on the
+     * connection, the remaining addresses of the locator are tried before
+     * the connection deadline.
+     */
+    private static class ConnectedLocator {
+	final LookupLocator locator;
+	final Socket socket;
+	final InetSocketAddress[] remaining;
+	final long deadline;
+
+	ConnectedLocator(LookupLocator locator,
+			 Socket socket,
+			 InetSocketAddress[] remaining,
+			 long deadline)
+	{
+	    this.locator = locator;
+	    this.socket = socket;
+	    this.remaining = remaining;
+	    this.deadline = deadline;
+	}
+    }
+
     /**
      * Task which decodes received multicast announcement packets.  This is
      * separated into a task to allow the AnnouncementListener thread to
@@ -985,8 +1030,9 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
                     }
                 }
                 long currNum = ann.getSequenceNumber();
-                if ((newSeqNum(currNum, aInfo.getSeqNum())) &&
-                    (!groupSetsEqual(resp.getGroups(), ann.getGroups()))) {
+                boolean sameGroups =
+                    groupSetsEqual(resp.getGroups(), ann.getGroups());
+                if ((newSeqNum(currNum, aInfo.getSeqNum())) && !sameGroups) {
                     /* Check if the groups have changed. In the case of
                      * split announcement messages, eventually, group difference
                      * will be seen for the given sequence number. This
@@ -995,6 +1041,8 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
                      * important.
                      */			
                     pending = new CheckGroupsMarker(ann);
+                } else if (sameGroups) {
+                    rememberAnnouncement(srvcID, resp, datagram);
                 }
             } else if (groupsOverlap(ann.getGroups())) {
                 // newly discovered
@@ -1086,10 +1134,15 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
      *  When the element to process is a LookupLocator, the element was a
      *  result of a multicast announcement received from a lookup service -
      *  belonging to at least one group of interest - which has not already
-     *  been discovered. In this case, this task also completes the discovery
-     *  of the lookup service referenced in the announcement by performing the
-     *  final stage of unicast discovery, ultimately resulting in a discovered
-     *  event being sent to all registered listeners.
+     *  been discovered. In this case, this task starts connecting to all
+     *  addresses of the lookup service referenced in the announcement through
+     *  the shared UnicastConnector and returns without waiting; once a
+     *  connection is established, a further task completes the discovery by
+     *  performing the final stage of unicast discovery on it, ultimately
+     *  resulting in a discovered event being sent to all registered
+     *  listeners. The locator stays in pendingDiscoveries meanwhile, so
+     *  further announcements from the same lookup service do not start a
+     *  second discovery.
      *  <p>
      *  When the element to process is a CheckGroupsMarker, the
      *  element was a result of a multicast announcement received from an
@@ -1149,6 +1202,7 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
 	}
 	private void doRun() {
             logger.finest("LookupDiscovery - UnicastDiscoveryTask started");
+	    boolean handedOff = false;
 	    try {
 		synchronized (this) {
 		    while (delayRun) {
@@ -1183,31 +1237,44 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
 		    }
 		    maybeAddNewRegistrar(resp);
 		} else if(req instanceof LookupLocator) {
-		    // Perform unicast discovery using the LookupLocator
-		    // host and port.
-		    LookupLocator loc = (LookupLocator)req;
-		    UnicastResponse resp = new MultiIPDiscovery() {
-			protected UnicastResponse performDiscovery(
-							Discovery disco,
-							DiscoveryConstraints dc,
-							Socket s)
-			    throws IOException, ClassNotFoundException
+		    // Connect to the LookupLocator host and port without
+		    // tying up this thread; unicast discovery continues in
+		    // a new task once connected.
+		    connectLocator((LookupLocator) req);
+		    handedOff = true;
+		} else if(req instanceof ConnectedLocator) {
+		    // Perform unicast discovery on the connected socket,
+		    // falling back to the locator's other addresses.
+		    ConnectedLocator cl = (ConnectedLocator) req;
+		    DiscoveryConstraints unicastDiscoveryConstraints =
+			DiscoveryConstraints.process(
+			    rawUnicastDiscoveryConstraints);
+		    sock = cl.socket;
+		    UnicastResponse resp = null;
+		    try {
+			prepareSocket(sock, unicastDiscoveryConstraints);
+			resp = doUnicastDiscovery(sock,
+						  unicastDiscoveryConstraints);
+		    } catch (Exception e) {
+			if (cl.remaining.length == 0 ||
+			    System.currentTimeMillis() >= cl.deadline)
 			{
-			    return doUnicastDiscovery(s, dc, disco);
+			    throw e;
 			}
-			protected void singleResponseException(Exception e,
-							       InetAddress addr,
-							       int port)
-			{
-                                logger.log(
-				Levels.HANDLED,
-				"Exception occured during unicast discovery " +
-				addr + ":" + port, e);
-                            } 
-		    }.getResponse(loc.getHost(),
-				      loc.getPort(),
-				      rawUnicastDiscoveryConstraints);
-		    maybeAddNewRegistrar(resp);
+			logger.log(Levels.HANDLED,
+				   "Exception occured during unicast discovery " +
+				   sock.getInetAddress() + ":" + sock.getPort(),
+				   e);
+			connectLocator(cl.locator, cl.remaining, cl.deadline);
+			handedOff = true;
+		    } finally {
+			try {
+			    sock.close();
+			} catch (IOException e) { /* ignore */ }
+		    }
+		    if (resp != null) {
+			maybeAddNewRegistrar(resp);
+		    }
 		} else if(req instanceof CheckGroupsMarker) {
 		    // handle group changes
 		    announcement = ((CheckGroupsMarker)req).announcement;
@@ -1227,7 +1294,8 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
 			   e);
 	    } catch (Throwable e) {
 		if (((req instanceof Socket) ||
-		    (req instanceof LookupLocator)) &&
+		    (req instanceof LookupLocator) ||
+		    (req instanceof ConnectedLocator)) &&
 		    logger.isLoggable(Level.INFO)) {
 		    String logmsg =
 			"exception occurred during unicast discovery to " +
@@ -1247,7 +1315,9 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
 					 },
 					 e);
 		    } else {
-			LookupLocator loc = (LookupLocator) req;
+			LookupLocator loc = (req instanceof ConnectedLocator) ?
+			    ((ConnectedLocator) req).locator :
+			    (LookupLocator) req;
 			LogUtil.logThrow(logger, 
 					 Level.INFO,
 					 this.getClass(),
@@ -1267,8 +1337,11 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
 		}
 	    } finally {
 		// Done with the request. Remove it regardless of
-		// if we succeeded or failed.
-                pendingDiscoveries.remove(req);
+		// if we succeeded or failed, unless the connector has it.
+		if (!handedOff) {
+		    pendingDiscoveries.remove((req instanceof ConnectedLocator) ?
+			((ConnectedLocator) req).locator : req);
+		}
 	    }//end try/catch
             logger.finest("LookupDiscovery - UnicastDiscoveryTask completed");
 	}//end run
@@ -2343,6 +2416,7 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
              * announcement arrives.
              */
             AnnouncementInfo aInfo = new AnnouncementInfo(System.currentTimeMillis(), -1);
+            knownAnnouncements.remove(resp.getRegistrar().getServiceID());
             AnnouncementInfo existed = regInfo.putIfAbsent(resp.getRegistrar().getServiceID(),
                      aInfo);
             if (existed != null){
@@ -2370,6 +2444,7 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
             if(!groupsOverlap(ent.getGroups())) { // not interested anymore
                 groupsMap.put(ent.getRegistrar(),ent.getGroups());
                 regInfo.remove(ent.getRegistrar().getServiceID());
+                knownAnnouncements.remove(ent.getRegistrar().getServiceID());
                 iter.remove(); // remove (srvcID,response) mapping
             }//endif
         }//end loop
@@ -2435,7 +2510,18 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
      *  closes all associated sockets.
      */ 
     private void terminateTaskMgr() {
-        executor.shutdownNow();
+        List<Runnable> unrun = executor.shutdownNow();
+        /* Close sockets connected on behalf of tasks that never ran */
+        for (Runnable r : unrun) {
+            if (r instanceof UnicastDiscoveryTask &&
+                ((UnicastDiscoveryTask) r).req instanceof ConnectedLocator)
+            {
+                try {
+                    ((ConnectedLocator) ((UnicastDiscoveryTask) r).req)
+                        .socket.close();
+                } catch (IOException e) { /* ignore */ }
+            }
+        }
         try {
             executor.awaitTermination(10L, TimeUnit.SECONDS);
         } catch (InterruptedException ex) {
@@ -2583,6 +2669,7 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
         }//endif
         if( registrars.remove(srvcID) != null ) { 
             regInfo.remove(srvcID);
+            knownAnnouncements.remove(srvcID);
             if( !listeners.isEmpty() ) {
                 addNotify( listeners, mapRegToGroups(reg,curGroups), DISCARDED);
             }//endif
@@ -2609,6 +2696,7 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
 					   resp.getPort(),
 					   curGroups,
 					   resp.getRegistrar()));
+	knownAnnouncements.remove(reg.getServiceID());
         if( !listeners.isEmpty() ) {
             addNotify(listeners, mapRegToGroups(reg,curGroups), CHANGED);
         }//endif
@@ -2730,7 +2818,6 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
 						    final DatagramPacket pkt)
 	throws IOException
     {
-	// REMIND: cache recently received announcements to skip re-decoding?
 	int pv;
 	try {
 	    pv = ByteBuffer.wrap(
@@ -2757,6 +2844,79 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
 	}
     }
 
+    /**
+     * Returns true if the announcement in the given buffer comes from an
+     * already-discovered lookup service and has the same content as one
+     * previously decoded from it that required no action, in which case the
+     * time stamp of the lookup service is refreshed.  Called by the
+     * AnnouncementListener for every packet received, so allocates nothing.
+     */
+    private boolean isKnownAnnouncement(ByteBuffer buf,
+					int length,
+					MulticastAnnouncementSummary summary)
+    {
+	buf.clear();
+	buf.limit(length);
+	if (!peekMulticastAnnouncement(buf, summary)) return false;
+	ServiceID srvcID = knownAnnouncements.get(
+				summary.getServiceIDMostSignificantBits(),
+				summary.getServiceIDLeastSignificantBits(),
+				summary.getFingerprint());
+	if (srvcID == null) return false;
+	AnnouncementInfo aInfo = regInfo.get(srvcID);
+	if (aInfo == null) return false;
+	aInfo.touch(System.currentTimeMillis());
+	return true;
+    }
+
+    /**
+     * Records the fingerprint of the given announcement packet, decoded and
+     * found to require no action, from the given already-discovered lookup
+     * service, so that identical announcements need not be decoded.
+     */
+    private void rememberAnnouncement(ServiceID srvcID,
+				      UnicastResponse resp,
+				      DatagramPacket pkt)
+    {
+	ByteBuffer buf = ByteBuffer.wrap(
+	    pkt.getData(), pkt.getOffset(), pkt.getLength()).slice();
+	MulticastAnnouncementSummary summary =
+	    new MulticastAnnouncementSummary();
+	if (!peekMulticastAnnouncement(buf, summary) ||
+	    summary.getServiceIDMostSignificantBits() !=
+		srvcID.getMostSignificantBits() ||
+	    summary.getServiceIDLeastSignificantBits() !=
+		srvcID.getLeastSignificantBits())
+	{
+	    return;
+	}
+	knownAnnouncements.add(srvcID, summary.getFingerprint());
+	if (registrars.get(srvcID) != resp) {
+	    // groups changed or registrar discarded in the meantime
+	    knownAnnouncements.remove(srvcID);
+	}
+    }
+
+    /**
+     * Peeks at the multicast announcement in the given buffer using the
+     * Discovery instance for its protocol version.
+     */
+    private boolean peekMulticastAnnouncement(
+					ByteBuffer buf,
+					MulticastAnnouncementSummary summary)
+    {
+	if (buf.remaining() < 4) return false;
+	switch (buf.getInt(buf.position())) {
+	    case Discovery.PROTOCOL_VERSION_1:
+		return Discovery.getProtocol1().peekMulticastAnnouncement(
+		    buf, summary);
+	    case Discovery.PROTOCOL_VERSION_2:
+		return protocol2.peekMulticastAnnouncement(buf, summary);
+	    default:
+		return false;
+	}
+    }
+
     /*
      * Restore the original context while checking constraints.
      */
@@ -2828,6 +2988,80 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
 	    securityContext.getAccessControlContext());
     }
 
+    /**
+     * Starts connecting to all addresses of the given locator using the
+     * shared UnicastConnector, and queues a UnicastDiscoveryTask for the
+     * connected socket.  The locator is removed from pendingDiscoveries if
+     * no connection can be made.
+     */
+    private void connectLocator(LookupLocator loc) throws IOException {
+	InetAddress[] addrs = InetAddress.getAllByName(loc.getHost());
+	InetSocketAddress[] sockAddrs = new InetSocketAddress[addrs.length];
+	for (int i = 0; i < addrs.length; i++) {
+	    sockAddrs[i] = new InetSocketAddress(addrs[i], loc.getPort());
+	}
+	long deadline = DiscoveryConstraints.process(
+	    rawUnicastDiscoveryConstraints).getConnectionDeadline(
+		Long.MAX_VALUE);
+	connectLocator(loc, sockAddrs, deadline);
+    }
+
+    /**
+     * Starts connecting to the given addresses of the locator, queuing a
+     * UnicastDiscoveryTask for the connected socket along with the
+     * addresses that remain to be tried if discovery on it fails.
+     */
+    private void connectLocator(final LookupLocator loc,
+				final InetSocketAddress[] sockAddrs,
+				final long deadline)
+    {
+	UnicastConnector.getInstance().connect(sockAddrs, deadline,
+	    new UnicastConnector.Callback() {
+		public void connected(Socket socket) {
+		    List<InetSocketAddress> remaining =
+			new ArrayList<InetSocketAddress>(sockAddrs.length);
+		    for (int i = 0; i < sockAddrs.length; i++) {
+			if (!sockAddrs[i].equals(
+				socket.getRemoteSocketAddress()))
+			{
+			    remaining.add(sockAddrs[i]);
+			}
+		    }
+		    try {
+			restoreContextAddTask(new UnicastDiscoveryTask(
+			    new ConnectedLocator(loc, socket,
+				remaining.toArray(
+				    new InetSocketAddress[remaining.size()]),
+				deadline)));
+		    } catch (RejectedExecutionException e) {
+			// terminated
+			try {
+			    socket.close();
+			} catch (IOException ex) { /* ignore */ }
+			pendingDiscoveries.remove(loc);
+		    }
+		}
+		public void failed(IOException e) {
+		    pendingDiscoveries.remove(loc);
+		    if (logger.isLoggable(Level.INFO)) {
+			LogUtil.logThrow(logger,
+					 Level.INFO,
+					 AbstractLookupDiscovery.class,
+					 "connectLocator",
+					 "exception occurred during unicast " +
+					 "discovery to {0}:{1,number,#} with " +
+					 "constraints {2}",
+					 new Object[] {
+					     loc.getHost(),
+					     Integer.valueOf(loc.getPort()),
+					     rawUnicastDiscoveryConstraints
+					 },
+					 e);
+		    }
+		}
+	    });
+    }
+
     private Ticket restoreContextScheduleRunnable(final UnicastDiscoveryTask t)
     {
 	return (Ticket) AccessController.doPrivileged(
@@ -2912,10 +3146,11 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
     /**
      * Holder class for the time and sequence number of the last
      * received announcement. The regInfo map contains instances of this
-     * class as values.
+     * class as values.  The time stamp of announcements recognized without
+     * decoding is refreshed in place.
      */
     private static class AnnouncementInfo {
-	private final long tStamp;
+	private volatile long tStamp;
 	private final long seqNum;
 	private AnnouncementInfo(long tStamp, long seqNum) {
 	    this.tStamp = tStamp;
@@ -2929,6 +3164,10 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
             return tStamp;
         }
 
+        void touch(long tStamp) {
+            this.tStamp = tStamp;
+        }
+
         /**
          * @return the seqNum
          */
@@ -2947,4 +3186,91 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
             return sb.toString();
         }
     }
+
+    /**
+     * Fingerprints of the last few announcements from each
+     * already-discovered lookup service that were decoded and required no
+     * action.  More than one is kept because lookup services with many
+     * member groups split their announcements over several packets.
+     * Lookups neither lock nor allocate; updates, which only happen when an
+     * announcement has to be decoded, copy the arrays.
+     */
+    private static class AnnouncementFingerprints {
+        private static final int MAX_FINGERPRINTS = 4;
+        private volatile Registrar[] registrars = new Registrar[0];
+
+        /**
+         * Returns the service ID of the lookup service with the given
+         * service ID bits if the given fingerprint is known for it,
+         * otherwise null.
+         */
+        ServiceID get(long hi, long lo, long fingerprint) {
+            Registrar[] regs = registrars;
+            for (int i = 0; i < regs.length; i++) {
+                Registrar reg = regs[i];
+                if (reg.hi == hi && reg.lo == lo) {
+                    long[] fps = reg.fingerprints;
+                    for (int j = 0; j < fps.length; j++) {
+                        if (fps[j] == fingerprint) return reg.srvcID;
+                    }
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        synchronized void add(ServiceID srvcID, long fingerprint) {
+            Registrar[] regs = registrars;
+            for (int i = 0; i < regs.length; i++) {
+                if (regs[i].srvcID.equals(srvcID)) {
+                    regs[i].add(fingerprint);
+                    return;
+                }
+            }
+            Registrar[] newRegs = Arrays.copyOf(regs, regs.length + 1);
+            newRegs[regs.length] = new Registrar(srvcID, fingerprint);
+            registrars = newRegs;
+        }
+
+        synchronized void remove(ServiceID srvcID) {
+            Registrar[] regs = registrars;
+            for (int i = 0; i < regs.length; i++) {
+                if (regs[i].srvcID.equals(srvcID)) {
+                    Registrar[] newRegs = new Registrar[regs.length - 1];
+                    System.arraycopy(regs, 0, newRegs, 0, i);
+                    System.arraycopy(regs, i + 1, newRegs, i,
+                                     newRegs.length - i);
+                    registrars = newRegs;
+                    return;
+                }
+            }
+        }
+
+        private static class Registrar {
+            final ServiceID srvcID;
+            final long hi;
+            final long lo;
+            volatile long[] fingerprints;
+
+            Registrar(ServiceID srvcID, long fingerprint) {
+                this.srvcID = srvcID;
+                hi = srvcID.getMostSignificantBits();
+                lo = srvcID.getLeastSignificantBits();
+                fingerprints = new long[]{fingerprint};
+            }
+
+            /* Called while synchronized on the enclosing instance. */
+            void add(long fingerprint) {
+                long[] fps = fingerprints;
+                for (int i = 0; i < fps.length; i++) {
+                    if (fps[i] == fingerprint) return;
+                }
+                long[] newFps =
+                    new long[Math.min(fps.length + 1, MAX_FINGERPRINTS)];
+                newFps[0] = fingerprint;
+                System.arraycopy(fps, 0, newFps, 1, newFps.length - 1);
+                fingerprints = newFps;
+            }
+        }
+    }
 }
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.io;
+
+import java.io.InvalidClassException;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.io.StreamCorruptedException;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import net.jini.io.context.CompactClassDescriptors;
+
+/**
+ * Fixed table of core classes whose class descriptors
+ * {@link MarshalOutputStream} writes as an index when compact class
+ * descriptors are in effect for its context.
+ *
+ * Only classes of the Java platform and of the Jini platform, which are
+ * present wherever the transport itself is, belong in the table;
+ * classes of service implementations and their download codebases
+ * (reggie's entry and template representations, landlord leases) may be
+ * missing or differ at the other end, so they keep their full
+ * descriptors.  Entries are identified by position, so names may only be
+ * appended.  Each index is followed in the stream by a fingerprint of
+ * the descriptor's name, serial version UID and serializable fields; a
+ * reader whose local descriptor does not match refuses the stream
+ * instead of misreading it.
+ *
+ * @since 3.0.0
+ */
+final class CoreClassTable {
+
+    private static final String[] NAMES = {
+	"java.lang.Boolean",
+	"java.lang.Byte",
+	"java.lang.Character",
+	"java.lang.Short",
+	"java.lang.Integer",
+	"java.lang.Long",
+	"java.lang.Float",
+	"java.lang.Double",
+	"java.lang.Number",
+	"java.lang.reflect.Proxy",
+	"java.util.ArrayList",
+	"java.util.LinkedList",
+	"java.util.HashMap",
+	"java.util.HashSet",
+	"java.util.Date",
+	"java.util.EventObject",
+	"[B",
+	"[I",
+	"[J",
+	"[Ljava.lang.Object;",
+	"[Ljava.lang.String;",
+	"[Ljava.lang.Class;",
+	"net.jini.id.Uuid",
+	"[Lnet.jini.id.Uuid;",
+	"net.jini.core.lookup.ServiceID",
+	"[Lnet.jini.core.lookup.ServiceID;",
+	"net.jini.core.lookup.ServiceItem",
+	"[Lnet.jini.core.lookup.ServiceItem;",
+	"net.jini.core.lookup.ServiceTemplate",
+	"net.jini.core.lookup.ServiceMatches",
+	"net.jini.core.lookup.ServiceEvent",
+	"net.jini.core.event.RemoteEvent",
+	"net.jini.core.event.EventRegistration",
+	"[Lnet.jini.core.entry.Entry;",
+	"net.jini.entry.AbstractEntry",
+	"net.jini.lookup.entry.Name",
+	"net.jini.lookup.entry.Comment",
+	"net.jini.lookup.entry.ServiceInfo",
+	"net.jini.lookup.entry.Location",
+	"net.jini.lookup.entry.Address",
+	"net.jini.io.MarshalledInstance",
+	"net.jini.core.constraint.InvocationConstraints",
+	"net.jini.constraint.BasicMethodConstraints",
+	"net.jini.jeri.BasicInvocationHandler",
+	"net.jini.jeri.BasicObjectEndpoint",
+	"net.jini.jeri.tcp.TcpEndpoint",
+	"net.jini.jeri.ssl.SslEndpoint",
+	"net.jini.jeri.http.HttpEndpoint"
+    };
+
+    private static final CoreClassTable INSTANCE = new CoreClassTable();
+
+    /** local descriptors by index, null where a class is unavailable */
+    private final ObjectStreamClass[] descriptors =
+	new ObjectStreamClass[NAMES.length];
+    /** fingerprints of the local descriptors by index */
+    private final int[] fingerprints = new int[NAMES.length];
+    /** index of each available class */
+    private final Map<Class<?>,Integer> indexes =
+	new HashMap<Class<?>,Integer>();
+
+    private CoreClassTable() {
+	assert NAMES.length < DescriptorCache.REFERENCE;
+	final ClassLoader loader = CoreClassTable.class.getClassLoader();
+	for (int i = 0; i < NAMES.length; i++) {
+	    final String name = NAMES[i];
+	    Class<?> cl = AccessController.doPrivileged(
+		new PrivilegedAction<Class<?>>() {
+		    public Class<?> run() {
+			try {
+			    return Class.forName(name, false, loader);
+			} catch (ClassNotFoundException e) {
+			    return null;
+			} catch (LinkageError e) {
+			    return null;
+			}
+		    }
+		});
+	    ObjectStreamClass desc =
+		cl == null ? null : ObjectStreamClass.lookup(cl);
+	    if (desc == null) {
+		continue;
+	    }
+	    descriptors[i] = desc;
+	    fingerprints[i] = fingerprint(desc);
+	    indexes.put(cl, Integer.valueOf(i));
+	}
+    }
+
+    /**
+     * Returns the table if the context has a CompactClassDescriptors
+     * element that is in effect, otherwise null.
+     */
+    static CoreClassTable forContext(Collection<?> context) {
+	for (Object element : context) {
+	    if (element instanceof CompactClassDescriptors) {
+		return ((CompactClassDescriptors) element)
+		    .compactClassDescriptors() ? INSTANCE : null;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Returns the index of the class described by desc, or -1 if it is
+     * not in the table.
+     */
+    int indexOf(ObjectStreamClass desc) {
+	Integer index = indexes.get(desc.forClass());
+	return index == null ? -1 : index.intValue();
+    }
+
+    /** Returns the fingerprint of the entry at a valid index. */
+    int fingerprint(int index) {
+	return fingerprints[index];
+    }
+
+    /**
+     * Returns the local descriptor at index, checking that it matches
+     * the fingerprint written by the sender.
+     */
+    ObjectStreamClass descriptor(int index, int fingerprint)
+	throws StreamCorruptedException, InvalidClassException
+    {
+	if (index < 0 || index >= NAMES.length) {
+	    throw new StreamCorruptedException(
+		"invalid core class index " + index);
+	}
+	ObjectStreamClass desc = descriptors[index];
+	if (desc == null) {
+	    throw new InvalidClassException(NAMES[index],
+					    "core class not available");
+	}
+	if (fingerprints[index] != fingerprint) {
+	    throw new InvalidClassException(NAMES[index],
+		"local class incompatible with sender's core class");
+	}
+	return desc;
+    }
+
+    private static int fingerprint(ObjectStreamClass desc) {
+	long suid = desc.getSerialVersionUID();
+	int h = desc.getName().hashCode();
+	h = 31 * h + (int) (suid ^ (suid >>> 32));
+	ObjectStreamField[] fields = desc.getFields();
+	for (int i = 0; i < fields.length; i++) {
+	    h = 31 * h + fields[i].getName().hashCode();
+	    h = 31 * h + fields[i].getTypeCode();
+	    String type = fields[i].getTypeString();
+	    h = 31 * h + (type == null ? 0 : type.hashCode());
+	}
+	return h;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.io;
+
+import java.io.ObjectStreamClass;
+import java.io.StreamCorruptedException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.river.api.common.Beta;
+
+/**
+ * Class descriptors and codebase annotations shared by the marshal
+ * streams of the requests on one connection, so that each is written in
+ * full only until the other end has it and as a small back-reference
+ * after that.
+ *
+ * <p>A transport creates an instance for each connection on which both
+ * ends agree to use one, and adds it to the context of the requests
+ * that opt in to it.  A {@link MarshalOutputStream} or {@link
+ * MarshalInputStream} created with a context containing an instance
+ * uses it as follows.  The first time a stream writes a class descriptor
+ * or annotation, it assigns it an index and writes it in full together
+ * with the index; the reading stream records it under that index.  Each
+ * stream starts with the indexes its end has recorded since the previous
+ * stream it wrote, and the other end marks those as confirmed.  Only
+ * confirmed entries are written as back-references, so a reference
+ * never precedes, in any stream or on any request, the definition the
+ * other end has read; a definition lost with a failed or abandoned
+ * request is just written again.
+ *
+ * <p>Entries are never removed, and the number of entries in each
+ * direction is bounded; once the bound is reached, further class
+ * descriptors and annotations are written in full.  The cache lives
+ * exactly as long as its connection, so closing the connection discards
+ * it.
+ *
+ * @since 3.0.0
+ */
+@Beta
+public final class DescriptorCache {
+
+    /** bound on entries in each direction, so indexes fit in 16 bits */
+    private static final int MAX_ENTRIES = 8192;
+
+    /** bound on acknowledgments sent at the start of one stream */
+    private static final int MAX_ACKS = 1024;
+
+    /** tag of a back-reference to a confirmed entry */
+    static final int REFERENCE = 0xFE;
+
+    /** tag of an entry written in full with its index */
+    static final int DEFINITION = 0xFF;
+
+    /** indexes of the entries assigned by this end, by key */
+    private final Map<Object,Integer> outIndexes =
+	new HashMap<Object,Integer>();
+
+    /** whether the other end has confirmed each entry, by index */
+    private final boolean[] confirmed = new boolean[MAX_ENTRIES];
+
+    /** entries recorded from the other end, by index */
+    private final Object[] inEntries = new Object[MAX_ENTRIES];
+
+    /** recorded indexes not yet acknowledged to the other end */
+    private int[] acks = new int[16];
+    private int ackCount = 0;
+
+    /**
+     * Creates an empty cache for a new connection.
+     */
+    public DescriptorCache() {
+    }
+
+    /**
+     * Returns the cache in the context, or null if there is none.
+     */
+    static DescriptorCache forContext(Collection<?> context) {
+	for (Object element : context) {
+	    if (element instanceof DescriptorCache) {
+		return (DescriptorCache) element;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Returns the index of the confirmed entry for key, or -1.
+     */
+    synchronized int confirmedIndex(Object key) {
+	Integer index = outIndexes.get(key);
+	return index != null && confirmed[index.intValue()] ?
+	    index.intValue() : -1;
+    }
+
+    /**
+     * Returns the index under which to define key, assigning one if
+     * needed, or -1 if the cache is full.
+     */
+    synchronized int define(Object key) {
+	Integer index = outIndexes.get(key);
+	if (index != null) {
+	    return index.intValue();
+	}
+	int size = outIndexes.size();
+	if (size >= MAX_ENTRIES) {
+	    return -1;
+	}
+	outIndexes.put(key, Integer.valueOf(size));
+	return size;
+    }
+
+    /**
+     * Marks the entries acknowledged by the other end as confirmed.
+     */
+    synchronized void confirm(int[] indexes) throws StreamCorruptedException {
+	for (int i = 0; i < indexes.length; i++) {
+	    int index = indexes[i];
+	    if (index >= outIndexes.size()) {
+		throw new StreamCorruptedException(
+		    "acknowledgment of unknown entry " + index);
+	    }
+	    confirmed[index] = true;
+	}
+    }
+
+    /**
+     * Records an entry defined by the other end, to be acknowledged at
+     * the start of the next stream written by this end.
+     */
+    synchronized void record(int index, Object entry)
+	throws StreamCorruptedException
+    {
+	checkIndex(index);
+	inEntries[index] = entry;
+	if (ackCount == acks.length) {
+	    if (ackCount == MAX_ENTRIES) {
+		return;		// acknowledged when redefined
+	    }
+	    int[] grown = new int[Math.min(ackCount * 2, MAX_ENTRIES)];
+	    System.arraycopy(acks, 0, grown, 0, ackCount);
+	    acks = grown;
+	}
+	acks[ackCount++] = index;
+    }
+
+    /**
+     * Returns a class descriptor recorded from the other end.
+     */
+    ObjectStreamClass getDescriptor(int index)
+	throws StreamCorruptedException
+    {
+	Object entry = get(index);
+	if (!(entry instanceof ObjectStreamClass)) {
+	    throw new StreamCorruptedException(
+		"entry " + index + " is not a class descriptor");
+	}
+	return (ObjectStreamClass) entry;
+    }
+
+    /**
+     * Returns an annotation recorded from the other end.
+     */
+    String getAnnotation(int index) throws StreamCorruptedException {
+	Object entry = get(index);
+	if (!(entry instanceof String)) {
+	    throw new StreamCorruptedException(
+		"entry " + index + " is not an annotation");
+	}
+	return (String) entry;
+    }
+
+    private synchronized Object get(int index)
+	throws StreamCorruptedException
+    {
+	checkIndex(index);
+	Object entry = inEntries[index];
+	if (entry == null) {
+	    throw new StreamCorruptedException(
+		"reference to undefined entry " + index);
+	}
+	return entry;
+    }
+
+    /**
+     * Removes and returns the indexes to acknowledge at the start of a
+     * stream.
+     */
+    synchronized int[] takeAcks() {
+	int n = Math.min(ackCount, MAX_ACKS);
+	int[] taken = new int[n];
+	System.arraycopy(acks, 0, taken, 0, n);
+	System.arraycopy(acks, n, acks, 0, ackCount - n);
+	ackCount -= n;
+	return taken;
+    }
+
+    private static void checkIndex(int index)
+	throws StreamCorruptedException
+    {
+	if (index < 0 || index >= MAX_ENTRIES) {
+	    throw new StreamCorruptedException("invalid entry index " + index);
+	}
+    }
+
+    /** Returns a string representation of this object. */
+    public synchronized String toString() {
+	return "DescriptorCache[defined=" + outIndexes.size() +
+	    ", pendingAcks=" + ackCount + "]";
+    }
+}
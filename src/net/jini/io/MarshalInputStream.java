@@ -23,12 +23,14 @@ import java.io.InputStream;
 import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
+import java.io.StreamCorruptedException;
 import java.rmi.server.RMIClassLoaderSpi;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import net.jini.io.context.CompactClassDescriptors;
 import net.jini.loader.ClassLoading;
 import net.jini.security.Security;
 
@@ -77,6 +79,18 @@ import net.jini.security.Security;
  * readAnnotation} method to read the class annotations from a
  * different location.
  *
+ * <p>If its context contains a {@link CompactClassDescriptors} element
+ * that is in effect, a <code>MarshalInputStream</code> reads the
+ * compact class descriptors written by a <code>MarshalOutputStream</code>
+ * created with the same kind of context; see {@link
+ * #readClassDescriptor readClassDescriptor}.
+ *
+ * <p>If its context contains a {@link DescriptorCache}, a
+ * <code>MarshalInputStream</code> reads the acknowledgments at the start
+ * of the stream, records the class descriptors and annotations the
+ * other end defines and resolves its back-references; see {@link
+ * DescriptorCache}.
+ *
  * <p>A <code>MarshalInputStream</code> is not guaranteed to be
  * safe for concurrent use by multiple threads.
  *
@@ -125,6 +139,15 @@ public class MarshalInputStream
      **/
     private boolean usingCodebaseAnnotations = false;
 
+    /** core class table, if compact class descriptors are in effect */
+    private final CoreClassTable coreClasses;
+
+    /** connection's descriptor cache, if any */
+    private final DescriptorCache descriptors;
+
+    /** classes resolved by this stream, created on first use */
+    private Map<ResolvedClassCache.Key,Class<?>> resolved;
+
     /**
      * Creates a new <code>MarshalInputStream</code> that reads
      * marshalled data from the specified underlying
@@ -199,6 +222,15 @@ public class MarshalInputStream
 	this.verifyCodebaseIntegrity = verifyCodebaseIntegrity;
 	this.verifierLoader = verifierLoader;
 	this.context = context;
+	coreClasses = CoreClassTable.forContext(context);
+	descriptors = DescriptorCache.forContext(context);
+	if (descriptors != null) {
+	    int[] acks = new int[readUnsignedShort()];
+	    for (int i = 0; i < acks.length; i++) {
+		acks[i] = readUnsignedShort();
+	    }
+	    descriptors.confirm(acks);
+	}
         AccessController.doPrivileged(new PrivilegedAction<Object>(){
 
             @Override
@@ -235,6 +267,63 @@ public class MarshalInputStream
 	return context;
     }
 
+    /**
+     * Reads a class descriptor from this stream.
+     *
+     * <p>If the context of this stream does not contain a {@link
+     * CompactClassDescriptors} element that is in effect, this method
+     * invokes the superclass method.  Otherwise every class descriptor
+     * is preceded by a byte: zero is followed by a descriptor in the
+     * standard format, read by the superclass method, while a positive
+     * value is one more than the index of a core class in a table
+     * shared by both ends and is followed by an <code>int</code>
+     * fingerprint of the sender's descriptor of that class; the local
+     * descriptor of the class is returned if its fingerprint matches.
+     * The class is then resolved by {@link #resolveClass resolveClass}
+     * as usual.
+     *
+     * <p>If the context contains a {@link DescriptorCache}, a descriptor
+     * may also be a back-reference to one recorded in the cache earlier,
+     * or be written in full with an index under which it is recorded.
+     *
+     * @return the class descriptor read
+     *
+     * @throws IOException if an I/O exception occurs, if the core class
+     * index is not valid or if the local descriptor of the core class
+     * does not match that of the sender
+     *
+     * @throws ClassNotFoundException if the superclass method throws a
+     * <code>ClassNotFoundException</code>
+     *
+     * @since 3.0.0
+     **/
+    protected ObjectStreamClass readClassDescriptor()
+	throws IOException, ClassNotFoundException
+    {
+	if (coreClasses == null && descriptors == null) {
+	    return super.readClassDescriptor();
+	}
+	int tag = readUnsignedByte();
+	if (tag == 0) {
+	    return super.readClassDescriptor();
+	}
+	if (descriptors != null) {
+	    if (tag == DescriptorCache.REFERENCE) {
+		return descriptors.getDescriptor(readUnsignedShort());
+	    } else if (tag == DescriptorCache.DEFINITION) {
+		int index = readUnsignedShort();
+		ObjectStreamClass desc = super.readClassDescriptor();
+		descriptors.record(index, desc);
+		return desc;
+	    }
+	}
+	if (coreClasses == null) {
+	    throw new StreamCorruptedException(
+		"invalid class descriptor tag " + tag);
+	}
+	return coreClasses.descriptor(tag - 1, readInt());
+    }
+
     /**
      * Resolves the appropriate {@link Class} object for the stream
      * class descriptor <code>classDesc</code>.
@@ -274,6 +363,15 @@ public class MarshalInputStream
      * normally, this method returns the <code>Class</code> returned
      * by <code>ClassLoading.loadClass</code>.
      *
+     * <p>The class returned is cached, both by this stream and for the
+     * whole virtual machine.  A later resolution of the same class name
+     * with the same codebase value, the same constructor arguments and
+     * the same thread context class loader may return the cached class
+     * without invoking <code>ClassLoading.loadClass</code>.  If a
+     * security manager is installed, a cached class with a non-null
+     * codebase value is only returned if the caller has permission to
+     * access the codebase.  See {@link ResolveClassStats}.
+     *
      * @param classDesc the stream class descriptor to resolve
      *
      * @return the resolved class
@@ -302,20 +400,27 @@ public class MarshalInputStream
 	String codebase = usingCodebaseAnnotations ? annotation : null;
 
 	String name = classDesc.getName();
+	ResolvedClassCache.Key key =
+	    ResolvedClassCache.key(name, false, codebase, defaultLoader,
+				   verifyCodebaseIntegrity, verifierLoader);
+	Class<?> c = lookup(key);
+	if (c != null) {
+	    return c;
+	}
 	try {
-	    return ClassLoading.loadClass(codebase,
-					  name,
-					  defaultLoader,
-					  verifyCodebaseIntegrity,
-					  verifierLoader);
+	    c = ClassLoading.loadClass(codebase,
+				       name,
+				       defaultLoader,
+				       verifyCodebaseIntegrity,
+				       verifierLoader);
 	} catch (ClassNotFoundException e) {
-	    Class c = (Class) specialClasses.get(name);
-	    if (c != null) {
-		return c;
-	    } else {
+	    c = (Class) specialClasses.get(name);
+	    if (c == null) {
 		throw e;
 	    }
 	}
+	remember(key, c);
+	return c;
     }
 
     /**
@@ -349,6 +454,9 @@ public class MarshalInputStream
      * this method returns the <code>Class</code> returned by
      * <code>ClassLoading.loadProxyClass</code>.
      *
+     * <p>The class returned is cached in the same way as by {@link
+     * #resolveClass resolveClass}.
+     *
      * @param interfaceNames the list of interface names that were
      * deserialized in the proxy class descriptor
      *
@@ -380,11 +488,64 @@ public class MarshalInputStream
 	String annotation = readAnnotation();
 	String codebase = usingCodebaseAnnotations ? annotation : null;
 
-	return ClassLoading.loadProxyClass(codebase,
-					   interfaceNames,
-					   defaultLoader,
-					   verifyCodebaseIntegrity,
-					   verifierLoader);
+	ResolvedClassCache.Key key = ResolvedClassCache.enabled() ?
+	    ResolvedClassCache.key(ResolvedClassCache.joinNames(interfaceNames),
+				   true, codebase, defaultLoader,
+				   verifyCodebaseIntegrity, verifierLoader) :
+	    null;
+	Class<?> c = lookup(key);
+	if (c != null) {
+	    return c;
+	}
+	c = ClassLoading.loadProxyClass(codebase,
+					interfaceNames,
+					defaultLoader,
+					verifyCodebaseIntegrity,
+					verifierLoader);
+	remember(key, c);
+	return c;
+    }
+
+    /**
+     * Returns the class previously resolved for the key by this stream
+     * or, failing that, by any stream in this virtual machine; returns
+     * null on a miss or if key is null.
+     */
+    private Class<?> lookup(ResolvedClassCache.Key key) {
+	ResolveClassStats stats = ResolveClassStats.getInstance();
+	if (key == null) {
+	    stats.miss();
+	    return null;
+	}
+	Class<?> c = resolved != null ? resolved.get(key) : null;
+	if (c != null) {
+	    stats.streamHit();
+	    return c;
+	}
+	c = ResolvedClassCache.get(key);
+	if (c != null) {
+	    stats.globalHit();
+	    streamCache().put(key, c);
+	    return c;
+	}
+	stats.miss();
+	return null;
+    }
+
+    /** Records a resolved class in both caches. */
+    private void remember(ResolvedClassCache.Key key, Class<?> c) {
+	if (key == null) {
+	    return;
+	}
+	streamCache().put(key, c);
+	ResolvedClassCache.put(key, c);
+    }
+
+    private Map<ResolvedClassCache.Key,Class<?>> streamCache() {
+	if (resolved == null) {
+	    resolved = new HashMap<ResolvedClassCache.Key,Class<?>>();
+	}
+	return resolved;
     }
 
     /**
@@ -397,7 +558,9 @@ public class MarshalInputStream
      * ObjectInputStream#readObject readObject}, and if
      * <code>readObject</code> returns a non-<code>null</code> value
      * that is not a <code>String</code>, an {@link
-     * InvalidObjectException} is thrown.
+     * InvalidObjectException} is thrown.  If the context of this stream
+     * contains a {@link DescriptorCache}, the annotation is preceded by
+     * a tag and may be a back-reference to one recorded earlier.
      *
      * <p>A subclass can override this method to read the annotation
      * from a different location.
@@ -414,6 +577,26 @@ public class MarshalInputStream
      **/
     protected String readAnnotation()
 	throws IOException, ClassNotFoundException
+    {
+	if (descriptors != null) {
+	    int tag = readUnsignedByte();
+	    if (tag == DescriptorCache.REFERENCE) {
+		return descriptors.getAnnotation(readUnsignedShort());
+	    } else if (tag == DescriptorCache.DEFINITION) {
+		int index = readUnsignedShort();
+		String annotation = readAnnotationObject();
+		descriptors.record(index, annotation);
+		return annotation;
+	    } else if (tag != 0) {
+		throw new StreamCorruptedException(
+		    "invalid annotation tag " + tag);
+	    }
+	}
+	return readAnnotationObject();
+    }
+
+    private String readAnnotationObject()
+	throws IOException, ClassNotFoundException
     {
 	try {
 	    return (String) readObject();
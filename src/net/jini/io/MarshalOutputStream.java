@@ -20,11 +20,13 @@ package net.jini.io;
 
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
 import java.io.OutputStream;
 import java.rmi.server.RMIClassLoaderSpi;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.Collection;
+import net.jini.io.context.CompactClassDescriptors;
 import net.jini.loader.ClassLoading;
 /**
  * An extension of <code>ObjectOutputStream</code> that implements the
@@ -47,6 +49,20 @@ import net.jini.loader.ClassLoading;
  * writeAnnotation} method to write the class annotations to a
  * different location.
  *
+ * <p>If its context contains a {@link CompactClassDescriptors} element
+ * that is in effect, a <code>MarshalOutputStream</code> writes the class
+ * descriptors of a fixed set of core Java and Jini platform classes as
+ * an index into a table shared with the corresponding
+ * <code>MarshalInputStream</code>, which must have been created with the
+ * same kind of context; see {@link #writeClassDescriptor
+ * writeClassDescriptor}.
+ *
+ * <p>If its context contains a {@link DescriptorCache}, a
+ * <code>MarshalOutputStream</code> writes the class descriptors and
+ * annotations the other end of the connection already has as
+ * back-references into that cache, and starts by acknowledging the
+ * entries its end has recorded; see {@link DescriptorCache}.
+ *
  * <p><code>MarshalOutputStream</code> does not modify the stream
  * protocol version of its instances' superclass state (see {@link
  * ObjectOutputStream#useProtocolVersion
@@ -62,6 +78,12 @@ public class MarshalOutputStream
     /** context for ObjectStreamContext implementation */
     private final Collection context;
 
+    /** core class table, if compact class descriptors are in effect */
+    private final CoreClassTable coreClasses;
+
+    /** connection's descriptor cache, if any */
+    private final DescriptorCache descriptors;
+
     /**
      * Creates a new <code>MarshalOutputStream</code> that writes
      * marshalled data to the specified underlying
@@ -97,6 +119,15 @@ public class MarshalOutputStream
 	    throw new NullPointerException();
 	}
 	this.context = context;
+	coreClasses = CoreClassTable.forContext(context);
+	descriptors = DescriptorCache.forContext(context);
+	if (descriptors != null) {
+	    int[] acks = descriptors.takeAcks();
+	    writeShort(acks.length);
+	    for (int i = 0; i < acks.length; i++) {
+		writeShort(acks[i]);
+	    }
+	}
         
         AccessController.doPrivileged(new PrivilegedAction<Object>(){
 
@@ -117,6 +148,62 @@ public class MarshalOutputStream
 	return context;
     }
 
+    /**
+     * Writes a class descriptor to this stream.
+     *
+     * <p>If the context of this stream does not contain a {@link
+     * CompactClassDescriptors} element that is in effect, this method
+     * invokes the superclass method.  Otherwise, if the class is one of
+     * a fixed set of core classes, this method writes a byte with one
+     * more than the index of the class in a table shared by both ends,
+     * followed by an <code>int</code> fingerprint of the descriptor, and
+     * for any other class it writes a zero byte and invokes the
+     * superclass method.  Class annotations are written as usual in
+     * either case.
+     *
+     * <p>If the context contains a {@link DescriptorCache}, the
+     * descriptor of a class that is not a core class is written as a
+     * back-reference if the other end has confirmed it, and otherwise in
+     * full together with its index in the cache.
+     *
+     * @param desc the class descriptor to write
+     *
+     * @throws IOException if an I/O exception occurs
+     *
+     * @since 3.0.0
+     **/
+    protected void writeClassDescriptor(ObjectStreamClass desc)
+	throws IOException
+    {
+	if (coreClasses == null && descriptors == null) {
+	    super.writeClassDescriptor(desc);
+	    return;
+	}
+	int index = coreClasses == null ? -1 : coreClasses.indexOf(desc);
+	if (index >= 0) {
+	    writeByte(index + 1);
+	    writeInt(coreClasses.fingerprint(index));
+	    return;
+	}
+	if (descriptors != null) {
+	    index = descriptors.confirmedIndex(desc);
+	    if (index >= 0) {
+		writeByte(DescriptorCache.REFERENCE);
+		writeShort(index);
+		return;
+	    }
+	    index = descriptors.define(desc);
+	    if (index >= 0) {
+		writeByte(DescriptorCache.DEFINITION);
+		writeShort(index);
+		super.writeClassDescriptor(desc);
+		return;
+	    }
+	}
+	writeByte(0);
+	super.writeClassDescriptor(desc);
+    }
+
     /**
      * Annotates the stream descriptor for the class <code>cl</code>.
      *
@@ -175,7 +262,10 @@ public class MarshalOutputStream
      *
      * <p><code>MarshalOutputStream</code> implements this method to
      * just write the annotation value to this stream using {@link
-     * ObjectOutputStream#writeObject writeObject}.
+     * ObjectOutputStream#writeObject writeObject}.  If the context of
+     * this stream contains a {@link DescriptorCache}, the annotation is
+     * preceded by a tag and is replaced by a back-reference if the other
+     * end has confirmed it.
      *
      * <p>A subclass can override this method to write the annotation
      * to a different location.
@@ -187,6 +277,26 @@ public class MarshalOutputStream
      * annotation
      **/
     protected void writeAnnotation(String annotation) throws IOException {
+	if (descriptors == null) {
+	    writeObject(annotation);
+	    return;
+	}
+	int index = -1;
+	if (annotation != null) {
+	    index = descriptors.confirmedIndex(annotation);
+	    if (index >= 0) {
+		writeByte(DescriptorCache.REFERENCE);
+		writeShort(index);
+		return;
+	    }
+	    index = descriptors.define(annotation);
+	}
+	if (index >= 0) {
+	    writeByte(DescriptorCache.DEFINITION);
+	    writeShort(index);
+	} else {
+	    writeByte(0);
+	}
 	writeObject(annotation);
     }
 }
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.river.api.common.Beta;
+
+/**
+ * Counters for class resolution by {@link MarshalInputStream} in this
+ * virtual machine, showing how often a class descriptor was resolved from
+ * the stream's own cache, from the process wide cache, or by calling
+ * {@link net.jini.loader.ClassLoading ClassLoading}.
+ * <p>
+ * Counters are updated without locking, so a snapshot obtained through
+ * the accessors is only approximately consistent.
+ *
+ * @since 3.0.0
+ */
+@Beta
+public final class ResolveClassStats {
+
+    private static final ResolveClassStats instance = new ResolveClassStats();
+
+    private final AtomicLong streamHits = new AtomicLong();
+    private final AtomicLong globalHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private ResolveClassStats() {
+    }
+
+    /**
+     * Returns the counters for this virtual machine.
+     *
+     * @return the counters for this virtual machine
+     */
+    public static ResolveClassStats getInstance() {
+	return instance;
+    }
+
+    void streamHit() {
+	streamHits.incrementAndGet();
+    }
+
+    void globalHit() {
+	globalHits.incrementAndGet();
+    }
+
+    void miss() {
+	misses.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of classes found in the resolving stream's cache.
+     *
+     * @return the number of per-stream cache hits
+     */
+    public long getStreamHits() {
+	return streamHits.get();
+    }
+
+    /**
+     * Returns the number of classes found in the process wide cache.
+     *
+     * @return the number of process wide cache hits
+     */
+    public long getGlobalHits() {
+	return globalHits.get();
+    }
+
+    /**
+     * Returns the number of classes that had to be loaded through
+     * <code>ClassLoading</code>, including all resolutions made while
+     * caching is disabled.
+     *
+     * @return the number of cache misses
+     */
+    public long getMisses() {
+	return misses.get();
+    }
+
+    /**
+     * Returns the fraction of resolutions satisfied by either cache, or
+     * zero if no class has been resolved.
+     *
+     * @return the cache hit rate, between zero and one
+     */
+    public double getHitRate() {
+	long hits = streamHits.get() + globalHits.get();
+	long total = hits + misses.get();
+	return total == 0 ? 0.0 : hits / (double) total;
+    }
+
+    public String toString() {
+	return "ResolveClassStats[streamHits=" + getStreamHits()
+	    + ", globalHits=" + getGlobalHits()
+	    + ", misses=" + getMisses()
+	    + ", hitRate=" + getHitRate() + "]";
+    }
+}
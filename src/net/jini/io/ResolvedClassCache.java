@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.io;
+
+import java.io.File;
+import java.io.FilePermission;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.security.AccessController;
+import java.security.Permission;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.river.action.GetIntegerAction;
+
+/**
+ * Process wide cache of classes resolved by {@link MarshalInputStream}.
+ *
+ * Everything that can influence the outcome of
+ * <code>ClassLoading.loadClass</code> and
+ * <code>ClassLoading.loadProxyClass</code>, other than the security 
+ * policy, is part of the key: the class or interface names, the codebase,
+ * the default and verifier loaders, the integrity flag and the thread's
+ * context class loader.  Loaders are referenced weakly from keys and
+ * resolved classes weakly from values, so the cache never prevents a
+ * codebase loader from being collected; keys whose loaders have been
+ * collected no longer match anything and entries whose class has been
+ * collected are dropped when found.
+ * <p>
+ * When a security manager is installed, a hit for a class resolved from
+ * a codebase is only returned if the caller has permission to access
+ * every codebase URL, the same check the class loader provider makes
+ * before handing out a codebase loader; otherwise the lookup is treated
+ * as a miss and the provider decides.  Changes to the policy therefore
+ * take effect for cached classes too.
+ * <p>
+ * The cache is cleared when it reaches its bound, set by the
+ * <code>net.jini.io.MarshalInputStream.classCacheSize</code> system
+ * property (1024 by default, zero disables it).
+ *
+ * @since 3.0.0
+ */
+final class ResolvedClassCache {
+
+    private static final int MAX_SIZE =
+	AccessController.doPrivileged(new GetIntegerAction(
+	    "net.jini.io.MarshalInputStream.classCacheSize", 1024)).intValue();
+
+    private static final ConcurrentMap<Key,Entry> cache =
+	new ConcurrentHashMap<Key,Entry>();
+
+    private ResolvedClassCache() {
+	throw new AssertionError();
+    }
+
+    static boolean enabled() {
+	return MAX_SIZE > 0;
+    }
+
+    /**
+     * Returns a key for the current thread, or null if caching is
+     * disabled.
+     */
+    static Key key(String name,
+		   boolean proxy,
+		   String codebase,
+		   ClassLoader defaultLoader,
+		   boolean verify,
+		   ClassLoader verifierLoader)
+    {
+	if (MAX_SIZE <= 0) {
+	    return null;
+	}
+	ClassLoader contextLoader = AccessController.doPrivileged(
+	    new PrivilegedAction<ClassLoader>() {
+		public ClassLoader run() {
+		    return Thread.currentThread().getContextClassLoader();
+		}
+	    });
+	return new Key(name, proxy, codebase, defaultLoader, verify,
+		       verifierLoader, contextLoader);
+    }
+
+    static Class<?> get(Key key) {
+	Entry entry = cache.get(key);
+	if (entry == null) {
+	    return null;
+	}
+	Class<?> c = entry.get();
+	if (c == null) {
+	    cache.remove(key, entry);
+	    return null;
+	}
+	SecurityManager sm = System.getSecurityManager();
+	if (sm != null && key.codebase != null) {
+	    Permission[] perms = entry.permissions(key.codebase);
+	    if (perms == null) {
+		return null;
+	    }
+	    try {
+		for (int i = 0; i < perms.length; i++) {
+		    sm.checkPermission(perms[i]);
+		}
+	    } catch (SecurityException e) {
+		return null;
+	    }
+	}
+	return c;
+    }
+
+    static void put(Key key, Class<?> c) {
+	if (cache.size() >= MAX_SIZE) {
+	    cache.clear();
+	}
+	cache.put(key, new Entry(c));
+    }
+
+    static String joinNames(String[] names) {
+	StringBuilder sb = new StringBuilder();
+	for (int i = 0; i < names.length; i++) {
+	    if (i > 0) {
+		sb.append(',');
+	    }
+	    sb.append(names[i]);
+	}
+	return sb.toString();
+    }
+
+    /**
+     * Returns the permissions needed to access the given codebase, or
+     * null if they cannot be determined.  As for a codebase loader, a
+     * file URL requires permission to read everything beneath its
+     * directory.
+     */
+    static Permission[] permissionsFor(String codebase) {
+	List<Permission> perms = new ArrayList<Permission>();
+	StringTokenizer st = new StringTokenizer(codebase);
+	try {
+	    while (st.hasMoreTokens()) {
+		Permission p = new URL(st.nextToken()).openConnection()
+		    .getPermission();
+		if (p instanceof FilePermission) {
+		    String path = p.getName();
+		    int end = path.lastIndexOf(File.separatorChar);
+		    if (end != -1) {
+			p = new FilePermission(
+			    path.substring(0, end + 1) + "-", "read");
+		    }
+		}
+		if (p != null) {
+		    perms.add(p);
+		}
+	    }
+	} catch (IOException e) {
+	    return null;
+	}
+	return perms.toArray(new Permission[perms.size()]);
+    }
+
+    /**
+     * A resolved class, held weakly, and the permissions for its
+     * codebase, computed on the first hit under a security manager.
+     */
+    private static final class Entry extends WeakReference<Class<?>> {
+	private volatile Permission[] perms;
+
+	Entry(Class<?> c) {
+	    super(c);
+	}
+
+	Permission[] permissions(String codebase) {
+	    Permission[] p = perms;
+	    if (p == null) {
+		p = permissionsFor(codebase);
+		perms = p;
+	    }
+	    return p;
+	}
+    }
+
+    static final class Key {
+	private final String name;
+	private final boolean proxy;
+	private final String codebase;
+	private final boolean verify;
+	private final WeakReference<ClassLoader> defaultLoader;
+	private final WeakReference<ClassLoader> verifierLoader;
+	private final WeakReference<ClassLoader> contextLoader;
+	private final int hash;
+
+	Key(String name,
+	    boolean proxy,
+	    String codebase,
+	    ClassLoader defaultLoader,
+	    boolean verify,
+	    ClassLoader verifierLoader,
+	    ClassLoader contextLoader)
+	{
+	    this.name = name;
+	    this.proxy = proxy;
+	    this.codebase = codebase;
+	    this.verify = verify;
+	    this.defaultLoader = ref(defaultLoader);
+	    this.verifierLoader = ref(verifierLoader);
+	    this.contextLoader = ref(contextLoader);
+	    int h = name.hashCode();
+	    h = 31 * h + (codebase != null ? codebase.hashCode() : 0);
+	    h = 31 * h + System.identityHashCode(defaultLoader);
+	    h = 31 * h + System.identityHashCode(verifierLoader);
+	    h = 31 * h + System.identityHashCode(contextLoader);
+	    this.hash = 31 * h + (verify ? 1 : 0) + (proxy ? 2 : 0);
+	}
+
+	private static WeakReference<ClassLoader> ref(ClassLoader loader) {
+	    return loader != null ?
+		new WeakReference<ClassLoader>(loader) : null;
+	}
+
+	private static boolean same(WeakReference<ClassLoader> a,
+				    WeakReference<ClassLoader> b)
+	{
+	    if (a == null || b == null) {
+		return a == b;
+	    }
+	    ClassLoader la = a.get();
+	    return la != null && la == b.get();
+	}
+
+	public int hashCode() {
+	    return hash;
+	}
+
+	public boolean equals(Object obj) {
+	    if (obj == this) {
+		return true;
+	    }
+	    if (!(obj instanceof Key)) {
+		return false;
+	    }
+	    Key k = (Key) obj;
+	    return hash == k.hash &&
+		proxy == k.proxy &&
+		verify == k.verify &&
+		name.equals(k.name) &&
+		(codebase == null ?
+		    k.codebase == null : codebase.equals(k.codebase)) &&
+		same(defaultLoader, k.defaultLoader) &&
+		same(verifierLoader, k.verifierLoader) &&
+		same(contextLoader, k.contextLoader);
+	}
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.io.context;
+
+import org.apache.river.api.common.Beta;
+
+/**
+ * Defines a context element interface for determining if class
+ * descriptors of core platform classes are written in compact form on a
+ * stream or a remote call.
+ *
+ * <p>A transport adds an element of this type to the context of a
+ * request only if both ends of the connection agreed to compact class
+ * descriptors.  A {@link net.jini.io.MarshalOutputStream} or {@link
+ * net.jini.io.MarshalInputStream} created with a context containing such
+ * an element, for which {@link #compactClassDescriptors
+ * compactClassDescriptors} returns <code>true</code>, writes or reads the
+ * class descriptors of a fixed set of core classes as a small index
+ * into a table known to both ends.  Both streams of a call must
+ * therefore be created with the context of the request.
+ *
+ * @since 3.0.0
+ * @see net.jini.io.ObjectStreamContext
+ */
+@Beta
+public interface CompactClassDescriptors {
+    /**
+     * Returns <code>true</code> if class descriptors of core classes are
+     * written in compact form, and <code>false</code> otherwise.
+     *
+     * @return <code>true</code> if class descriptors of core classes are
+     * written in compact form, and <code>false</code> otherwise
+     */
+    boolean compactClassDescriptors();
+}
@@ -19,6 +19,7 @@
 package net.jini.jeri;
 
 import org.apache.river.action.GetBooleanAction;
+import org.apache.river.jeri.internal.runtime.LocalClassTable;
 import org.apache.river.jeri.internal.runtime.Util;
 import org.apache.river.jeri.internal.runtime.WeakKey;
 import org.apache.river.logging.Levels;
@@ -181,11 +182,17 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
     /** True if permConstructor has a Method parameter. */
     private final boolean permUsesMethod;
     
-    /** Map from Method to Permission. */
+    /**
+     * Map from Method to Permission, for methods that are not in the
+     * method table.
+     */
     private final Map permissions;
     
-    /** Map from Long method hash to Method, for all remote methods. */
-    private final Map methods;
+    /**
+     * Table of all remote methods, searchable by method hash and by
+     * method identity, with MethodInfo values.
+     */
+    private final MethodTable methods;
 
     /** Map from WeakKey(Subject) to ProtectionDomain. */
     private static final Map domains = new HashMap();
@@ -275,18 +282,24 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 	if (serverCapabilities == null) {
 	    throw new NullPointerException();
 	}
-	this.methods = new HashMap();
 	this.loader = loader;
-	for (Iterator iter = methods.iterator(); iter.hasNext(); ) {
-	    Object m = iter.next();
-	    if (m == null) {
+	Method[] m = new Method[methods.size()];
+	long[] hashes = new long[m.length];
+	MethodInfo[] info = new MethodInfo[m.length];
+	int n = 0;
+	for (Iterator<?> iter = methods.iterator(); iter.hasNext(); n++) {
+	    Object o = iter.next();
+	    if (o == null) {
 		throw new NullPointerException("methods contains null");
-	    } else if (!(m instanceof Method)) {
+	    } else if (!(o instanceof Method)) {
 		throw new IllegalArgumentException(
 		    "methods must contain only Methods");
 	    }
-	    this.methods.put(Long.valueOf(Util.getMethodHash((Method) m)), m);
+	    m[n] = (Method) o;
+	    hashes[n] = Util.getMethodHash(m[n]);
+	    info[n] = new MethodInfo(m[n], serverConstraints);
 	}
+	this.methods = new MethodTable(m, hashes, info);
 	this.serverConstraints = serverConstraints;
 	if (permissionClass != null) {
 	    Util.checkPackageAccess(permissionClass);
@@ -316,6 +329,63 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 	}
     }
 
+    /**
+     * Per-method state computed when the dispatcher is constructed, so
+     * that it is not recomputed for every incoming call.
+     */
+    private static final class MethodInfo {
+	/** the remote method */
+	final Method method;
+	/** the server constraints for the method */
+	final InvocationConstraints constraints;
+	/** the server constraints with Integrity.YES as a requirement */
+	final InvocationConstraints integrityConstraints;
+	/** true if the method and its declaring class are public */
+	final boolean isPublic;
+	/** true if the method is ProxyTrust.getProxyVerifier */
+	final boolean isGetProxyVerifier;
+	/** the permission for the method, created lazily */
+	volatile Permission permission;
+
+	MethodInfo(Method method, MethodConstraints serverConstraints) {
+	    this.method = method;
+	    constraints = (serverConstraints == null ?
+			   InvocationConstraints.EMPTY :
+			   serverConstraints.getConstraints(method));
+	    integrityConstraints = withIntegrity(constraints);
+	    Class<?> decl = method.getDeclaringClass();
+	    isPublic = Modifier.isPublic(decl.getModifiers()) &&
+		       Modifier.isPublic(method.getModifiers());
+	    isGetProxyVerifier =
+		decl == ProxyTrust.class &&
+		method.getName().equals("getProxyVerifier");
+	}
+    }
+
+    /**
+     * Returns the MethodInfo for the specified method instance, or null if
+     * the method is not in the method table.
+     */
+    private MethodInfo getMethodInfo(Method method) {
+	int i = methods.indexOf(method);
+	return i < 0 ? null : (MethodInfo) methods.value(i);
+    }
+
+    /**
+     * Returns the specified constraints with Integrity.YES added as a
+     * requirement if not already present.
+     */
+    private static InvocationConstraints withIntegrity(
+					InvocationConstraints sc)
+    {
+	if (sc.requirements().contains(Integrity.YES)) {
+	    return sc;
+	}
+	Collection requirements = new ArrayList(sc.requirements());
+	requirements.add(Integrity.YES);
+	return new InvocationConstraints(requirements, sc.preferences());
+    }
+
     /**
      * Check that the only unfulfilled requirement is Integrity.
      */
@@ -569,14 +639,17 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 	     */
 	    in = createMarshalInputStream(impl, request, integrity, context);
 	    method = unmarshalMethod(impl, in, context);
-	    InvocationConstraints sc =
-		(serverConstraints == null ?
-		 InvocationConstraints.EMPTY :
-		 serverConstraints.getConstraints(method));
-	    if (integrity && !sc.requirements().contains(Integrity.YES)) {
-		Collection requirements = new ArrayList(sc.requirements());
-		requirements.add(Integrity.YES);
-		sc = new InvocationConstraints(requirements, sc.preferences());
+	    MethodInfo info = getMethodInfo(method);
+	    InvocationConstraints sc;
+	    if (info != null) {
+		sc = integrity ? info.integrityConstraints : info.constraints;
+	    } else {
+		sc = (serverConstraints == null ?
+		      InvocationConstraints.EMPTY :
+		      serverConstraints.getConstraints(method));
+		if (integrity) {
+		    sc = withIntegrity(sc);
+		}
 	    }
 	    
 	    InvocationConstraints unfulfilled = request.checkConstraints(sc);
@@ -706,7 +779,10 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
      * of <code>context</code> for the <code>context</code> collection.
      * The {@link MarshalInputStream#useCodebaseAnnotations
      * useCodebaseAnnotations} method is invoked on the created stream
-     * before it is returned.
+     * before it is returned.  If <code>request</code> was received
+     * through a {@link net.jini.jeri.local.LocalServerEndpoint} that
+     * passes classes by reference, the returned stream resolves the
+     * classes recorded by the client instead of loading them.
      *
      * <p>A subclass can override this method to control how the marshal input
      * stream is created or implemented.
@@ -739,6 +815,12 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 	}
 	
 	Collection unmodContext = Collections.unmodifiableCollection(context);
+	LocalClassTable classes = LocalClassTable.get(request);
+	if (classes != null) {
+	    return classes.createInputStream(request.getRequestInputStream(),
+					     streamLoader, integrity,
+					     unmodContext);
+	}
 	MarshalInputStream in =
 	    new MarshalInputStream(request.getRequestInputStream(),
 				   streamLoader, integrity,
@@ -761,7 +843,10 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
      * return a new {@link MarshalOutputStream} instance constructed with
      * the output stream obtained from the <code>request</code> as
      * specified above and an unmodifiable view of the given
-     * <code>context</code> collection.
+     * <code>context</code> collection.  If <code>request</code> was
+     * received through a {@link net.jini.jeri.local.LocalServerEndpoint}
+     * that passes classes by reference, the returned stream records
+     * classes for the client instead of annotating them with codebases.
      *
      * <p>A subclass can override this method to control how the marshal output
      * stream is created or implemented.
@@ -790,6 +875,10 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 	}
 	OutputStream out = request.getResponseOutputStream();
 	Collection unmodContext = Collections.unmodifiableCollection(context);
+	LocalClassTable classes = LocalClassTable.get(request);
+	if (classes != null) {
+	    return classes.createOutputStream(out, unmodContext);
+	}
 	return new MarshalOutputStream(out, unmodContext);
     }
 							  
@@ -840,31 +929,48 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 	    return;
 	}
 	Permission perm;
-	synchronized (permissions) {
-	    perm = (Permission) permissions.get(method);
-	}
-	if (perm == null) {
-	    try {
-		perm = (Permission) permConstructor.newInstance(new Object[]{
-		    permUsesMethod ?
-			(Object) method :
-			method.getDeclaringClass().getName() + "." +
-			method.getName()});
-	    } catch (InvocationTargetException e) {
-		Throwable t = e.getTargetException();
-		if (t instanceof Error) {
-		    throw (Error) t;
-		}
-		throw (RuntimeException) t;
-	    } catch (Exception e) {
-		throw new RuntimeException("unexpected exception", e);
+	MethodInfo info = getMethodInfo(method);
+	if (info != null) {
+	    perm = info.permission;
+	    if (perm == null) {
+		perm = createPermission(method);
+		info.permission = perm;
 	    }
+	} else {
 	    synchronized (permissions) {
-		permissions.put(method, perm);
+		perm = (Permission) permissions.get(method);
+	    }
+	    if (perm == null) {
+		perm = createPermission(method);
+		synchronized (permissions) {
+		    permissions.put(method, perm);
+		}
 	    }
 	}
 	checkClientPermission(perm);
     }
+
+    /**
+     * Creates the permission for the specified method using the
+     * permission class constructor.
+     */
+    private Permission createPermission(Method method) {
+	try {
+	    return (Permission) permConstructor.newInstance(new Object[]{
+		permUsesMethod ?
+		    (Object) method :
+		    method.getDeclaringClass().getName() + "." +
+		    method.getName()});
+	} catch (InvocationTargetException e) {
+	    Throwable t = e.getTargetException();
+	    if (t instanceof Error) {
+		throw (Error) t;
+	    }
+	    throw (RuntimeException) t;
+	} catch (Exception e) {
+	    throw new RuntimeException("unexpected exception", e);
+	}
+    }
     
     /**
      * Checks that the client subject for the current remote call has the
@@ -989,7 +1095,8 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 	    throw new NullPointerException();
 	}
 	long hash = in.readLong();
-	Method method = (Method) methods.get(Long.valueOf(hash));
+	int i = methods.indexOf(hash);
+	Method method = (i < 0 ? null : methods.method(i));
 	if (method == null) {
 	    throw new NoSuchMethodException(
 	     "unrecognized method hash: method not supported by remote object");
@@ -1111,19 +1218,26 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 	    throw new NullPointerException();
 	}
 
-	if (!method.isAccessible() &&
-	    !(Modifier.isPublic(method.getDeclaringClass().getModifiers()) &&
-	      Modifier.isPublic(method.getModifiers())))
-	{
+	MethodInfo info = getMethodInfo(method);
+	boolean isPublic;
+	boolean isGetProxyVerifier;
+	if (info != null) {
+	    isPublic = info.isPublic;
+	    isGetProxyVerifier = info.isGetProxyVerifier;
+	} else {
+	    Class<?> decl = method.getDeclaringClass();
+	    isPublic = Modifier.isPublic(decl.getModifiers()) &&
+		       Modifier.isPublic(method.getModifiers());
+	    isGetProxyVerifier =
+		decl == ProxyTrust.class &&
+		method.getName().equals("getProxyVerifier");
+	}
+	if (!isPublic && !method.isAccessible()) {
 	    throw new IllegalArgumentException(
 		"method not public or set accessible");
 	}
 	
-	Class decl = method.getDeclaringClass();
-	if (decl == ProxyTrust.class &&
-	    method.getName().equals("getProxyVerifier") &&
-	    impl instanceof ServerProxyTrust)
-	{
+	if (isGetProxyVerifier && impl instanceof ServerProxyTrust) {
 	    if (args.length != 0) {
 		throw new IllegalArgumentException("incorrect arguments");
 	    }
@@ -18,8 +18,12 @@
 
 package net.jini.jeri;
 
+import org.apache.river.jeri.internal.runtime.AsyncOutboundRequest;
+import org.apache.river.jeri.internal.runtime.LocalClassTable;
 import org.apache.river.jeri.internal.runtime.Util;
 import org.apache.river.logging.Levels;
+import org.apache.river.thread.Executor;
+import org.apache.river.thread.GetThreadPoolAction;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -39,6 +43,7 @@ import java.rmi.MarshalException;
 import java.rmi.RemoteException;
 import java.rmi.UnexpectedException;
 import java.rmi.UnmarshalException;
+import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
@@ -80,6 +85,10 @@ import net.jini.security.proxytrust.TrustEquivalence;
  * {@link BasicInvocationDispatcher#dispatch
  * BasicInvocationDispatcher.dispatch} method.
  *
+ * <p>A remote invocation can also be made without blocking the calling
+ * thread for the response by using the {@link #invokeAsync invokeAsync}
+ * method, which returns an {@link InvocationFuture} for the result.
+ *
  * @author	Sun Microsystems, Inc.
  * @see		BasicInvocationDispatcher
  * @since 2.0
@@ -142,8 +151,8 @@ public class BasicInvocationHandler
     private static final Logger logger =
 	Logger.getLogger("net.jini.jeri.BasicInvocationHandler");
 
-    /** size of the method constraint cache (per instance) */
-    private static final int CACHE_SIZE = 3;
+    /** maximum size of the method cache (per instance) */
+    private static final int CACHE_SIZE = 256;
 
     /**
      * The object endpoint for communicating with the remote object.
@@ -167,21 +176,16 @@ public class BasicInvocationHandler
     private final MethodConstraints serverConstraints;
 
     /*
-     * The method constraint cache maps remote methods to their
-     * combined client and server constraints:
+     * The method cache maps remote methods to their method hashes and
+     * combined client and server constraints. It is read without locking
+     * and replaced with an extended copy when a method is added.
      */
 
-    /** lock guarding cacheIndex, methodCache, and constraintCache */
+    /** lock guarding updates to methodCache */
     private transient Object cacheLock = new Object();
 
-    /** next index to (over)write in the method constraint cache */
-    private transient int cacheIndex;
-
-    /** method constraint cache keys (unused entries are null) */
-    private transient Method[] methodCache;
-
-    /** method constraint cache values (unused entries are null) */
-    private transient InvocationConstraints[] constraintCache;
+    /** method cache, with InvocationConstraints values */
+    private transient volatile MethodTable methodCache = MethodTable.EMPTY;
 
     /**
      * Creates a new <code>BasicInvocationHandler</code> with the
@@ -331,8 +335,10 @@ public class BasicInvocationHandler
      * <code>0x01</code> if object integrity is being enforced for
      * this remote call attempt, and <code>0x00</code> otherwise.
      *
-     * <li>A client context collection is created containing an {@link
-     * IntegrityEnforcement} element that reflects whether or not
+     * <li>A client context collection is created containing the
+     * elements added by the {@link OutboundRequest#populateContext
+     * populateContext} method of the <code>OutboundRequest</code> and an
+     * {@link IntegrityEnforcement} element that reflects whether or not
      * object integrity is being enforced for this remote call
      * attempt.
      *
@@ -529,6 +535,84 @@ public class BasicInvocationHandler
 	}
     }
 
+    /**
+     * Processes a method invocation made on the encapsulating
+     * proxy instance, <code>proxy</code>, and returns a future for the
+     * result instead of waiting for it.
+     *
+     * <p>The arguments are interpreted, and the invocation is carried
+     * out, exactly as for {@link #invoke invoke}: the same constraints
+     * are applied, the same protocol is used, and the same exceptions
+     * are produced, including retrying a failed call attempt when doing
+     * so does not violate <i>at most once</i> execution semantics.  The
+     * request is written in the calling thread, so the arguments may be
+     * modified once this method returns.  The calling thread does not
+     * wait for the response; when the transport supports it no thread
+     * is occupied while the remote method executes.  The response is
+     * unmarshalled in a thread of the user thread pool, with the access
+     * control context and context class loader of the calling thread.
+     *
+     * <p>Exceptions that <code>invoke</code> would throw are instead
+     * reported through the returned future, except that {@link
+     * IllegalArgumentException} is thrown directly if
+     * <code>proxy</code> is an instance of
+     * <code>InvocationHandler</code>.  Invocations of methods declared
+     * by <code>Object</code>, {@link RemoteMethodControl}, and {@link
+     * TrustEquivalence} are processed locally and the returned future
+     * is already complete.
+     *
+     * @param	proxy the proxy instance that the method was invoked on
+     * @param	method the <code>Method</code> instance corresponding to
+     * the interface method invoked on the proxy instance
+     * @param	args an array of objects containing the values of the
+     * arguments passed in the method invocation on the proxy instance,
+     * or <code>null</code> if the method takes no arguments
+     * @return	a future for the result of the invocation
+     * @throws	IllegalArgumentException if <code>proxy</code> is an
+     * instance of <code>InvocationHandler</code>
+     * @since 3.0.0
+     **/
+    public InvocationFuture invokeAsync(Object proxy,
+					Method method,
+					Object[] args)
+    {
+	if (proxy instanceof InvocationHandler) {
+	    throw new IllegalArgumentException(
+				    "proxy cannot be an invocation handler");
+	}
+	InvocationFuture future = new InvocationFuture();
+	Class<?> declarer = method.getDeclaringClass();
+	if (declarer == Object.class ||
+	    declarer == RemoteMethodControl.class ||
+	    declarer == TrustEquivalence.class)
+	{
+	    try {
+		future.complete(invoke(proxy, method, args));
+	    } catch (Throwable t) {
+		future.fail(t);
+	    }
+	    return future;
+	}
+	try {
+	    Util.checkProxyRemoteMethod(proxy.getClass(), method);
+	    InvocationConstraints constraints = getConstraints(method);
+
+	    if (logger.isLoggable(Level.FINE)) {
+		logCall(method, args, constraints);
+	    }
+
+	    OutboundRequestIterator iter = oe.newCall(constraints);
+	    if (!iter.hasNext()) {
+		throw new ConnectIOException("iterator produced no requests",
+		    new IOException("iterator produced no requests"));
+	    }
+	    new AsyncCall(proxy, method, args, iter, future).start(null);
+	} catch (Throwable t) {
+	    future.fail(t);
+	}
+	return future;
+    }
+
     /**
      * Handles java.lang.Object methods.
      **/
@@ -678,6 +762,172 @@ public class BasicInvocationHandler
 	throw failure.exception;
     }
 
+    /**
+     * Holds the user thread pool, created on first use by invokeAsync.
+     **/
+    private static class UserThreadPool {
+	static final Executor executor =
+	    AccessController.doPrivileged(new GetThreadPoolAction(true));
+    }
+
+    /**
+     * Drives a remote call made by invokeAsync through its attempts.
+     * Each attempt writes its request in the thread that starts it, and
+     * then reads the response in the user thread pool once the request
+     * has response data (or as soon as possible if the request cannot
+     * tell).
+     **/
+    private final class AsyncCall implements Runnable {
+
+	private final Object proxy;
+	private final Method method;
+	private final Object[] args;
+	private final OutboundRequestIterator iter;
+	private final InvocationFuture future;
+	private final AccessControlContext acc;
+	private final ClassLoader ccl;
+
+	/** the current call attempt */
+	private Call call;
+
+	AsyncCall(Object proxy,
+		  Method method,
+		  Object[] args,
+		  OutboundRequestIterator iter,
+		  InvocationFuture future)
+	{
+	    this.proxy = proxy;
+	    this.method = method;
+	    this.args = args;
+	    this.iter = iter;
+	    this.future = future;
+	    acc = AccessController.getContext();
+	    ccl = Thread.currentThread().getContextClassLoader();
+	}
+
+	/**
+	 * Writes the request of the next call attempt, retrying while
+	 * writing fails in a way that is safe to retry, and arranges
+	 * for the response to be read.  The failure argument is the
+	 * communication failure of the previous attempt, or null.
+	 **/
+	void start(Failure failure) {
+	    Object result;
+	    do {
+		if (failure != null && logger.isLoggable(Levels.HANDLED)) {
+		    logThrow(Levels.HANDLED, method, failure.exception, false);
+		}
+		if (future.isCancelled()) {
+		    return;
+		}
+		result = writeRequest(proxy, method, args, iter);
+		if (!(result instanceof Failure)) {
+		    break;
+		}
+		failure = (Failure) result;
+	    } while (failure.retry && iter.hasNext());
+
+	    if (result instanceof Failure) {
+		failed(failure);
+		return;
+	    }
+	    call = (Call) result;
+	    future.setRequest(call.request);
+	    if (call.request instanceof AsyncOutboundRequest) {
+		((AsyncOutboundRequest) call.request).setResponseListener(this);
+	    } else {
+		run();
+	    }
+	}
+
+	/**
+	 * Invoked when the response of the current call attempt can be
+	 * read; hands the read off to the user thread pool, since this
+	 * may be a transport thread.
+	 **/
+	public void run() {
+	    UserThreadPool.executor.execute(new Runnable() {
+		public void run() {
+		    receive();
+		}
+	    }, "AsyncCall-" + method.getName());
+	}
+
+	/**
+	 * Reads the response of the current call attempt and completes
+	 * the future or starts another attempt, all in the calling
+	 * thread's access control context and context class loader, so
+	 * that a retried request is created and marshalled with the
+	 * caller's subject.
+	 **/
+	void receive() {
+	    final Thread t = Thread.currentThread();
+	    final ClassLoader saved = t.getContextClassLoader();
+	    setContextClassLoader(t, ccl);
+	    try {
+		AccessController.doPrivileged(new PrivilegedAction<Void>() {
+		    public Void run() {
+			try {
+			    completeAttempt(readResponse(proxy, method, call));
+			} catch (Throwable e) {
+			    future.fail(e);
+			}
+			return null;
+		    }
+		}, acc);
+	    } finally {
+		setContextClassLoader(t, saved);
+	    }
+	}
+
+	/**
+	 * Completes the future with the result of the current call
+	 * attempt, or starts another attempt if the attempt failed in
+	 * a way that is safe to retry.
+	 **/
+	private void completeAttempt(Object result) {
+	    if (result instanceof Failure) {
+		Failure failure = (Failure) result;
+		if (failure.retry && iter.hasNext() &&
+		    !future.isCancelled())
+		{
+		    start(failure);
+		} else {
+		    failed(failure);
+		}
+	    } else if (!future.isDone()) {
+		future.complete(result);
+	    }
+	}
+
+	/**
+	 * Fails the future with the last communication failure.
+	 **/
+	private void failed(Failure failure) {
+	    if (logger.isLoggable(Levels.FAILED)) {
+		logThrow(Levels.FAILED, method, failure.exception, false);
+	    }
+	    future.fail(failure.exception);
+	}
+    }
+
+    /**
+     * Sets the context class loader of the given thread, if it is not
+     * already the given loader.
+     **/
+    private static void setContextClassLoader(final Thread t,
+					      final ClassLoader loader)
+    {
+	if (t.getContextClassLoader() != loader) {
+	    AccessController.doPrivileged(new PrivilegedAction<Void>() {
+		public Void run() {
+		    t.setContextClassLoader(loader);
+		    return null;
+		}
+	    });
+	}
+    }
+
     /**
      * Make one attempt to invoke a remote method.
      *
@@ -699,6 +949,49 @@ public class BasicInvocationHandler
 					  OutboundRequestIterator iter,
 					  InvocationConstraints constraints)
 	throws Throwable
+    {
+	Object call = writeRequest(proxy, method, args, iter);
+	if (call instanceof Failure) {
+	    return call;
+	}
+	return readResponse(proxy, method, (Call) call);
+    }
+
+    /**
+     * Holds the state of a remote call attempt whose request has been
+     * written but whose response has not yet been read.
+     **/
+    private static final class Call {
+
+	/** the request carrying the call */
+	final OutboundRequest request;
+
+	/** whether codebase integrity is to be verified */
+	final boolean integrity;
+
+	/** the context collection for the call */
+	final Collection<Object> context;
+
+	Call(OutboundRequest request, boolean integrity,
+	     Collection<Object> context)
+	{
+	    this.request = request;
+	    this.integrity = integrity;
+	    this.context = context;
+	}
+    }
+
+    /**
+     * Initiates a remote call request and marshals the method and
+     * arguments to it.
+     *
+     * Returns either a Call instance to be passed to readResponse, or
+     * a Failure instance as described for invokeRemoteMethodOnce.
+     **/
+    private Object writeRequest(Object proxy,
+				Method method,
+				Object[] args,
+				OutboundRequestIterator iter)
     {
 	/*
 	 * Initiate remote call request.
@@ -719,7 +1012,7 @@ public class BasicInvocationHandler
 	boolean ok = false;
 	boolean integrity = false;
 	boolean wroteMethod = false;
-	Collection context;
+	Collection<Object> context;
 	try {
 	    /*
 	     * Check the unfulfilled constraints.  If the unfulfilled
@@ -765,7 +1058,8 @@ public class BasicInvocationHandler
 	    ros.write(0x00);			// marshalling protocol version
 	    ros.write(integrity ? 0x01 : 0x00);	// integrity
 
-	    context = new ArrayList(1);
+	    context = new ArrayList<Object>(2);
+	    request.populateContext(context);
 	    Util.populateContext(context, integrity);
 
 	    ObjectOutputStream out =
@@ -794,11 +1088,27 @@ public class BasicInvocationHandler
 		request.abort();
 	    }
 	}
+	return new Call(request, integrity, context);
+    }
+
+    /**
+     * Executes a call whose request has been written by writeRequest
+     * and unmarshals the return value or exception.
+     *
+     * Returns, throws, or returns a Failure instance as described for
+     * invokeRemoteMethodOnce.
+     **/
+    private Object readResponse(Object proxy, Method method, Call call)
+	throws Throwable
+    {
+	OutboundRequest request = call.request;
+	boolean integrity = call.integrity;
+	Collection<Object> context = call.context;
 
 	/*
 	 * Execute call and unmarshal return value or exception.
 	 */
-	ok = false;
+	boolean ok = false;
 	boolean versionMismatch = false;
 	Object returnValue = null;
 	Throwable throwable = null;
@@ -904,30 +1214,37 @@ public class BasicInvocationHandler
 	if (clientConstraints == null && serverConstraints == null) {
 	    return InvocationConstraints.EMPTY;
 	}
+	MethodTable cache = methodCache;
+	int i = cache.indexOf(method);
+	if (i < 0) {
+	    cache = cacheMethod(method);
+	    i = cache.indexOf(method);
+	}
+	return ((InvocationConstraints) cache.value(i)).makeAbsolute();
+    }
 
+    /**
+     * Adds the specified method to the method cache if it is not already
+     * present, and returns a cache containing the method. The cache is
+     * cleared first if it is full.
+     **/
+    private MethodTable cacheMethod(Method method) {
 	synchronized (cacheLock) {
-	    if (methodCache == null) {
-		methodCache = new Method[CACHE_SIZE];
-		constraintCache = new InvocationConstraints[CACHE_SIZE];
-		cacheIndex = CACHE_SIZE - 1;
-	    } else {
-		for (int i = CACHE_SIZE; --i >= 0; ) {
-		    if (methodCache[i] == method) {
-			return constraintCache[i].makeAbsolute();
-		    }
-		}
+	    MethodTable cache = methodCache;
+	    if (cache.indexOf(method) >= 0) {
+		return cache;
 	    }
-
 	    InvocationConstraints constraints = InvocationConstraints.combine(
 		clientConstraints == null ?
 		    null : clientConstraints.getConstraints(method),
 		serverConstraints == null ?
 		    null : serverConstraints.getConstraints(method));
-
-	    methodCache[cacheIndex] = method;
-	    constraintCache[cacheIndex] = constraints;
-	    cacheIndex = (cacheIndex == 0) ? CACHE_SIZE - 1 : cacheIndex - 1;
-	    return constraints.makeAbsolute();
+	    if (cache.size() >= CACHE_SIZE) {
+		cache = MethodTable.EMPTY;
+	    }
+	    cache = cache.with(method, Util.getMethodHash(method), constraints);
+	    methodCache = cache;
+	    return cache;
 	}
     }
 
@@ -984,7 +1301,11 @@ public class BasicInvocationHandler
      * to return a new {@link MarshalOutputStream} instance
      * constructed with the output stream obtained from
      * <code>request</code> as specified above and an unmodifiable
-     * view of the supplied <code>context</code> collection.
+     * view of the supplied <code>context</code> collection.  If
+     * <code>request</code> was produced by a {@link
+     * net.jini.jeri.local.LocalEndpoint} that passes classes by
+     * reference, the returned stream records classes for the server
+     * instead of annotating them with codebases.
      *
      * <p>A subclass can override this method to control how the
      * marshal input stream is created or implemented.
@@ -1010,6 +1331,10 @@ public class BasicInvocationHandler
 	}
 	OutputStream out = request.getRequestOutputStream();
 	Collection unmodContext = Collections.unmodifiableCollection(context);
+	LocalClassTable classes = LocalClassTable.get(request);
+	if (classes != null) {
+	    return classes.createOutputStream(out, unmodContext);
+	}
 	return new MarshalOutputStream(out, unmodContext);
     }
 							  
@@ -1031,7 +1356,10 @@ public class BasicInvocationHandler
      * collection.  The {@link
      * MarshalInputStream#useCodebaseAnnotations
      * useCodebaseAnnotations} method is invoked on the created stream
-     * before it is returned.
+     * before it is returned.  If <code>request</code> was produced by
+     * a {@link net.jini.jeri.local.LocalEndpoint} that passes classes
+     * by reference, the returned stream resolves the classes recorded
+     * by the server instead of loading them.
      *
      * <p>An exception is thrown if <code>proxy</code> is not an instance
      * of a dynamic proxy class containing this invocation handler.
@@ -1065,6 +1393,12 @@ public class BasicInvocationHandler
 	}
 	ClassLoader proxyLoader = getProxyLoader(proxy.getClass());
 	Collection unmodContext = Collections.unmodifiableCollection(context);
+	LocalClassTable classes = LocalClassTable.get(request);
+	if (classes != null) {
+	    return classes.createInputStream(request.getResponseInputStream(),
+					     proxyLoader, integrity,
+					     unmodContext);
+	}
 	MarshalInputStream in =
 	    new MarshalInputStream(request.getResponseInputStream(),
 				   proxyLoader, integrity, proxyLoader,
@@ -1123,7 +1457,13 @@ public class BasicInvocationHandler
 	if (proxy == null || method == null || context == null) {
 	    throw new NullPointerException();
 	}
-        out.writeLong(Util.getMethodHash(method));
+	MethodTable cache = methodCache;
+	int i = cache.indexOf(method);
+	if (i < 0) {
+	    cache = cacheMethod(method);
+	    i = cache.indexOf(method);
+	}
+	out.writeLong(cache.hash(i));
     }
 
     /**
@@ -1538,6 +1878,7 @@ public class BasicInvocationHandler
 	    throw new InvalidObjectException("null object endpoint");
 	}
 	cacheLock = new Object();
+	methodCache = MethodTable.EMPTY;
     }
 
     /**
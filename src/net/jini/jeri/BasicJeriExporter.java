@@ -18,6 +18,7 @@
 
 package net.jini.jeri;
 
+import org.apache.river.action.GetBooleanAction;
 import org.apache.river.jeri.internal.runtime.BasicExportTable;
 import org.apache.river.logging.Levels;
 import java.lang.ref.WeakReference;
@@ -26,6 +27,7 @@ import java.rmi.RemoteException;
 import java.rmi.server.ExportException;
 import java.rmi.server.Unreferenced;
 import java.security.AccessControlContext;
+import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -37,6 +39,7 @@ import net.jini.id.UuidFactory;
 import net.jini.io.MarshalInputStream;
 import net.jini.io.context.ClientHost;
 import net.jini.io.context.ClientSubject;
+import net.jini.jeri.local.LocalServerEndpoint;
 import net.jini.security.Security;
 import net.jini.security.SecurityContext;
 
@@ -302,6 +305,14 @@ import net.jini.security.SecurityContext;
  * once, then the security context and context class loader in effect
  * for any one of those exports are used.
  *
+ * <p>If the system property
+ * <code>org.apache.river.jeri.local.shortCircuit</code> is
+ * <code>true</code>, remote objects are exported on a {@link
+ * LocalServerEndpoint} wrapping the server endpoint of this exporter
+ * (unless it already is one), so that calls made through their proxies
+ * in this virtual machine bypass the transport.  The property defaults
+ * to <code>false</code>.
+ *
  * @author	Sun Microsystems, Inc.
  * @since 2.0
  *
@@ -351,6 +362,11 @@ public final class BasicJeriExporter implements Exporter {
 
     private static final BasicExportTable table = new BasicExportTable();
 
+    /** whether to short-circuit calls from this virtual machine */
+    private static final boolean shortCircuit =		// default false
+	AccessController.doPrivileged(new GetBooleanAction(
+	    "org.apache.river.jeri.local.shortCircuit")).booleanValue();
+
     /**
      * Creates a new <code>BasicJeriExporter</code> with the given server
      * endpoint and invocation layer factory.  The other properties of the
@@ -600,7 +616,11 @@ public final class BasicJeriExporter implements Exporter {
 	/*
 	 * Export the remote object.
 	 */
-	entry = table.export(impl, se, enableDGC, keepAlive, id);
+	ServerEndpoint exportEndpoint = se;
+	if (shortCircuit && !(se instanceof LocalServerEndpoint)) {
+	    exportEndpoint = LocalServerEndpoint.getInstance(se);
+	}
+	entry = table.export(impl, exportEndpoint, enableDGC, keepAlive, id);
 	used = true;
 	
 	/*
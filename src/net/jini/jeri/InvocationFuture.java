@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.jini.jeri;
+
+import java.util.concurrent.Callable;
+import org.apache.river.thread.ObservableFutureTask;
+
+/**
+ * The pending result of a remote invocation made through {@link
+ * BasicInvocationHandler#invokeAsync BasicInvocationHandler.invokeAsync}.
+ *
+ * <p>The future completes with the value the remote method returned
+ * (<code>null</code> for a <code>void</code> method), or fails with an
+ * {@link java.util.concurrent.ExecutionException} whose cause is the
+ * exception that {@link BasicInvocationHandler#invoke
+ * BasicInvocationHandler.invoke} would have thrown for the same call.
+ * Observers registered with {@link #addObserver addObserver} are
+ * notified when the future completes, possibly in a thread of the
+ * user thread pool.
+ *
+ * <p>Cancelling the future aborts the outstanding request, if any.  As
+ * with any aborted request, the remote method may or may not have been
+ * executed.
+ *
+ * @since 3.0.0
+ **/
+public final class InvocationFuture extends ObservableFutureTask<Object> {
+
+    /** the request of the current call attempt, or null */
+    private volatile OutboundRequest request;
+
+    InvocationFuture() {
+	super(new Callable<Object>() {
+	    public Object call() {
+		throw new IllegalStateException(
+		    "completed by the invocation handler");
+	    }
+	});
+    }
+
+    /**
+     * Does nothing; an <code>InvocationFuture</code> is completed only
+     * by the invocation handler that created it.
+     **/
+    @Override
+    public void run() {
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>If the cancellation succeeds, the outstanding request of the
+     * invocation, if any, is aborted.
+     **/
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+	boolean cancelled = super.cancel(mayInterruptIfRunning);
+	if (cancelled) {
+	    OutboundRequest r = request;
+	    if (r != null) {
+		r.abort();
+	    }
+	}
+	return cancelled;
+    }
+
+    /**
+     * Records the request of the current call attempt, aborting it if
+     * this future has already been cancelled.
+     **/
+    void setRequest(OutboundRequest request) {
+	this.request = request;
+	if (isCancelled()) {
+	    request.abort();
+	}
+    }
+
+    /**
+     * Completes this future with the given return value.
+     **/
+    void complete(Object value) {
+	request = null;
+	set(value);
+    }
+
+    /**
+     * Completes this future with the given exception.
+     **/
+    void fail(Throwable t) {
+	request = null;
+	setException(t);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.jeri;
+
+import java.lang.reflect.Method;
+
+/**
+ * An immutable table of remote methods, each with a method hash and an
+ * associated value, that can be searched by method hash or by method
+ * identity without synchronization or boxing. Both indexes use open
+ * addressing with linear probing over power-of-two sized arrays.
+ *
+ * <p>If more than one method has the same hash, lookup by hash returns the
+ * last one added. A table can be extended by copying with {@link #with
+ * with}, which callers that cache lazily use with copy-on-write.
+ **/
+final class MethodTable {
+
+    /** An empty table. */
+    static final MethodTable EMPTY =
+	new MethodTable(new Method[0], new long[0], new Object[0]);
+
+    /** methods, in order of addition */
+    private final Method[] methods;
+    /** method hashes, parallel to methods */
+    private final long[] hashes;
+    /** values, parallel to methods */
+    private final Object[] values;
+    /** hash index: slot to method index plus one, or zero if empty */
+    private final int[] byHash;
+    /** identity index: slot to method index plus one, or zero if empty */
+    private final int[] byMethod;
+    /** index array length minus one */
+    private final int mask;
+
+    /**
+     * Creates a table from parallel arrays of methods, method hashes and
+     * values. The arrays are not copied and must not be modified. A method
+     * that appears more than once takes its last value.
+     */
+    MethodTable(Method[] methods, long[] hashes, Object[] values) {
+	this.methods = methods;
+	this.hashes = hashes;
+	this.values = values;
+	int n = 4;
+	while (n < methods.length * 2) {
+	    n <<= 1;
+	}
+	mask = n - 1;
+	byHash = new int[n];
+	byMethod = new int[n];
+	for (int i = 0; i < methods.length; i++) {
+	    int h = slot(hashes[i]);
+	    while (byHash[h] != 0 && hashes[byHash[h] - 1] != hashes[i]) {
+		h = (h + 1) & mask;
+	    }
+	    byHash[h] = i + 1;
+	    h = slot(methods[i]);
+	    while (byMethod[h] != 0 && methods[byMethod[h] - 1] != methods[i]) {
+		h = (h + 1) & mask;
+	    }
+	    byMethod[h] = i + 1;
+	}
+    }
+
+    private int slot(long hash) {
+	int h = (int) (hash ^ (hash >>> 32));
+	return (h ^ (h >>> 16)) & mask;
+    }
+
+    private int slot(Method method) {
+	int h = System.identityHashCode(method);
+	return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Returns the index of the method with the specified hash, or -1.
+     */
+    int indexOf(long hash) {
+	for (int h = slot(hash); ; h = (h + 1) & mask) {
+	    int i = byHash[h] - 1;
+	    if (i < 0 || hashes[i] == hash) {
+		return i;
+	    }
+	}
+    }
+
+    /**
+     * Returns the index of the specified method instance, or -1. Equal
+     * but distinct method instances are not found.
+     */
+    int indexOf(Method method) {
+	for (int h = slot(method); ; h = (h + 1) & mask) {
+	    int i = byMethod[h] - 1;
+	    if (i < 0 || methods[i] == method) {
+		return i;
+	    }
+	}
+    }
+
+    /** Returns the number of methods in this table. */
+    int size() {
+	return methods.length;
+    }
+
+    /** Returns the method at the specified index. */
+    Method method(int index) {
+	return methods[index];
+    }
+
+    /** Returns the method hash at the specified index. */
+    long hash(int index) {
+	return hashes[index];
+    }
+
+    /** Returns the value at the specified index. */
+    Object value(int index) {
+	return values[index];
+    }
+
+    /**
+     * Returns a new table containing the methods of this table and the
+     * specified method, hash and value.
+     */
+    MethodTable with(Method method, long hash, Object value) {
+	int n = methods.length;
+	Method[] m = new Method[n + 1];
+	long[] h = new long[n + 1];
+	Object[] v = new Object[n + 1];
+	System.arraycopy(methods, 0, m, 0, n);
+	System.arraycopy(hashes, 0, h, 0, n);
+	System.arraycopy(values, 0, v, 0, n);
+	m[n] = method;
+	h[n] = hash;
+	v[n] = value;
+	return new MethodTable(m, h, v);
+    }
+}
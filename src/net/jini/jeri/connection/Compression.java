@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.jini.jeri.connection;
+
+import java.io.Serializable;
+import net.jini.core.constraint.InvocationConstraint;
+
+/**
+ * Represents a constraint on whether request data is compressed on the
+ * connection that carries it.  Compression is negotiated per connection
+ * in the <a href="doc-files/mux.html">Jini ERI multiplexing protocol</a>
+ * connection header, and applied to the Data messages of a request that
+ * are at least as large as a configured threshold.  The server mirrors
+ * the client's choice by compressing the response to a request that
+ * arrived compressed.
+ *
+ * <p>This constraint is supported on the client side by {@link
+ * ConnectionManager}, for the endpoints of the transport providers that
+ * pass it through to the connection manager as unfulfilled (such as
+ * {@link net.jini.jeri.tcp.TcpEndpoint}).  If {@link #YES} is a
+ * requirement and the server does not support compression, the request
+ * fails with an {@link net.jini.io.UnsupportedConstraintException}.
+ *
+ * <p>Serialization for this class is guaranteed to produce instances
+ * that are comparable with <code>==</code>.
+ *
+ * <p>The {@link net.jini.constraint.ConstraintTrustVerifier} trust
+ * verifier may be used for establishing trust in remote proxies that use
+ * instances of this class.
+ *
+ * @see ConnectionManager
+ * @since 3.0.0
+ */
+public final class Compression implements InvocationConstraint, Serializable {
+
+    private static final long serialVersionUID = 4125614713306592498L;
+
+    /**
+     * Compress request data, and so also response data, where the
+     * connection supports it.
+     */
+    public static final Compression YES = new Compression(true);
+
+    /**
+     * Do not compress request data, even if compression is enabled by
+     * default.
+     */
+    public static final Compression NO = new Compression(false);
+
+    /**
+     * <code>true</code> for <code>YES</code>, <code>false</code> for
+     * <code>NO</code>
+     *
+     * @serial
+     */
+    private final boolean value;
+
+    /**
+     * Simple constructor.
+     *
+     * @param value <code>true</code> for <code>YES</code>,
+     *	      <code>false</code> for <code>NO</code>
+     */
+    private Compression(boolean value) {
+	this.value = value;
+    }
+
+    /** Returns a string representation of this object. */
+    public String toString() {
+	return value ? "Compression.YES" : "Compression.NO";
+    }
+
+    /** Canonicalize so that <code>==</code> can be used. */
+    private Object readResolve() {
+	return value ? YES : NO;
+    }
+}
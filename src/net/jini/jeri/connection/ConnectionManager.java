@@ -17,8 +17,12 @@
  */
 package net.jini.jeri.connection;
 
+import org.apache.river.action.GetBooleanAction;
 import org.apache.river.action.GetLongAction;
+import org.apache.river.jeri.internal.connection.SSLEngineConnection;
+import org.apache.river.jeri.internal.runtime.AsyncOutboundRequest;
 import org.apache.river.jeri.internal.mux.MuxClient;
+import org.apache.river.jeri.internal.mux.SSLEngineChannel;
 import org.apache.river.logging.Levels;
 import org.apache.river.thread.Executor;
 import org.apache.river.thread.GetThreadPoolAction;
@@ -34,9 +38,13 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import net.jini.core.constraint.InvocationConstraint;
 import net.jini.core.constraint.InvocationConstraints;
+import net.jini.io.UnsupportedConstraintException;
 import net.jini.jeri.OutboundRequest;
 import net.jini.jeri.OutboundRequestIterator;
 
@@ -113,6 +121,40 @@ import net.jini.jeri.OutboundRequestIterator;
  * for client-side connections to wait for the server to acknowledge an opening
  * handshake. The default value is 15000 milliseconds (15 seconds).
  *
+ * <li><code>org.apache.river.jeri.connection.mux.compression</code> - If
+ * <code>true</code>, request and response data is compressed on connections
+ * where the server agrees to compression, unless a request has a {@link
+ * Compression#NO Compression.NO} constraint. The default value is
+ * <code>false</code>, in which case only requests with a {@link
+ * Compression#YES Compression.YES} constraint, and their responses, are
+ * compressed. Compression is not negotiated by default on connections that
+ * may be confidential, those secured with an <code>SSLEngine</code> or without
+ * a plain socket channel, since the length of compressed data could reveal the
+ * plaintext; on such a connection it is only offered if the request that
+ * opened the connection has a <code>Compression.YES</code> constraint, and only
+ * requests with that constraint are compressed.
+ *
+ * <li><code>org.apache.river.jeri.connection.mux.compressionThreshold</code> -
+ * The size in bytes of the smallest fragment of request or response data that
+ * is compressed. The default value is 256.
+ *
+ * <li><code>org.apache.river.jeri.connection.mux.compactDescriptors</code> -
+ * If <code>true</code>, connections offer (and servers accept) compact class
+ * descriptors for core Java and Jini platform classes in the object streams
+ * of requests, which are used only if both ends enable this property. Both
+ * the invocation handler and the invocation dispatcher must create their
+ * marshal streams with the context of the request (see {@link
+ * net.jini.io.context.CompactClassDescriptors}). The default value is
+ * <code>false</code>.
+ *
+ * <li><code>org.apache.river.jeri.connection.mux.descriptorCache</code> - If
+ * <code>true</code>, the object streams of requests, and of their responses,
+ * share a {@link net.jini.io.DescriptorCache} with the other requests on the
+ * same connection where the server supports it, unless a request has a
+ * {@link DescriptorCaching#NO DescriptorCaching.NO} constraint. The default
+ * value is <code>false</code>, in which case only requests with a {@link
+ * DescriptorCaching#YES DescriptorCaching.YES} constraint use the cache.
+ *
  * </ul>
  *
  */
@@ -132,6 +174,13 @@ public final class ConnectionManager {
             = AccessController.doPrivileged(new GetLongAction(
                             "org.apache.river.jeri.handshakeTimeout",
                             15000)).longValue();
+    /**
+     * Whether requests use the connection's descriptor cache by default.
+     */
+    private static final boolean DESCRIPTOR_CACHE_BY_DEFAULT
+            = AccessController.doPrivileged(new GetBooleanAction(
+                    "org.apache.river.jeri.connection.mux.descriptorCache"))
+                    .booleanValue();
     /**
      * ConnectionManager logger.
      */
@@ -204,7 +253,7 @@ public final class ConnectionManager {
             Connection c;
             synchronized (this) {
                 for (int i = muxes.size(); --i >= 0;) {
-                    OutboundMux mux = (OutboundMux) muxes.get(i);
+                    OutboundMux mux = muxes.get(i);
                     try {
                         int n = mux.requestsInProgress();
                         if (n == 0) {
@@ -219,7 +268,7 @@ public final class ConnectionManager {
                 c = ep.connect(handle, active, idle);
                 if (c != null) {
                     for (int i = muxes.size(); --i >= 0;) {
-                        OutboundMux mux = (OutboundMux) muxes.get(i);
+                        OutboundMux mux = muxes.get(i);
                         if (c == mux.getConnection()) {
                             if (logger.isLoggable(Level.FINEST)) {
                                 logger.log(Level.FINEST, "using {0}", c);
@@ -228,13 +277,13 @@ public final class ConnectionManager {
                             return mux;
                         }
                     }
-                    OutboundMux mux = newOutboundMux(c);
+                    OutboundMux mux = newOutboundMux(c, handle);
                     mux.newRequestPending();
                     muxes.add(mux);
                     return mux;
                 }
                 c = ep.connect(handle);
-                OutboundMux mux = newOutboundMux(c);
+                OutboundMux mux = newOutboundMux(c, handle);
                 mux.newRequestPending();
                 muxes.add(mux);
                 return mux;
@@ -274,14 +323,35 @@ public final class ConnectionManager {
     }
 
     /**
-     * Constructs an OutboundMux instance from the connection.
+     * Constructs an OutboundMux instance from the connection. A connection
+     * without a plain socket channel may be confidential, so compression is
+     * only offered on it if the request for the handle asks for it.
      */
-    private OutboundMux newOutboundMux(Connection c) throws IOException {
+    private OutboundMux newOutboundMux(Connection c, OutboundRequestHandle handle)
+            throws IOException
+    {
         logger.log(Level.FINEST, "opened {0}", c);
         OutboundMux mux = null;
         try {
-            mux = (c.getChannel() == null)
-                    ? new OutboundMux(this, c) : new OutboundMux(this, c, true);
+            SSLEngineChannel sslChannel = (c instanceof SSLEngineConnection)
+                    ? ((SSLEngineConnection) c).getSSLEngineChannel() : null;
+            if (sslChannel != null) {
+                mux = new OutboundMux(this, c, sslChannel);
+            } else {
+                mux = (c.getChannel() == null)
+                        ? new OutboundMux(this, c) : new OutboundMux(this, c, true);
+            }
+            if (sslChannel != null || c.getChannel() == null) {
+                mux.setConfidential();
+                InvocationConstraints constraints
+                        = c.getUnfulfilledConstraints(handle);
+                if (constraints.requirements().contains(Compression.YES)
+                        || constraints.preferences().contains(Compression.YES))
+                {
+                    mux.requestCompression();
+                }
+            }
+            mux.enableDescriptorCache();
         } finally {
             if (mux == null) {
                 try {
@@ -307,9 +377,12 @@ public final class ConnectionManager {
          */
         private final Connection c;
         /**
-         * Lock to enforce single start of mux.
+         * Lock to enforce single start of mux; a lock rather than a monitor
+         * so that virtual threads waiting for the start do not pin their
+         * carrier threads.
          */
-        private final Object startLock = new Object();
+        private final ReentrantLock startLock = new ReentrantLock();
+        private final Condition startCondition = startLock.newCondition();
         /**
          * True if the mux needs to be started.
          */
@@ -345,6 +418,15 @@ public final class ConnectionManager {
             this.manager = manager;
         }
 
+        /**
+         * Constructs an instance from the connection's TLS/SSL channel.
+         */
+        OutboundMux(ConnectionManager manager, Connection c, SSLEngineChannel sslChannel) throws IOException {
+            super(sslChannel, HANDSHAKE_TIMEOUT);
+            this.c = c;
+            this.manager = manager;
+        }
+
         /**
          * Returns the outbound connection.
          */
@@ -373,10 +455,11 @@ public final class ConnectionManager {
             try {
                 boolean start = false;
                 if (notStarted) {
-                    synchronized (startLock) {
+                    startLock.lock();
+                    try {
                         while (starting) {
                             try {
-                                startLock.wait();
+                                startCondition.await();
                             } catch (InterruptedException ex) {
                                 interrupted = true;
                             }
@@ -385,15 +468,20 @@ public final class ConnectionManager {
                             starting = true;
                             start = true;
                         }
+                    } finally {
+                        startLock.unlock();
                     }
                     if (start) {
                         try {
                             start();
                         } finally {
-                            synchronized (startLock) {
+                            startLock.lock();
+                            try {
                                 notStarted = false;
                                 starting = false;
-                                startLock.notifyAll();
+                                startCondition.signalAll();
+                            } finally {
+                                startLock.unlock();
                             }
                         }
                     }
@@ -465,7 +553,9 @@ public final class ConnectionManager {
     /**
      * Outbound request wrapper around the outbound request created by the mux.
      */
-    private static final class Outbound implements OutboundRequest {
+    private static final class Outbound
+            implements OutboundRequest, AsyncOutboundRequest
+    {
 
         /**
          * The outbound request created by the mux.
@@ -509,16 +599,20 @@ public final class ConnectionManager {
             return in;
         }
 
-        /* delegate to the connection */
+        /* delegate to both the underlying request and the connection */
         @Override
         public void populateContext(Collection context) {
+            req.populateContext(context);
             c.populateContext(handle, context);
         }
 
-        /* delegate to the connection */
+        /*
+         * Delegate to the connection, less the Compression and
+         * DescriptorCaching constraints applied when the request was created.
+         */
         @Override
         public InvocationConstraints getUnfulfilledConstraints() {
-            return c.getUnfulfilledConstraints(handle);
+            return removeFulfilled(c.getUnfulfilledConstraints(handle));
         }
 
         /**
@@ -536,6 +630,19 @@ public final class ConnectionManager {
             req.abort();
         }
 
+        /**
+         * Pass-through to the underlying request, or runs the listener
+         * immediately if the underlying request cannot notify it.
+         */
+        @Override
+        public void setResponseListener(Runnable listener) {
+            if (req instanceof AsyncOutboundRequest) {
+                ((AsyncOutboundRequest) req).setResponseListener(listener);
+            } else {
+                listener.run();
+            }
+        }
+
         /**
          * Wrapper for the response input stream of an outbound request, used to
          * call readResponseData on the underlying connection before subsequent
@@ -639,7 +746,7 @@ public final class ConnectionManager {
          */
         @Override
         public void run() {
-            List idle = new ArrayList(1);
+            List<OutboundMux> idle = new ArrayList<OutboundMux>(1);
             boolean done;
             do {
                 try {
@@ -649,10 +756,9 @@ public final class ConnectionManager {
                 }
                 long now = System.currentTimeMillis();
                 synchronized (reaperSet) {
-                    for (Iterator iter = reaperSet.iterator();
+                    for (Iterator<ConnectionManager> iter = reaperSet.iterator();
                             iter.hasNext();) {
-                        ConnectionManager mgr
-                                = (ConnectionManager) iter.next();
+                        ConnectionManager mgr = iter.next();
                         if (mgr.checkIdle(now, idle)) {
                             iter.remove();
                         }
@@ -660,7 +766,7 @@ public final class ConnectionManager {
                     done = reaperSet.isEmpty();
                 }
                 for (int i = idle.size(); --i >= 0;) {
-                    ((OutboundMux) idle.get(i)).shutdown("idle");
+                    idle.get(i).shutdown("idle");
                 }
                 idle.clear();
             } while (!done);
@@ -719,9 +825,22 @@ public final class ConnectionManager {
             first = false;
             mux = manager.connect(handle);
             OutboundRequest req = mux.newRequest();
+            Connection c = mux.getConnection();
             OutboundRequest sreq = null;
             try {
-                Connection c = mux.getConnection();
+                InvocationConstraints constraints
+                        = c.getUnfulfilledConstraints(handle);
+                setCompression(mux, req, constraints);
+                writeRequestHeader(mux, req, constraints);
+            } catch (UnsupportedConstraintException e) {
+                req.abort();
+                throw e;
+            } catch (IOException e) {
+                req.abort();
+                manager.remove(mux);
+                throw e;
+            }
+            try {
                 c.writeRequestData(handle, req.getRequestOutputStream());
                 sreq = new Outbound(req, c, handle);
             } finally {
@@ -733,6 +852,105 @@ public final class ConnectionManager {
         }
     }
 
+    /**
+     * Applies any {@link Compression} constraint among the specified
+     * unfulfilled constraints to the request, with requirements taking
+     * precedence over preferences.
+     */
+    private static void setCompression(MuxClient mux,
+                                       OutboundRequest req,
+                                       InvocationConstraints constraints)
+            throws UnsupportedConstraintException
+    {
+        Collection<?> reqs = constraints.requirements();
+        Collection<?> prefs = constraints.preferences();
+        if (reqs.contains(Compression.YES)) {
+            if (reqs.contains(Compression.NO)
+                    || !mux.setCompression(req, true)) {
+                throw new UnsupportedConstraintException(
+                        "cannot satisfy constraint: " + Compression.YES);
+            }
+        } else if (reqs.contains(Compression.NO)) {
+            mux.setCompression(req, false);
+        } else if (prefs.contains(Compression.YES)) {
+            mux.setCompression(req, true);
+        } else if (prefs.contains(Compression.NO)) {
+            mux.setCompression(req, false);
+        }
+    }
+
+    /**
+     * Writes the mux request header for the request, applying any {@link
+     * DescriptorCaching} constraint among the specified unfulfilled
+     * constraints, with requirements taking precedence over preferences and
+     * preferences over the default.
+     */
+    private static void writeRequestHeader(MuxClient mux,
+                                           OutboundRequest req,
+                                           InvocationConstraints constraints)
+            throws IOException
+    {
+        Collection<?> reqs = constraints.requirements();
+        Collection<?> prefs = constraints.preferences();
+        boolean use = DESCRIPTOR_CACHE_BY_DEFAULT;
+        if (reqs.contains(DescriptorCaching.YES)) {
+            if (reqs.contains(DescriptorCaching.NO)
+                    || !mux.writeRequestHeader(req, true)) {
+                throw new UnsupportedConstraintException(
+                        "cannot satisfy constraint: " + DescriptorCaching.YES);
+            }
+            return;
+        } else if (reqs.contains(DescriptorCaching.NO)) {
+            use = false;
+        } else if (prefs.contains(DescriptorCaching.YES)) {
+            use = true;
+        } else if (prefs.contains(DescriptorCaching.NO)) {
+            use = false;
+        }
+        if (!mux.writeRequestHeader(req, use)) {
+            mux.writeRequestHeader(req, false);
+        }
+    }
+
+    /**
+     * Returns the specified constraints without any {@link Compression} or
+     * {@link DescriptorCaching} constraints, which have been fulfilled by
+     * this connection manager.
+     */
+    static InvocationConstraints removeFulfilled(
+            InvocationConstraints constraints)
+    {
+        Collection<?> reqs = constraints.requirements();
+        Collection<?> prefs = constraints.preferences();
+        if (!containsFulfilled(reqs) && !containsFulfilled(prefs)) {
+            return constraints;
+        }
+        return new InvocationConstraints(withoutFulfilled(reqs),
+                                         withoutFulfilled(prefs));
+    }
+
+    private static boolean containsFulfilled(Collection<?> constraints) {
+        return constraints.contains(Compression.YES)
+                || constraints.contains(Compression.NO)
+                || constraints.contains(DescriptorCaching.YES)
+                || constraints.contains(DescriptorCaching.NO);
+    }
+
+    private static Collection<InvocationConstraint> withoutFulfilled(
+            Collection<?> constraints)
+    {
+        Collection<InvocationConstraint> result
+                = new ArrayList<InvocationConstraint>(constraints.size());
+        for (Object c : constraints) {
+            result.add((InvocationConstraint) c);
+        }
+        result.remove(Compression.YES);
+        result.remove(Compression.NO);
+        result.remove(DescriptorCaching.YES);
+        result.remove(DescriptorCaching.NO);
+        return result;
+    }
+
     /**
      * Returns an <code>OutboundRequestIterator</code> to use to send a new
      * request for the specified handle to this connection manager's
@@ -770,6 +988,17 @@ public final class ConnectionManager {
      * are implemented by delegating to the corresponding method of the
      * connection passing <code>handle</code> and the other arguments (if any).
      *
+     * <p>
+     * Before the request data is written, any {@link Compression} constraint
+     * among the connection's unfulfilled constraints for <code>handle</code>
+     * is applied to the request, and is then no longer included in the
+     * unfulfilled constraints of the <code>OutboundRequest</code>. If
+     * {@link Compression#YES Compression.YES} is a requirement and the server
+     * did not agree to compression, an {@link UnsupportedConstraintException}
+     * is thrown. Any {@link DescriptorCaching} constraint is applied in the
+     * same way, and the first byte of the request data written to the mux
+     * says whether the request uses the connection's descriptor cache.
+     *
      * </blockquote>
      *
      * <p>
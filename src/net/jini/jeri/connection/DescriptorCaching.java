@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.jeri.connection;
+
+import java.io.Serializable;
+import net.jini.core.constraint.InvocationConstraint;
+
+/**
+ * Represents a constraint on whether the object streams of a request
+ * and its response share a {@link net.jini.io.DescriptorCache} with the
+ * other requests on the connection that carries them, so that class
+ * descriptors and codebase annotations sent on earlier requests are
+ * written as small back-references.  Support for a descriptor cache is
+ * negotiated per connection in the <a href="doc-files/mux.html">Jini ERI
+ * multiplexing protocol</a> connection header, and the cache is
+ * discarded when the connection is closed.  The server uses the cache
+ * for the response to a request that uses it.
+ *
+ * <p>This constraint is supported on the client side by {@link
+ * ConnectionManager}, for the endpoints of the transport providers that
+ * pass it through to the connection manager as unfulfilled (such as
+ * {@link net.jini.jeri.tcp.TcpEndpoint}).  If {@link #YES} is a
+ * requirement and the server does not support a descriptor cache, the
+ * request fails with an {@link net.jini.io.UnsupportedConstraintException}.
+ *
+ * <p>Serialization for this class is guaranteed to produce instances
+ * that are comparable with <code>==</code>.
+ *
+ * <p>The {@link net.jini.constraint.ConstraintTrustVerifier} trust
+ * verifier may be used for establishing trust in remote proxies that use
+ * instances of this class.
+ *
+ * @see ConnectionManager
+ * @since 3.0.0
+ */
+public final class DescriptorCaching
+    implements InvocationConstraint, Serializable
+{
+    private static final long serialVersionUID = -3409468733214458226L;
+
+    /**
+     * Use the connection's descriptor cache for the request and its
+     * response where the connection supports it.
+     */
+    public static final DescriptorCaching YES = new DescriptorCaching(true);
+
+    /**
+     * Do not use a descriptor cache, even if one is used by default.
+     */
+    public static final DescriptorCaching NO = new DescriptorCaching(false);
+
+    /**
+     * <code>true</code> for <code>YES</code>, <code>false</code> for
+     * <code>NO</code>
+     *
+     * @serial
+     */
+    private final boolean value;
+
+    /**
+     * Simple constructor.
+     *
+     * @param value <code>true</code> for <code>YES</code>,
+     *	      <code>false</code> for <code>NO</code>
+     */
+    private DescriptorCaching(boolean value) {
+	this.value = value;
+    }
+
+    /** Returns a string representation of this object. */
+    public String toString() {
+	return value ? "DescriptorCaching.YES" : "DescriptorCaching.NO";
+    }
+
+    /** Canonicalize so that <code>==</code> can be used. */
+    private Object readResolve() {
+	return value ? YES : NO;
+    }
+}
@@ -18,7 +18,9 @@
 
 package net.jini.jeri.connection;
 
+import org.apache.river.jeri.internal.connection.SSLEngineConnection;
 import org.apache.river.jeri.internal.mux.MuxServer;
+import org.apache.river.jeri.internal.mux.SSLEngineChannel;
 import org.apache.river.logging.Levels;
 import java.io.IOException;
 import java.io.InputStream;
@@ -247,6 +249,18 @@ public final class ServerConnectionManager {
 	    this.c = c;
 	}
 
+	/**
+	 * Constructs an instance from the connection's TLS/SSL channel.
+	 */
+	private InboundMux(ServerConnection c,
+			   RequestDispatcher dispatcher,
+			   SSLEngineChannel sslChannel)
+	    throws IOException
+	{
+	    super(sslChannel, dispatcher);
+	    this.c = c;
+	}
+
 	/**
 	 * Constructs an instance from the connection.
 	 */
@@ -255,11 +269,21 @@ public final class ServerConnectionManager {
 	{
 	    RequestDispatcher d = new Dispatcher(dispatcher, c);
 	    try {
-		if (c.getChannel() == null) {
-		    new InboundMux(c, d).start();
+		SSLEngineChannel sslChannel = (c instanceof SSLEngineConnection)
+		    ? ((SSLEngineConnection) c).getSSLEngineChannel() : null;
+		InboundMux mux;
+		if (sslChannel != null) {
+		    mux = new InboundMux(c, d, sslChannel);
+		} else if (c.getChannel() == null) {
+		    mux = new InboundMux(c, d);
 		} else {
-		    new InboundMux(c, d, true).start();
+		    mux = new InboundMux(c, d, true);
+		}
+		if (sslChannel != null || c.getChannel() == null) {
+		    mux.setConfidential();
 		}
+		mux.enableDescriptorCache();
+		mux.start();
 	    } catch (IOException e) {
 		if (logger.isLoggable(Levels.HANDLED)) {
 		    logThrow(logger, "handleConnection",
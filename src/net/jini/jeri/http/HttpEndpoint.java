@@ -34,6 +34,7 @@ import java.io.OutputStream;
 import java.io.Serializable;
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
+import java.net.ConnectException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
@@ -113,10 +114,15 @@ public final class HttpEndpoint
     private static final HttpClientManager clientManager;
     /** idle connection timer */
     private static final ConnectionTimer connTimer;
+    /** time to wait for a connection when the per-host limit is reached */
+    private static final long connWaitTimeout;
     static {
 	HttpSettings hs = getHttpSettings();
-	clientManager = new HttpClientManager(hs.getResponseAckTimeout());
+	clientManager = new HttpClientManager(hs.getResponseAckTimeout(),
+					      hs.getMaxConnectionsPerHost(),
+					      hs.getMaxPipelinedRequests());
 	connTimer = new ConnectionTimer(hs.getConnectionTimeout());
+	connWaitTimeout = hs.getConnectionWaitTimeout();
     }
 
     /** client transport logger */
@@ -491,72 +497,99 @@ public final class HttpEndpoint
 
 	boolean usingProxy = (phost.length() != 0);
 	Connection conn;
-	synchronized (connections) {
-	    if (!(proxyHost.equals(phost) &&
-		  proxyPort == pport &&
-		  persist == ppersist))
-	    {
-		proxyHost = phost;
-		proxyPort = pport;
-		persist = ppersist;
-		shedConnections();
-	    }
+	long deadline = 0;
+	for (;;) {
+	    synchronized (connections) {
+		if (!(proxyHost.equals(phost) &&
+		      proxyPort == pport &&
+		      persist == ppersist))
+		{
+		    proxyHost = phost;
+		    proxyPort = pport;
+		    persist = ppersist;
+		    shedConnections();
+		}
 
-	    boolean checkedResolvePermission = false;
-	    for (Iterator i = connections.iterator(); i.hasNext();) {
-		conn = (Connection) i.next();
-		if (!usingProxy) {
-		    if (!checkedResolvePermission) {
+		boolean checkedResolvePermission = false;
+		for (Iterator i = connections.iterator(); i.hasNext();) {
+		    conn = (Connection) i.next();
+		    if (!usingProxy) {
+			if (!checkedResolvePermission) {
+			    try {
+				checkResolvePermission();
+			    } catch (SecurityException e) {
+				if (logger.isLoggable(Levels.FAILED)) {
+				    LogUtil.logThrow(logger, Levels.FAILED,
+					HttpEndpoint.class, "nextRequest",
+					"exception resolving host {0}",
+					new Object[] { host }, e);
+				}
+				throw e;
+			    }
+			    checkedResolvePermission = true;
+			}
 			try {
-			    checkResolvePermission();
+			    conn.checkConnectPermission();
 			} catch (SecurityException e) {
-			    if (logger.isLoggable(Levels.FAILED)) {
-				LogUtil.logThrow(logger, Levels.FAILED,
+			    if (logger.isLoggable(Levels.HANDLED)) {
+				LogUtil.logThrow(logger, Levels.HANDLED,
 				    HttpEndpoint.class, "nextRequest",
-				    "exception resolving host {0}",
-				    new Object[] { host }, e);
+				    "access to reuse connection {0} denied",
+				    new Object[] { conn.getSocket() }, e);
 			    }
-			    throw e;
+			    continue;
 			}
-			checkedResolvePermission = true;
 		    }
-		    try {
-			conn.checkConnectPermission();
-		    } catch (SecurityException e) {
-			if (logger.isLoggable(Levels.HANDLED)) {
-			    LogUtil.logThrow(logger, Levels.HANDLED,
-				HttpEndpoint.class, "nextRequest",
-				"access to reuse connection {0} denied",
-				new Object[] { conn.getSocket() }, e);
+		    i.remove();
+		    if (connTimer.cancelTimeout(conn)) {
+			try {
+			    Object obj = action.run(conn);
+			    if (logger.isLoggable(Level.FINE)) {
+				logger.log(Level.FINE,
+				    "nextRequest on existing connection {0}",
+				    conn.getSocket());
+			    }
+			    return obj;
+			} catch (IOException ex) {
+			    if (logger.isLoggable(Levels.HANDLED)) {
+				LogUtil.logThrow(logger, Levels.HANDLED,
+						 HttpEndpoint.class,
+						 "nextRequest",
+						 "nextRequest on existing " +
+						 "connection {0} throws",
+						 new Object[] { this }, ex);
+			    }
 			}
-			continue;
+			conn.shutdown(true);
+		    } else {
+			// timed out, but may still have responses outstanding
+			conn.shutdown(false);
 		    }
 		}
-		i.remove();
-		if (connTimer.cancelTimeout(conn)) {
-		    try {
-			Object obj = action.run(conn);
-			if (logger.isLoggable(Level.FINE)) {
-			    logger.log(Level.FINE,
-				       "nextRequest on existing connection {0}",
-				       conn.getSocket());
-			}
-			return obj;
-		    } catch (IOException ex) {
-			if (logger.isLoggable(Levels.HANDLED)) {
-			    LogUtil.logThrow(logger, Levels.HANDLED,
-					     HttpEndpoint.class,
-					     "nextRequest",
-					     "nextRequest on existing " +
-					     "connection {0} throws",
-					     new Object[] { this }, ex);
-			}
-		    }
+	    }
+
+	    /*
+	     * No idle connection; open a new one unless the limit on connections
+	     * to the host has been reached, in which case wait for a connection
+	     * to become idle or to be closed.
+	     */
+	    long events = clientManager.reserveConnection(host, port);
+	    if (events < 0) {
+		break;
+	    }
+	    if (deadline == 0) {
+		deadline = System.currentTimeMillis() + connWaitTimeout;
+		if (deadline < 0) {
+		    deadline = Long.MAX_VALUE;
 		}
-		conn.shutdown(true);
+	    }
+	    if (!clientManager.awaitConnection(host, port, events, deadline)) {
+		throw new ConnectException(
+		    "timed out waiting for connection to " + host + ":" + port);
 	    }
 	}
 
+	boolean created = false;
 	try {
 	    if (!usingProxy) {
 		conn = new Connection(host, port, distilled);
@@ -570,8 +603,13 @@ public final class HttpEndpoint
 			}
 		    });
 	    }
+	    created = true;
 	} catch (PrivilegedActionException e) {
 	    throw (IOException) e.getCause();
+	} finally {
+	    if (!created) {
+		clientManager.releaseConnection(host, port);
+	    }
 	}
 
 	try {
@@ -1004,6 +1042,8 @@ public final class HttpEndpoint
 	
 	private final String proxyHost;
 	private final int proxyPort;
+	/** true once the reservation for this connection has been released */
+	private boolean released = false;
 
 	/**
 	 * Creates a direct connection to given host/port.
@@ -1046,9 +1086,11 @@ public final class HttpEndpoint
 		    connections.add(this);
 		    connTimer.scheduleTimeout(this, false);
 		} else {
-		    super.shutdown(true);
+		    shutdown(true);
+		    return;
 		}
 	    }
+	    clientManager.connectionIdle(host, port);
 	}
 	
 	/**
@@ -1062,9 +1104,14 @@ public final class HttpEndpoint
 		if (socketClosed) {
 		    connections.remove(this);
 		    connTimer.cancelTimeout(this);
+		    if (released) {
+			return true;
+		    }
+		    released = true;
 		}
 	    }
 	    if (socketClosed) {
+		clientManager.releaseConnection(host, port);
 		if (logger.isLoggable(Level.FINE)) {
 		    logger.log(Level.FINE, "closed socket {0}", sock);
 		}
@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.jini.jeri.local;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.NoSuchElementException;
+import net.jini.core.constraint.InvocationConstraints;
+import net.jini.id.Uuid;
+import net.jini.io.UnsupportedConstraintException;
+import net.jini.jeri.Endpoint;
+import net.jini.jeri.OutboundRequest;
+import net.jini.jeri.OutboundRequestIterator;
+import net.jini.security.proxytrust.TrustEquivalence;
+import org.apache.river.jeri.internal.runtime.LocalClassTable;
+import org.apache.river.jeri.internal.runtime.Util;
+
+/**
+ * An implementation of the {@link Endpoint} abstraction that sends
+ * requests directly to a {@link LocalServerEndpoint} listen operation
+ * when it is in the same virtual machine, and through a delegate
+ * endpoint otherwise.
+ *
+ * <p>A <code>LocalEndpoint</code> contains the endpoint produced by
+ * the <code>LocalServerEndpoint</code>'s delegate, an identifier of
+ * the virtual machine in which it was produced, and a key identifying
+ * the listen operation.  {@link #newRequest newRequest} hands the
+ * request to that listen operation through in-memory buffers if this
+ * <code>LocalEndpoint</code> is used in the same virtual machine,
+ * while the listen operation is active, and with constraints whose
+ * transport layer aspects need no authentication, integrity, or
+ * confidentiality.  Otherwise, it returns the result of invoking
+ * <code>newRequest</code> on the delegate.
+ *
+ * @see LocalServerEndpoint
+ * @since 3.0.0
+ **/
+public final class LocalEndpoint
+    implements Endpoint, TrustEquivalence, Serializable
+{
+    private static final long serialVersionUID = 2374590284518713652L;
+
+    /**
+     * The virtual machine in which this endpoint was produced.
+     *
+     * @serial
+     **/
+    private final Uuid vmID;
+
+    /**
+     * The key of the listen operation, or zero if there is none.
+     *
+     * @serial
+     **/
+    private final long key;
+
+    /**
+     * The endpoint produced by the server endpoint's delegate.
+     *
+     * @serial
+     **/
+    private final Endpoint delegate;
+
+    /**
+     * Whether co-located calls pass classes by reference.
+     *
+     * @serial
+     **/
+    private final boolean passClasses;
+
+    LocalEndpoint(Uuid vmID, long key, Endpoint delegate,
+		  boolean passClasses)
+    {
+	this.vmID = vmID;
+	this.key = key;
+	this.delegate = delegate;
+	this.passClasses = passClasses;
+    }
+
+    /**
+     * Returns the endpoint used for requests that are not co-located.
+     *
+     * @return the delegate endpoint
+     **/
+    public Endpoint getDelegate() {
+	return delegate;
+    }
+
+    /**
+     * Returns <code>true</code> if co-located calls pass classes by
+     * reference, and <code>false</code> otherwise.
+     *
+     * @return whether co-located calls pass classes by reference
+     **/
+    public boolean getPassClasses() {
+	return passClasses;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The returned iterator produces at most one in-memory request if
+     * the request is co-located as described above, and is otherwise
+     * the iterator returned by the delegate.
+     *
+     * @throws NullPointerException {@inheritDoc}
+     **/
+    public OutboundRequestIterator newRequest(
+	InvocationConstraints constraints)
+    {
+	if (constraints == null) {
+	    throw new NullPointerException();
+	}
+	if (key != 0 && vmID.equals(LocalServerEndpoint.vmID)) {
+	    final LocalServerEndpoint.Listener listener =
+		LocalServerEndpoint.getListener(key);
+	    if (listener != null) {
+		try {
+		    final InvocationConstraints unfulfilled =
+			Constraints.check(constraints, false);
+		    return new OutboundRequestIterator() {
+			private boolean nextCalled = false;
+			public boolean hasNext() {
+			    return !nextCalled;
+			}
+			public OutboundRequest next() throws IOException {
+			    if (nextCalled) {
+				throw new NoSuchElementException();
+			    }
+			    nextCalled = true;
+			    return new LocalRequest(
+				listener.dispatcher,
+				listener.securityContext,
+				unfulfilled,
+				passClasses ? new LocalClassTable() : null)
+				.getOutboundRequest();
+			}
+		    };
+		} catch (UnsupportedConstraintException e) {
+		    /* the delegate may support them */
+		}
+	    }
+	}
+	return delegate.newRequest(constraints);
+    }
+
+    /**
+     * Returns a hash code value for this <code>LocalEndpoint</code>.
+     *
+     * @return a hash code value for this <code>LocalEndpoint</code>
+     **/
+    public int hashCode() {
+	return vmID.hashCode() ^ (int) (key ^ (key >>> 32)) ^
+	    delegate.hashCode();
+    }
+
+    /**
+     * Compares the specified object with this
+     * <code>LocalEndpoint</code> for equality.
+     *
+     * <p>This method returns <code>true</code> if and only if the
+     * specified object is also a <code>LocalEndpoint</code>, the
+     * virtual machine identifiers, listen operation keys and class
+     * passing modes are the same, and the delegates have the same
+     * class and are equal.
+     *
+     * @param obj the object to compare with
+     *
+     * @return <code>true</code> if <code>obj</code> is equivalent to
+     * this object; <code>false</code> otherwise
+     **/
+    public boolean equals(Object obj) {
+	if (obj == this) {
+	    return true;
+	} else if (!(obj instanceof LocalEndpoint)) {
+	    return false;
+	}
+	LocalEndpoint other = (LocalEndpoint) obj;
+	return
+	    vmID.equals(other.vmID) &&
+	    key == other.key &&
+	    passClasses == other.passClasses &&
+	    Util.sameClassAndEquals(delegate, other.delegate);
+    }
+
+    /**
+     * Returns <code>true</code> if the specified object (which is not
+     * yet known to be trusted) is equivalent in trust, content, and
+     * function to this known trusted object, and <code>false</code>
+     * otherwise.
+     *
+     * <p>This method returns <code>true</code> if and only if the
+     * specified object is also a <code>LocalEndpoint</code>, the
+     * virtual machine identifiers, listen operation keys and class
+     * passing modes are the same, and the delegate of this object is
+     * an instance of {@link TrustEquivalence} whose
+     * <code>checkTrustEquivalence</code> method returns
+     * <code>true</code> for the delegate of the specified object.
+     **/
+    public boolean checkTrustEquivalence(Object obj) {
+	if (obj == this) {
+	    return true;
+	} else if (!(obj instanceof LocalEndpoint)) {
+	    return false;
+	}
+	LocalEndpoint other = (LocalEndpoint) obj;
+	return
+	    vmID.equals(other.vmID) &&
+	    key == other.key &&
+	    passClasses == other.passClasses &&
+	    Util.checkTrustEquivalence(delegate, other.delegate);
+    }
+
+    /**
+     * Returns a string representation of this
+     * <code>LocalEndpoint</code>.
+     *
+     * @return a string representation of this
+     * <code>LocalEndpoint</code>
+     **/
+    public String toString() {
+	return "LocalEndpoint[" + vmID + "," + key + "," + delegate +
+	    (passClasses ? ",passClasses" : "") + "]";
+    }
+
+    /**
+     * @throws InvalidObjectException if the virtual machine identifier
+     * or the delegate is <code>null</code>
+     **/
+    private void readObject(ObjectInputStream in)
+	throws IOException, ClassNotFoundException
+    {
+	in.defaultReadObject();
+	if (vmID == null || delegate == null) {
+	    throw new InvalidObjectException("null field");
+	}
+    }
+}
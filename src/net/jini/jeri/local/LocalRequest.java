@@ -0,0 +1,452 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.jini.jeri.local;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Collection;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.jini.core.constraint.InvocationConstraints;
+import net.jini.io.UnsupportedConstraintException;
+import net.jini.jeri.InboundRequest;
+import net.jini.jeri.OutboundRequest;
+import net.jini.jeri.RequestDispatcher;
+import net.jini.security.Security;
+import net.jini.security.SecurityContext;
+import org.apache.river.jeri.internal.runtime.AsyncOutboundRequest;
+import org.apache.river.jeri.internal.runtime.LocalClassTable;
+import org.apache.river.jeri.internal.runtime.Util;
+import org.apache.river.thread.Executor;
+import org.apache.river.thread.GetThreadPoolAction;
+
+/**
+ * A request between a LocalEndpoint and a RequestDispatcher listening
+ * in the same virtual machine, carried by in-memory buffers.
+ *
+ * The client writes the whole request before it is dispatched; closing
+ * the request output stream (or starting to read the response) hands it
+ * to a thread of the user thread pool, as the mux server does for a new
+ * session.  The response is streamed back through a buffer that the
+ * client blocks on.
+ **/
+final class LocalRequest {
+
+    /** server transport logger */
+    private static final Logger logger =
+	Logger.getLogger("net.jini.jeri.local.server");
+
+    /** pool of threads for executing tasks in user code */
+    private static final Executor userThreadPool =
+	Security.doPrivileged(new GetThreadPoolAction(true));
+
+    /** the client host reported to the server: the loopback address */
+    private static final InetAddress clientHost;
+    static {
+	InetAddress addr = null;
+	try {
+	    addr = InetAddress.getByName(null);
+	} catch (IOException e) {
+	}
+	clientHost = addr;
+    }
+
+    private final RequestDispatcher dispatcher;
+    private final SecurityContext securityContext;
+    private final InvocationConstraints unfulfilled;
+    private final LocalClassTable classes;
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition responseCondition = lock.newCondition();
+
+    /* request data, written by the client until dispatched */
+    private byte[] requestBuf = new byte[256];
+    private int requestCount = 0;
+    private boolean dispatched = false;
+
+    /* response data, written by the server and read by the client */
+    private byte[] responseBuf = new byte[256];
+    private int responseStart = 0;
+    private int responseEnd = 0;
+    private boolean responseClosed = false;
+
+    /** the client aborted the request */
+    private boolean aborted = false;
+    /** the server aborted the request before closing the response */
+    private boolean serverAborted = false;
+    /** run once when response data, EOF or failure is available */
+    private Runnable responseListener = null;
+
+    LocalRequest(RequestDispatcher dispatcher,
+		 SecurityContext securityContext,
+		 InvocationConstraints unfulfilled,
+		 LocalClassTable classes)
+    {
+	this.dispatcher = dispatcher;
+	this.securityContext = securityContext;
+	this.unfulfilled = unfulfilled;
+	this.classes = classes;
+    }
+
+    /**
+     * Returns the client's view of this request.
+     **/
+    OutboundRequest getOutboundRequest() {
+	return new Outbound();
+    }
+
+    /**
+     * Ends the request data and dispatches the request, if that has
+     * not been done already.
+     **/
+    private void dispatch() {
+	lock.lock();
+	try {
+	    if (dispatched || aborted) {
+		return;
+	    }
+	    dispatched = true;
+	} finally {
+	    lock.unlock();
+	}
+	final InboundRequest request =
+	    new Inbound(new ByteArrayInputStream(requestBuf, 0, requestCount));
+	try {
+	    userThreadPool.execute(new Runnable() {
+		public void run() {
+		    try {
+			AccessController.doPrivileged(securityContext.wrap(
+			    new PrivilegedAction<Void>() {
+				public Void run() {
+				    dispatcher.dispatch(request);
+				    return null;
+				}
+			    }), securityContext.getAccessControlContext());
+		    } finally {
+			request.abort();
+		    }
+		}
+	    }, "local request dispatch");
+	} catch (OutOfMemoryError e) {	// assume out of threads
+	    try {
+		logger.log(Level.WARNING,
+			   "could not create thread for request dispatch", e);
+	    } catch (Throwable t) {
+	    }
+	    request.abort();
+	}
+    }
+
+    /**
+     * Runs and clears the response listener, if any.
+     **/
+    private void responseAvailable() {
+	assert ((ReentrantLock) lock).isHeldByCurrentThread();
+	responseCondition.signalAll();
+	Runnable listener = responseListener;
+	if (listener != null) {
+	    responseListener = null;
+	    listener.run();
+	}
+    }
+
+    private final class Outbound
+	implements OutboundRequest, AsyncOutboundRequest,
+		   LocalClassTable.Source
+    {
+	private final OutputStream out = new RequestOutputStream();
+	private final InputStream in = new ResponseInputStream();
+
+	public void populateContext(Collection context) {
+	    if (context == null) {
+		throw new NullPointerException();
+	    }
+	}
+
+	public InvocationConstraints getUnfulfilledConstraints() {
+	    return unfulfilled;
+	}
+
+	public OutputStream getRequestOutputStream() {
+	    return out;
+	}
+
+	public InputStream getResponseInputStream() {
+	    return in;
+	}
+
+	public boolean getDeliveryStatus() {
+	    lock.lock();
+	    try {
+		return dispatched;
+	    } finally {
+		lock.unlock();
+	    }
+	}
+
+	public void abort() {
+	    lock.lock();
+	    try {
+		if (!aborted) {
+		    aborted = true;
+		    responseAvailable();
+		}
+	    } finally {
+		lock.unlock();
+	    }
+	}
+
+	public void setResponseListener(Runnable listener) {
+	    if (listener == null) {
+		throw new NullPointerException();
+	    }
+	    boolean ready;
+	    lock.lock();
+	    try {
+		ready = responseStart < responseEnd || responseClosed ||
+		    aborted || serverAborted;
+		if (!ready) {
+		    responseListener = listener;
+		}
+	    } finally {
+		lock.unlock();
+	    }
+	    if (ready) {
+		listener.run();
+	    }
+	}
+
+	public LocalClassTable getLocalClassTable() {
+	    return classes;
+	}
+    }
+
+    private final class Inbound
+	implements InboundRequest, LocalClassTable.Source
+    {
+	private final InputStream in;
+	private final OutputStream out = new ResponseOutputStream();
+
+	Inbound(InputStream in) {
+	    this.in = in;
+	}
+
+	/**
+	 * Does nothing: the client is in this virtual machine, so there
+	 * is no remote host to check.
+	 **/
+	public void checkPermissions() {
+	}
+
+	public InvocationConstraints
+	    checkConstraints(InvocationConstraints constraints)
+	    throws UnsupportedConstraintException
+	{
+	    return Constraints.check(constraints, true);
+	}
+
+	public void populateContext(Collection context) {
+	    Util.populateContext(context, clientHost);
+	}
+
+	public InputStream getRequestInputStream() {
+	    return in;
+	}
+
+	public OutputStream getResponseOutputStream() {
+	    return out;
+	}
+
+	public void abort() {
+	    lock.lock();
+	    try {
+		if (!responseClosed && !serverAborted) {
+		    serverAborted = true;
+		    responseAvailable();
+		}
+	    } finally {
+		lock.unlock();
+	    }
+	}
+
+	public LocalClassTable getLocalClassTable() {
+	    return classes;
+	}
+    }
+
+    /**
+     * The client's request output stream; closing it dispatches the
+     * request.
+     **/
+    private final class RequestOutputStream extends OutputStream {
+
+	public void write(int b) throws IOException {
+	    write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+	    if (off < 0 || len < 0 || off + len > b.length) {
+		throw new IndexOutOfBoundsException();
+	    }
+	    lock.lock();
+	    try {
+		if (aborted) {
+		    throw new IOException("request aborted");
+		} else if (dispatched) {
+		    throw new IOException("stream closed");
+		}
+		if (requestCount + len > requestBuf.length) {
+		    byte[] buf = new byte[Math.max(requestBuf.length * 2,
+						   requestCount + len)];
+		    System.arraycopy(requestBuf, 0, buf, 0, requestCount);
+		    requestBuf = buf;
+		}
+		System.arraycopy(b, off, requestBuf, requestCount, len);
+		requestCount += len;
+	    } finally {
+		lock.unlock();
+	    }
+	}
+
+	public void close() {
+	    dispatch();
+	}
+    }
+
+    /**
+     * The client's response input stream.
+     **/
+    private final class ResponseInputStream extends InputStream {
+
+	public int read() throws IOException {
+	    byte[] b = new byte[1];
+	    int n = read(b, 0, 1);
+	    return n == -1 ? -1 : b[0] & 0xFF;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+	    if (off < 0 || len < 0 || off + len > b.length) {
+		throw new IndexOutOfBoundsException();
+	    }
+	    dispatch();
+	    lock.lock();
+	    try {
+		while (responseStart == responseEnd && !responseClosed &&
+		       !aborted && !serverAborted)
+		{
+		    try {
+			responseCondition.await();
+		    } catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(
+			    "request I/O interrupted");
+		    }
+		}
+		if (aborted) {
+		    throw new IOException("request aborted");
+		} else if (responseStart < responseEnd) {
+		    int n = Math.min(len, responseEnd - responseStart);
+		    System.arraycopy(responseBuf, responseStart, b, off, n);
+		    responseStart += n;
+		    return n;
+		} else if (responseClosed) {
+		    return -1;
+		} else {
+		    throw new IOException("request aborted by server");
+		}
+	    } finally {
+		lock.unlock();
+	    }
+	}
+
+	public int available() {
+	    lock.lock();
+	    try {
+		return responseEnd - responseStart;
+	    } finally {
+		lock.unlock();
+	    }
+	}
+    }
+
+    /**
+     * The server's response output stream.
+     **/
+    private final class ResponseOutputStream extends OutputStream {
+
+	public void write(int b) throws IOException {
+	    write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+	    if (off < 0 || len < 0 || off + len > b.length) {
+		throw new IndexOutOfBoundsException();
+	    }
+	    lock.lock();
+	    try {
+		if (aborted) {
+		    throw new IOException("request aborted");
+		} else if (responseClosed || serverAborted) {
+		    throw new IOException("stream closed");
+		}
+		if (len == 0) {
+		    return;
+		}
+		int remaining = responseEnd - responseStart;
+		if (responseEnd + len > responseBuf.length) {
+		    byte[] buf = responseBuf;
+		    if (remaining + len > buf.length) {
+			buf = new byte[Math.max(buf.length * 2,
+						remaining + len)];
+		    }
+		    System.arraycopy(responseBuf, responseStart,
+				     buf, 0, remaining);
+		    responseBuf = buf;
+		    responseStart = 0;
+		    responseEnd = remaining;
+		}
+		System.arraycopy(b, off, responseBuf, responseEnd, len);
+		responseEnd += len;
+		responseAvailable();
+	    } finally {
+		lock.unlock();
+	    }
+	}
+
+	public void close() {
+	    lock.lock();
+	    try {
+		if (!responseClosed && !serverAborted && !aborted) {
+		    responseClosed = true;
+		    responseAvailable();
+		}
+	    } finally {
+		lock.unlock();
+	    }
+	}
+    }
+}
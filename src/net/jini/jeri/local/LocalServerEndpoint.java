@@ -0,0 +1,375 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.jini.jeri.local;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import net.jini.core.constraint.InvocationConstraints;
+import net.jini.id.Uuid;
+import net.jini.id.UuidFactory;
+import net.jini.io.UnsupportedConstraintException;
+import net.jini.jeri.Endpoint;
+import net.jini.jeri.RequestDispatcher;
+import net.jini.jeri.ServerEndpoint;
+import net.jini.security.Security;
+import net.jini.security.SecurityContext;
+import org.apache.river.jeri.internal.runtime.Util;
+
+/**
+ * An implementation of the {@link ServerEndpoint} abstraction that
+ * lets clients in the same virtual machine bypass another server
+ * endpoint.
+ *
+ * <p>A <code>LocalServerEndpoint</code> contains a delegate server
+ * endpoint, which does all of the actual listening.  The {@link
+ * LocalEndpoint} instances it produces contain the endpoint produced
+ * by the delegate, and additionally identify this virtual machine and
+ * the listen operation.  A request made through such a
+ * <code>LocalEndpoint</code> in another virtual machine, or with
+ * constraints that need more than the transport of the {@link
+ * net.jini.jeri.tcp tcp} provider offers (authentication, integrity,
+ * or confidentiality), is made through the delegate's endpoint
+ * exactly as if this class were not involved.  Any other request made
+ * in this virtual machine while the listen operation is active is
+ * handed directly to the listen operation's {@link RequestDispatcher}
+ * through in-memory buffers, with no socket, connection, or
+ * multiplexing protocol involved.
+ *
+ * <p>Arguments and return values are still copied by serialization.
+ * Optionally, the endpoint can also be configured to pass classes by
+ * reference: the class descriptors of co-located calls then carry no
+ * codebase annotation, and each side resolves exactly the
+ * {@link Class} the other side serialized.  This avoids computing and
+ * resolving codebase annotations, but is only appropriate when the
+ * client and the remote object see the same classes for the types
+ * they exchange (for example, when they share a class loader for
+ * those types).  It is honored by {@link
+ * net.jini.jeri.BasicInvocationHandler} and {@link
+ * net.jini.jeri.BasicInvocationDispatcher}; subclasses that override
+ * their <code>createMarshalInputStream</code> or
+ * <code>createMarshalOutputStream</code> methods must not be used with
+ * it on only one side.
+ *
+ * <p>Co-located requests are dispatched in a thread of the user thread
+ * pool, with the security context in effect when the listen operation
+ * was started; the {@link net.jini.io.context.ClientHost} of such a
+ * request is the loopback address.
+ *
+ * <p>{@link net.jini.jeri.BasicJeriExporter} wraps its server endpoint
+ * in a <code>LocalServerEndpoint</code> (without passing classes by
+ * reference) if the system property
+ * <code>org.apache.river.jeri.local.shortCircuit</code> is
+ * <code>true</code>.
+ *
+ * @see LocalEndpoint
+ * @since 3.0.0
+ **/
+public final class LocalServerEndpoint implements ServerEndpoint {
+
+    /** identifies this virtual machine in LocalEndpoint instances */
+    static final Uuid vmID = UuidFactory.generate();
+
+    /** source of listen operation keys; zero means none */
+    private static final AtomicLong nextKey = new AtomicLong();
+
+    /** active listen operations, by key */
+    private static final ConcurrentMap<Long,Listener> listeners =
+	new ConcurrentHashMap<Long,Listener>();
+
+    /** the server endpoint that does the listening */
+    private final ServerEndpoint delegate;
+
+    /** whether co-located calls pass classes by reference */
+    private final boolean passClasses;
+
+    /**
+     * Returns a <code>LocalServerEndpoint</code> instance with the
+     * given delegate that does not pass classes by reference.
+     *
+     * @param delegate the server endpoint to listen with
+     *
+     * @return a <code>LocalServerEndpoint</code> instance
+     *
+     * @throws NullPointerException if <code>delegate</code> is
+     * <code>null</code>
+     **/
+    public static LocalServerEndpoint getInstance(ServerEndpoint delegate) {
+	return getInstance(delegate, false);
+    }
+
+    /**
+     * Returns a <code>LocalServerEndpoint</code> instance with the
+     * given delegate and class passing mode.
+     *
+     * @param delegate the server endpoint to listen with
+     *
+     * @param passClasses <code>true</code> if co-located calls pass
+     * classes by reference instead of by codebase annotation
+     *
+     * @return a <code>LocalServerEndpoint</code> instance
+     *
+     * @throws NullPointerException if <code>delegate</code> is
+     * <code>null</code>
+     **/
+    public static LocalServerEndpoint getInstance(ServerEndpoint delegate,
+						  boolean passClasses)
+    {
+	if (delegate == null) {
+	    throw new NullPointerException();
+	}
+	return new LocalServerEndpoint(delegate, passClasses);
+    }
+
+    private LocalServerEndpoint(ServerEndpoint delegate,
+				boolean passClasses)
+    {
+	this.delegate = delegate;
+	this.passClasses = passClasses;
+    }
+
+    /**
+     * Returns the server endpoint that does the listening.
+     *
+     * @return the delegate server endpoint
+     **/
+    public ServerEndpoint getDelegate() {
+	return delegate;
+    }
+
+    /**
+     * Returns <code>true</code> if co-located calls pass classes by
+     * reference, and <code>false</code> otherwise.
+     *
+     * @return whether co-located calls pass classes by reference
+     **/
+    public boolean getPassClasses() {
+	return passClasses;
+    }
+
+    /**
+     * Returns the result of invoking <code>checkConstraints</code> on
+     * the delegate, since requests with constraints that cannot be
+     * satisfied locally are made through the delegate.
+     *
+     * @throws UnsupportedConstraintException {@inheritDoc}
+     * @throws NullPointerException {@inheritDoc}
+     **/
+    public InvocationConstraints checkConstraints(
+	InvocationConstraints constraints)
+	throws UnsupportedConstraintException
+    {
+	return delegate.checkConstraints(constraints);
+    }
+
+    /**
+     * Passes the listen context to the delegate, wrapping each of the
+     * delegate's listen endpoints so that listen operations also accept
+     * co-located requests, and returns a {@link LocalEndpoint} that
+     * contains the endpoint produced by the delegate.
+     *
+     * @throws IOException {@inheritDoc}
+     * @throws SecurityException {@inheritDoc}
+     * @throws IllegalArgumentException {@inheritDoc}
+     * @throws NullPointerException {@inheritDoc}
+     **/
+    public Endpoint enumerateListenEndpoints(final ListenContext listenContext)
+	throws IOException
+    {
+	if (listenContext == null) {
+	    throw new NullPointerException();
+	}
+	final List<Long> keys = new ArrayList<Long>(1);
+	Endpoint endpoint =
+	    delegate.enumerateListenEndpoints(new ListenContext() {
+		public ListenCookie addListenEndpoint(ListenEndpoint le)
+		    throws IOException
+		{
+		    ListenCookie cookie = listenContext.addListenEndpoint(
+			new LocalListenEndpoint(le));
+		    if (cookie instanceof Cookie) {
+			Cookie c = (Cookie) cookie;
+			keys.add(Long.valueOf(c.key));
+			return c.delegate;
+		    }
+		    return cookie;
+		}
+	    });
+	/*
+	 * Every listen operation dispatches to the same exported
+	 * objects, so any one of them can serve co-located requests.
+	 */
+	long key = keys.isEmpty() ? 0 : keys.get(0).longValue();
+	return new LocalEndpoint(vmID, key, endpoint, passClasses);
+    }
+
+    /**
+     * Returns the active listen operation with the given key, or
+     * <code>null</code>.
+     **/
+    static Listener getListener(long key) {
+	return listeners.get(Long.valueOf(key));
+    }
+
+    /**
+     * Returns a hash code value for this
+     * <code>LocalServerEndpoint</code>.
+     *
+     * @return a hash code value for this
+     * <code>LocalServerEndpoint</code>
+     **/
+    public int hashCode() {
+	return delegate.hashCode() ^ (passClasses ? 1 : 0);
+    }
+
+    /**
+     * Compares the specified object with this
+     * <code>LocalServerEndpoint</code> for equality.
+     *
+     * <p>This method returns <code>true</code> if and only if the
+     * specified object is also a <code>LocalServerEndpoint</code>, the
+     * delegates have the same class and are equal, and the class
+     * passing modes are the same.
+     *
+     * @param obj the object to compare with
+     *
+     * @return <code>true</code> if <code>obj</code> is equivalent to
+     * this object; <code>false</code> otherwise
+     **/
+    public boolean equals(Object obj) {
+	if (obj == this) {
+	    return true;
+	} else if (!(obj instanceof LocalServerEndpoint)) {
+	    return false;
+	}
+	LocalServerEndpoint other = (LocalServerEndpoint) obj;
+	return
+	    Util.sameClassAndEquals(delegate, other.delegate) &&
+	    passClasses == other.passClasses;
+    }
+
+    /**
+     * Returns a string representation of this
+     * <code>LocalServerEndpoint</code>.
+     *
+     * @return a string representation of this
+     * <code>LocalServerEndpoint</code>
+     **/
+    public String toString() {
+	return "LocalServerEndpoint[" + delegate +
+	    (passClasses ? ",passClasses" : "") + "]";
+    }
+
+    /**
+     * An active listen operation, as seen by co-located clients.
+     **/
+    static final class Listener {
+	final RequestDispatcher dispatcher;
+	final SecurityContext securityContext;
+
+	Listener(RequestDispatcher dispatcher,
+		 SecurityContext securityContext)
+	{
+	    this.dispatcher = dispatcher;
+	    this.securityContext = securityContext;
+	}
+    }
+
+    /**
+     * Wraps a listen endpoint of the delegate; listening on it also
+     * registers the request dispatcher for co-located requests.
+     **/
+    private static final class LocalListenEndpoint implements ListenEndpoint {
+	private final ListenEndpoint delegate;
+
+	LocalListenEndpoint(ListenEndpoint delegate) {
+	    this.delegate = delegate;
+	}
+
+	public void checkPermissions() {
+	    delegate.checkPermissions();
+	}
+
+	public ListenHandle listen(RequestDispatcher requestDispatcher)
+	    throws IOException
+	{
+	    ListenHandle handle = delegate.listen(requestDispatcher);
+	    Long key = Long.valueOf(nextKey.incrementAndGet());
+	    listeners.put(key,
+		new Listener(requestDispatcher, Security.getContext()));
+	    return new LocalListenHandle(key.longValue(), handle);
+	}
+
+	public int hashCode() {
+	    return delegate.hashCode();
+	}
+
+	public boolean equals(Object obj) {
+	    return obj instanceof LocalListenEndpoint &&
+		Util.sameClassAndEquals(delegate,
+					((LocalListenEndpoint) obj).delegate);
+	}
+
+	public String toString() {
+	    return "LocalListenEndpoint[" + delegate + "]";
+	}
+    }
+
+    /**
+     * Wraps a listen handle of the delegate.
+     **/
+    private static final class LocalListenHandle implements ListenHandle {
+	private final long key;
+	private final ListenHandle delegate;
+
+	LocalListenHandle(long key, ListenHandle delegate) {
+	    this.key = key;
+	    this.delegate = delegate;
+	}
+
+	public void close() {
+	    listeners.remove(Long.valueOf(key));
+	    delegate.close();
+	}
+
+	public ListenCookie getCookie() {
+	    return new Cookie(key, delegate.getCookie());
+	}
+
+	public String toString() {
+	    return "LocalListenHandle[" + delegate + "]";
+	}
+    }
+
+    /**
+     * Carries the listen operation key along with the delegate's
+     * cookie, which is what the delegate receives back.
+     **/
+    private static final class Cookie implements ListenCookie {
+	final long key;
+	final ListenCookie delegate;
+
+	Cookie(long key, ListenCookie delegate) {
+	    this.key = key;
+	    this.delegate = delegate;
+	}
+    }
+}
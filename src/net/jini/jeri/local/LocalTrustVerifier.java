@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.jini.jeri.local;
+
+import java.rmi.RemoteException;
+import net.jini.security.Security;
+import net.jini.security.TrustVerifier;
+
+/**
+ * Trust verifier for the {@link LocalEndpoint} class.  This class is
+ * intended to be specified in a resource to configure the operation of
+ * {@link Security#verifyObjectTrust Security.verifyObjectTrust}.
+ *
+ * @since 3.0.0
+ * @see LocalEndpoint
+ */
+public final class LocalTrustVerifier implements TrustVerifier {
+
+    /** Creates an instance of this class. */
+    public LocalTrustVerifier() { }
+
+    /**
+     * Returns <code>true</code> if the object is an instance of {@link
+     * LocalEndpoint} and its delegate endpoint is trusted by the
+     * specified <code>TrustVerifier.Context</code>, and returns
+     * <code>false</code> otherwise.  The delegate is what governs
+     * requests that need security, since such requests are never
+     * short-circuited.
+     *
+     * @throws RemoteException if a communication-related exception occurs
+     *	       when verifying the delegate
+     * @throws SecurityException if a security exception occurs when
+     *	       verifying the delegate
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean isTrustedObject(Object obj, TrustVerifier.Context ctx)
+	throws RemoteException
+    {
+	if (obj == null || ctx == null) {
+	    throw new NullPointerException();
+	} else if (obj instanceof LocalEndpoint) {
+	    return ctx.isTrustedObject(((LocalEndpoint) obj).getDelegate());
+	}
+	return false;
+    }
+}
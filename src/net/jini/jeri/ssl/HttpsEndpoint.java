@@ -828,6 +828,14 @@ public final class HttpsEndpoint
 	    this.proxyPort = proxyPort;
 	}
 
+	/**
+	 * Returns false: HTTPS connections carry HTTP over an SSLSocket rather
+	 * than being multiplexed by the connection manager.
+	 */
+	boolean useSSLEngine() {
+	    return false;
+	}
+
 	/**
 	 * Attempts to create a new socket for the specified call context and
 	 * cipher suites.
@@ -851,6 +851,14 @@ public final class HttpsServerEndpoint implements ServerEndpoint {
 		  serverHost, port, socketFactory, serverSocketFactory);
 	}
 
+	/**
+	 * Returns false: HTTPS connections carry HTTP over an SSLSocket rather
+	 * than being multiplexed by the connection manager.
+	 */
+	boolean useSSLEngine() {
+	    return false;
+	}
+
 	ListenEndpoint createListenEndpoint() {
 	    return new HttpsListenEndpoint();
 	}
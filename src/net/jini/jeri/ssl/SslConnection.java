@@ -18,6 +18,7 @@
 
 package net.jini.jeri.ssl;
 
+import org.apache.river.action.GetBooleanAction;
 import org.apache.river.action.GetLongAction;
 import org.apache.river.logging.Levels;
 import org.apache.river.logging.LogUtil;
@@ -37,6 +38,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.net.SocketFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLProtocolException;
 import javax.net.ssl.SSLSession;
@@ -48,13 +50,17 @@ import net.jini.io.UnsupportedConstraintException;
 import net.jini.jeri.connection.Connection;
 import net.jini.jeri.connection.OutboundRequestHandle;
 import net.jini.security.Security;
+import org.apache.river.jeri.internal.connection.SSLEngineConnection;
+import org.apache.river.jeri.internal.mux.SSLEngineChannel;
 
 /**
  * Implementation of Connection used by SslEndpoint.
  *
  * 
  */
-class SslConnection extends Utilities implements Connection {
+class SslConnection extends Utilities
+    implements Connection, SSLEngineConnection
+{
 
     /* -- Fields -- */
 
@@ -69,6 +75,14 @@ class SslConnection extends Utilities implements Connection {
 	    new GetLongAction("org.apache.river.jeri.ssl.maxClientSessionDuration",
 			      (long) (23.5 * 60 * 60 * 1000)))).longValue();
 
+    /**
+     * Whether this connection should be secured with an SSLEngine over a
+     * socket channel when no socket factory is in use.
+     */
+    private final boolean nonBlocking =	// default false
+	Security.doPrivileged(
+	    new GetBooleanAction(NON_BLOCKING_PROPERTY)).booleanValue();
+
     /** Client logger */
     private static final Logger logger = clientLogger;
 
@@ -102,6 +116,12 @@ class SslConnection extends Utilities implements Connection {
     /** The socket */
     volatile SSLSocket sslSocket;
 
+    /**
+     * The SSLEngine secured channel, used instead of sslSocket when
+     * useSSLEngine returns true.
+     */
+    volatile SSLEngineChannel sslChannel;
+
     /** The currently active cipher suite */
     volatile private String activeCipherSuite;
 
@@ -224,9 +244,26 @@ class SslConnection extends Utilities implements Connection {
 	    sslSocket = null;
 	    session = null;
 	    activeCipherSuite = null;
+	} else if (sslChannel != null) {
+	    try {
+		sslChannel.close();
+	    } catch (IOException e) {
+	    }
+	    sslChannel = null;
+	    session = null;
+	    activeCipherSuite = null;
 	}
     }
 
+    /**
+     * Returns true if this connection should be secured with an SSLEngine
+     * over a socket channel rather than with an SSLSocket, allowing the
+     * connection manager to use non-blocking I/O.
+     */
+    boolean useSSLEngine() {
+	return nonBlocking && socketFactory == null;
+    }
+
     /**
      * Attempts to create a new socket for the call context and cipher suites.
      *
@@ -235,8 +272,15 @@ class SslConnection extends Utilities implements Connection {
      */
     void establishNewSocket() throws IOException {
 	Socket socket = createPlainSocket(serverHost, port);
-	sslSocket = (SSLSocket) sslSocketFactory.createSocket(
-	    socket, serverHost, port, /* autoClose */ true);
+	SocketChannel channel = socket.getChannel();
+	if (channel != null && useSSLEngine()) {
+	    SSLEngine engine = sslContext.createSSLEngine(serverHost, port);
+	    engine.setUseClientMode(true);
+	    sslChannel = new SSLEngineChannel(channel, engine);
+	} else {
+	    sslSocket = (SSLSocket) sslSocketFactory.createSocket(
+		socket, serverHost, port, /* autoClose */ true);
+	}
 	establishSuites();
     }
 	
@@ -247,11 +291,21 @@ class SslConnection extends Utilities implements Connection {
      * @throws IOException if an I/O failure occurs
      */
     final void establishSuites() throws IOException {
-	sslSocket.setEnabledCipherSuites(callContext.cipherSuites);
-	sslSocket.startHandshake();
-	session = sslSocket.getSession();
-	activeCipherSuite = session.getCipherSuite();
-	sslSocket.setEnableSessionCreation(false);
+	SSLEngineChannel channel = sslChannel;
+	if (channel != null) {
+	    SSLEngine engine = channel.getEngine();
+	    engine.setEnabledCipherSuites(callContext.cipherSuites);
+	    channel.handshake();
+	    session = engine.getSession();
+	    activeCipherSuite = session.getCipherSuite();
+	    engine.setEnableSessionCreation(false);
+	} else {
+	    sslSocket.setEnabledCipherSuites(callContext.cipherSuites);
+	    sslSocket.startHandshake();
+	    session = sslSocket.getSession();
+	    activeCipherSuite = session.getCipherSuite();
+	    sslSocket.setEnableSessionCreation(false);
+	}
 	releaseClientSSLContextInfo(callContext, sslContext, authManager);
     }
 
@@ -415,8 +469,14 @@ class SslConnection extends Utilities implements Connection {
      * socket factory if non-null.
      **/
     private Socket newSocket() throws IOException {
-	Socket socket = socketFactory != null
-	    ? socketFactory.createSocket() : new Socket();
+	Socket socket;
+	if (socketFactory != null) {
+	    socket = socketFactory.createSocket();
+	} else if (useSSLEngine()) {
+	    socket = SocketChannel.open().socket();
+	} else {
+	    socket = new Socket();
+	}
 	/* Send data without delay */
 	try {
 	    socket.setTcpNoDelay(true);
@@ -433,11 +493,12 @@ class SslConnection extends Utilities implements Connection {
     /** Returns a string representation of this object. */
     public String toString() {
 	String sessionString = (session == null) ? "" : session + ", ";
+	Socket socket = getSocket();
 	return getClassName(this) + "[" +
 	    sessionString +
-	    (sslSocket == null
+	    (socket == null
 	     ? "???"
-	     : Integer.toString(sslSocket.getLocalPort())) +
+	     : Integer.toString(socket.getLocalPort())) +
 	    "=>" + serverHost + ":" + port + "]";
     }
 
@@ -466,6 +527,24 @@ class SslConnection extends Utilities implements Connection {
 	return null;
     }
 
+    /* inherit javadoc */
+    public SSLEngineChannel getSSLEngineChannel() {
+	return sslChannel;
+    }
+
+    /**
+     * Returns the underlying socket, or null if no socket has been
+     * established.
+     */
+    private Socket getSocket() {
+	SSLSocket s = sslSocket;
+	if (s != null) {
+	    return s;
+	}
+	SSLEngineChannel channel = sslChannel;
+	return channel == null ? null : channel.getChannel().socket();
+    }
+
     /* inherit javadoc */
     public void populateContext(OutboundRequestHandle handle,
 				Collection context)
@@ -668,7 +747,7 @@ class SslConnection extends Utilities implements Connection {
      * the caller does not have permission to use it.
      */
     boolean checkConnectPermission() {
-	Socket socket = sslSocket;
+	Socket socket = getSocket();
 	if (socket == null) {
 	    return false;
 	}
@@ -281,6 +281,14 @@ import net.jini.security.proxytrust.TrustEquivalence;
  *	the JSSE implementation. Suites appearing earlier in the list will be
  *	preferred to ones appearing later for suites that support the same
  *	requirements and preferences.
+ * <li> <code>org.apache.river.jeri.ssl.nonBlocking</code> - If
+ *	<code>true</code>, and no socket factory is in use, connections are
+ *	secured with an {@link javax.net.ssl.SSLEngine} over a socket
+ *	channel and multiplexed with non-blocking I/O rather than with
+ *	dedicated threads per connection. The initial handshake is still
+ *	performed before the connection is used. The property is read
+ *	each time a connection is created. The default is
+ *	<code>false</code>.
  * </ul>
  */
 public final class SslEndpoint
@@ -312,6 +312,14 @@ import net.jini.security.SecurityContext;
  *	the JSSE implementation. Suites appearing earlier in the list will be
  *	preferred to ones appearing later for suites that support the same
  *	requirements and preferences.
+ * <li> <code>org.apache.river.jeri.ssl.nonBlocking</code> - If
+ *	<code>true</code>, and no server socket factory is in use, connections are
+ *	secured with an {@link javax.net.ssl.SSLEngine} over a socket
+ *	channel and multiplexed with non-blocking I/O rather than with
+ *	dedicated threads per connection. The initial handshake is still
+ *	performed before the connection is used. The property is read
+ *	when the server endpoint is created. The default is
+ *	<code>false</code>.
  * </ul>
  */
 public final class SslServerEndpoint implements ServerEndpoint {
@@ -18,6 +18,7 @@
 
 package net.jini.jeri.ssl;
 
+import org.apache.river.action.GetBooleanAction;
 import org.apache.river.action.GetLongAction;
 import org.apache.river.jeri.internal.connection.BasicServerConnManager;
 import org.apache.river.jeri.internal.connection.ServerConnManager;
@@ -28,9 +29,11 @@ import org.apache.river.thread.GetThreadPoolAction;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.security.AccessControlContext;
 import java.security.AccessController;
@@ -56,6 +59,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.net.ServerSocketFactory;
 import javax.net.SocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
@@ -78,6 +83,8 @@ import net.jini.security.AuthenticationPermission;
 import net.jini.security.Security;
 import net.jini.security.SecurityContext;
 import org.apache.river.jeri.internal.runtime.LocalHost;
+import org.apache.river.jeri.internal.connection.SSLEngineConnection;
+import org.apache.river.jeri.internal.mux.SSLEngineChannel;
 
 /**
  * Provides the implementation of SslServerEndpoint so that the implementation
@@ -103,6 +110,15 @@ class SslServerEndpointImpl extends Utilities {
 	    new GetLongAction("org.apache.river.jeri.ssl.maxServerSessionDuration",
 			      24L * 60L * 60L * 1000L))).longValue();
 
+    /**
+     * Whether connections accepted by this endpoint should be secured with
+     * an SSLEngine over a socket channel when no server socket factory is in
+     * use.
+     */
+    private final boolean nonBlocking =	// default false
+	Security.doPrivileged(
+	    new GetBooleanAction(NON_BLOCKING_PROPERTY)).booleanValue();
+
     /**
      * Executes a Runnable in a system thread -- used for listener accept
      * threads.
@@ -152,6 +168,9 @@ class SslServerEndpointImpl extends Utilities {
     /** The listen endpoint. */
     private final ListenEndpoint listenEndpoint;
 
+    /** The SSLContext for this endpoint -- set by sslInit */
+    private SSLContext sslContext; // Synchronized on this
+
     /** The factory for creating JSSE sockets -- set by sslInit */
     private SSLSocketFactory sslSocketFactory; // Synchronized on this
 
@@ -299,7 +318,8 @@ class SslServerEndpointImpl extends Utilities {
     }
 
     /**
-     * Initializes the sslSocketFactory and authManager fields.  Wait to do
+     * Initializes the sslContext, sslSocketFactory and authManager
+     * fields.  Wait to do
      * this until needed, because creating the SSLContext requires initializing
      * the secure random number generator, which can be time consuming.
      */
@@ -307,10 +327,30 @@ class SslServerEndpointImpl extends Utilities {
 	assert Thread.holdsLock(this);
 	SSLContextInfo info = getServerSSLContextInfo(
 	    serverSubject, serverPrincipals);
-	sslSocketFactory = info.sslContext.getSocketFactory();
+	sslContext = info.sslContext;
+	sslSocketFactory = sslContext.getSocketFactory();
 	authManager = (ServerAuthManager) info.authManager;
     }
 
+    /** Returns the SSLContext, calling sslInit if needed. */
+    final SSLContext getSSLContext() {
+	synchronized (this) {
+	    if (sslContext == null) {
+		sslInit();
+	    }
+	    return sslContext;
+	}
+    }
+
+    /**
+     * Returns true if connections accepted by this endpoint should be secured
+     * with an SSLEngine over a socket channel rather than with an SSLSocket,
+     * allowing the connection manager to use non-blocking I/O.
+     */
+    boolean useSSLEngine() {
+	return nonBlocking && serverSocketFactory == null;
+    }
+
     /** Returns the SSLSocketFactory, calling sslInit if needed. */
     final SSLSocketFactory getSSLSocketFactory() {
 	synchronized (this) {
@@ -604,9 +644,15 @@ class SslServerEndpointImpl extends Utilities {
 		    "Request dispatcher cannot be null");
 	    }
 	    checkCredentials();
-	    ServerSocket serverSocket = serverSocketFactory != null
-		? serverSocketFactory.createServerSocket(port)
-		: new ServerSocket(port);
+	    ServerSocket serverSocket;
+	    if (serverSocketFactory != null) {
+		serverSocket = serverSocketFactory.createServerSocket(port);
+	    } else if (useSSLEngine()) {
+		serverSocket = ServerSocketChannel.open().socket();
+		serverSocket.bind(new InetSocketAddress(port));
+	    } else {
+		serverSocket = new ServerSocket(port);
+	    }
 	    return createListenHandle(requestDispatcher, serverSocket);
 	}
 
@@ -1009,14 +1055,28 @@ class SslServerEndpointImpl extends Utilities {
     }
 
     /** Implements ServerConnection */
-    class SslServerConnection extends Utilities implements ServerConnection {
+    class SslServerConnection extends Utilities
+	implements ServerConnection, SSLEngineConnection
+    {
 
 	/** The listen handle that accepted this connection */
 	private final SslListenHandle listenHandle;
 
-	/** The JSSE socket used for communication */
+	/**
+	 * The JSSE socket used for communication, or null if sslChannel is
+	 * used instead
+	 */
 	final SSLSocket sslSocket;
 
+	/**
+	 * The SSLEngine secured channel used for communication, or null if
+	 * sslSocket is used instead
+	 */
+	private final SSLEngineChannel sslChannel;
+
+	/** The socket used for communication, for address information */
+	private final Socket socket;
+
 	/** The inbound request handle for this connection. */
 	private final InboundRequestHandle requestHandle =
 	    new InboundRequestHandle() { };
@@ -1058,22 +1118,48 @@ class SslServerEndpointImpl extends Utilities {
 	{
 	    this.listenHandle = listenHandle;
 
-	    sslSocket = (SSLSocket) getSSLSocketFactory().createSocket(
-		socket, socket.getInetAddress().getHostName(),
-		socket.getPort(), true /* autoClose */);
-	    sslSocket.setEnabledCipherSuites(getSupportedCipherSuites());
-
-	    /* Need to put in server mode before requesting client auth. */
-	    sslSocket.setUseClientMode(false);
-	    sslSocket.setWantClientAuth(true);
+	    SocketChannel channel = socket.getChannel();
+	    if (channel != null && useSSLEngine()) {
+		SSLEngine engine = getSSLContext().createSSLEngine(
+		    socket.getInetAddress().getHostName(), socket.getPort());
+		engine.setEnabledCipherSuites(getSupportedCipherSuites());
+
+		/* Need to put in server mode before requesting client auth. */
+		engine.setUseClientMode(false);
+		engine.setWantClientAuth(true);
+		sslSocket = null;
+		sslChannel = new SSLEngineChannel(channel, engine);
+		this.socket = socket;
+		try {
+		    sslChannel.handshake();
+		} catch (IOException e) {
+		    sslChannel.close();
+		    throw e;
+		}
+	    } else {
+		sslSocket = (SSLSocket) getSSLSocketFactory().createSocket(
+		    socket, socket.getInetAddress().getHostName(),
+		    socket.getPort(), true /* autoClose */);
+		sslSocket.setEnabledCipherSuites(getSupportedCipherSuites());
+
+		/* Need to put in server mode before requesting client auth. */
+		sslSocket.setUseClientMode(false);
+		sslSocket.setWantClientAuth(true);
+		sslChannel = null;
+		this.socket = sslSocket;
+	    }
             try {
-                session = sslSocket.getSession();
-                sslSocket.setEnableSessionCreation(false);
+                session = getSocketSession();
+                if (sslSocket != null) {
+                    sslSocket.setEnableSessionCreation(false);
+                } else {
+                    sslChannel.getEngine().setEnableSessionCreation(false);
+                }
                 cipherSuite = session.getCipherSuite();
                 if ("NULL".equals(getKeyExchangeAlgorithm(cipherSuite))) {
                     throw new SecurityException("Handshake failed");
                 }
-                clientSubject = getClientSubject(sslSocket);
+                clientSubject = getClientSubject(session);
                 clientPrincipal = clientSubject != null
                     ? ((X500Principal)
                        clientSubject.getPrincipals().iterator().next())
@@ -1105,9 +1191,9 @@ class SslServerEndpointImpl extends Utilities {
 	    }
 	    return getClassName(this) + "[" +
 		sessionString + 
-		serverHost + ":" + sslSocket.getLocalPort() + "<=" +
-		sslSocket.getInetAddress().getHostName() + ":" +
-		sslSocket.getPort() +
+		serverHost + ":" + socket.getLocalPort() + "<=" +
+		socket.getInetAddress().getHostName() + ":" +
+		socket.getPort() +
 		"]";
 	}
 
@@ -1115,11 +1201,17 @@ class SslServerEndpointImpl extends Utilities {
 
 	/* inherit javadoc */
 	public InputStream getInputStream() throws IOException {
+	    if (sslSocket == null) {
+		throw new IOException("Connection uses an SSLEngine");
+	    }
 	    return sslSocket.getInputStream();
 	}
 
 	/* inherit javadoc */
 	public OutputStream getOutputStream() throws IOException {
+	    if (sslSocket == null) {
+		throw new IOException("Connection uses an SSLEngine");
+	    }
 	    return sslSocket.getOutputStream();
 	}
 
@@ -1128,6 +1220,17 @@ class SslServerEndpointImpl extends Utilities {
 	    return null;
 	}
 
+	/* inherit javadoc */
+	public SSLEngineChannel getSSLEngineChannel() {
+	    return sslChannel;
+	}
+
+	/** Returns the current session of the socket or engine. */
+	private SSLSession getSocketSession() {
+	    return sslSocket != null
+		? sslSocket.getSession() : sslChannel.getSession();
+	}
+
 	/* inherit javadoc */
 	public InboundRequestHandle processRequestData(InputStream in,
 						       OutputStream out)
@@ -1183,7 +1286,7 @@ class SslServerEndpointImpl extends Utilities {
 	 * fields if needed.
 	 */
 	private void decacheSession() {
-            SSLSession socketSession = sslSocket.getSession();
+            SSLSession socketSession = getSocketSession();
             if (session == socketSession) {
                 return;
             } else if ( !session.isValid()){
@@ -1202,12 +1305,11 @@ class SslServerEndpointImpl extends Utilities {
 
 	/**
 	 * Returns the read-only <code>Subject</code> associated with the
-	 * client host connected to the other end of the connection on the
-	 * specified <code>SSLSocket</code>.  Returns null if the client is
+	 * client host connected to the other end of the connection with the
+	 * specified <code>SSLSession</code>.  Returns null if the client is
 	 * anonymous.
 	 */
-	private Subject getClientSubject(SSLSocket socket) {
-	    SSLSession session = socket.getSession();
+	private Subject getClientSubject(SSLSession session) {
 	    try {
 		Certificate[] certificateChain = session.getPeerCertificates();
 		if (certificateChain != null
@@ -1238,8 +1340,8 @@ class SslServerEndpointImpl extends Utilities {
 	    SecurityManager sm = System.getSecurityManager();
 	    if (sm != null) {
 		try {
-		    sm.checkAccept(sslSocket.getInetAddress().getHostAddress(),
-				   sslSocket.getPort());
+		    sm.checkAccept(socket.getInetAddress().getHostAddress(),
+				   socket.getPort());
 		    if (authPermission != null) {
 			sm.checkPermission(authPermission);
 		    }
@@ -1313,7 +1415,7 @@ class SslServerEndpointImpl extends Utilities {
 				    Collection context)
 	{
 	    check(requestHandle);
-	    Util.populateContext(context, sslSocket.getInetAddress());
+	    Util.populateContext(context, socket.getInetAddress());
 	    Util.populateContext(context, clientSubject);
 	}
 
@@ -1335,7 +1437,11 @@ class SslServerEndpointImpl extends Utilities {
 		}
 		logger.log(Level.FINE, "closing {0}", this);
 		closed = true;
-		sslSocket.close();
+		if (sslSocket != null) {
+		    sslSocket.close();
+		} else {
+		    sslChannel.close();
+		}
 	    }
 	    if (removeFromListener) {
 		listenHandle.noteConnectionClosed(this);
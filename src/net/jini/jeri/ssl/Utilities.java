@@ -226,6 +226,10 @@ abstract class Utilities {
     private static final String sslProtocol = (String) Security.doPrivileged(
 	new GetPropertyAction("org.apache.river.jeri.ssl.sslProtocol", "TLS"));
 
+    /** The property selecting SSLEngine secured connections. */
+    static final String NON_BLOCKING_PROPERTY =
+	"org.apache.river.jeri.ssl.nonBlocking";
+
     /** Permission needed to access the current subject. */
     static final AuthPermission getSubjectPermission =
 	new AuthPermission("getSubject");
@@ -42,6 +42,8 @@ import net.jini.core.constraint.RelativeTimeConstraint;
 import net.jini.core.constraint.ServerAuthentication;
 import net.jini.core.constraint.ServerMinPrincipal;
 import net.jini.io.UnsupportedConstraintException;
+import net.jini.jeri.connection.Compression;
+import net.jini.jeri.connection.DescriptorCaching;
 
 /**
  * Constraint support for this transport provider.
@@ -92,6 +94,11 @@ class Constraints {
 	supportedValues.put(ClientAuthentication.NO,	Boolean.FALSE);
 	supportedValues.put(ServerAuthentication.NO,	Boolean.FALSE);
 	supportedValues.put(Delegation.NO,		Boolean.FALSE);
+	// applied by ConnectionManager, which uses the mux protocol
+	supportedValues.put(Compression.YES,		Boolean.TRUE);
+	supportedValues.put(Compression.NO,		Boolean.TRUE);
+	supportedValues.put(DescriptorCaching.YES,	Boolean.TRUE);
+	supportedValues.put(DescriptorCaching.NO,	Boolean.TRUE);
     }
 
     /**
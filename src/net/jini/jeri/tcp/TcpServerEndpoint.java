@@ -19,6 +19,7 @@
 package net.jini.jeri.tcp;
 
 import org.apache.river.action.GetBooleanAction;
+import org.apache.river.jeri.internal.runtime.SelectionManager;
 import org.apache.river.jeri.internal.runtime.Util;
 import org.apache.river.logging.Levels;
 import org.apache.river.logging.LogUtil;
@@ -34,6 +35,8 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketPermission;
 import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.ServerSocketChannel;
 import java.security.AccessControlContext;
@@ -115,7 +118,7 @@ public final class TcpServerEndpoint implements ServerEndpoint {
 
     /**
      * pool of threads for executing tasks in system thread group:
-     * used for TCP accept threads
+     * used for TCP accept threads and delayed accept retries
      **/
     private static final Executor systemThreadPool =
 	(Executor) AccessController.doPrivileged(
@@ -130,8 +133,18 @@ public final class TcpServerEndpoint implements ServerEndpoint {
 
     /** whether or not to use NIO-based sockets if possible */
     private static final boolean useNIO =		// default false
-	((Boolean) AccessController.doPrivileged(new GetBooleanAction(
-	    "org.apache.river.jeri.tcp.useNIO"))).booleanValue();
+	AccessController.doPrivileged(new GetBooleanAction(
+	    "org.apache.river.jeri.tcp.useNIO")).booleanValue();
+
+    /**
+     * Returns whether or not to accept and service connections without
+     * dedicating threads to them, if possible; read for each listen
+     * operation.
+     */
+    private static boolean nonBlockingServer() {	// default false
+	return AccessController.doPrivileged(new GetBooleanAction(
+	    "org.apache.river.jeri.tcp.server.nonBlocking")).booleanValue();
+    }
     
     private static final LocalHost LOCAL_HOST = new LocalHost(null, null);
 
@@ -633,11 +646,12 @@ public final class TcpServerEndpoint implements ServerEndpoint {
 		throw new NullPointerException();
 	    }
 
+	    boolean nonBlocking = ssf == null && nonBlockingServer();
 	    ServerSocket serverSocket;
 	    if (ssf != null) {
 		serverSocket = ssf.createServerSocket(port);
 	    } else {
-		if (useNIO) {
+		if (useNIO || nonBlocking) {
 		    serverSocket = ServerSocketChannel.open().socket();
 		    serverSocket.bind(new InetSocketAddress(port));
 		} else {
@@ -655,7 +669,16 @@ public final class TcpServerEndpoint implements ServerEndpoint {
 	    Cookie cookie = new Cookie(serverSocket.getLocalPort());
 	    final LH listenHandle = new LH(requestDispatcher, serverSocket,
 					   Security.getContext(), cookie);
-	    listenHandle.startAccepting();
+	    if (nonBlocking) {
+		try {
+		    listenHandle.startSelecting();
+		} catch (IOException e) {
+		    listenHandle.close();
+		    throw e;
+		}
+	    } else {
+		listenHandle.startAccepting();
+	    }
 	    return listenHandle;
 	}
 
@@ -713,8 +736,10 @@ public final class TcpServerEndpoint implements ServerEndpoint {
 	private final SecurityContext securityContext;
 	private final ListenCookie cookie;
 
-	private long acceptFailureTime = 0L;	// local to accept thread
-	private int acceptFailureCount;		// local to accept thread
+	// local to accept thread, or to the accept handler, which
+	// never runs concurrently with itself
+	private long acceptFailureTime = 0L;
+	private int acceptFailureCount;
 
 	private final Object lock = new Object();
 	private boolean closed = false;
@@ -755,6 +780,128 @@ public final class TcpServerEndpoint implements ServerEndpoint {
 	    }, toString() + " accept loop");
 	}
 
+	/**
+	 * Starts accepting through the shared SelectionManager, so that
+	 * neither the listen operation nor the accepted connections
+	 * occupy a thread while idle.
+	 **/
+	void startSelecting() throws IOException {
+	    ServerSocketChannel channel = serverSocket.getChannel();
+	    channel.configureBlocking(false);
+	    SelectionManager.Key key = SelectionManager.getInstance().register(
+		channel, new AcceptHandler());
+	    key.renewInterestMask(SelectionKey.OP_ACCEPT);
+	}
+
+	/**
+	 * Accepts all pending connections when the server socket channel
+	 * is ready, then renews interest in further connections.
+	 *
+	 * Like the accept loop, the handler runs with the full
+	 * privileges of this code.
+	 **/
+	private class AcceptHandler
+	    implements SelectionManager.SelectionHandler
+	{
+	    public void handleSelection(int readyMask,
+					final SelectionManager.Key key)
+	    {
+		ServerSocketChannel channel = serverSocket.getChannel();
+		while (true) {
+		    SocketChannel socketChannel;
+		    try {
+			socketChannel = channel.accept();
+		    } catch (Throwable t) {
+			synchronized (lock) {
+			    if (closed) {
+				return;
+			    }
+			}
+			try {
+			    if (logger.isLoggable(Level.WARNING)) {
+				LogUtil.logThrow(logger, Level.WARNING,
+				    TcpServerEndpoint.class,
+				    "handleSelection",
+				    "accept handler for {0} throws",
+				    new Object[] { serverSocket }, t);
+			    }
+			} catch (Throwable tt) {
+			}
+			final long delay = acceptFailureDelay();
+			if (delay == 0L) {
+			    break;
+			}
+			systemThreadPool.execute(new Runnable() {
+			    public void run() {
+				try {
+				    Thread.sleep(delay);
+				} catch (InterruptedException ignore) {
+				}
+				renew(key);
+			    }
+			}, LH.this + " accept retry");
+			return;
+		    }
+		    if (socketChannel == null) {
+			break;
+		    }
+		    Socket socket = socketChannel.socket();
+		    try {
+			handleAcceptedSocket(socket);
+		    } catch (Throwable t) {
+			try {
+			    if (logger.isLoggable(Level.WARNING)) {
+				LogUtil.logThrow(logger, Level.WARNING,
+				    TcpServerEndpoint.class,
+				    "handleSelection",
+				    "accept handler for {0} throws",
+				    new Object[] { serverSocket }, t);
+			    }
+			} catch (Throwable tt) {
+			}
+			try {
+			    socket.close();
+			} catch (IOException e) {
+			}
+		    }
+		}
+		renew(key);
+	    }
+
+	    private void renew(SelectionManager.Key key) {
+		try {
+		    key.renewInterestMask(SelectionKey.OP_ACCEPT);
+		} catch (ClosedChannelException e) {
+		    // listen operation has been stopped
+		}
+	    }
+	}
+
+	/**
+	 * Hands an accepted socket to the ServerConnectionManager.
+	 **/
+	private void handleAcceptedSocket(Socket socket) {
+	    if (logger.isLoggable(Level.FINE)) {
+		logger.log(Level.FINE,
+		    "accepted socket {0} from server socket {1}",
+		    new Object[]{ socket, serverSocket });
+	    }
+
+	    setSocketOptions(socket);
+
+	    final ServerConnection serverConnection =
+		new ServerConnectionImpl(socket);
+
+	    AccessController.doPrivileged(securityContext.wrap(
+		new PrivilegedAction<Void>() {
+		    public Void run() {
+			serverConnectionManager.handleConnection(
+			    serverConnection, requestDispatcher);
+			return null;
+		    }
+		}), securityContext.getAccessControlContext());
+	}
+
 	/**
 	 * Executes the accept loop.
 	 *
@@ -769,25 +916,7 @@ public final class TcpServerEndpoint implements ServerEndpoint {
 		Socket socket = null;
 		try {
 		    socket = serverSocket.accept();
-		    if (logger.isLoggable(Level.FINE)) {
-			logger.log(Level.FINE,
-			    "accepted socket {0} from server socket {1}",
-			    new Object[]{ socket, serverSocket });
-		    }
-
-		    setSocketOptions(socket);
-
-		    final ServerConnection serverConnection =
-			new ServerConnectionImpl(socket);
-
-		    AccessController.doPrivileged(securityContext.wrap(
-			new PrivilegedAction() {
-			    public Object run() {
-				serverConnectionManager.handleConnection(
-				    serverConnection, requestDispatcher);
-				return null;
-			    }
-			}), securityContext.getAccessControlContext());
+		    handleAcceptedSocket(socket);
 
 		} catch (Throwable t) {
 		    try {
@@ -906,6 +1035,21 @@ public final class TcpServerEndpoint implements ServerEndpoint {
 	 * failed accepts.
 	 **/
 	private boolean continueAfterAcceptFailure(Throwable t) {
+	    long delay = acceptFailureDelay();
+	    if (delay > 0L) {
+		try {
+		    Thread.sleep(delay);
+		} catch (InterruptedException ignore) {
+		}
+	    }
+	    return true;
+	}
+
+	/**
+	 * Records a failed accept and returns how long to wait, in
+	 * milliseconds, before accepting again.
+	 **/
+	private long acceptFailureDelay() {
 	    /*
 	     * If we get a burst of NFAIL failures in NMSEC milliseconds,
 	     * then wait for ten seconds.  This is to ensure that individual
@@ -925,14 +1069,11 @@ public final class TcpServerEndpoint implements ServerEndpoint {
 		// failure window was started recently
 		acceptFailureCount++;
 		if (acceptFailureCount >= NFAIL) {
-		    try {
-			Thread.sleep(10000);
-		    } catch (InterruptedException ignore) {
-		    }
 		    // no need to reset counter/timer
+		    return 10000L;
 		}
 	    }
-	    return true;
+	    return 0L;
 	}
 
 	/**
@@ -0,0 +1,477 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.jini.jeri.unix;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.net.NetPermission;
+import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.jini.core.constraint.InvocationConstraints;
+import net.jini.io.UnsupportedConstraintException;
+import net.jini.jeri.Endpoint;
+import net.jini.jeri.OutboundRequest;
+import net.jini.jeri.OutboundRequestIterator;
+import net.jini.jeri.connection.Connection;
+import net.jini.jeri.connection.ConnectionEndpoint;
+import net.jini.jeri.connection.ConnectionManager;
+import net.jini.jeri.connection.OutboundRequestHandle;
+import net.jini.security.proxytrust.TrustEquivalence;
+import org.apache.river.logging.Levels;
+import org.apache.river.logging.LogUtil;
+
+/**
+ * An implementation of the {@link Endpoint} abstraction that uses Unix
+ * domain sockets for the underlying communication mechanism, for
+ * communication with a server on the same host.
+ *
+ * <p><code>UnixEndpoint</code> instances contain the file system path
+ * of the socket to connect to.  Unix domain sockets are available from
+ * Java SE 16 on; on earlier platforms, request attempts fail with an
+ * <code>IOException</code>.
+ *
+ * <p><code>UnixEndpoint</code> uses the <a
+ * href="../connection/doc-files/mux.html">Jini extensible remote
+ * invocation (Jini ERI) multiplexing protocol</a> to map outgoing
+ * requests to socket connections, and services those connections
+ * through their channels.
+ *
+ * @see UnixServerEndpoint
+ * @since 3.0.0
+ **/
+public final class UnixEndpoint
+    implements Endpoint, TrustEquivalence, Serializable
+{
+    private static final long serialVersionUID = -4786293840132559487L;
+
+    /** permission needed to connect to a Unix domain socket */
+    private static final NetPermission accessPermission =
+	new NetPermission("accessUnixDomainSocket");
+
+    /**
+     * weak set of canonical instances; in order to use WeakHashMap,
+     * maps canonical instances to weak references to themselves
+     **/
+    private static final Map<UnixEndpoint,WeakReference<UnixEndpoint>>
+	internTable = new WeakHashMap<UnixEndpoint,WeakReference<UnixEndpoint>>();
+
+    /** client transport logger */
+    private static final Logger logger =
+	Logger.getLogger("net.jini.jeri.unix.client");
+
+    /**
+     * The path of the socket that this <code>UnixEndpoint</code>
+     * connects to.
+     *
+     * @serial
+     **/
+    private final String path;
+
+    private transient volatile ConnectionManager connectionManager;
+
+    /**
+     * Returns a <code>UnixEndpoint</code> instance for the given
+     * socket path.
+     *
+     * @param path the file system path of the socket to connect to
+     *
+     * @return a <code>UnixEndpoint</code> instance
+     *
+     * @throws NullPointerException if <code>path</code> is
+     * <code>null</code>
+     **/
+    public static UnixEndpoint getInstance(String path) {
+	return intern(new UnixEndpoint(path));
+    }
+
+    /**
+     * Returns canonical instance equivalent to given instance.
+     **/
+    private static UnixEndpoint intern(UnixEndpoint endpoint) {
+	synchronized (internTable) {
+	    Reference<UnixEndpoint> ref = internTable.get(endpoint);
+	    if (ref != null) {
+		UnixEndpoint canonical = ref.get();
+		if (canonical != null) {
+		    return canonical;
+		}
+	    }
+	    endpoint.connectionManager = new ConnectionManager(
+		new ConnectionEndpointImpl(endpoint.getPath()));
+	    internTable.put(endpoint,
+			    new WeakReference<UnixEndpoint>(endpoint));
+	    return endpoint;
+	}
+    }
+
+    /**
+     * Constructs a new instance.
+     **/
+    private UnixEndpoint(String path) {
+	if (path == null) {
+	    throw new NullPointerException();
+	}
+	this.path = path;
+    }
+
+    /*
+     * [This is not a doc comment to prevent its appearance in
+     * UnixEndpoint's serialized form specification.]
+     *
+     * Resolves deserialized instance to equivalent canonical instance.
+     */
+    private Object readResolve() {
+	return intern(this);
+    }
+
+    /**
+     * Returns the path of the socket that this
+     * <code>UnixEndpoint</code> connects to.
+     *
+     * @return the path of the socket that this endpoint connects to
+     **/
+    public String getPath() {
+	return path;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The returned <code>OutboundRequestIterator</code>'s {@link
+     * OutboundRequestIterator#next next} method initiates an attempt to
+     * communicate the request to this remote endpoint, over an
+     * existing connection if one is available.
+     *
+     * <p>If there is a security manager, the creation or reuse of a
+     * connection requires {@link NetPermission}
+     * <code>("accessUnixDomainSocket")</code> in the current security
+     * context; if it is not granted, <code>next</code> throws a
+     * <code>SecurityException</code>.
+     *
+     * <p><code>next</code> throws {@link IOException} if an I/O
+     * exception occurs while performing this operation, such as if
+     * there is no socket at this endpoint's path, or if the platform
+     * does not support Unix domain sockets.
+     *
+     * @throws NullPointerException {@inheritDoc}
+     **/
+    public OutboundRequestIterator
+	newRequest(final InvocationConstraints constraints)
+    {
+	if (constraints == null) {
+	    throw new NullPointerException();
+	}
+
+	try {
+	    Constraints.Distilled distilled =
+		Constraints.distill(constraints, false);
+	    return connectionManager.newRequest(new Handle(distilled));
+
+	} catch (final UnsupportedConstraintException e) {
+	    return new OutboundRequestIterator() {
+		private boolean nextCalled = false;
+		public boolean hasNext() { return !nextCalled; }
+		public OutboundRequest next() throws IOException {
+		    if (!hasNext()) { throw new NoSuchElementException(); }
+		    nextCalled = true;
+		    e.fillInStackTrace();
+		    throw e;
+		}
+	    };
+	}
+    }
+
+    /**
+     * Returns the hash code value for this <code>UnixEndpoint</code>.
+     *
+     * @return the hash code value for this <code>UnixEndpoint</code>
+     **/
+    public int hashCode() {
+	return path.hashCode();
+    }
+
+    /**
+     * Compares the specified object with this
+     * <code>UnixEndpoint</code> for equality.
+     *
+     * <p>This method returns <code>true</code> if and only if the
+     * specified object is also a <code>UnixEndpoint</code> with the
+     * same path as this object.
+     *
+     * @param obj the object to compare with
+     *
+     * @return <code>true</code> if <code>obj</code> is equivalent to
+     * this object; <code>false</code> otherwise
+     **/
+    public boolean equals(Object obj) {
+	if (obj == this) {
+	    return true;
+	} else if (!(obj instanceof UnixEndpoint)) {
+	    return false;
+	}
+	return path.equals(((UnixEndpoint) obj).path);
+    }
+
+    /**
+     * Returns <code>true</code> if the specified object (which is not
+     * yet known to be trusted) is equivalent in trust, content, and
+     * function to this known trusted object, and <code>false</code>
+     * otherwise.
+     *
+     * <p>This method returns <code>true</code> if and only if the
+     * specified object is also a <code>UnixEndpoint</code> with the
+     * same path as this object.
+     **/
+    public boolean checkTrustEquivalence(Object obj) {
+	return equals(obj);
+    }
+
+    /**
+     * Returns a string representation of this
+     * <code>UnixEndpoint</code>.
+     *
+     * @return a string representation of this
+     * <code>UnixEndpoint</code>
+     **/
+    public String toString() {
+	return "UnixEndpoint[" + path + "]";
+    }
+
+    /**
+     * @throws InvalidObjectException if the path is <code>null</code>
+     **/
+    private void readObject(ObjectInputStream in)
+	throws IOException, ClassNotFoundException
+    {
+	in.defaultReadObject();
+	if (path == null) {
+	    throw new InvalidObjectException("null path");
+	}
+    }
+
+    /**
+     * OutboundRequestHandle implementation.
+     **/
+    private static class Handle implements OutboundRequestHandle {
+
+	private final Constraints.Distilled distilled;
+
+	Handle(Constraints.Distilled distilled) {
+	    this.distilled = distilled;
+	}
+
+	Constraints.Distilled getDistilledConstraints() {
+	    return distilled;
+	}
+
+	InvocationConstraints getUnfulfilledConstraints() {
+	    return distilled.getUnfulfilledConstraints();
+	}
+    }
+
+    /**
+     * ConnectionEndpoint implementation.
+     *
+     * Instances of this class should never get exposed to anything
+     * other than our ConnectionManager, which we trust to operate
+     * correctly, so we do not bother to validate request handles and
+     * connections passed in.
+     **/
+    private static class ConnectionEndpointImpl implements ConnectionEndpoint {
+	private final String path;
+
+	ConnectionEndpointImpl(String path) {
+	    this.path = path;
+	}
+
+	/**
+	 * Invoked by ConnectionManager to create a new connection.
+	 **/
+	public Connection connect(OutboundRequestHandle handle)
+	    throws IOException
+	{
+	    Constraints.Distilled distilled =
+		((Handle) handle).getDistilledConstraints();
+	    checkAccessPermission();
+	    if (distilled.hasConnectDeadline() &&
+		distilled.getConnectDeadline() <= System.currentTimeMillis())
+	    {
+		throw new SocketTimeoutException("connection deadline passed");
+	    }
+	    SocketChannel channel;
+	    try {
+		channel = UnixSockets.connect(path);
+	    } catch (IOException e) {
+		if (logger.isLoggable(Levels.FAILED)) {
+		    LogUtil.logThrow(logger, Levels.FAILED,
+			ConnectionEndpointImpl.class, "connect",
+			"exception connecting to {0}",
+			new Object[] { path }, e);
+		}
+		throw e;
+	    }
+	    if (logger.isLoggable(Level.FINE)) {
+		logger.log(Level.FINE, "connected channel {0}", channel);
+	    }
+	    return new ConnectionImpl(channel);
+	}
+
+	/**
+	 * Invoked by ConnectionManager to reuse an existing
+	 * connection.
+	 **/
+	public Connection connect(OutboundRequestHandle handle,
+				  Collection active,
+				  Collection idle)
+	{
+	    if (active == null || idle == null) {
+		throw new NullPointerException();
+	    }
+
+	    /*
+	     * The transport level aspects of all constraints
+	     * supported by this transport provider are always
+	     * satisfied by all open connections, so we don't need to
+	     * consider constraints here.
+	     */
+	    Iterator<?> i = active.iterator();
+	    if (!i.hasNext()) {
+		i = idle.iterator();
+	    }
+	    if (!i.hasNext()) {
+		return null;
+	    }
+	    try {
+		checkAccessPermission();
+	    } catch (SecurityException e) {
+		if (logger.isLoggable(Levels.HANDLED)) {
+		    LogUtil.logThrow(logger, Levels.HANDLED,
+			ConnectionEndpointImpl.class, "connect",
+			"access to reuse connection to {0} denied",
+			new Object[] { path }, e);
+		}
+		return null;
+	    }
+	    Connection c = (Connection) i.next();
+	    if (logger.isLoggable(Level.FINE)) {
+		logger.log(Level.FINE, "reusing connection {0}", c);
+	    }
+	    return c;
+	}
+    }
+
+    /**
+     * Checks that the current security context may connect to Unix
+     * domain sockets.
+     **/
+    private static void checkAccessPermission() {
+	SecurityManager sm = System.getSecurityManager();
+	if (sm != null) {
+	    sm.checkPermission(accessPermission);
+	}
+    }
+
+    /**
+     * Connection implementation.
+     *
+     * Instances of this class should never get exposed to anything
+     * other than our ConnectionManager, which we trust to operate
+     * correctly, so we do not bother to validate request handles
+     * passed in.
+     **/
+    private static class ConnectionImpl implements Connection {
+
+	private final SocketChannel channel;
+
+	ConnectionImpl(SocketChannel channel) {
+	    this.channel = channel;
+	}
+
+	public InputStream getInputStream() {
+	    return Channels.newInputStream(channel);
+	}
+
+	public OutputStream getOutputStream() {
+	    return Channels.newOutputStream(channel);
+	}
+
+	public SocketChannel getChannel() {
+	    return channel;
+	}
+
+	public void populateContext(OutboundRequestHandle handle,
+				    Collection context)
+	{
+	    if (context == null) {
+		throw new NullPointerException();
+	    }
+	}
+
+	public InvocationConstraints
+	    getUnfulfilledConstraints(OutboundRequestHandle handle)
+	{
+	    return ((Handle) handle).getUnfulfilledConstraints();
+	}
+
+	public void writeRequestData(OutboundRequestHandle handle,
+				     OutputStream out)
+	{
+	    if (out == null) {
+		throw new NullPointerException();
+	    }
+	}
+
+	public IOException readResponseData(OutboundRequestHandle handle,
+					    InputStream in)
+	{
+	    if (in == null) {
+		throw new NullPointerException();
+	    }
+	    return null;
+	}
+
+	public void close() {
+	    try {
+		channel.close();
+	    } catch (IOException e) {
+	    }
+
+	    if (logger.isLoggable(Level.FINE)) {
+		logger.log(Level.FINE, "closed channel {0}", channel);
+	    }
+	}
+
+	public String toString() {
+	    return "UnixEndpoint.ConnectionImpl[" + channel + "]";
+	}
+    }
+}
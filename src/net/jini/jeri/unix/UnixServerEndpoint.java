@@ -0,0 +1,558 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.jini.jeri.unix;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.NetPermission;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.jini.core.constraint.InvocationConstraints;
+import net.jini.io.UnsupportedConstraintException;
+import net.jini.jeri.Endpoint;
+import net.jini.jeri.RequestDispatcher;
+import net.jini.jeri.ServerEndpoint;
+import net.jini.jeri.connection.InboundRequestHandle;
+import net.jini.jeri.connection.ServerConnection;
+import net.jini.jeri.connection.ServerConnectionManager;
+import net.jini.security.Security;
+import net.jini.security.SecurityContext;
+import org.apache.river.logging.LogUtil;
+import org.apache.river.thread.Executor;
+import org.apache.river.thread.GetThreadPoolAction;
+
+/**
+ * An implementation of the {@link ServerEndpoint} abstraction that
+ * uses Unix domain sockets for the underlying communication mechanism.
+ *
+ * <p><code>UnixServerEndpoint</code> instances contain the file system
+ * path of the socket to listen on.  Listening creates the socket file
+ * at that path, which must not already exist, and closing the listen
+ * operation removes it again.  Unix domain sockets are available from
+ * Java SE 16 on; on earlier platforms, listen attempts fail with an
+ * <code>IOException</code>.
+ *
+ * <p>Co-located clients avoid the TCP/IP stack entirely, and access to
+ * the socket can be restricted with ordinary file system permissions.
+ *
+ * <p><code>UnixServerEndpoint</code> uses the <a
+ * href="../connection/doc-files/mux.html">Jini extensible remote
+ * invocation (Jini ERI) multiplexing protocol</a> to map incoming
+ * requests to socket connections.
+ *
+ * @see UnixEndpoint
+ * @since 3.0.0
+ **/
+public final class UnixServerEndpoint implements ServerEndpoint {
+
+    /**
+     * pool of threads for executing tasks in system thread group:
+     * used for accept threads
+     **/
+    private static final Executor systemThreadPool =
+	AccessController.doPrivileged(new GetThreadPoolAction(false));
+
+    private static final ServerConnectionManager serverConnectionManager =
+	new ServerConnectionManager();
+
+    /** permission needed to listen on or accept from a Unix socket */
+    private static final NetPermission accessPermission =
+	new NetPermission("accessUnixDomainSocket");
+
+    /** server transport logger */
+    private static final Logger logger =
+	Logger.getLogger("net.jini.jeri.unix.server");
+
+    /** path of the socket to listen on */
+    private final String path;
+
+    /**
+     * Returns a <code>UnixServerEndpoint</code> instance for the given
+     * socket path.
+     *
+     * @param path the file system path of the socket to listen on
+     *
+     * @return a <code>UnixServerEndpoint</code> instance
+     *
+     * @throws NullPointerException if <code>path</code> is
+     * <code>null</code>
+     **/
+    public static UnixServerEndpoint getInstance(String path) {
+	return new UnixServerEndpoint(path);
+    }
+
+    /**
+     * Constructs a new instance.
+     **/
+    private UnixServerEndpoint(String path) {
+	if (path == null) {
+	    throw new NullPointerException();
+	}
+	this.path = path;
+    }
+
+    /**
+     * Returns the path of the socket that this
+     * <code>UnixServerEndpoint</code> listens on.
+     *
+     * @return the path of the socket that this endpoint listens on
+     **/
+    public String getPath() {
+	return path;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException {@inheritDoc}
+     **/
+    public InvocationConstraints checkConstraints(
+	InvocationConstraints constraints)
+	throws UnsupportedConstraintException
+    {
+	return Constraints.check(constraints, true);
+    }
+
+    /**
+     * Passes the {@link net.jini.jeri.ServerEndpoint.ListenEndpoint
+     * ListenEndpoint} for this <code>UnixServerEndpoint</code> to
+     * <code>listenContext</code>, which will ensure an active listen
+     * operation on the endpoint, and returns a
+     * <code>UnixEndpoint</code> instance for the same socket path.
+     *
+     * <p>The <code>ListenEndpoint</code>'s <code>checkPermissions</code>
+     * method checks {@link NetPermission}
+     * <code>("accessUnixDomainSocket")</code> if there is a security
+     * manager.  Its <code>listen</code> method binds a server socket
+     * channel to this endpoint's path and starts a thread that accepts
+     * connections on it.  Accepted requests require the same permission
+     * in the security context of the dispatcher's listen operation.
+     *
+     * <p>Two <code>ListenEndpoint</code>s of this class are equal if
+     * they listen on the same path.
+     *
+     * @param listenContext the <code>ListenContext</code> to pass
+     * this <code>UnixServerEndpoint</code>'s
+     * <code>ListenEndpoint</code> to
+     *
+     * @return the <code>UnixEndpoint</code> instance for sending
+     * requests to this <code>UnixServerEndpoint</code>'s endpoint
+     * being listened on
+     *
+     * @throws IOException if an I/O exception occurs while performing
+     * this operation, such as if the socket path is already in use
+     * or the platform does not support Unix domain sockets
+     *
+     * @throws SecurityException if there is a security manager and
+     * the <code>NetPermission</code> is not granted
+     *
+     * @throws IllegalArgumentException {@inheritDoc}
+     *
+     * @throws NullPointerException {@inheritDoc}
+     **/
+    public Endpoint enumerateListenEndpoints(ListenContext listenContext)
+	throws IOException
+    {
+	if (listenContext == null) {
+	    throw new NullPointerException();
+	}
+
+	LE listenEndpoint = new LE();
+	ListenCookie listenCookie =
+	    listenContext.addListenEndpoint(listenEndpoint);
+
+	if (!(listenCookie instanceof LE.Cookie)) {
+	    throw new IllegalArgumentException();
+	}
+	LE.Cookie cookie = (LE.Cookie) listenCookie;
+	if (!listenEndpoint.equals(cookie.getLE())) {
+	    throw new IllegalArgumentException();
+	}
+
+	return UnixEndpoint.getInstance(path);
+    }
+
+    /**
+     * Returns the hash code value for this
+     * <code>UnixServerEndpoint</code>.
+     *
+     * @return the hash code value for this
+     * <code>UnixServerEndpoint</code>
+     **/
+    public int hashCode() {
+	return path.hashCode();
+    }
+
+    /**
+     * Compares the specified object with this
+     * <code>UnixServerEndpoint</code> for equality.
+     *
+     * <p>This method returns <code>true</code> if and only if the
+     * specified object is also a <code>UnixServerEndpoint</code> with
+     * the same path as this object.
+     *
+     * @param obj the object to compare with
+     *
+     * @return <code>true</code> if <code>obj</code> is equivalent to
+     * this object; <code>false</code> otherwise
+     **/
+    public boolean equals(Object obj) {
+	if (obj == this) {
+	    return true;
+	} else if (!(obj instanceof UnixServerEndpoint)) {
+	    return false;
+	}
+	return path.equals(((UnixServerEndpoint) obj).path);
+    }
+
+    /**
+     * Returns a string representation of this
+     * <code>UnixServerEndpoint</code>.
+     *
+     * @return a string representation of this
+     * <code>UnixServerEndpoint</code>
+     **/
+    public String toString() {
+	return "UnixServerEndpoint[" + path + "]";
+    }
+
+    /**
+     * Checks that the current security context may use Unix domain
+     * sockets.
+     **/
+    private static void checkAccessPermission() {
+	SecurityManager sm = System.getSecurityManager();
+	if (sm != null) {
+	    sm.checkPermission(accessPermission);
+	}
+    }
+
+    /**
+     * ListenEndpoint implementation.
+     **/
+    private class LE implements ListenEndpoint {
+
+	LE() { }
+
+	public void checkPermissions() {
+	    checkAccessPermission();
+	}
+
+	public ListenHandle listen(RequestDispatcher requestDispatcher)
+	    throws IOException
+	{
+	    if (requestDispatcher == null) {
+		throw new NullPointerException();
+	    }
+
+	    ServerSocketChannel channel = UnixSockets.bind(path);
+	    if (logger.isLoggable(Level.FINE)) {
+		logger.log(Level.FINE, "created server channel {0}", channel);
+	    }
+
+	    LH listenHandle = new LH(requestDispatcher, channel, path,
+				     Security.getContext(), new Cookie());
+	    listenHandle.startAccepting();
+	    return listenHandle;
+	}
+
+	// following is required to implement equals:
+	private String getPath() { return path; }
+
+	public int hashCode() {
+	    return path.hashCode();
+	}
+
+	public boolean equals(Object obj) {
+	    if (obj == this) {
+		return true;
+	    } else if (!(obj instanceof LE)) {
+		return false;
+	    }
+	    return path.equals(((LE) obj).getPath());
+	}
+
+	public String toString() {
+	    return "UnixServerEndpoint.LE[" + path + "]";
+	}
+
+	/**
+	 * ListenCookie implementation: identifies a listen operation
+	 * by its listen endpoint, since the socket path is fixed.
+	 **/
+	private class Cookie implements ListenCookie {
+
+	    Cookie() { }
+
+	    LE getLE() { return LE.this; }
+
+	    public String toString() {
+		return "UnixServerEndpoint.LE.Cookie[" + path + "]";
+	    }
+	}
+    }
+
+    /**
+     * ListenHandle implementation: represents a listen operation.
+     **/
+    private static class LH implements ListenHandle {
+
+	private final RequestDispatcher requestDispatcher;
+	private final ServerSocketChannel serverChannel;
+	private final String path;
+	private final SecurityContext securityContext;
+	private final ListenCookie cookie;
+
+	private final Object lock = new Object();
+	private boolean closed = false;
+	private final Set<ServerConnectionImpl> connections =
+	    new HashSet<ServerConnectionImpl>();
+
+	LH(RequestDispatcher requestDispatcher,
+	   ServerSocketChannel serverChannel,
+	   String path,
+	   SecurityContext securityContext,
+	   ListenCookie cookie)
+	{
+	    this.requestDispatcher = requestDispatcher;
+	    this.serverChannel = serverChannel;
+	    this.path = path;
+	    this.securityContext = securityContext;
+	    this.cookie = cookie;
+	}
+
+	/**
+	 * Starts the accept loop.
+	 **/
+	void startAccepting() {
+	    systemThreadPool.execute(new Runnable() {
+		public void run() {
+		    try {
+			executeAcceptLoop();
+		    } finally {
+			close();
+		    }
+		}
+	    }, toString() + " accept loop");
+	}
+
+	/**
+	 * Executes the accept loop.
+	 *
+	 * The accept loop runs with the full privileges of this code;
+	 * the access permission is checked against the direct user of
+	 * this endpoint later, when the ServerConnectionManager calls
+	 * checkPermissions on the InboundRequest before passing it to
+	 * the RequestDispatcher.
+	 **/
+	private void executeAcceptLoop() {
+	    while (true) {
+		SocketChannel channel;
+		try {
+		    channel = serverChannel.accept();
+		} catch (IOException e) {
+		    synchronized (lock) {
+			if (closed) {
+			    return;
+			}
+		    }
+		    if (logger.isLoggable(Level.WARNING)) {
+			LogUtil.logThrow(logger, Level.WARNING,
+			    UnixServerEndpoint.class, "executeAcceptLoop",
+			    "accept loop for {0} throws",
+			    new Object[] { path }, e);
+		    }
+		    if (!serverChannel.isOpen()) {
+			return;
+		    }
+		    continue;
+		}
+		handleAcceptedChannel(channel);
+	    }
+	}
+
+	private void handleAcceptedChannel(SocketChannel channel) {
+	    if (logger.isLoggable(Level.FINE)) {
+		logger.log(Level.FINE,
+		    "accepted channel {0} from server channel {1}",
+		    new Object[]{ channel, path });
+	    }
+
+	    final ServerConnection serverConnection =
+		new ServerConnectionImpl(channel);
+
+	    AccessController.doPrivileged(securityContext.wrap(
+		new PrivilegedAction<Void>() {
+		    public Void run() {
+			serverConnectionManager.handleConnection(
+			    serverConnection, requestDispatcher);
+			return null;
+		    }
+		}), securityContext.getAccessControlContext());
+	}
+
+	/**
+	 * Stops this listen operation and removes the socket file.
+	 **/
+	public void close() {
+	    synchronized (lock) {
+		if (closed) {
+		    return;
+		}
+		closed = true;
+	    }
+
+	    try {
+		serverChannel.close();
+	    } catch (IOException e) {
+	    }
+	    AccessController.doPrivileged(new PrivilegedAction<Void>() {
+		public Void run() {
+		    UnixSockets.unlink(path);
+		    return null;
+		}
+	    });
+	    if (logger.isLoggable(Level.FINE)) {
+		logger.log(Level.FINE, "closed server channel {0}", path);
+	    }
+
+	    /*
+	     * Iterating over connections without synchronization is
+	     * safe at this point because no other thread will access
+	     * it without verifying that closed is false in a
+	     * synchronized block first.
+	     */
+	    for (Iterator<ServerConnectionImpl> i = connections.iterator();
+		 i.hasNext();)
+	    {
+		i.next().close();
+	    }
+	}
+
+	/**
+	 * Returns a cookie to identify this listen operation.
+	 **/
+	public ListenCookie getCookie() {
+	    return cookie;
+	}
+
+	public String toString() {
+	    return "UnixServerEndpoint.LH[" + path + "]";
+	}
+
+	/**
+	 * ServerConnection implementation.
+	 *
+	 * Instances of this class should never get exposed to
+	 * anything other than our ServerConnectionManager, which we
+	 * trust to operate correctly, so we do not bother to validate
+	 * request handles passed in.
+	 **/
+	private class ServerConnectionImpl implements ServerConnection {
+
+	    private final SocketChannel channel;
+
+	    ServerConnectionImpl(SocketChannel channel) {
+		this.channel = channel;
+		addToConnectionSet();
+	    }
+
+	    public InputStream getInputStream() {
+		return Channels.newInputStream(channel);
+	    }
+
+	    public OutputStream getOutputStream() {
+		return Channels.newOutputStream(channel);
+	    }
+
+	    public SocketChannel getChannel() {
+		return channel;
+	    }
+
+	    public InboundRequestHandle processRequestData(InputStream in,
+							   OutputStream out)
+	    {
+		return new InboundRequestHandle() { };
+	    }
+
+	    public void checkPermissions(InboundRequestHandle handle) {
+		checkAccessPermission();
+	    }
+
+	    public InvocationConstraints checkConstraints(
+		InboundRequestHandle handle,
+		InvocationConstraints constraints)
+		throws UnsupportedConstraintException
+	    {
+		return Constraints.check(constraints, true);
+	    }
+
+	    /*
+	     * A Unix domain peer has no network address, so there is
+	     * no ClientHost to add.
+	     */
+	    public void populateContext(InboundRequestHandle handle,
+					Collection context)
+	    {
+		if (context == null) {
+		    throw new NullPointerException();
+		}
+	    }
+
+	    public void close() {
+		try {
+		    channel.close();	// this will bring mux down too
+		} catch (IOException e) {
+		}
+		if (logger.isLoggable(Level.FINE)) {
+		    logger.log(Level.FINE, "closed channel {0}", channel);
+		}
+
+		synchronized (lock) {
+		    if (!closed) {	// must not mutate set after closed
+			connections.remove(this);
+		    }
+		}
+	    }
+
+	    private void addToConnectionSet() {
+		boolean needClose = false;
+		synchronized (lock) {
+		    if (closed) {
+			needClose = true; // close after releasing lock
+		    } else {
+			connections.add(this);
+		    }
+		}
+		if (needClose) {
+		    close();
+		}
+	    }
+	}
+    }
+}
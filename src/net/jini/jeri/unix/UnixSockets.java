@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.jini.jeri.unix;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Access to Unix domain socket channels, which the platform provides
+ * from Java SE 16 on.  They are reached reflectively, so that this
+ * provider can be compiled and loaded on earlier platforms, where its
+ * operations fail with an IOException.
+ **/
+final class UnixSockets {
+
+    /** StandardProtocolFamily.UNIX, or null if not supported */
+    private static final Object unixFamily;
+    /** UnixDomainSocketAddress.of(String) */
+    private static final Method addressOf;
+    /** SocketChannel.open(ProtocolFamily) */
+    private static final Method openChannel;
+    /** ServerSocketChannel.open(ProtocolFamily) */
+    private static final Method openServerChannel;
+    /** ServerSocketChannel.bind(SocketAddress) */
+    private static final Method bind;
+    static {
+	Object family = null;
+	Method of = null, open = null, openServer = null, b = null;
+	try {
+	    Class<?> familyClass = Class.forName("java.net.ProtocolFamily");
+	    Class<?> addressClass =
+		Class.forName("java.net.UnixDomainSocketAddress");
+	    of = addressClass.getMethod("of", new Class<?>[] { String.class });
+	    open = SocketChannel.class.getMethod(
+		"open", new Class<?>[] { familyClass });
+	    openServer = ServerSocketChannel.class.getMethod(
+		"open", new Class<?>[] { familyClass });
+	    b = ServerSocketChannel.class.getMethod(
+		"bind", new Class<?>[] { SocketAddress.class });
+	    family = Class.forName("java.net.StandardProtocolFamily")
+		.getField("UNIX").get(null);
+	} catch (Exception e) {
+	    family = null;
+	}
+	unixFamily = family;
+	addressOf = of;
+	openChannel = open;
+	openServerChannel = openServer;
+	bind = b;
+    }
+
+    private UnixSockets() { throw new AssertionError(); }
+
+    /**
+     * Returns true if this platform supports Unix domain sockets.
+     **/
+    static boolean isSupported() {
+	return unixFamily != null;
+    }
+
+    /**
+     * Returns a blocking channel connected to the socket at the given
+     * path.
+     **/
+    static SocketChannel connect(String path) throws IOException {
+	SocketChannel channel =
+	    (SocketChannel) invoke(openChannel, null, unixFamily);
+	boolean ok = false;
+	try {
+	    channel.connect(address(path));
+	    ok = true;
+	} finally {
+	    if (!ok) {
+		try {
+		    channel.close();
+		} catch (IOException e) {
+		}
+	    }
+	}
+	return channel;
+    }
+
+    /**
+     * Returns a blocking server channel bound to the given path.
+     **/
+    static ServerSocketChannel bind(String path) throws IOException {
+	ServerSocketChannel channel =
+	    (ServerSocketChannel) invoke(openServerChannel, null, unixFamily);
+	boolean ok = false;
+	try {
+	    invoke(bind, channel, address(path));
+	    ok = true;
+	} finally {
+	    if (!ok) {
+		try {
+		    channel.close();
+		} catch (IOException e) {
+		}
+	    }
+	}
+	return channel;
+    }
+
+    /**
+     * Removes the socket file at the given path, which closing the
+     * server channel does not do.
+     **/
+    static void unlink(String path) {
+	new File(path).delete();
+    }
+
+    private static SocketAddress address(String path) throws IOException {
+	return (SocketAddress) invoke(addressOf, null, path);
+    }
+
+    private static Object invoke(Method m, Object target, Object arg)
+	throws IOException
+    {
+	if (unixFamily == null) {
+	    throw new IOException(
+		"Unix domain sockets are not supported by this platform");
+	}
+	try {
+	    return m.invoke(target, new Object[] { arg });
+	} catch (InvocationTargetException e) {
+	    Throwable t = e.getCause();
+	    if (t instanceof IOException) {
+		throw (IOException) t;
+	    } else if (t instanceof RuntimeException) {
+		throw (RuntimeException) t;
+	    } else if (t instanceof Error) {
+		throw (Error) t;
+	    }
+	    IOException ioe = new IOException(t.toString());
+	    ioe.initCause(t);
+	    throw ioe;
+	} catch (IllegalAccessException e) {
+	    throw new AssertionError(e);
+	}
+    }
+}
@@ -84,6 +84,9 @@ import net.jini.security.BasicProxyPreparer;
 import net.jini.security.ProxyPreparer;
 import net.jini.security.TrustVerifier;
 import net.jini.security.proxytrust.ServerProxyTrust;
+import org.apache.river.api.lookup.MarshalledServiceEvent;
+import org.apache.river.api.lookup.MarshalledServiceItem;
+import org.apache.river.api.lookup.MarshalledServiceRegistrar;
 import org.apache.river.thread.FutureObserver;
 import org.apache.river.thread.FutureObserver.ObservableFuture;
 import org.apache.river.thread.DependencyLinker;
@@ -1079,11 +1082,17 @@ public class ServiceDiscoveryManager {
                             + evt.toString());
                 }
                 ServiceEvent theEvent = (ServiceEvent) evt;
+                /* Leave the item marshalled where possible; it may only
+                 * be needed if this lookup service tracks the service.
+                 */
+                ServiceItem item = (theEvent instanceof MarshalledServiceEvent)
+                    ? ((MarshalledServiceEvent) theEvent).getMarshalledServiceItem()
+                    : theEvent.getServiceItem();
 		notifyServiceMap( theEvent.getSource(),
 				  theEvent.getID(),
 				  theEvent.getSequenceNumber(),
 				  theEvent.getServiceID(),
-				  theEvent.getServiceItem(),
+				  item,
 				  theEvent.getTransition() );
             }
 
@@ -1241,18 +1250,25 @@ public class ServiceDiscoveryManager {
                      */
                     ServiceRegistrar proxy = null;
                     ServiceItem item;
+                    boolean notify = false;
                     synchronized (itemReg){
                         item = itemReg.removeProxy(reg.getProxy());//disassociate the LUS
                         if (item != null) {// new LUS chosen to track changes
                             proxy = itemReg.getProxy();
-                            cache.itemMatchMatchChange(srvcID, itemReg, proxy, item, false);
                         } else if (itemReg.hasNoProxys()) {//no more LUSs, remove from map
                             item = itemReg.getFilteredItem();
                             iter.remove();
-                            if (!itemReg.isDiscarded()) cache.removeServiceNotify(item);
+                            notify = !itemReg.isDiscarded();
                         }//endif
                     }
-                    
+                    /* The item may still need unmarshalling, which must not
+                     * happen while holding the itemReg lock.
+                     */
+                    if (proxy != null) {
+                        cache.itemMatchMatchChange(srvcID, itemReg, proxy, item, false);
+                    } else if (notify) {
+                        cache.removeServiceNotify(item);
+                    }//endif
                 }//end loop
                 logger.finest("ServiceDiscoveryManager - ProxyRegDropTask "
                         + "completed");
@@ -1796,6 +1812,14 @@ public class ServiceDiscoveryManager {
                 long delta = eReg.updateSeqNo(seqNo);
                 CacheTask t;
                 if (delta == 1) {//no gap, handle current event
+                    /* An item from a lookup service that is not used to
+                     * track changes to the service is only recorded.
+                     */
+                    if (transition != ServiceRegistrar.TRANSITION_MATCH_NOMATCH
+                            && item != null && recordUntracked(reg, item)) {
+                        return;
+                    }
+                    item = unmarshal(item);
                     /* Fix for Bug ID 4378751. The conditions described by that
                      * bug involve a ServiceItem (corresponding to a previously
                      * discovered service ID) having a null service field. A
@@ -1842,7 +1866,7 @@ public class ServiceDiscoveryManager {
                 // holding an object lock, however holding this lock doesn't
                 // provide an opportunity for DOS as the lock only relates to a specific 
                 // ServiceRegistrar and doesn't interact with client code.
-                matches = proxy.lookup(tmpl, Integer.MAX_VALUE);
+                matches = lookupMarshalled(proxy, tmpl, Integer.MAX_VALUE);
             } catch (Exception e) {
                 // ReRegisterGoodEquals test failure becomes more predictable
                 // when fail is only called if decrement is successful.
@@ -1873,30 +1897,66 @@ public class ServiceDiscoveryManager {
                 }
                 /* removal is performed whilst holding a lock on itemReg.*/
                 ServiceItemReg itemReg = e.getValue();
-                ServiceRegistrar prxy;
+                ServiceRegistrar prxy = null;
                 ServiceItem item;
+                boolean notify = false;
                 synchronized (itemReg){
                     item = itemReg.removeProxy(reg.getProxy());//disassociate the LUS
                     if (item != null) {// new LUS chosen to track changes
                         prxy = itemReg.getProxy();
-                        itemMatchMatchChange(srvcID, itemReg, prxy, item, false);
                     } else if (itemReg.hasNoProxys()) {//no more LUSs, remove from map
                         item = itemReg.getFilteredItem();
                         iter.remove();
-                        if (!itemReg.isDiscarded()) removeServiceNotify(item);
+                        notify = !itemReg.isDiscarded();
                     }//endif
                 }
+                /* Unmarshal, if necessary, without holding the lock */
+                if (prxy != null) {
+                    itemMatchMatchChange(srvcID, itemReg, prxy, item, false);
+                } else if (notify) {
+                    removeServiceNotify(item);
+                }//endif
             }//end loop
             /* 2. Handle "new" and "old" items from the given lookup */
             for (int i = 0, l = (matches.items).length; i < l; i++) {
+                if (recordUntracked(reg, matches.items[i])) {
+                    continue;
+                }
+                ServiceItem item = unmarshal(matches.items[i]);
                 /* Skip items with null service field (Bug 4378751) */
-                if ((matches.items[i]).service == null) {
+                if (item.service == null) {
                     continue;
                 }
-                newOldService(reg,matches.items[i],false);
+                newOldService(reg,item,false);
             }//end loop
         }
 
+        /**
+         * If the given item is still marshalled, and is for a previously
+         * discovered service that is not discarded and whose changes are
+         * tracked by a lookup service other than the given one, records
+         * the item for the given lookup service and returns true.  That is
+         * all newOldService would do with the item, so it is only
+         * unmarshalled if the given lookup service later takes over
+         * tracking the service.  Otherwise returns false.
+         */
+        private boolean recordUntracked(ProxyReg reg, ServiceItem item) {
+            if (!(item instanceof MarshalledServiceItem)) {
+                return false;
+            }
+            ServiceItemReg itemReg = serviceIdMap.get(item.serviceID);
+            if (itemReg == null) {
+                return false;
+            }
+            synchronized (itemReg) {
+                if (itemReg != serviceIdMap.get(item.serviceID)
+                        || itemReg.isDiscarded()) {
+                    return false;
+                }
+                return itemReg.proxyNotUsedToTrackChange(reg.getProxy(), item);
+            }
+        }
+
         /**
          * Method used to  process the service state
          * ("snapshot"), matching this cache's template, retrieved from
@@ -2057,6 +2117,11 @@ public class ServiceDiscoveryManager {
          *
          * This method applies the filter only after the above comparisons and
          * determinations have been completed.
+         *
+         * The new item may still be marshalled, in which case it is
+         * unmarshalled, possibly downloading code, before the itemReg lock
+         * is taken; so the caller must not hold that lock.  The state of the
+         * itemReg is re-validated once the lock has been acquired.
          */
         private void itemMatchMatchChange(
                 ServiceID srvcID,
@@ -2075,6 +2140,10 @@ public class ServiceDiscoveryManager {
             boolean versionChanged = false;
             ServiceRegistrar proxyChanged = null;
             ServiceItem newFilteredItem;
+            assert !Thread.holdsLock(itemReg);
+            /* The item may have been recorded by recordUntracked */
+            newItem = unmarshal(newItem);
+            if (newItem.service == null) return;
             synchronized (itemReg){
                 if (itemReg != serviceIdMap.get(srvcID)) return;
                 notifyServiceRemoved = !itemReg.isDiscarded();
@@ -3046,7 +3115,7 @@ public class ServiceDiscoveryManager {
             ServiceItem sItem = null;
             try {
                 int maxMatches = ((filter != null) ? Integer.MAX_VALUE : 1);
-                ServiceMatches sm = proxy.lookup(tmpl, maxMatches);
+                ServiceMatches sm = lookupMarshalled(proxy, tmpl, maxMatches);
                 sItem = getMatchedServiceItem(sm, filter);
             } catch (Exception e) {
                 logger.log(Level.INFO,
@@ -3446,7 +3515,7 @@ public class ServiceDiscoveryManager {
                         max = Integer.MAX_VALUE;
                     }
                     /* Query the current lookup for matching service(s). */
-                    ServiceMatches sm = proxy.lookup(tmpl, max);
+                    ServiceMatches sm = lookupMarshalled(proxy, tmpl, max);
                     int nItems = sm.items.length;
                     if (nItems == 0) {
                         continue;//no matches, query next lookup
@@ -3463,6 +3532,7 @@ public class ServiceDiscoveryManager {
                         if (sItem == null) {
                             continue;
                         }
+                        sItem = unmarshal(sItem);
                         if (!filterPassed(sItem, filter)) {
                             continue;
                         }
@@ -3694,6 +3764,7 @@ public class ServiceDiscoveryManager {
             for (int i = 0; i < len; i++) {
                 ServiceItem sItem = sm.items[(i + rand) % len];
                 if (sItem == null) continue;
+                sItem = unmarshal(sItem);
                 if (!filterPassed(sItem, filter))  continue;
                 return sItem;
             }//end loop
@@ -3979,6 +4050,33 @@ public class ServiceDiscoveryManager {
         return init;
     }//end init
 
+    /**
+     * Queries the given lookup service like its <code>lookup</code> method,
+     * but leaving the service and attribute sets of the returned items
+     * marshalled if the lookup service supports that.  The items must be
+     * passed to {@link #unmarshal unmarshal} before anything other than
+     * their service IDs is used.
+     */
+    private static ServiceMatches lookupMarshalled(ServiceRegistrar proxy,
+            ServiceTemplate tmpl, int maxMatches) throws RemoteException {
+        if (proxy instanceof MarshalledServiceRegistrar) {
+            return ((MarshalledServiceRegistrar) proxy).lookupMarshalled(
+                    tmpl, maxMatches);
+        }
+        return proxy.lookup(tmpl, maxMatches);
+    }
+
+    /**
+     * Returns the given item, unmarshalled if it is a
+     * <code>MarshalledServiceItem</code>.
+     */
+    private static ServiceItem unmarshal(ServiceItem item) {
+        if (item instanceof MarshalledServiceItem) {
+            return ((MarshalledServiceItem) item).unmarshal();
+        }
+        return item;
+    }
+
     /**
      * Applies the given <code>filter</code> to the given <code>item</code>, and
      * returns <code>true</code> if the <code>filter</code> returns a
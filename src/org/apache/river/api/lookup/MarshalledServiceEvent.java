@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.api.lookup;
+
+import net.jini.core.lookup.ServiceItem;
+import org.apache.river.api.common.Beta;
+
+/**
+ * Implemented by {@link net.jini.core.lookup.ServiceEvent} subclasses
+ * that can provide the new state of the service item without
+ * unmarshalling its service proxy and attribute sets.
+ *
+ * @see MarshalledServiceItem
+ * @since 3.0.0
+ */
+@Beta
+public interface MarshalledServiceEvent {
+
+    /**
+     * Returns the new state of the service item like {@link
+     * net.jini.core.lookup.ServiceEvent#getServiceItem getServiceItem},
+     * but as a {@link MarshalledServiceItem} if it has not been
+     * unmarshalled yet.  Does not return a copy, so the caller must not
+     * modify the result.
+     *
+     * @return the new state of the service item, or <code>null</code> if
+     * the service item was deleted from the lookup service
+     */
+    ServiceItem getMarshalledServiceItem();
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.api.lookup;
+
+import java.io.ObjectStreamException;
+import net.jini.core.entry.Entry;
+import net.jini.core.lookup.ServiceID;
+import net.jini.core.lookup.ServiceItem;
+import org.apache.river.api.common.Beta;
+
+/**
+ * A <code>ServiceItem</code> whose service proxy and attribute sets are
+ * kept in marshalled form and only unmarshalled when first asked for, so
+ * that a client that discards the item, or only looks at its service ID
+ * or at the attribute sets of one type, does not pay for unmarshalling
+ * (and downloading the classes of) the rest.
+ * <p>
+ * The public <code>service</code> and <code>attributeSets</code> fields
+ * are <code>null</code> until {@link #getService getService} and
+ * {@link #getEntries() getEntries} (or {@link #unmarshal unmarshal}) have
+ * been called, after which they hold the unmarshalled values; code that
+ * reads those fields directly should be given the result of
+ * <code>unmarshal</code> instead.  As with the items returned by
+ * {@link net.jini.core.lookup.ServiceRegistrar#lookup
+ * ServiceRegistrar.lookup}, a service that cannot be unmarshalled is
+ * <code>null</code>, as is an attribute set that cannot be unmarshalled.
+ * Unmarshalling uses the context class loader of the thread that first
+ * asks for each value.  An instance is serialized as the
+ * <code>ServiceItem</code> returned by <code>unmarshal</code>.
+ *
+ * @see MarshalledServiceRegistrar
+ * @see MarshalledServiceEvent
+ * @since 3.0.0
+ */
+@Beta
+public abstract class MarshalledServiceItem extends ServiceItem {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Whether the service has been unmarshalled. */
+    private transient boolean serviceDone;
+    /** The attribute sets unmarshalled so far, or null if none. */
+    private transient Entry[] entries;
+    /** Whether each attribute set has been unmarshalled. */
+    private transient boolean[] entryDone;
+    /** The unmarshalled item, once created. */
+    private transient ServiceItem unmarshalled;
+
+    /**
+     * Creates an instance with the given service ID.
+     *
+     * @param serviceID the service ID
+     */
+    protected MarshalledServiceItem(ServiceID serviceID) {
+	super(serviceID, null, null);
+    }
+
+    /**
+     * Returns the service proxy, unmarshalling it if this is the first
+     * call.
+     *
+     * @return the service proxy, or <code>null</code> if it cannot be
+     * unmarshalled
+     */
+    public final synchronized Object getService() {
+	if (!serviceDone) {
+	    service = unmarshalService();
+	    serviceDone = true;
+	}
+	return service;
+    }
+
+    /**
+     * Returns all of the attribute sets, unmarshalling those not
+     * unmarshalled by earlier calls.
+     *
+     * @return a new array of the attribute sets, with <code>null</code>
+     * elements for those that cannot be unmarshalled
+     */
+    public final synchronized Entry[] getEntries() {
+	int n = entryCount();
+	for (int i = 0; i < n; i++) {
+	    getEntry(i);
+	}
+	if (attributeSets == null) {
+	    attributeSets = entries != null ? entries : new Entry[0];
+	}
+	return attributeSets.clone();
+    }
+
+    /**
+     * Returns the attribute sets that are instances of the given type,
+     * unmarshalling only those, and only if not unmarshalled by earlier
+     * calls.
+     *
+     * @param type the type of attribute set
+     * @return a new array of the matching attribute sets that could be
+     * unmarshalled
+     */
+    public final synchronized Entry[] getEntries(Class<? extends Entry> type)
+    {
+	int n = entryCount();
+	Entry[] result = new Entry[n];
+	int count = 0;
+	for (int i = 0; i < n; i++) {
+	    if (!isEntryOfType(i, type)) {
+		continue;
+	    }
+	    Entry e = getEntry(i);
+	    if (type.isInstance(e)) {
+		result[count++] = e;
+	    }
+	}
+	Entry[] trimmed = new Entry[count];
+	System.arraycopy(result, 0, trimmed, 0, count);
+	return trimmed;
+    }
+
+    /**
+     * Returns a plain <code>ServiceItem</code> with this item's service ID,
+     * service and attribute sets, unmarshalling anything not unmarshalled
+     * by earlier calls.  The same instance is returned by every call.
+     *
+     * @return the unmarshalled item
+     */
+    public final synchronized ServiceItem unmarshal() {
+	if (unmarshalled == null) {
+	    unmarshalled = new ServiceItem(serviceID, getService(),
+					   getEntries());
+	}
+	return unmarshalled;
+    }
+
+    /**
+     * Returns a clone of the result of {@link #unmarshal unmarshal}.
+     *
+     * @return a deep copy of the unmarshalled item
+     */
+    @Override
+    public ServiceItem clone() {
+	return unmarshal().clone();
+    }
+
+    private Entry getEntry(int index) {
+	if (entries == null) {
+	    int n = entryCount();
+	    entries = new Entry[n];
+	    entryDone = new boolean[n];
+	}
+	if (!entryDone[index]) {
+	    entries[index] = unmarshalEntry(index);
+	    entryDone[index] = true;
+	}
+	return entries[index];
+    }
+
+    /**
+     * Unmarshals the service proxy.  Called at most once.
+     *
+     * @return the service proxy, or <code>null</code> if it cannot be
+     * unmarshalled
+     */
+    protected abstract Object unmarshalService();
+
+    /**
+     * Returns the number of attribute sets.
+     *
+     * @return the number of attribute sets
+     */
+    protected abstract int entryCount();
+
+    /**
+     * Returns <code>false</code> if the attribute set at the given index
+     * is known not to be an instance of the given type, without
+     * unmarshalling it, and <code>true</code> otherwise.
+     *
+     * @param index the index of the attribute set
+     * @param type the type of attribute set
+     * @return <code>false</code> if the attribute set is not of the type
+     */
+    protected abstract boolean isEntryOfType(int index,
+					     Class<? extends Entry> type);
+
+    /**
+     * Unmarshals the attribute set at the given index.  Called at most
+     * once for each index.
+     *
+     * @param index the index of the attribute set
+     * @return the attribute set, or <code>null</code> if it cannot be
+     * unmarshalled
+     */
+    protected abstract Entry unmarshalEntry(int index);
+
+    /**
+     * Replaces this instance with the result of {@link #unmarshal
+     * unmarshal} when serialized.
+     *
+     * @return the unmarshalled item
+     * @throws ObjectStreamException never
+     */
+    protected final Object writeReplace() throws ObjectStreamException {
+	return unmarshal();
+    }
+}
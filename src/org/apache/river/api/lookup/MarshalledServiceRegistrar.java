@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.api.lookup;
+
+import java.rmi.RemoteException;
+import net.jini.core.lookup.ServiceMatches;
+import net.jini.core.lookup.ServiceTemplate;
+import org.apache.river.api.common.Beta;
+
+/**
+ * Implemented by lookup service proxies that can return the results of a
+ * lookup without unmarshalling the matching service proxies and attribute
+ * sets.
+ *
+ * @see MarshalledServiceItem
+ * @since 3.0.0
+ */
+@Beta
+public interface MarshalledServiceRegistrar {
+
+    /**
+     * Behaves like {@link
+     * net.jini.core.lookup.ServiceRegistrar#lookup(ServiceTemplate,int)
+     * ServiceRegistrar.lookup}, except that the elements of the
+     * <code>items</code> field of the result are {@link
+     * MarshalledServiceItem} instances, which unmarshal the service and
+     * the attribute sets only when asked for them.
+     *
+     * @param tmpl template to match
+     * @param maxMatches maximum number of elements in the returned items
+     * @return the matching items, in marshalled form
+     * @throws RemoteException if a communication-related exception occurs
+     */
+    ServiceMatches lookupMarshalled(ServiceTemplate tmpl, int maxMatches)
+	throws RemoteException;
+}
@@ -0,0 +1,468 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.api.net;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.AccessController;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivilegedAction;
+import java.security.PrivilegedExceptionAction;
+import java.security.PrivilegedActionException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.river.action.GetLongAction;
+import org.apache.river.action.GetPropertyAction;
+
+/**
+ * An on-disk, content-addressed cache of codebase JAR files, consulted by
+ * {@link RFC3986URLClassLoader} before it downloads a remote JAR.
+ * <p>
+ * <code>httpmd:</code> JAR files are keyed by the message digest carried in
+ * the URL; the digest of the downloaded content is checked before the entry
+ * is committed to the cache, so a cache hit needs neither a network round
+ * trip nor a second pass over the content. Plain <code>http:</code> and
+ * <code>https:</code> JAR files are keyed by the URL and the entity tag
+ * returned by the server, or its last modification time if it sends no
+ * entity tag, and are revalidated with a conditional request. A response
+ * with neither validator cannot be revalidated, so it is not kept: its body
+ * is written to a {@linkplain #isTransient transient} file, which the caller
+ * deletes once opened, rather than downloaded a second time by the
+ * <code>jar:</code> URL handler.
+ * <p>
+ * The cache is disabled unless the
+ * <code>org.apache.river.api.net.codebaseCache.dir</code> system property
+ * names a directory. The total size of cached content is bounded by
+ * <code>org.apache.river.api.net.codebaseCache.maxSize</code> (in bytes,
+ * 256MB by default); least recently used entries are evicted once a new
+ * entry takes the cache over that bound. Several JVMs may share the same
+ * directory: entries are written to a temporary file and renamed into place.
+ *
+ * @since 3.0.0
+ */
+final class CodebaseCache {
+
+    private static final Logger logger =
+            Logger.getLogger(CodebaseCache.class.getName());
+
+    private static final String JAR_SUFFIX = ".jar"; //$NON-NLS-1$
+    private static final String ETAG_SUFFIX = ".etag"; //$NON-NLS-1$
+    private static final String TMP_SUFFIX = ".tmp"; //$NON-NLS-1$
+    /** Marks a recorded Last-Modified value; entity tags start with a quote */
+    private static final String LAST_MODIFIED_PREFIX = "lm:"; //$NON-NLS-1$
+    private static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+
+    private static final CodebaseCache instance = create();
+
+    private final File dir;
+    private final long maxSize;
+
+    CodebaseCache(File dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cache configured by system properties, or null if
+     * caching is disabled.
+     */
+    static CodebaseCache getInstance() {
+        return instance;
+    }
+
+    private static CodebaseCache create() {
+        String path = AccessController.doPrivileged(new GetPropertyAction(
+                "org.apache.river.api.net.codebaseCache.dir")); //$NON-NLS-1$
+        if (path == null || path.trim().length() == 0) {
+            return null;
+        }
+        long max = AccessController.doPrivileged(new GetLongAction(
+                "org.apache.river.api.net.codebaseCache.maxSize", //$NON-NLS-1$
+                DEFAULT_MAX_SIZE)).longValue();
+        final File d = new File(path.trim());
+        boolean ok = AccessController.doPrivileged(
+                new PrivilegedAction<Boolean>() {
+                    @Override
+                    public Boolean run() {
+                        return Boolean.valueOf(d.isDirectory() || d.mkdirs());
+                    }
+                }).booleanValue();
+        if (!ok) {
+            logger.log(Level.WARNING,
+                    "codebase cache directory {0} is not usable, cache disabled", //$NON-NLS-1$
+                    d);
+            return null;
+        }
+        return new CodebaseCache(d, max);
+    }
+
+    /**
+     * Returns a local copy of the JAR file at the specified URL, downloading
+     * it into the cache if necessary, or null if the URL cannot be cached.
+     * A {@linkplain #isTransient transient} copy is not part of the cache
+     * and must be deleted by the caller.
+     * The network connection, if any, is made with the caller's access
+     * control context; only access to the cache directory is privileged.
+     *
+     * @param jarURL the URL of a JAR file
+     * @return the cached file, or null
+     * @throws IOException if the JAR file cannot be downloaded, or its
+     * content does not match an <code>httpmd:</code> digest
+     */
+    File get(URL jarURL) throws IOException {
+        String protocol = jarURL.getProtocol().toLowerCase(Locale.ENGLISH);
+        if (protocol.equals("httpmd")) { //$NON-NLS-1$
+            return getDigested(jarURL);
+        } else if (protocol.equals("http") || protocol.equals("https")) { //$NON-NLS-1$ //$NON-NLS-2$
+            return getTagged(jarURL);
+        }
+        return null;
+    }
+
+    private File getDigested(URL jarURL) throws IOException {
+        String path = jarURL.getPath();
+        int semi = path.lastIndexOf(';');
+        int eq = path.indexOf('=', semi + 1);
+        if (semi < 0 || eq < 0) return null;
+        String algorithm = path.substring(semi + 1, eq);
+        int comma = path.indexOf(',', eq + 1);
+        String digest = (comma < 0 ? path.substring(eq + 1)
+                : path.substring(eq + 1, comma)).toLowerCase(Locale.ENGLISH);
+        if (!isToken(algorithm) || !isHex(digest)) return null;
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+        File file = new File(dir, "md-" + algorithm.toUpperCase(Locale.ENGLISH) //$NON-NLS-1$
+                + '-' + digest + JAR_SUFFIX);
+        if (touch(file)) {
+            if (logger.isLoggable(Level.FINEST)) {
+                logger.log(Level.FINEST, "codebase cache hit {0}", jarURL); //$NON-NLS-1$
+            }
+            return file;
+        }
+        DigestInputStream in = new DigestInputStream(jarURL.openStream(), md);
+        File tmp = store(in);
+        if (!digest.equals(hex(md.digest()))) {
+            delete(tmp);
+            throw new IOException("message digest mismatch for " + jarURL); //$NON-NLS-1$
+        }
+        return commit(tmp, file);
+    }
+
+    private File getTagged(URL jarURL) throws IOException {
+        String key = jarURL.toExternalForm();
+        File index = new File(dir, "url-" + sha(key) + ETAG_SUFFIX); //$NON-NLS-1$
+        String tag = readTag(index);
+        File file = tag == null ? null : taggedFile(key, tag);
+        if (file != null && !exists(file)) {
+            tag = null;
+            file = null;
+        }
+        URLConnection conn = jarURL.openConnection();
+        if (!(conn instanceof HttpURLConnection)) return null;
+        HttpURLConnection hconn = (HttpURLConnection) conn;
+        hconn.setUseCaches(false);
+        if (tag != null) {
+            if (tag.startsWith(LAST_MODIFIED_PREFIX)) {
+                hconn.setRequestProperty("If-Modified-Since", //$NON-NLS-1$
+                        tag.substring(LAST_MODIFIED_PREFIX.length()));
+            } else {
+                hconn.setRequestProperty("If-None-Match", tag); //$NON-NLS-1$
+            }
+        }
+        int code = hconn.getResponseCode();
+        if (code == HttpURLConnection.HTTP_NOT_MODIFIED && file != null) {
+            hconn.disconnect();
+            touch(file);
+            if (logger.isLoggable(Level.FINEST)) {
+                logger.log(Level.FINEST, "codebase cache hit {0}", jarURL); //$NON-NLS-1$
+            }
+            return file;
+        }
+        if (code != HttpURLConnection.HTTP_OK) {
+            // Let the jar: handler report the failure.
+            hconn.disconnect();
+            return null;
+        }
+        String newTag = hconn.getHeaderField("ETag"); //$NON-NLS-1$
+        if (newTag == null) {
+            String modified = hconn.getHeaderField("Last-Modified"); //$NON-NLS-1$
+            if (modified != null) newTag = LAST_MODIFIED_PREFIX + modified;
+        }
+        if (newTag == null) {
+            // Cannot be revalidated, so no later lookup could find it, but
+            // the body is already on its way; hand it over uncached.
+            return store(hconn.getInputStream());
+        }
+        File tmp = store(hconn.getInputStream());
+        File result = commit(tmp, taggedFile(key, newTag));
+        writeTag(index, newTag);
+        return result;
+    }
+
+    /**
+     * Returns true if the specified file, returned by {@link #get get}, is a
+     * transient copy that is not held by the cache.
+     */
+    boolean isTransient(File file) {
+        return file.getName().endsWith(TMP_SUFFIX);
+    }
+
+    private File taggedFile(String key, String tag) {
+        return new File(dir, "etag-" + sha(key + '\n' + tag) + JAR_SUFFIX); //$NON-NLS-1$
+    }
+
+    /**
+     * Copies the stream into a new temporary file in the cache directory,
+     * closing the stream.
+     */
+    private File store(final InputStream in) throws IOException {
+        try {
+            return AccessController.doPrivileged(
+                    new PrivilegedExceptionAction<File>() {
+                        @Override
+                        public File run() throws IOException {
+                            File tmp = File.createTempFile("dl-", TMP_SUFFIX, dir); //$NON-NLS-1$
+                            OutputStream out = new FileOutputStream(tmp);
+                            try {
+                                byte[] buf = new byte[8192];
+                                int n;
+                                while ((n = in.read(buf)) != -1) {
+                                    out.write(buf, 0, n);
+                                }
+                            } catch (IOException e) {
+                                out.close();
+                                tmp.delete();
+                                throw e;
+                            } finally {
+                                out.close();
+                                in.close();
+                            }
+                            return tmp;
+                        }
+                    });
+        } catch (PrivilegedActionException e) {
+            throw (IOException) e.getCause();
+        }
+    }
+
+    /**
+     * Renames a completely written temporary file to its final name and
+     * evicts old entries if the cache has grown past its bound.
+     */
+    private File commit(final File tmp, final File file) {
+        AccessController.doPrivileged(new PrivilegedAction<Void>() {
+            @Override
+            public Void run() {
+                // Content addressed: if another JVM won the race the
+                // existing file is identical.
+                if (!tmp.renameTo(file)) {
+                    tmp.delete();
+                }
+                evict(file);
+                return null;
+            }
+        });
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "codebase cache stored {0}", file); //$NON-NLS-1$
+        }
+        return file;
+    }
+
+    /* Called with privileges. */
+    private void evict(File keep) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        long total = 0;
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].getName().endsWith(JAR_SUFFIX)) {
+                total += files[i].length();
+            }
+        }
+        if (total <= maxSize) return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long la = a.lastModified();
+                long lb = b.lastModified();
+                return la < lb ? -1 : (la == lb ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && total > maxSize; i++) {
+            File f = files[i];
+            if (f.equals(keep) || !f.getName().endsWith(JAR_SUFFIX)) continue;
+            long len = f.length();
+            // May fail on platforms that lock open files; skip those.
+            if (f.delete()) {
+                total -= len;
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.log(Level.FINE, "codebase cache evicted {0}", f); //$NON-NLS-1$
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the file as recently used, returns false if it does not exist.
+     */
+    private static boolean touch(final File file) {
+        return AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+            @Override
+            public Boolean run() {
+                return Boolean.valueOf(file.isFile()
+                        && file.setLastModified(System.currentTimeMillis()));
+            }
+        }).booleanValue();
+    }
+
+    private static boolean exists(final File file) {
+        return AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+            @Override
+            public Boolean run() {
+                return Boolean.valueOf(file.isFile());
+            }
+        }).booleanValue();
+    }
+
+    private static void delete(final File file) {
+        AccessController.doPrivileged(new PrivilegedAction<Void>() {
+            @Override
+            public Void run() {
+                file.delete();
+                return null;
+            }
+        });
+    }
+
+    private static String readTag(final File index) {
+        return AccessController.doPrivileged(new PrivilegedAction<String>() {
+            @Override
+            public String run() {
+                if (!index.isFile()) return null;
+                try {
+                    Reader r = new InputStreamReader(
+                            new FileInputStream(index), "UTF-8"); //$NON-NLS-1$
+                    try {
+                        StringBuilder sb = new StringBuilder();
+                        char[] buf = new char[256];
+                        int n;
+                        while ((n = r.read(buf)) != -1) {
+                            sb.append(buf, 0, n);
+                        }
+                        return sb.length() == 0 ? null : sb.toString();
+                    } finally {
+                        r.close();
+                    }
+                } catch (IOException e) {
+                    return null;
+                }
+            }
+        });
+    }
+
+    private void writeTag(final File index, final String etag) {
+        AccessController.doPrivileged(new PrivilegedAction<Void>() {
+            @Override
+            public Void run() {
+                try {
+                    File tmp = File.createTempFile("tag-", TMP_SUFFIX, dir); //$NON-NLS-1$
+                    Writer w = new OutputStreamWriter(
+                            new FileOutputStream(tmp), "UTF-8"); //$NON-NLS-1$
+                    try {
+                        w.write(etag);
+                    } finally {
+                        w.close();
+                    }
+                    if (!tmp.renameTo(index)) {
+                        // Windows will not rename over an existing file.
+                        index.delete();
+                        if (!tmp.renameTo(index)) tmp.delete();
+                    }
+                } catch (IOException e) {
+                    logger.log(Level.FINE, "unable to record entity tag", e); //$NON-NLS-1$
+                }
+                return null;
+            }
+        });
+    }
+
+    private static boolean isToken(String s) {
+        if (s.length() == 0) return false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '-' || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHex(String s) {
+        if (s.length() == 0) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.digit(s.charAt(i), 16) < 0) return false;
+        }
+        return true;
+    }
+
+    private static String hex(byte[] b) {
+        StringBuilder sb = new StringBuilder(b.length * 2);
+        for (int i = 0; i < b.length; i++) {
+            sb.append(Character.forDigit((b[i] >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b[i] & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static String sha(String s) {
+        try {
+            return hex(sha256().digest(s.getBytes("UTF-8"))); //$NON-NLS-1$
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -44,6 +44,8 @@ import java.security.AccessController;
 import java.security.CodeSource;
 import java.security.Permission;
 import java.security.PrivilegedAction;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
 import java.security.cert.Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -64,6 +66,7 @@ import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.ZipFile;
 
 import org.apache.river.impl.Messages;
 
@@ -1284,10 +1287,13 @@ public class RFC3986URLClassLoader extends java.net.URLClassLoader {
         try {
             URL jarURL = ((JarURLConnection) url
                     .openConnection()).getJarFileURL();
-            JarURLConnection juc = (JarURLConnection) new URL(
-                    "jar", "", //$NON-NLS-1$ //$NON-NLS-2$
-                    jarURL.toExternalForm() + "!/").openConnection(); //$NON-NLS-1$
-            JarFile jf = juc.getJarFile();
+            JarFile jf = getCachedJarFile(jarURL);
+            if (jf == null) {
+                JarURLConnection juc = (JarURLConnection) new URL(
+                        "jar", "", //$NON-NLS-1$ //$NON-NLS-2$
+                        jarURL.toExternalForm() + "!/").openConnection(); //$NON-NLS-1$
+                jf = juc.getJarFile();
+            }
             URLJarHandler jarH = new URLJarHandler(url, jarURL, jf, prefixName, this);
 
             if (jarH.getIndex() == null) {
@@ -1309,6 +1315,46 @@ public class RFC3986URLClassLoader extends java.net.URLClassLoader {
         return null;
     }
 
+    /**
+     * Returns the JAR file at the specified URL from the local codebase
+     * cache, or null if the cache is disabled or cannot hold this URL.
+     * The code source of classes loaded from it remains jarURL.  Failures
+     * are left to the jar: URL handler to report.
+     */
+    private static JarFile getCachedJarFile(URL jarURL) {
+        final CodebaseCache cache = CodebaseCache.getInstance();
+        if (cache == null) {
+            return null;
+        }
+        try {
+            final File file = cache.get(jarURL);
+            if (file == null) {
+                return null;
+            }
+            return AccessController.doPrivileged(
+                    new PrivilegedExceptionAction<JarFile>() {
+                        @Override
+                        public JarFile run() throws IOException {
+                            if (cache.isTransient(file)) {
+                                try {
+                                    return new JarFile(file, true,
+                                        ZipFile.OPEN_READ | ZipFile.OPEN_DELETE);
+                                } catch (IOException e) {
+                                    file.delete();
+                                    throw e;
+                                }
+                            }
+                            return new JarFile(file);
+                        }
+                    });
+        } catch (PrivilegedActionException e) {
+            logger.log(Level.FINE, "unable to open cached " + jarURL, e.getCause());
+        } catch (IOException e) {
+            logger.log(Level.FINE, "unable to cache " + jarURL, e);
+        }
+        return null;
+    }
+
     /**
      * Defines a new package using the information extracted from the specified
      * manifest.
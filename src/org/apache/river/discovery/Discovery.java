@@ -21,6 +21,7 @@ package org.apache.river.discovery;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import net.jini.core.constraint.InvocationConstraints;
 import net.jini.io.UnsupportedConstraintException;
@@ -351,6 +352,37 @@ public abstract class Discovery {
     {
 	return decodeMulticastAnnouncement(packet, constraints);
     }
+
+    /**
+     * Reads the service ID and sequence number of the multicast announcement
+     * contained in the given buffer into the given summary, and computes the
+     * summary's fingerprint, without decoding the announcement or checking
+     * any constraints.  This allows a caller to recognize an announcement
+     * whose content it has already decoded and acted upon, without
+     * allocating any objects; announcements not recognized this way should
+     * be decoded normally using {@link
+     * Discovery#decodeMulticastAnnouncement(DatagramPacket,
+     * InvocationConstraints, boolean) decodeMulticastAnnouncement}.
+     * <p><code>Discovery</code> implements this method to simply return
+     * <code>false</code>.
+     *
+     * @param buf a buffer containing the packet data, which begins at the
+     * buffer's current position and ends at its limit.  The position of
+     * <code>buf</code> may be changed by this method.
+     * @param summary the summary to reset and fill in
+     * @return <code>true</code> if the summary was filled in, or
+     * <code>false</code> if the packet format is not supported or the data
+     * could not be interpreted
+     * @throws NullPointerException if <code>buf</code> or
+     * <code>summary</code> is <code>null</code>
+     * @since 3.0.0
+     */
+    public boolean peekMulticastAnnouncement(
+					ByteBuffer buf,
+					MulticastAnnouncementSummary summary)
+    {
+	return false;
+    }
     
     /**
      * Performs the client side of unicast discovery, obtaining the returned
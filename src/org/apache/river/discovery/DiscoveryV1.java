@@ -363,6 +363,43 @@ class DiscoveryV1 extends Discovery {
 	}
     }
 
+    public boolean peekMulticastAnnouncement(
+					ByteBuffer buf,
+					MulticastAnnouncementSummary summary)
+    {
+	summary.reset();
+	try {
+	    if (buf.getInt() != PROTOCOL_VERSION_1) {
+		return false;
+	    }
+	    summary.update(PROTOCOL_VERSION_1);
+	    int start = buf.position();
+
+	    // skip LUS host and port
+	    Plaintext.skipUtf(buf);
+	    buf.getInt();
+
+	    // read LUS service ID
+	    long hi = buf.getLong();
+	    long lo = buf.getLong();
+
+	    // skip LUS member groups
+	    int ngroups = buf.getInt();
+	    if (ngroups < 0 || ngroups > buf.remaining() / 2) {
+		return false;
+	    }
+	    for (int i = 0; i < ngroups; i++) {
+		Plaintext.skipUtf(buf);
+	    }
+
+	    summary.setServiceID(hi, lo);
+	    summary.update(buf, start, buf.position());
+	    return true;
+	} catch (RuntimeException e) {
+	    return false;
+	}
+    }
+
     public UnicastResponse doUnicastDiscovery(
 					Socket socket,
 					InvocationConstraints constraints,
@@ -87,6 +87,12 @@ class DiscoveryV2 extends Discovery {
 	Logger.getLogger(DiscoveryV2.class.getName());
 
     private final Map[] formatIdMaps;
+    /*
+     * Format IDs and decoders of peekable announcement formats, searched
+     * linearly so that peeking does not box the format ID.
+     */
+    private final long[] peekFormatIds;
+    private final PeekableMulticastAnnouncementDecoder[] peekDecoders;
 
     /**
      * Returns DiscoveryV2 instance which uses providers loaded from the given
@@ -147,6 +153,25 @@ class DiscoveryV2 extends Discovery {
 	for (int i = 0; i < formatIdMaps.length; i++) {
 	    formatIdMaps[i] = makeFormatIdMap(providers[i]);
 	}
+	List<Long> fids = new ArrayList<Long>();
+	List<PeekableMulticastAnnouncementDecoder> decoders =
+	    new ArrayList<PeekableMulticastAnnouncementDecoder>();
+	for (Iterator<?> i = formatIdMaps[MULTICAST_ANNOUNCEMENT_DECODER].
+		 entrySet().iterator(); i.hasNext(); )
+	{
+	    Map.Entry<?,?> ent = (Map.Entry<?,?>) i.next();
+	    if (ent.getValue() instanceof PeekableMulticastAnnouncementDecoder) {
+		fids.add((Long) ent.getKey());
+		decoders.add(
+		    (PeekableMulticastAnnouncementDecoder) ent.getValue());
+	    }
+	}
+	peekFormatIds = new long[fids.size()];
+	for (int i = 0; i < peekFormatIds.length; i++) {
+	    peekFormatIds[i] = fids.get(i).longValue();
+	}
+	peekDecoders = decoders.toArray(
+	    new PeekableMulticastAnnouncementDecoder[decoders.size()]);
     }
 
     public EncodeIterator encodeMulticastRequest(
@@ -388,6 +413,28 @@ class DiscoveryV2 extends Discovery {
 	// default behavior is no delayed constraint checking.
 	return decodeMulticastAnnouncement(packet, constraints, false);
     }
+
+    public boolean peekMulticastAnnouncement(
+					ByteBuffer buf,
+					MulticastAnnouncementSummary summary)
+    {
+	summary.reset();
+	if (buf.remaining() < MULTICAST_HEADER_LEN ||
+	    buf.getInt() != PROTOCOL_VERSION_2 ||
+	    buf.get() != MULTICAST_ANNOUNCEMENT)
+	{
+	    return false;
+	}
+	long fid = buf.getLong();
+	for (int i = 0; i < peekFormatIds.length; i++) {
+	    if (peekFormatIds[i] == fid) {
+		summary.update(PROTOCOL_VERSION_2);
+		summary.update(fid);
+		return peekDecoders[i].peekMulticastAnnouncement(buf, summary);
+	    }
+	}
+	return false;
+    }
     
     public UnicastResponse doUnicastDiscovery(
 					Socket socket,
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.discovery;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Holds the identifying fields of a multicast announcement, as read directly
+ * from the packet data by {@link Discovery#peekMulticastAnnouncement
+ * Discovery.peekMulticastAnnouncement} without decoding the announcement.
+ * Besides the lookup service's service ID and the sequence number, a
+ * summary contains a 64-bit fingerprint of the announcement content other
+ * than the sequence number, such as the host, port and member groups, and
+ * the format in which it was encoded.  Two announcements with the same
+ * fingerprint can be assumed to carry the same information.
+ * <p>
+ * Instances are mutable so that a single instance can be reused for every
+ * packet received; they are not safe for use by multiple threads.  The
+ * fingerprint is not a message digest and provides no protection against
+ * deliberately constructed collisions; it must not be used in place of
+ * constraint checking.
+ *
+ * @since 3.0.0
+ */
+public final class MulticastAnnouncementSummary {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private long seqNum;
+    private long idHigh;
+    private long idLow;
+    private long fingerprint;
+
+    /**
+     * Creates an empty summary.
+     */
+    public MulticastAnnouncementSummary() {
+	reset();
+    }
+
+    /**
+     * Resets this summary to its initial state: a sequence number of
+     * <code>-1</code>, a zero service ID and an empty fingerprint.
+     */
+    public void reset() {
+	seqNum = -1;
+	idHigh = 0;
+	idLow = 0;
+	fingerprint = FNV_OFFSET_BASIS;
+    }
+
+    /**
+     * Sets the sequence number of the announcement, or <code>-1</code> if
+     * the announcement has none.
+     *
+     * @param seqNum the sequence number
+     */
+    public void setSequenceNumber(long seqNum) {
+	this.seqNum = seqNum;
+    }
+
+    /**
+     * Sets the service ID of the lookup service that sent the announcement.
+     *
+     * @param mostSignificantBits the most significant 64 bits of the
+     * service ID
+     * @param leastSignificantBits the least significant 64 bits of the
+     * service ID
+     */
+    public void setServiceID(long mostSignificantBits,
+			     long leastSignificantBits)
+    {
+	idHigh = mostSignificantBits;
+	idLow = leastSignificantBits;
+    }
+
+    /**
+     * Adds the bytes of the given buffer between the specified absolute
+     * indexes to the fingerprint.  The position and limit of the buffer are
+     * not changed.
+     *
+     * @param buf the buffer containing the announcement data
+     * @param from the index of the first byte to add
+     * @param to the index following the last byte to add
+     * @throws IndexOutOfBoundsException if the indexes are outside the
+     * buffer's limit
+     */
+    public void update(ByteBuffer buf, int from, int to) {
+	long h = fingerprint;
+	for (int i = from; i < to; i++) {
+	    h = (h ^ (buf.get(i) & 0xFF)) * FNV_PRIME;
+	}
+	fingerprint = h;
+    }
+
+    /**
+     * Adds the given value, such as a protocol version or format ID, to the
+     * fingerprint.
+     *
+     * @param value the value to add
+     */
+    public void update(long value) {
+	long h = fingerprint;
+	for (int i = 56; i >= 0; i -= 8) {
+	    h = (h ^ ((value >>> i) & 0xFF)) * FNV_PRIME;
+	}
+	fingerprint = h;
+    }
+
+    /**
+     * Returns the sequence number of the announcement, or <code>-1</code>
+     * if it has none.
+     *
+     * @return the sequence number
+     */
+    public long getSequenceNumber() {
+	return seqNum;
+    }
+
+    /**
+     * Returns the most significant 64 bits of the lookup service's service
+     * ID.
+     *
+     * @return the most significant bits of the service ID
+     */
+    public long getServiceIDMostSignificantBits() {
+	return idHigh;
+    }
+
+    /**
+     * Returns the least significant 64 bits of the lookup service's service
+     * ID.
+     *
+     * @return the least significant bits of the service ID
+     */
+    public long getServiceIDLeastSignificantBits() {
+	return idLow;
+    }
+
+    /**
+     * Returns the fingerprint of the announcement content.
+     *
+     * @return the fingerprint
+     */
+    public long getFingerprint() {
+	return fingerprint;
+    }
+
+    public String toString() {
+	return "MulticastAnnouncementSummary[seqNum=" + seqNum +
+	       ", serviceID=" + Long.toHexString(idHigh) + ':' +
+	       Long.toHexString(idLow) +
+	       ", fingerprint=" + Long.toHexString(fingerprint) + ']';
+    }
+}
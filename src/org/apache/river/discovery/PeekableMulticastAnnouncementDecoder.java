@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.discovery;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Interface implemented by classes which decode multicast announcement data
+ * and can additionally read the identifying fields of an announcement
+ * without decoding it.  Discovery clients use this to recognize repeated
+ * announcements from lookup services they have already discovered without
+ * allocating objects for every packet received.
+ *
+ * @since 3.0.0
+ */
+public interface PeekableMulticastAnnouncementDecoder
+    extends MulticastAnnouncementDecoder
+{
+
+    /**
+     * Reads the service ID and sequence number of the multicast announcement
+     * contained in the given buffer into the given summary, and adds the
+     * rest of the announcement content, excluding the sequence number and
+     * any authentication data, to the summary's fingerprint.  No constraints
+     * are checked and no objects should be allocated.
+     *
+     * @param buf a buffer containing the packet data, with the multicast
+     * announcement data beginning at the buffer's current position.  The
+     * position of <code>buf</code> may be changed by this method.
+     * @param summary the summary to update
+     * @return <code>true</code> if the summary was updated, or
+     * <code>false</code> if the data could not be interpreted, in which case
+     * the announcement should be decoded normally
+     * @throws NullPointerException if <code>buf</code> or
+     * <code>summary</code> is <code>null</code>
+     */
+    boolean peekMulticastAnnouncement(ByteBuffer buf,
+				      MulticastAnnouncementSummary summary);
+}
@@ -28,6 +28,8 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
 import net.jini.core.constraint.InvocationConstraints;
 
 /**
@@ -74,26 +76,45 @@ public abstract class MultiIPDiscovery {
 	    return getSingleResponse(host, connectionTimeout, port, dc, disco);
 	}
 	
+	/*
+	 * Connect to all remaining addresses at once and perform discovery
+	 * over the first connection established; if that fails, try again
+	 * with the addresses that are left.
+	 */
+	List<InetSocketAddress> remaining =
+	    new ArrayList<InetSocketAddress>(addrs.length);
+	for (int i = 0; i < addrs.length; i++) {
+	    remaining.add(new InetSocketAddress(addrs[i], port));
+	}
 	IOException ioEx = null;
 	SecurityException secEx = null;
 	ClassNotFoundException cnfEx = null;
-	for (int i = 0; i < addrs.length; i++) {
+	while (!remaining.isEmpty()) {
+	    InetAddress addr = remaining.get(0).getAddress();
+	    Socket s = null;
 	    try {
-		return getSingleResponse(addrs[i].getHostAddress(),
-				     connectionTimeout, port, dc, disco);
+		s = UnicastConnector.getInstance().connect(
+		    remaining.toArray(new InetSocketAddress[remaining.size()]),
+		    deadline);
+		addr = s.getInetAddress();
+		return getSingleResponse(s, dc, disco);
 	    } catch (ClassNotFoundException ex) {
 		cnfEx = ex;
-		singleResponseException(ex, addrs[i], port);
+		singleResponseException(ex, addr, port);
 	    } catch (IOException ex) {
 		ioEx = ex;
-		singleResponseException(ex, addrs[i], port);
+		singleResponseException(ex, addr, port);
 	    } catch (SecurityException ex) {
 		secEx = ex;
-		singleResponseException(ex, addrs[i], port);
+		singleResponseException(ex, addr, port);
 	    }
-	    
+	    if (s == null) {
+		// no address could be connected to
+		break;
+	    }
+	    remaining.remove(new InetSocketAddress(addr, port));
 	    try {
-		connectionTimeout = getTimeout(deadline);
+		getTimeout(deadline);
 	    } catch (SocketTimeoutException ex) {
 		if (ioEx == null) {
 		    ioEx = ex;
@@ -129,7 +150,6 @@ public abstract class MultiIPDiscovery {
 	throws IOException, ClassNotFoundException
     {
 	Socket s = new Socket();
-        boolean discoveryAttempted = false;
         try {
             if (connectionTimeout > Integer.MAX_VALUE) {
                 s.connect(new InetSocketAddress(host, port));
@@ -137,6 +157,26 @@ public abstract class MultiIPDiscovery {
                 s.connect(new InetSocketAddress(host, port), 
                           (int) connectionTimeout);
             }
+        } catch (IOException e) {
+            try {
+                s.close();
+            } catch (IOException ex) {
+            }
+            throw e;
+        }
+        return getSingleResponse(s, dc, disco);
+    }
+
+    /**
+     * Performs discovery over a connected socket, which is always closed.
+     */
+    private UnicastResponse getSingleResponse(Socket s,
+					      DiscoveryConstraints dc,
+					      Discovery disco)
+	throws IOException, ClassNotFoundException
+    {
+        boolean discoveryAttempted = false;
+        try {
             try {
                 s.setTcpNoDelay(true);
             } catch (SocketException e) {
@@ -21,6 +21,7 @@ package org.apache.river.discovery.internal;
 import org.apache.river.discovery.DatagramBufferFactory;
 import org.apache.river.discovery.DiscoveryProtocolException;
 import org.apache.river.discovery.MulticastAnnouncement;
+import org.apache.river.discovery.MulticastAnnouncementSummary;
 import org.apache.river.discovery.MulticastRequest;
 import org.apache.river.discovery.UnicastResponse;
 import java.io.ByteArrayOutputStream;
@@ -397,6 +398,55 @@ public class Plaintext {
 	}
     }
 
+    /**
+     * Reads the sequence number and service ID of a multicast announcement
+     * in the net.jini.discovery.plaintext format into the given summary,
+     * adding the remaining announcement data to its fingerprint, without
+     * decoding the announcement.  Returns false if the data is malformed.
+     */
+    public static boolean peekMulticastAnnouncement(
+					ByteBuffer buf,
+					MulticastAnnouncementSummary summary)
+    {
+	try {
+	    long seq = buf.getLong();
+	    int start = buf.position();
+
+	    // skip LUS host and port
+	    skipUtf(buf);
+	    buf.getShort();
+
+	    // skip LUS member groups
+	    int ngroups = ushortToInt(buf.getShort());
+	    for (int i = 0; i < ngroups; i++) {
+		skipUtf(buf);
+	    }
+
+	    // read LUS service ID
+	    long idhi = buf.getLong();
+	    long idlo = buf.getLong();
+
+	    summary.setSequenceNumber(seq);
+	    summary.setServiceID(idhi, idlo);
+	    summary.update(buf, start, buf.position());
+	    return true;
+	} catch (RuntimeException e) {
+	    return false;
+	}
+    }
+
+    /**
+     * Advances the position of the given buffer past a string in UTF format,
+     * without decoding it.
+     */
+    public static void skipUtf(ByteBuffer buf) {
+	int len = ushortToInt(buf.getShort());
+	if (len > buf.remaining()) {
+	    throw new BufferUnderflowException();
+	}
+	buf.position(buf.position() + len);
+    }
+
     /**
      * Writes unicast response according to the net.jini.discovery.plaintext
      * format.
@@ -0,0 +1,401 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.discovery.internal;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.AccessController;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.river.logging.Levels;
+import org.apache.river.thread.NewThreadAction;
+
+/**
+ * Establishes unicast discovery connections without blocking the calling
+ * thread, using a single selector thread shared by the whole virtual
+ * machine.  Connections to all addresses of a host are attempted at once
+ * and the first to succeed is used; the others are closed.  A lookup
+ * service that has disappeared therefore costs a selector registration
+ * rather than a thread blocked in <code>connect</code> for the whole
+ * connection timeout.
+ * <p>
+ * Connections are initiated in the calling thread, so socket permissions
+ * are checked against the caller's access control context.  The returned
+ * sockets are in blocking mode and are suitable for use with
+ * {@link org.apache.river.discovery.Discovery} implementations.
+ *
+ * @since 3.0.0
+ */
+public final class UnicastConnector {
+
+    private static final Logger logger =
+	Logger.getLogger("org.apache.river.discovery.internal.UnicastConnector");
+
+    /**
+     * Receives the outcome of an asynchronous connection attempt.  Exactly
+     * one of the methods is called, from the connector's thread or from the
+     * thread that initiated the attempt; implementations should hand off
+     * any lengthy work.
+     */
+    public interface Callback {
+
+	/**
+	 * Called with the first socket to connect, in blocking mode.  The
+	 * callback is responsible for closing it.
+	 *
+	 * @param socket the connected socket
+	 */
+	void connected(Socket socket);
+
+	/**
+	 * Called if no connection could be established before the deadline.
+	 *
+	 * @param e the last exception encountered
+	 */
+	void failed(IOException e);
+    }
+
+    private static final UnicastConnector instance = new UnicastConnector();
+
+    /** attempts waiting to be registered with the selector */
+    private final Queue<Attempt> registrations =
+	new ConcurrentLinkedQueue<Attempt>();
+    /** attempts in progress, only accessed by the selector thread */
+    private final List<Attempt> attempts = new ArrayList<Attempt>();
+    private Selector selector;
+
+    private UnicastConnector() {
+    }
+
+    /**
+     * Returns the connector shared by this virtual machine.
+     *
+     * @return the shared connector
+     */
+    public static UnicastConnector getInstance() {
+	return instance;
+    }
+
+    /**
+     * Starts connecting to the given addresses and returns immediately.
+     * The callback is notified once one of them is connected, or all of
+     * them have failed or the deadline has passed.
+     *
+     * @param addrs the addresses to try, in no particular order
+     * @param deadline the time, in milliseconds since the epoch, by which
+     * a connection must be established, or <code>Long.MAX_VALUE</code>
+     * for none
+     * @param callback receives the result
+     * @throws SecurityException if the caller may not connect to one of
+     * the addresses
+     */
+    public void connect(InetSocketAddress[] addrs,
+			long deadline,
+			Callback callback)
+    {
+	Attempt a = new Attempt(deadline, callback);
+	IOException ex = null;
+	for (int i = 0; i < addrs.length; i++) {
+	    SocketChannel ch = null;
+	    try {
+		ch = SocketChannel.open();
+		ch.configureBlocking(false);
+		if (ch.connect(addrs[i])) {
+		    ch.configureBlocking(true);
+		    a.closeAll();
+		    callback.connected(ch.socket());
+		    return;
+		}
+		a.channels.add(ch);
+	    } catch (IOException e) {
+		ex = e;
+		close(ch);
+	    } catch (SecurityException e) {
+		close(ch);
+		a.closeAll();
+		throw e;
+	    }
+	}
+	if (a.channels.isEmpty()) {
+	    callback.failed(ex != null ? ex : new SocketException(
+		"no addresses to connect to"));
+	    return;
+	}
+	a.failure = ex;
+	registrations.add(a);
+	Selector s = selector();
+	if (s == null) {
+	    registrations.remove(a);
+	    a.closeAll();
+	    callback.failed(new SocketException("unable to open selector"));
+	    return;
+	}
+	s.wakeup();
+    }
+
+    /**
+     * Connects to the first reachable address, blocking the calling thread
+     * until a connection is established, all addresses have failed or the
+     * deadline has passed.
+     *
+     * @param addrs the addresses to try, in no particular order
+     * @param deadline the time, in milliseconds since the epoch, by which
+     * a connection must be established, or <code>Long.MAX_VALUE</code>
+     * for none
+     * @return a connected socket in blocking mode
+     * @throws IOException if no connection could be established
+     * @throws SecurityException if the caller may not connect to one of
+     * the addresses
+     */
+    public Socket connect(InetSocketAddress[] addrs, long deadline)
+	throws IOException
+    {
+	final Socket[] result = new Socket[1];
+	final IOException[] failure = new IOException[1];
+	final Object lock = new Object();
+	connect(addrs, deadline, new Callback() {
+	    public void connected(Socket socket) {
+		synchronized (lock) {
+		    result[0] = socket;
+		    lock.notifyAll();
+		}
+	    }
+	    public void failed(IOException e) {
+		synchronized (lock) {
+		    failure[0] = e;
+		    lock.notifyAll();
+		}
+	    }
+	});
+	synchronized (lock) {
+	    boolean interrupted = false;
+	    while (result[0] == null && failure[0] == null) {
+		try {
+		    lock.wait();
+		} catch (InterruptedException e) {
+		    interrupted = true;
+		}
+	    }
+	    if (interrupted) {
+		Thread.currentThread().interrupt();
+	    }
+	    if (failure[0] != null) {
+		throw failure[0];
+	    }
+	    return result[0];
+	}
+    }
+
+    private synchronized Selector selector() {
+	if (selector == null) {
+	    try {
+		selector = Selector.open();
+	    } catch (IOException e) {
+		logger.log(Level.WARNING, "unable to open selector", e);
+		return null;
+	    }
+	    AccessController.doPrivileged(new NewThreadAction(new Runnable() {
+		public void run() {
+		    select();
+		}
+	    }, "UnicastConnector", true)).start();
+	}
+	return selector;
+    }
+
+    /** Selector thread body. */
+    private void select() {
+	Selector sel;
+	synchronized (this) {
+	    sel = selector;
+	}
+	while (true) {
+	    try {
+		Attempt a;
+		while ((a = registrations.poll()) != null) {
+		    register(sel, a);
+		}
+		long timeout = expire(System.currentTimeMillis());
+		sel.select(timeout);
+		Iterator<SelectionKey> it = sel.selectedKeys().iterator();
+		List<Attempt> done = null;
+		while (it.hasNext()) {
+		    SelectionKey key = it.next();
+		    it.remove();
+		    a = (Attempt) key.attachment();
+		    SocketChannel ch = (SocketChannel) key.channel();
+		    try {
+			if (ch.finishConnect()) {
+			    key.cancel();
+			    if (a.winner == null && !a.finished) {
+				a.winner = ch;
+				if (done == null) done = new ArrayList<Attempt>();
+				done.add(a);
+			    } else {
+				close(ch);
+			    }
+			}
+		    } catch (IOException e) {
+			key.cancel();
+			close(ch);
+			a.channels.remove(ch);
+			a.failure = e;
+			if (a.channels.isEmpty() && a.winner == null) {
+			    finish(a, null);
+			}
+		    }
+		}
+		if (done != null) {
+		    // flush cancelled keys so channels can block again
+		    sel.selectNow();
+		    for (int i = 0, l = done.size(); i < l; i++) {
+			a = done.get(i);
+			SocketChannel w = a.winner;
+			try {
+			    w.configureBlocking(true);
+			    a.channels.remove(w);
+			    finish(a, w.socket());
+			} catch (IOException e) {
+			    close(w);
+			    a.channels.remove(w);
+			    a.winner = null;
+			    a.failure = e;
+			    if (a.channels.isEmpty()) {
+				finish(a, null);
+			    }
+			}
+		    }
+		}
+	    } catch (ClosedSelectorException e) {
+		return;
+	    } catch (Throwable t) {
+		logger.log(Level.WARNING, "unexpected exception", t);
+	    }
+	}
+    }
+
+    private void register(Selector sel, Attempt a) {
+	for (Iterator<SocketChannel> i = a.channels.iterator(); i.hasNext(); ) {
+	    SocketChannel ch = i.next();
+	    try {
+		ch.register(sel, SelectionKey.OP_CONNECT, a);
+	    } catch (IOException e) {
+		close(ch);
+		i.remove();
+		a.failure = e;
+	    }
+	}
+	if (a.channels.isEmpty()) {
+	    finish(a, null);
+	} else {
+	    attempts.add(a);
+	}
+    }
+
+    /**
+     * Fails attempts whose deadline has passed and returns the select
+     * timeout until the next deadline.
+     */
+    private long expire(long now) {
+	long next = Long.MAX_VALUE;
+	for (Iterator<Attempt> i = attempts.iterator(); i.hasNext(); ) {
+	    Attempt a = i.next();
+	    if (a.finished) {
+		i.remove();
+	    } else if (a.deadline <= now) {
+		i.remove();
+		a.failure = new SocketTimeoutException(
+		    "connection timed out");
+		finish(a, null);
+	    } else if (a.deadline < next) {
+		next = a.deadline;
+	    }
+	}
+	return next == Long.MAX_VALUE ? 0 : Math.max(1, next - now);
+    }
+
+    /**
+     * Completes an attempt, closing all channels other than the one the
+     * socket belongs to, and notifies the callback.
+     */
+    private static void finish(Attempt a, Socket socket) {
+	if (a.finished) {
+	    return;
+	}
+	a.finished = true;
+	a.closeAll();
+	try {
+	    if (socket != null) {
+		a.callback.connected(socket);
+	    } else {
+		a.callback.failed(a.failure);
+	    }
+	} catch (RuntimeException e) {
+	    logger.log(Levels.HANDLED, "callback failed", e);
+	    if (socket != null) {
+		try {
+		    socket.close();
+		} catch (IOException ex) {
+		}
+	    }
+	}
+    }
+
+    private static void close(SocketChannel ch) {
+	if (ch != null) {
+	    try {
+		ch.close();
+	    } catch (IOException e) {
+	    }
+	}
+    }
+
+    private static final class Attempt {
+	final long deadline;
+	final Callback callback;
+	final List<SocketChannel> channels = new ArrayList<SocketChannel>(2);
+	SocketChannel winner;
+	IOException failure;
+	boolean finished;
+
+	Attempt(long deadline, Callback callback) {
+	    this.deadline = deadline;
+	    this.callback = callback;
+	}
+
+	void closeAll() {
+	    for (int i = 0, l = channels.size(); i < l; i++) {
+		close(channels.get(i));
+	    }
+	    channels.clear();
+	}
+    }
+}
@@ -22,8 +22,10 @@ import org.apache.river.discovery.DatagramBufferFactory;
 import org.apache.river.discovery.DelayedMulticastAnnouncementDecoder;
 import org.apache.river.discovery.DiscoveryProtocolException;
 import org.apache.river.discovery.MulticastAnnouncement;
+import org.apache.river.discovery.MulticastAnnouncementSummary;
 import org.apache.river.discovery.MulticastRequest;
 import org.apache.river.discovery.MulticastRequestEncoder;
+import org.apache.river.discovery.PeekableMulticastAnnouncementDecoder;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.logging.Level;
@@ -39,7 +41,8 @@ import net.jini.io.UnsupportedConstraintException;
  */
 public class X500Client
     extends X500Provider
-    implements MulticastRequestEncoder, DelayedMulticastAnnouncementDecoder
+    implements MulticastRequestEncoder, DelayedMulticastAnnouncementDecoder,
+	       PeekableMulticastAnnouncementDecoder
 {
     /**
      * Creates an instance with the given attributes.
@@ -169,6 +172,30 @@ public class X500Client
     {
         return decodeMulticastAnnouncement(buf, constraints, false);
     }
+
+    /**
+     * Peeks at the signed plaintext announcement data; the principal and
+     * signature are not read, and so do not contribute to the fingerprint.
+     */
+    public boolean peekMulticastAnnouncement(
+					ByteBuffer buf,
+					MulticastAnnouncementSummary summary)
+    {
+	if (buf.remaining() < 4) {
+	    return false;
+	}
+	int len = buf.getInt();
+	if (len < 0 || len > buf.remaining()) {
+	    return false;
+	}
+	int lim = buf.limit();
+	buf.limit(buf.position() + len);
+	try {
+	    return Plaintext.peekMulticastAnnouncement(buf, summary);
+	} finally {
+	    buf.limit(lim);
+	}
+    }
     
     private class X500MulticastAnnouncement extends MulticastAnnouncement {
 	private final InvocationConstraints constraints;
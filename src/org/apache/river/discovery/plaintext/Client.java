@@ -20,9 +20,10 @@ package org.apache.river.discovery.plaintext;
 
 import org.apache.river.discovery.DatagramBufferFactory;
 import org.apache.river.discovery.MulticastAnnouncement;
-import org.apache.river.discovery.MulticastAnnouncementDecoder;
+import org.apache.river.discovery.MulticastAnnouncementSummary;
 import org.apache.river.discovery.MulticastRequest;
 import org.apache.river.discovery.MulticastRequestEncoder;
+import org.apache.river.discovery.PeekableMulticastAnnouncementDecoder;
 import org.apache.river.discovery.UnicastDiscoveryClient;
 import org.apache.river.discovery.UnicastResponse;
 import org.apache.river.discovery.internal.Plaintext;
@@ -43,7 +44,7 @@ import net.jini.io.UnsupportedConstraintException;
  */
 public class Client
     implements MulticastRequestEncoder,
-	       MulticastAnnouncementDecoder,
+	       PeekableMulticastAnnouncementDecoder,
 	       UnicastDiscoveryClient
 {
     /**
@@ -77,6 +78,14 @@ public class Client
 	return Plaintext.decodeMulticastAnnouncement(buf);
     }
 
+    // documentation inherited from PeekableMulticastAnnouncementDecoder
+    public boolean peekMulticastAnnouncement(
+					ByteBuffer buf,
+					MulticastAnnouncementSummary summary)
+    {
+	return Plaintext.peekMulticastAnnouncement(buf, summary);
+    }
+
     // documentation inherited from UnicastDiscoveryClient
     public void checkUnicastDiscoveryConstraints(
 					InvocationConstraints constraints)
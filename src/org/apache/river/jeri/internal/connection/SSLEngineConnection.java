@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.connection;
+
+import net.jini.jeri.connection.Connection;
+import net.jini.jeri.connection.ServerConnection;
+import org.apache.river.jeri.internal.mux.SSLEngineChannel;
+
+/**
+ * Implemented by {@link Connection} and {@link ServerConnection}
+ * implementations whose TLS/SSL connections can be multiplexed with
+ * non-blocking I/O over an {@link SSLEngineChannel}.  The connection
+ * managers check for this interface before falling back to the
+ * connection's streams.
+ *
+ * @since 3.0.0
+ */
+public interface SSLEngineConnection {
+
+    /**
+     * Returns the secured channel that performs I/O on this connection,
+     * with its initial handshake completed, or <code>null</code> if this
+     * connection's streams must be used instead.
+     *
+     * @return the secured channel, or <code>null</code>
+     */
+    SSLEngineChannel getSSLEngineChannel();
+}
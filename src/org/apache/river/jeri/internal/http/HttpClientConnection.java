@@ -22,6 +22,7 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.ConnectException;
 import java.net.HttpURLConnection;
@@ -35,6 +36,10 @@ import net.jini.io.context.AcknowledgmentSource;
 
 /**
  * Class representing a client-side HTTP connection used to send HTTP requests.
+ * If the manager allows it and the server (or proxy) supports HTTP/1.1, a new
+ * request may be started as soon as the previous request has been written,
+ * before its response has been received; responses are read in the order in
+ * which the requests were sent.
  *
  * @author Sun Microsystems, Inc.
  * 
@@ -65,12 +70,19 @@ public class HttpClientConnection implements TimedConnection {
     private final int mode;
     private final Object stateLock = new Object();
     private int state = IDLE;
+    /** true while a request is being written */
+    private boolean writing = false;
+    /** number of requests whose responses have not been consumed */
+    private int outstanding = 0;
+    /** sequence number of the next request to be sent */
+    private long requestSeq = 0;
+    /** sequence number of the request whose response is to be read next */
+    private long responseSeq = 0;
 
     private final HttpClientManager manager;
     private ServerInfo targetInfo;
     private ServerInfo proxyInfo;
     private final boolean persist;
-    private String[] acks;
 
     private Socket sock;
     private OutputStream out;
@@ -132,12 +144,17 @@ public class HttpClientConnection implements TimedConnection {
      * received).
      */
     public boolean ping() throws IOException {
-	markBusy();
-	fetchServerInfo();
+	long seq = startRequest();
+	boolean finished = false;
 	try {
-	    return ping(false);
+	    fetchServerInfo();
+	    boolean ok = ping(false, seq);
+	    finished = true;
+	    return ok;
 	} finally {
-	    markIdle();
+	    if (!finished) {
+		shutdown(true);
+	    }
 	}
     }
     
@@ -147,22 +164,24 @@ public class HttpClientConnection implements TimedConnection {
      */
     public OutboundRequest newRequest() throws IOException {
 	OutboundRequest req = null;
-	markBusy();
-	fetchServerInfo();
+	long seq = startRequest();
 	try {
-	    req = new OutboundRequestImpl();
+	    fetchServerInfo();
+	    req = new OutboundRequestImpl(seq);
 	    return req;
 	} finally {
 	    if (req == null) {
-		markIdle();
+		shutdown(true);
 	    }
 	}
     }
     
     /**
-     * Upcall indicating that connection has become idle.  Subclasses may
-     * override this method to perform an appropriate action, such as
-     * scheduling an idle timeout.
+     * Upcall indicating that connection can accept a new request.  Subclasses
+     * may override this method to perform an appropriate action, such as
+     * scheduling an idle timeout.  If requests are pipelined, this method may
+     * be called while responses are outstanding, and again once the last of
+     * them has been received.
      */
     protected void idle() {
     }
@@ -184,10 +203,11 @@ public class HttpClientConnection implements TimedConnection {
 	    if (state == CLOSED) {
 		return true;
 	    }
-	    if (!force && state == BUSY) {
+	    if (!force && (state == BUSY || outstanding > 0)) {
 		return false;
 	    }
 	    state = CLOSED;
+	    stateLock.notifyAll();
 	}
 	disconnect();
 	return true;
@@ -196,7 +216,7 @@ public class HttpClientConnection implements TimedConnection {
     /**
      * Fetches latest server/proxy HTTP information from cache.
      */
-    private void fetchServerInfo() {
+    private synchronized void fetchServerInfo() {
 	ServerInfo sinfo = 
 	    manager.getServerInfo(targetInfo.host, targetInfo.port);
 	if (sinfo.timestamp > targetInfo.timestamp) {
@@ -221,9 +241,10 @@ public class HttpClientConnection implements TimedConnection {
     }
     
     /**
-     * Marks connection busy.  Throws IOException if connection closed.
+     * Marks connection busy for writing a new request, returning the request's
+     * sequence number.  Throws IOException if connection busy or closed.
      */
-    private void markBusy() throws IOException {
+    private long startRequest() throws IOException {
 	synchronized (stateLock) {
 	    if (state == BUSY) {
 		throw new IOException("connection busy");
@@ -231,15 +252,73 @@ public class HttpClientConnection implements TimedConnection {
 		throw new IOException("connection closed");
 	    }
 	    state = BUSY;
+	    writing = true;
+	    outstanding++;
+	    return requestSeq++;
 	}
     }
-    
+
     /**
-     * Marks connection idle.  Does nothing if connection closed.
+     * Called once a request has been written.  If another request may be
+     * pipelined behind it, marks connection idle.
      */
-    private void markIdle() {
+    private void requestWritten() {
+	boolean pipeline = canPipeline();
 	synchronized (stateLock) {
-	    if (state == CLOSED) {
+	    writing = false;
+	    if (state != BUSY || !pipeline ||
+		outstanding >= manager.getMaxPipelinedRequests())
+	    {
+		return;
+	    }
+	    state = IDLE;
+	}
+	idle();
+    }
+
+    /**
+     * Waits until the responses to all requests sent before the request with
+     * the given sequence number have been consumed.  Throws IOException if
+     * the connection is closed in the meantime.
+     */
+    private void awaitResponse(long seq) throws IOException {
+	synchronized (stateLock) {
+	    while (responseSeq != seq) {
+		if (state == CLOSED) {
+		    throw new IOException("connection closed");
+		}
+		try {
+		    stateLock.wait();
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		    throw new InterruptedIOException(
+			"interrupted waiting for response");
+		}
+	    }
+	}
+    }
+
+    /**
+     * Called once the response to a request has been consumed.  If the
+     * connection can be reused, marks it idle if no request is being written;
+     * otherwise, shuts it down.
+     */
+    private void requestDone(boolean reuse) {
+	if (!reuse) {
+	    shutdown(true);
+	    return;
+	}
+	boolean pipeline = canPipeline();
+	synchronized (stateLock) {
+	    outstanding--;
+	    responseSeq++;
+	    stateLock.notifyAll();
+	    if (state == CLOSED || writing) {
+		return;
+	    }
+	    if (outstanding > 0 && (state == IDLE || !pipeline ||
+		outstanding >= manager.getMaxPipelinedRequests()))
+	    {
 		return;
 	    }
 	    state = IDLE;
@@ -247,6 +326,14 @@ public class HttpClientConnection implements TimedConnection {
 	idle();
     }
 
+    /**
+     * Returns true if requests may be pipelined on this connection.
+     */
+    private boolean canPipeline() {
+	return persist && manager.getMaxPipelinedRequests() > 1 &&
+	       supportsChunking();
+    }
+
     /**
      * Establishes connection using sockets from the given socket factory.
      * Throws IOException if connection setup fails.
@@ -272,7 +359,7 @@ public class HttpClientConnection implements TimedConnection {
 		{
 		    requestProxyOptions();
 		} else if (targetInfo.timestamp == ServerInfo.NO_TIMESTAMP) {
-		    ping(true);
+		    ping(true, -1);
 		} else {
 		    ok = true;
 		    return;
@@ -326,16 +413,23 @@ public class HttpClientConnection implements TimedConnection {
 
     /**
      * Pings target.  Returns true if succeeded, false if failed "cleanly".
+     * Unless called during connection setup, the ping is sent as the request
+     * with the given sequence number.
      */
-    private boolean ping(boolean setup) throws IOException {
+    private boolean ping(boolean setup, long seq) throws IOException {
 	StartLine outLine = createPostLine();
-	Header outHeader = createPostHeader(outLine);
+	String[] acks = getUnsentAcks();
+	Header outHeader = createPostHeader(outLine, acks);
 	outHeader.setField("RMI-Request-Type", "ping");
 	MessageWriter writer = new MessageWriter(out, false);
 
 	writer.writeStartLine(outLine);
 	writer.writeHeader(outHeader);
 	writer.writeTrailer(null);
+	if (!setup) {
+	    requestWritten();
+	    awaitResponse(seq);
+	}
 
 	MessageReader reader;
 	StartLine inLine;
@@ -347,13 +441,12 @@ public class HttpClientConnection implements TimedConnection {
 	    inHeader.merge(reader.readTrailer());
 	} while (inLine.status / 100 == 1);
 
-	analyzePostResponse(inLine, inHeader);
-	if (!supportsPersist(inLine, inHeader)) {
-	    if (setup) {
-		disconnect();
-	    } else {
-		shutdown(true);
-	    }
+	analyzePostResponse(inLine, inHeader, acks);
+	boolean reuse = supportsPersist(inLine, inHeader);
+	if (!setup) {
+	    requestDone(reuse);
+	} else if (!reuse) {
+	    disconnect();
 	}
 	return (inLine.status / 100) == 2;
     }
@@ -431,7 +524,7 @@ public class HttpClientConnection implements TimedConnection {
     /**
      * Creates start line for outbound HTTP POST message.
      */
-    private StartLine createPostLine() {
+    private synchronized StartLine createPostLine() {
 	String uri = (mode == PROXIED) ?
 	    "http://" + targetInfo.host + ":" + targetInfo.port + "/" : "/";
 	return new StartLine(HTTP_MAJOR, HTTP_MINOR, "POST", uri);
@@ -471,9 +564,19 @@ public class HttpClientConnection implements TimedConnection {
     }
 
     /**
-     * Creates header for outbound HTTP POST message with given start line.
+     * Returns unsent acknowledgments to piggyback on the next request.
+     */
+    private synchronized String[] getUnsentAcks() {
+	return manager.getUnsentAcks(targetInfo.host, targetInfo.port);
+    }
+
+    /**
+     * Creates header for outbound HTTP POST message with given start line,
+     * carrying the given acknowledgments.
      */
-    private Header createPostHeader(StartLine sline) {
+    private synchronized Header createPostHeader(StartLine sline,
+						 String[] acks)
+    {
 	Header header = createBaseHeader();
 	header.setField("Host", targetInfo.host + ":" + targetInfo.port);
 	header.setField("Connection", persist ? "TE" : "close, TE");
@@ -492,7 +595,6 @@ public class HttpClientConnection implements TimedConnection {
 	    }
 	}
 
-	acks = manager.getUnsentAcks(targetInfo.host, targetInfo.port);
         int l = acks.length;
 	if (l > 0) {
             StringBuilder ackList = new StringBuilder(4 * l);
@@ -508,9 +610,13 @@ public class HttpClientConnection implements TimedConnection {
     
     /**
      * Analyzes POST response message start line and header, updating cached
-     * target/proxy server information if necessary.
+     * target/proxy server information if necessary, and clearing the given
+     * acknowledgments sent with the request if it succeeded.
      */
-    private void analyzePostResponse(StartLine inLine, Header inHeader) {
+    private synchronized void analyzePostResponse(StartLine inLine,
+						  Header inHeader,
+						  String[] acks)
+    {
 	String str;
 	long now = System.currentTimeMillis();
 	
@@ -575,7 +681,9 @@ public class HttpClientConnection implements TimedConnection {
      * Analyzes CONNECT or OPTIONS response message start line and header sent
      * by proxy, updating proxy server information if necessary.
      */
-    private void analyzeProxyResponse(StartLine inLine, Header inHeader) {
+    private synchronized void analyzeProxyResponse(StartLine inLine,
+						   Header inHeader)
+    {
 	proxyInfo.major = inLine.major;
 	proxyInfo.minor = inLine.minor;
 	proxyInfo.timestamp = System.currentTimeMillis();
@@ -601,7 +709,7 @@ public class HttpClientConnection implements TimedConnection {
     /**
      * Returns true if requests sent over this connection should chunk output.
      */
-    private boolean supportsChunking() {
+    private synchronized boolean supportsChunking() {
 	ServerInfo si = (mode == PROXIED) ? proxyInfo : targetInfo;
 	return StartLine.compareVersions(si.major, si.minor, 1, 1) >= 0;
     }
@@ -630,15 +738,19 @@ public class HttpClientConnection implements TimedConnection {
     private class OutboundRequestImpl 
 	extends Request implements OutboundRequest
     {
+	private final long seq;
+	private final String[] acks;
 	private final MessageWriter writer;
 	private MessageReader reader;
 	private StartLine inLine;
 	private Header inHeader;
 	private boolean persist = false;
 	
-	OutboundRequestImpl() throws IOException {
+	OutboundRequestImpl(long seq) throws IOException {
+	    this.seq = seq;
 	    StartLine outLine = createPostLine();
-	    Header outHeader = createPostHeader(outLine);
+	    acks = getUnsentAcks();
+	    Header outHeader = createPostHeader(outLine, acks);
 	    outHeader.setField("RMI-Request-Type", "standard");
 
 	    writer = new MessageWriter(out, supportsChunking());
@@ -679,9 +791,11 @@ public class HttpClientConnection implements TimedConnection {
 
 	void endOutput() throws IOException {
 	    writer.writeTrailer(null);
+	    requestWritten();
 	}
 
 	boolean startInput() throws IOException {
+	    awaitResponse(seq);
 	    for (;;) {
 		reader = new MessageReader(in, false);
 		inLine = reader.readStartLine();
@@ -703,7 +817,7 @@ public class HttpClientConnection implements TimedConnection {
 
 	void endInput() throws IOException {
 	    inHeader.merge(reader.readTrailer());
-	    analyzePostResponse(inLine, inHeader);
+	    analyzePostResponse(inLine, inHeader, acks);
 	    persist = supportsPersist(inLine, inHeader);
 	}
 
@@ -712,11 +826,7 @@ public class HttpClientConnection implements TimedConnection {
 	}
 
 	void done(boolean corrupt) {
-	    if (corrupt || !persist) {
-		shutdown(true);
-	    } else {
-		markIdle();
-	    }
+	    requestDone(!corrupt && persist);
 	}
     }
 }
@@ -21,32 +21,159 @@ package org.apache.river.jeri.internal.http;
 import org.apache.river.collection.SoftCache;
 import org.apache.river.thread.Executor;
 import org.apache.river.thread.GetThreadPoolAction;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Class for managing client-side functions shared among multiple connections
  * (e.g., tracking of unsent response acknowledgments, caching of information
- * about contacted HTTP servers).
+ * about contacted HTTP servers, limiting the number of connections opened to
+ * each server).
  *
  * @author Sun Microsystems, Inc.
  * 
  */
 public class HttpClientManager {
     
-    private static final Executor systemThreadPool = (Executor)
+    private static final Executor systemThreadPool =
 	java.security.AccessController.doPrivileged(
 	    new GetThreadPoolAction(false));
 
     private final SoftCache rolodex = new SoftCache();
     private final TimedMap unsentAcks;
+    private final int maxConnections;
+    private final int maxPipelinedRequests;
+    /** open connection counts keyed by server */
+    private final Map<ServerKey,Integer> openConnections =
+	new HashMap<ServerKey,Integer>();
+    /** incremented whenever a connection is closed or becomes idle */
+    private long connectionEvents = 0;
 
     /**
      * Creates new HttpClientManager which expires unsent acknowledgments after
-     * the specified timeout.
+     * the specified timeout.  The number of connections is not limited, and
+     * requests are not pipelined.
      */
     public HttpClientManager(long ackTimeout) {
+	this(ackTimeout, 0, 1);
+    }
+
+    /**
+     * Creates new HttpClientManager which expires unsent acknowledgments after
+     * the specified timeout, allows at most maxConnections connections to
+     * each server (or any number if maxConnections is not positive), and
+     * allows up to maxPipelinedRequests requests to be outstanding on each
+     * connection to a server which supports HTTP/1.1.
+     */
+    public HttpClientManager(long ackTimeout,
+			     int maxConnections,
+			     int maxPipelinedRequests)
+    {
 	unsentAcks = new TimedMap(systemThreadPool, ackTimeout);
+	this.maxConnections = maxConnections;
+	this.maxPipelinedRequests = Math.max(maxPipelinedRequests, 1);
+    }
+
+    /**
+     * Returns the maximum number of requests that may be outstanding on a
+     * single connection.
+     */
+    int getMaxPipelinedRequests() {
+	return maxPipelinedRequests;
+    }
+
+    /**
+     * Attempts to reserve one of the connections allowed to the server at
+     * the given host/port.  Returns -1 if a connection was reserved, in which
+     * case releaseConnection must be called once the connection has been
+     * closed or could not be established.  If the connection limit has been
+     * reached, returns a value to pass to awaitConnection instead.  If the
+     * number of connections is not limited, always returns -1.
+     */
+    public long reserveConnection(String host, int port) {
+	if (maxConnections <= 0) {
+	    return -1;
+	}
+	synchronized (openConnections) {
+	    ServerKey key = new ServerKey(host, port);
+	    Integer open = openConnections.get(key);
+	    int n = (open != null) ? open.intValue() : 0;
+	    if (n >= maxConnections) {
+		return connectionEvents;
+	    }
+	    openConnections.put(key, Integer.valueOf(n + 1));
+	    return -1;
+	}
+    }
+
+    /**
+     * Releases a connection reserved by reserveConnection.
+     */
+    public void releaseConnection(String host, int port) {
+	if (maxConnections <= 0) {
+	    return;
+	}
+	synchronized (openConnections) {
+	    ServerKey key = new ServerKey(host, port);
+	    Integer open = openConnections.get(key);
+	    if (open == null) {
+		return;
+	    }
+	    if (open.intValue() > 1) {
+		openConnections.put(key, Integer.valueOf(open.intValue() - 1));
+	    } else {
+		openConnections.remove(key);
+	    }
+	    connectionEvents++;
+	    openConnections.notifyAll();
+	}
+    }
+
+    /**
+     * Notifies callers of awaitConnection that a connection to the server at
+     * the given host/port has become available for reuse.
+     */
+    public void connectionIdle(String host, int port) {
+	if (maxConnections <= 0) {
+	    return;
+	}
+	synchronized (openConnections) {
+	    connectionEvents++;
+	    openConnections.notifyAll();
+	}
+    }
+
+    /**
+     * Waits until a connection has been released or has become idle since
+     * the given value was returned by reserveConnection, or until the given
+     * absolute deadline has passed.  Returns true if the caller should look
+     * for an idle connection or attempt the reservation again, false if the
+     * deadline has passed.
+     */
+    public boolean awaitConnection(String host, int port,
+				   long events, long deadline)
+	throws InterruptedIOException
+    {
+	synchronized (openConnections) {
+	    while (connectionEvents == events) {
+		long timeout = deadline - System.currentTimeMillis();
+		if (timeout <= 0) {
+		    return false;
+		}
+		try {
+		    openConnections.wait(timeout);
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		    throw new InterruptedIOException(
+			"interrupted waiting for connection to " +
+			host + ":" + port);
+		}
+	    }
+	    return true;
+	}
     }
     
     /**
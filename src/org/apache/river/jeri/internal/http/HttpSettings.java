@@ -134,6 +134,50 @@ public class HttpSettings {
 	return 15000;
     }
 
+    /**
+     * Returns org.apache.river.jeri.http[s].maxConnectionsPerHost system
+     * property value if set; otherwise returns 0 (unlimited).
+     */
+    public int getMaxConnectionsPerHost() {
+	String str = props.getProperty(ssl ?
+	    "org.apache.river.jeri.https.maxConnectionsPerHost" :
+	    "org.apache.river.jeri.http.maxConnectionsPerHost");
+	if (str != null) {
+	    try { return Math.max(Integer.parseInt(str), 0); }
+	    catch (Exception ex) {}
+	}
+	return 0;
+    }
+
+    /**
+     * Returns org.apache.river.jeri.http[s].connectionWaitTimeout system
+     * property value if set; otherwise returns 15000.
+     */
+    public long getConnectionWaitTimeout() {
+	String str = props.getProperty(ssl ?
+	    "org.apache.river.jeri.https.connectionWaitTimeout" :
+	    "org.apache.river.jeri.http.connectionWaitTimeout");
+	if (str != null) {
+	    try { return Long.parseLong(str); } catch (Exception ex) {}
+	}
+	return 15000;
+    }
+
+    /**
+     * Returns org.apache.river.jeri.http[s].maxPipelinedRequests system
+     * property value if set; otherwise returns 1 (no pipelining).
+     */
+    public int getMaxPipelinedRequests() {
+	String str = props.getProperty(ssl ?
+	    "org.apache.river.jeri.https.maxPipelinedRequests" :
+	    "org.apache.river.jeri.http.maxPipelinedRequests");
+	if (str != null) {
+	    try { return Math.max(Integer.parseInt(str), 1); }
+	    catch (Exception ex) {}
+	}
+	return 1;
+    }
+
     /**
      * Returns org.apache.river.jeri.http[s].idleServerConnectionTimeout
      * system property value if set; otherwise returns getConnectionTimeout()
@@ -31,7 +31,7 @@ import java.io.OutputStream;
  */
 class MessageWriter {
     
-    private static final int CHUNK_SIZE = 512;
+    private static final int CHUNK_SIZE = 4096;
 
     /* state values */
     private static final int START   = 0;
@@ -159,6 +159,12 @@ class MessageWriter {
 	}
 	
 	public void write(byte[] b, int off, int len) throws IOException {
+	    if (len >= buf.length) {
+		// send large writes as a single chunk, without copying
+		flush();
+		writeChunk(b, off, len);
+		return;
+	    }
 	    while (len > 0) {
 		int avail = buf.length - pos;
 		if (avail > 0) {
@@ -175,13 +181,19 @@ class MessageWriter {
 	
 	public void flush() throws IOException {
 	    if (pos > 0) {
-		writeLine(out, Integer.toString(pos, 16));
-		out.write(buf, 0, pos);
-		writeLine(out, "");
+		writeChunk(buf, 0, pos);
 		pos = 0;
 	    }
 	}
 
+	private void writeChunk(byte[] b, int off, int len)
+	    throws IOException
+	{
+	    writeLine(out, Integer.toString(len, 16));
+	    out.write(b, off, len);
+	    writeLine(out, "");
+	}
+
 	public void close() throws IOException {
 	    flush();
 	    writeLine(out, "0");
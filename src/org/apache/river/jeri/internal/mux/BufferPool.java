@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.mux;
+
+import org.apache.river.action.GetIntegerAction;
+import java.nio.ByteBuffer;
+import java.security.AccessController;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A BufferPool recycles the ByteBuffers used for mux message headers,
+ * outgoing session data, incoming message bodies and connection receive
+ * buffers, so that the steady-state protocol path does not allocate.
+ *
+ * Buffers are pooled in power-of-two size classes from 8 bytes up to
+ * 64 KiB, the largest mux message body.  A buffer handed out by
+ * {@link #acquire acquire} has position zero and its limit set to the
+ * requested size; its capacity is the size of its class.  Requests larger
+ * than the largest class are satisfied with unpooled buffers, which are
+ * silently dropped on release.
+ *
+ * Small direct buffers are carved out of larger direct slabs, because each
+ * separately allocated direct buffer carries a fixed native and
+ * bookkeeping overhead that dwarfs a four byte message header.
+ *
+ * Each mux connection fronts the shared pools with a {@link Cache} that
+ * holds a few buffers of each class, so that a busy connection usually
+ * recycles its own buffers without touching the shared queues.
+ *
+ * A buffer must be released at most once, and only after every reference
+ * to it (including duplicates queued for writing) has been dropped.
+ *
+ * @since 3.0.0
+ **/
+final class BufferPool {
+
+    private static final int MIN_SHIFT = 3;		// 8 bytes
+    private static final int MAX_SHIFT = 16;		// 64 KiB
+    private static final int CLASSES = MAX_SHIFT - MIN_SHIFT + 1;
+
+    /** direct buffers up to this size are sliced from shared slabs */
+    private static final int SLAB_MAX_SHIFT = 9;	// 512 bytes
+    private static final int SLAB_SIZE = 16384;
+
+    /** maximum number of free buffers a connection cache keeps per class */
+    private static final int CACHE_DEPTH = 8;
+
+    /** maximum number of free buffers the shared pool keeps per class */
+    private static final int MAX_FREE_PER_CLASS = 1024;
+
+    /** approximate bytes retained by the shared pool per size class */
+    private static final int poolClassBytes =
+	AccessController.doPrivileged(new GetIntegerAction(
+	    "org.apache.river.jeri.connection.mux.bufferPoolClassBytes",
+	    1 << 20)).intValue();
+
+    /** shared pool of direct buffers, for use with socket channels */
+    static final BufferPool DIRECT = new BufferPool(true);
+
+    /** shared pool of heap buffers, for use with streams */
+    static final BufferPool HEAP = new BufferPool(false);
+
+    private final boolean direct;
+    private final FreeList[] free = new FreeList[CLASSES];
+
+    /** current slab for small direct buffers, guarded by this */
+    private ByteBuffer slab;
+
+    private BufferPool(boolean direct) {
+	this.direct = direct;
+	for (int i = 0; i < CLASSES; i++) {
+	    int shift = i + MIN_SHIFT;
+	    int max = Math.min(MAX_FREE_PER_CLASS,
+			       Math.max(4, poolClassBytes >> shift));
+	    free[i] = new FreeList(max);
+	}
+    }
+
+    /**
+     * Returns the shared pool holding buffers like the supplied one.
+     */
+    static BufferPool poolFor(ByteBuffer buffer) {
+	return buffer.isDirect() ? DIRECT : HEAP;
+    }
+
+    /**
+     * Returns the size class index for the specified size, or -1 if the
+     * size is too large to be pooled.
+     */
+    static int sizeClass(int size) {
+	if (size <= (1 << MIN_SHIFT)) {
+	    return 0;
+	}
+	if (size > (1 << MAX_SHIFT)) {
+	    return -1;
+	}
+	int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+	return shift - MIN_SHIFT;
+    }
+
+    /**
+     * Returns the size class index of a buffer with the specified
+     * capacity if it could have come from a pool, or -1 otherwise.
+     */
+    private static int capacityClass(int capacity) {
+	if (Integer.bitCount(capacity) != 1) {
+	    return -1;
+	}
+	int shift = Integer.numberOfTrailingZeros(capacity);
+	if (shift < MIN_SHIFT || shift > MAX_SHIFT) {
+	    return -1;
+	}
+	return shift - MIN_SHIFT;
+    }
+
+    /**
+     * Returns a buffer with position zero and limit <code>size</code>.
+     */
+    ByteBuffer acquire(int size) {
+	int index = sizeClass(size);
+	if (index < 0) {
+	    return allocate(size);
+	}
+	ByteBuffer buffer = free[index].poll();
+	if (buffer == null) {
+	    buffer = allocateClass(index);
+	}
+	buffer.limit(size);
+	return buffer;
+    }
+
+    /**
+     * Returns a buffer to this pool.  Buffers that are not of a pooled
+     * size, do not match this pool's kind, or exceed its retention limit
+     * are left to the garbage collector.
+     */
+    void release(ByteBuffer buffer) {
+	if (buffer.isDirect() != direct || buffer.isReadOnly()) {
+	    return;
+	}
+	int index = capacityClass(buffer.capacity());
+	if (index >= 0) {
+	    buffer.clear();
+	    free[index].offer(buffer);
+	}
+    }
+
+    /**
+     * Creates a new per-connection cache in front of the shared pools.
+     */
+    static Cache newCache() {
+	return new Cache();
+    }
+
+    private ByteBuffer allocate(int size) {
+	return direct ? ByteBuffer.allocateDirect(size)
+		      : ByteBuffer.allocate(size);
+    }
+
+    private ByteBuffer allocateClass(int index) {
+	int size = 1 << (index + MIN_SHIFT);
+	if (!direct || index + MIN_SHIFT > SLAB_MAX_SHIFT) {
+	    return allocate(size);
+	}
+	synchronized (this) {
+	    if (slab == null || slab.remaining() < size) {
+		slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+	    }
+	    slab.limit(slab.position() + size);
+	    ByteBuffer buffer = slab.slice();
+	    slab.position(slab.limit());
+	    slab.limit(slab.capacity());
+	    return buffer;
+	}
+    }
+
+    /**
+     * Bounded lock-free queue of free buffers of one size class.
+     */
+    private static final class FreeList {
+	private final ConcurrentLinkedQueue<ByteBuffer> queue =
+	    new ConcurrentLinkedQueue<ByteBuffer>();
+	private final AtomicInteger count = new AtomicInteger();
+	private final int max;
+
+	FreeList(int max) {
+	    this.max = max;
+	}
+
+	ByteBuffer poll() {
+	    ByteBuffer buffer = queue.poll();
+	    if (buffer != null) {
+		count.decrementAndGet();
+	    }
+	    return buffer;
+	}
+
+	void offer(ByteBuffer buffer) {
+	    if (count.incrementAndGet() > max) {
+		count.decrementAndGet();
+		return;
+	    }
+	    queue.offer(buffer);
+	}
+    }
+
+    /**
+     * A Cache keeps a small stack of free direct and heap buffers of each
+     * size class for a single connection, falling back to the shared pools
+     * when empty or full.  Once {@link #drain drained}, a cache passes all
+     * further requests straight through to the shared pools.
+     */
+    static final class Cache {
+	private final ByteBuffer[][] directStacks =
+	    new ByteBuffer[CLASSES][CACHE_DEPTH];
+	private final ByteBuffer[][] heapStacks =
+	    new ByteBuffer[CLASSES][CACHE_DEPTH];
+	private final int[] directDepth = new int[CLASSES];
+	private final int[] heapDepth = new int[CLASSES];
+	private boolean drained = false;
+
+	Cache() { }
+
+	/**
+	 * Returns a buffer of the requested kind with position zero and
+	 * limit <code>size</code>.
+	 */
+	ByteBuffer acquire(int size, boolean direct) {
+	    int index = sizeClass(size);
+	    if (index >= 0) {
+		synchronized (this) {
+		    int[] depth = direct ? directDepth : heapDepth;
+		    if (depth[index] > 0) {
+			ByteBuffer[] stack =
+			    (direct ? directStacks : heapStacks)[index];
+			ByteBuffer buffer = stack[--depth[index]];
+			stack[depth[index]] = null;
+			buffer.limit(size);
+			return buffer;
+		    }
+		}
+	    }
+	    return (direct ? DIRECT : HEAP).acquire(size);
+	}
+
+	/**
+	 * Returns a buffer obtained from this cache, or from either shared
+	 * pool, for reuse.
+	 */
+	void release(ByteBuffer buffer) {
+	    int index = capacityClass(buffer.capacity());
+	    if (index < 0 || buffer.isReadOnly()) {
+		return;
+	    }
+	    boolean direct = buffer.isDirect();
+	    synchronized (this) {
+		int[] depth = direct ? directDepth : heapDepth;
+		if (!drained && depth[index] < CACHE_DEPTH) {
+		    buffer.clear();
+		    (direct ? directStacks : heapStacks)[index][depth[index]++] =
+			buffer;
+		    return;
+		}
+	    }
+	    poolFor(buffer).release(buffer);
+	}
+
+	/**
+	 * Returns all cached buffers to the shared pools; called when the
+	 * owning connection goes down.
+	 */
+	void drain() {
+	    synchronized (this) {
+		drained = true;
+	    }
+	    drain(directStacks, directDepth, DIRECT);
+	    drain(heapStacks, heapDepth, HEAP);
+	}
+
+	private void drain(ByteBuffer[][] stacks, int[] depth,
+			   BufferPool pool)
+	{
+	    for (int i = 0; i < CLASSES; i++) {
+		while (true) {
+		    ByteBuffer buffer;
+		    synchronized (this) {
+			if (depth[i] == 0) {
+			    break;
+			}
+			buffer = stacks[i][--depth[i]];
+			stacks[i][depth[i]] = null;
+		    }
+		    pool.release(buffer);
+		}
+	    }
+	}
+    }
+}
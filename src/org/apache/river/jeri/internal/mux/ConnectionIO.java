@@ -84,6 +84,9 @@ abstract class ConnectionIO {
      * the buffer's contents and other state, is asynchronous with the
      * invocation of this method; therefore, the supplied buffer must not
      * be mutated even after this method has returned.
+     *
+     * The buffer is a pooled message header obtained from the mux; once it
+     * has been completely written it is returned to the mux's buffer pool.
      */
     abstract void asyncSend(ByteBuffer buffer);
 
@@ -99,8 +102,15 @@ abstract class ConnectionIO {
      * the buffers' contents and other state, is asynchronous with the
      * invocation of this method; therefore, the supplied buffers must not
      * be mutated even after this method has returned.
+     *
+     * The first buffer is a pooled message header obtained from the mux;
+     * once it has been completely written it is returned to the mux's
+     * buffer pool, as is the second buffer if releaseSecond is true.
+     * Implementations should write both buffers with a single gathering
+     * write where the underlying connection allows it.
      */
-    abstract void asyncSend(ByteBuffer first, ByteBuffer second);
+    abstract void asyncSend(ByteBuffer first, ByteBuffer second,
+			    boolean releaseSecond);
 
     /**
      * Sends the sequence of bytes contained in the supplied buffers to the
@@ -120,6 +130,10 @@ abstract class ConnectionIO {
      * definitely completed (or will definitely not complete due to some
      * failure).  After the write has completed, each buffers' position will
      * have been incremented to its limit (which will not have changed).
+     *
+     * The first buffer is a pooled message header obtained from the mux;
+     * once it has been completely written it is returned to the mux's
+     * buffer pool.  The second buffer remains owned by the caller.
      */
     abstract IOFuture futureSend(ByteBuffer first, ByteBuffer second);
 }
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.jeri.internal.mux;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * DataCompression holds the compression state of one session on a
+ * connection for which compression was negotiated.
+ *
+ * Each direction of a session is a single DEFLATE stream, sync flushed
+ * at the end of every compressed Data message, so that the small
+ * fragments a session is split into benefit from the history of the
+ * earlier ones.  The data of a compressed Data message is the length of
+ * the uncompressed fragment as an unsigned short, followed by the
+ * deflated bytes.
+ *
+ * Instances are guarded by the lock of the owning session.
+ */
+final class DataCompression {
+
+    private Deflater deflater;
+    private Inflater inflater;
+
+    /** scratch space for copying from non-array buffers */
+    private byte[] input;
+
+    /** scratch space for compressed output */
+    private byte[] output;
+
+    DataCompression() { }
+
+    /**
+     * Returns a buffer from the mux's pool containing the compressed data
+     * for the remaining bytes of the given buffer, whose position is not
+     * changed.  If last is true, the outbound stream ends with this
+     * fragment.
+     */
+    ByteBuffer deflate(Mux mux, ByteBuffer data, boolean last) {
+	int length = data.remaining();
+	assert length > 0 && length <= 0xFFFF;
+	if (deflater == null) {
+	    deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+	}
+	setInput(deflater, data, length);
+
+	/*
+	 * A sync flush of incompressible data grows it by a few bytes
+	 * per stored block, so this is enough for a single pass almost
+	 * always; otherwise output accumulates in a larger array.
+	 */
+	int bound = 2 + length + (length >> 3) + 64;
+	if (output == null || output.length < bound) {
+	    output = new byte[bound];
+	}
+	output[0] = (byte) (length >> 8);
+	output[1] = (byte) length;
+	int size = 2;
+	while (true) {
+	    int n = deflater.deflate(output, size, output.length - size,
+				     Deflater.SYNC_FLUSH);
+	    size += n;
+	    if (size < output.length) {
+		break;
+	    }
+	    byte[] larger = new byte[output.length * 2];
+	    System.arraycopy(output, 0, larger, 0, size);
+	    output = larger;
+	}
+	if (last) {
+	    endDeflater();
+	}
+	ByteBuffer compressed = mux.acquireBuffer(size);
+	compressed.put(output, 0, size).flip();
+	return compressed;
+    }
+
+    /**
+     * Returns a buffer from the mux's pool containing the uncompressed
+     * data for the given compressed Data message data.  If last is true,
+     * the inbound stream ends with this fragment.
+     */
+    ByteBuffer inflate(Mux mux, ByteBuffer data, boolean last)
+	throws ProtocolException
+    {
+	if (data.remaining() < 2) {
+	    throw new ProtocolException("compressed Data too short");
+	}
+	int length = data.getShort(data.position()) & 0xFFFF;
+	if (length == 0) {
+	    throw new ProtocolException("compressed Data is empty");
+	}
+	if (inflater == null) {
+	    inflater = new Inflater(true);
+	}
+	ByteBuffer compressed = data.duplicate();
+	compressed.position(compressed.position() + 2);
+	setInput(inflater, compressed, compressed.remaining());
+
+	/*
+	 * Inflate with room to spare, so that the trailing sync flush
+	 * marker is consumed and any excess data is detected.
+	 */
+	if (output == null || output.length < length + 1) {
+	    output = new byte[length + 1];
+	}
+	int n = 0;
+	try {
+	    while (n <= length && !inflater.needsInput()) {
+		int m = inflater.inflate(output, n, length + 1 - n);
+		if (m == 0) {
+		    break;
+		}
+		n += m;
+	    }
+	} catch (DataFormatException e) {
+	    throw new ProtocolException("bad compressed Data: " +
+					e.getMessage());
+	}
+	if (n != length) {
+	    throw new ProtocolException(
+		"compressed Data length mismatch: " + n + " != " + length);
+	}
+	if (last) {
+	    endInflater();
+	}
+	ByteBuffer result = mux.acquireHeapBuffer(length);
+	result.put(output, 0, length).flip();
+	return result;
+    }
+
+    /**
+     * Releases the native resources of both directions.
+     */
+    void end() {
+	endDeflater();
+	endInflater();
+    }
+
+    /**
+     * Releases the native resources of the outbound stream.
+     */
+    void endDeflater() {
+	if (deflater != null) {
+	    deflater.end();
+	    deflater = null;
+	}
+    }
+
+    /**
+     * Releases the native resources of the inbound stream.
+     */
+    void endInflater() {
+	if (inflater != null) {
+	    inflater.end();
+	    inflater = null;
+	}
+    }
+
+    /*
+     * The next two methods pass the next length bytes of the buffer as
+     * input, directly from its array if it has one, without changing the
+     * buffer's position.  Neither Deflater nor Inflater retains the array
+     * once its input has been consumed, which the callers ensure.
+     */
+
+    private void setInput(Deflater deflater, ByteBuffer buffer, int length) {
+	if (buffer.hasArray()) {
+	    deflater.setInput(buffer.array(),
+			      buffer.arrayOffset() + buffer.position(), length);
+	} else {
+	    deflater.setInput(copy(buffer, length), 0, length);
+	}
+    }
+
+    private void setInput(Inflater inflater, ByteBuffer buffer, int length) {
+	if (buffer.hasArray()) {
+	    inflater.setInput(buffer.array(),
+			      buffer.arrayOffset() + buffer.position(), length);
+	} else {
+	    inflater.setInput(copy(buffer, length), 0, length);
+	}
+    }
+
+    private byte[] copy(ByteBuffer buffer, int length) {
+	if (input == null || input.length < length) {
+	    input = new byte[length];
+	}
+	buffer.duplicate().get(input, 0, length);
+	return input;
+    }
+}
@@ -18,6 +18,8 @@
 
 package org.apache.river.jeri.internal.mux;
 
+import org.apache.river.action.GetBooleanAction;
+import org.apache.river.action.GetIntegerAction;
 import org.apache.river.jeri.internal.runtime.HexDumpEncoder;
 import org.apache.river.thread.Executor;
 import org.apache.river.thread.GetThreadPoolAction;
@@ -35,8 +37,12 @@ import java.security.AccessController;
 import java.util.BitSet;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import net.jini.io.DescriptorCache;
 
 /**
  * Mux is the abstract superclass of both client-side and server-side
@@ -69,8 +75,16 @@ abstract class Mux {
     static final int Data_close			= 0x08;
     static final int Data_eof			= 0x04;
     static final int Data_ackRequired		= 0x02;
+    static final int Data_compressed		= 0x01;
 
     static final int ClientConnectionHeader_negotiate	= 0x01;
+    static final int ClientConnectionHeader_compress	= 0x02;
+    static final int ServerConnectionHeader_compress	= 0x02;
+    static final int ClientConnectionHeader_compactDescriptors	= 0x04;
+    static final int ServerConnectionHeader_compactDescriptors	= 0x04;
+    static final int ClientConnectionHeader_descriptorCache	= 0x08;
+    static final int ServerConnectionHeader_descriptorCache	= 0x08;
+    static final int ClientConnectionHeader_compressRequested	= 0x10;
 
     private static final byte[] magic = {
 	(byte) 'J', (byte) 'm', (byte) 'u', (byte) 'x'	// 0x4A6D7578
@@ -78,6 +92,32 @@ abstract class Mux {
 
     private static final int VERSION = 0x01;
 
+    /**
+     * whether sessions compress their data by default on connections for
+     * which compression is in effect and which are not confidential;
+     * requests can override this with the Compression constraint, and
+     * servers also compress the responses to compressed requests
+     */
+    private static final boolean compressByDefault =
+	AccessController.doPrivileged(new GetBooleanAction(
+	    "org.apache.river.jeri.connection.mux.compression")).booleanValue();
+
+    /** smallest Data message data compressed, default is 256 bytes */
+    private static final int compressionThreshold = Math.max(1,
+	AccessController.doPrivileged(new GetIntegerAction(
+	    "org.apache.river.jeri.connection.mux.compressionThreshold",
+	    256)).intValue());
+
+    /**
+     * whether to offer (as a client) and accept (as a server) compact
+     * class descriptors for core classes in the object streams of
+     * requests on this connection; both ends must enable it
+     */
+    private static final boolean compactDescriptorsAllowed =
+	AccessController.doPrivileged(new GetBooleanAction(
+	    "org.apache.river.jeri.connection.mux.compactDescriptors"))
+	    .booleanValue();
+
     /**
      * pool of threads for executing tasks in system thread group:
      * used for shutting down sessions when a connection goes down
@@ -115,21 +155,70 @@ abstract class Mux {
     private static final Logger logger =
 	Logger.getLogger("net.jini.jeri.connection.mux");
 
+    /** data for Data messages of zero length */
+    private static final ByteBuffer EMPTY_BUFFER =
+	ByteBuffer.allocate(0).asReadOnlyBuffer();
+
     final int role;
     final int initialInboundRation;
     final int maxFragmentSize;
 
+    /** per-connection cache of pooled buffers */
+    private final BufferPool.Cache buffers = BufferPool.newCache();
+
     private final ConnectionIO connectionIO;
     private final boolean directBuffersUseful;
 
-    /** lock guarding all mutable instance state (below) */
-    final Object muxLock = new Object();
+    /**
+     * lock guarding all mutable instance state (below); a ReentrantLock
+     * rather than a monitor so that virtual threads waiting on it do not
+     * pin their carrier threads
+     */
+    final ReentrantLock muxLock = new ReentrantLock();
+
+    /** signalled when muxDown or clientConnectionReady changes */
+    final Condition muxCondition = muxLock.newCondition();
 
     int initialOutboundRation;		// set from remote connection
     // volatile reads, sync writes on muxLock
     private volatile boolean clientConnectionReady = false; // server header received
     boolean serverConnectionReady = false;	   // server header sent
 
+    /** whether compression was negotiated; set during the handshake */
+    private volatile boolean compression = false;
+
+    /**
+     * whether the connection is, or may be, confidential, in which case
+     * the lengths of compressed data could reveal the plaintext and
+     * compression is only negotiated if the client requests it
+     * explicitly; set before the handshake
+     */
+    private volatile boolean confidential = false;
+
+    /**
+     * whether the client requests compression explicitly; set before the
+     * handshake
+     */
+    private volatile boolean compressionRequested = false;
+
+    /**
+     * whether compact class descriptors were negotiated; set during the
+     * handshake
+     */
+    private volatile boolean compactDescriptors = false;
+
+    /**
+     * whether the user of this connection handles the descriptor cache
+     * flag at the start of each request; set before the handshake
+     */
+    private volatile boolean descriptorCacheAllowed = false;
+
+    /**
+     * the descriptor cache shared by the requests on this connection, if
+     * one was negotiated; set during the handshake
+     */
+    private volatile DescriptorCache descriptorCache = null;
+
     // volatile reads, sync writes on muxLock
     volatile boolean muxDown = false;
     String muxDownMessage;
@@ -180,6 +269,29 @@ abstract class Mux {
 	directBuffersUseful = true;
         startTimeout = handshakeTimeout;
     }
+
+    /**
+     * Constructs a new Mux instance for a TLS/SSL connection accessible
+     * through a SocketChannel secured by an SSLEngine, whose initial
+     * handshake has completed.
+     */
+    Mux(SSLEngineChannel channel, int role, int initialInboundRation, int maxFragmentSize, long handshakeTimeout)
+	throws IOException
+    {
+	this.role = role;
+	if ((initialInboundRation & ~0x00FFFF00) != 0) {
+	    throw new IllegalArgumentException(
+		"illegal initial inbound ration: " +
+		toHexString(initialInboundRation));
+	}
+	this.initialInboundRation = initialInboundRation;
+	this.maxFragmentSize = maxFragmentSize;
+
+	this.connectionIO = new SSLEngineConnectionIO(this, channel);
+	directBuffersUseful = false;	// engine copies plaintext anyway
+	confidential = true;
+        startTimeout = handshakeTimeout;
+    }
     
     /**
      * Time in milliseconds for client-side connections to wait for the server
@@ -227,10 +339,13 @@ abstract class Mux {
             long endTime = now + this.startTimeout;
             while (!muxDown && !clientConnectionReady) {
                 try {
-                    synchronized (muxLock){
-                        muxLock.wait(endTime - now);
+                    muxLock.lock();
+                    try {
+                        muxCondition.await(endTime - now, TimeUnit.MILLISECONDS);
                         if (clientConnectionReady) return;
                         if (muxDown) throw new IOException(muxDownMessage, muxDownCause);
+                    } finally {
+                        muxLock.unlock();
                     }
                     now = System.currentTimeMillis();
                     if (now < endTime) continue;
@@ -273,7 +388,7 @@ abstract class Mux {
      * and while muxDown is false.
      */
     final void addSession(int sessionID, Session session) {
-	assert Thread.holdsLock(muxLock);
+	assert muxLock.isHeldByCurrentThread();
 	assert !muxDown;
 	assert !busySessions.get(sessionID);
 //	assert sessions.get(Byte.valueOf(sessionID)) == null;
@@ -298,13 +413,17 @@ abstract class Mux {
     final void setDown(final String message, final Throwable cause) {
 	SessionShutdownTask sst = null;
         if (muxDown) return;
-	synchronized (muxLock) {
+	muxLock.lock();
+	try {
 	    muxDown = true;
 	    muxDownMessage = message;
 	    muxDownCause = cause;
 	    sst = new SessionShutdownTask(sessions.clone(), message, cause);
-	    muxLock.notifyAll();
+	    muxCondition.signalAll();
+	} finally {
+	    muxLock.unlock();
 	}
+	buffers.drain();
 
             /*
              * The following should be safe because we just left the
@@ -361,13 +480,16 @@ abstract class Mux {
      * object only.
      */
     final void removeSession(int sessionID) {
-	synchronized (muxLock) {
+	muxLock.lock();
+	try {
 	    if (muxDown) {
 		return;
 	    }
 	    assert busySessions.get(sessionID);
 	    busySessions.clear(sessionID);
 	    sessions[sessionID] = null;
+	} finally {
+	    muxLock.unlock();
 	}
     }
 
@@ -381,17 +503,120 @@ abstract class Mux {
 	return directBuffersUseful;
     }
 
+    /**
+     * Returns true if compression was negotiated for this connection.
+     */
+    final boolean compressionEnabled() {
+	return compression;
+    }
+
+    /**
+     * Returns true if compact class descriptors were negotiated for this
+     * connection.
+     */
+    final boolean compactDescriptorsEnabled() {
+	return compactDescriptors;
+    }
+
+    /**
+     * Offers (as a client) or accepts (as a server) a descriptor cache
+     * for this connection.  If one is negotiated, the data of every
+     * request starts with a byte, written by MuxClient.writeRequestHeader
+     * and read by MuxServer.readRequestHeader, saying whether the request
+     * uses the cache.  This method must be invoked before start.
+     */
+    public final void enableDescriptorCache() {
+	descriptorCacheAllowed = true;
+    }
+
+    /**
+     * Declares that this connection is, or may be, confidential.  On such
+     * a connection a client only offers, and a server only accepts,
+     * compression that the client requested explicitly, and sessions do
+     * not compress their data by default.  Connections secured with an
+     * SSLEngine are always treated as confidential.  This method must be
+     * invoked before start.
+     */
+    public final void setConfidential() {
+	confidential = true;
+    }
+
+    /**
+     * Requests compression for this connection explicitly, so that it is
+     * offered even if the connection is confidential.  This method must
+     * be invoked before start, and only on the client side.
+     */
+    public final void requestCompression() {
+	assert role == CLIENT;
+	compressionRequested = true;
+    }
+
+    /**
+     * Returns the descriptor cache negotiated for this connection, or
+     * null if there is none.
+     */
+    final DescriptorCache descriptorCache() {
+	return descriptorCache;
+    }
+
+    /**
+     * Returns true if new sessions should compress the data they send.
+     */
+    final boolean compressByDefault() {
+	return compression && compressByDefault && !confidential;
+    }
+
+    /**
+     * Returns the size below which Data message data is not compressed.
+     */
+    final int compressionThreshold() {
+	return compressionThreshold;
+    }
+
+    /**
+     * Returns a pooled buffer for outgoing data, direct if direct buffers
+     * are useful for this connection, with position zero and limit size.
+     * Message headers obtained this way are released by the ConnectionIO
+     * once written.
+     */
+    final ByteBuffer acquireBuffer(int size) {
+	return buffers.acquire(size, directBuffersUseful);
+    }
+
+    /**
+     * Returns a pooled heap buffer for incoming data, with position zero
+     * and limit size.
+     */
+    final ByteBuffer acquireHeapBuffer(int size) {
+	return buffers.acquire(size, false);
+    }
+
+    /**
+     * Returns a buffer obtained from acquireBuffer or acquireHeapBuffer
+     * to the pool.  The caller must hold no further references to it.
+     */
+    final void releaseBuffer(ByteBuffer buffer) {
+	buffers.release(buffer);
+    }
+
     /**
      * Sends the ClientConnectionHeader message for this connection.
      */
     final void asyncSendClientConnectionHeader() {
 	assert role == CLIENT;
 
-	ByteBuffer header = ByteBuffer.allocate(8);
+	ByteBuffer header = acquireBuffer(8);
 	header.put(magic)
 	      .put((byte) VERSION)
 	      .putShort((short) (initialInboundRation >> 8))
-	      .put((byte) 0)
+	      .put((byte) ((!confidential || compressionRequested ?
+			    ClientConnectionHeader_compress : 0) |
+			   (compressionRequested ?
+			    ClientConnectionHeader_compressRequested : 0) |
+			   (compactDescriptorsAllowed ?
+			    ClientConnectionHeader_compactDescriptors : 0) |
+			   (descriptorCacheAllowed ?
+			    ClientConnectionHeader_descriptorCache : 0)))
 	      .flip();
 	connectionIO.asyncSend(header);
     }
@@ -402,11 +627,15 @@ abstract class Mux {
     final void asyncSendServerConnectionHeader() {
 	assert role == SERVER;
 
-	ByteBuffer header = ByteBuffer.allocate(8);
+	ByteBuffer header = acquireBuffer(8);
 	header.put(magic)
 	      .put((byte) VERSION)
 	      .putShort((short) (initialInboundRation >> 8))
-	      .put((byte) 0)
+	      .put((byte) ((compression ? ServerConnectionHeader_compress : 0) |
+			   (compactDescriptors ?
+			    ServerConnectionHeader_compactDescriptors : 0) |
+			   (descriptorCache != null ?
+			    ServerConnectionHeader_descriptorCache : 0)))
 	      .flip();
 	connectionIO.asyncSend(header);
     }
@@ -427,7 +656,7 @@ abstract class Mux {
      * be mutated even after this method has returned.
      */
     final void asyncSendNoOperation(ByteBuffer buffer) {
-	ByteBuffer header = ByteBuffer.allocate(4);
+	ByteBuffer header = acquireBuffer(4);
 	header.put((byte) NoOperation)
 	      .put((byte) 0);
 
@@ -435,7 +664,7 @@ abstract class Mux {
 	    assert buffer.remaining() <= 0xFFFF;
 	    header.putShort((short) buffer.remaining())
 		  .flip();
-	    connectionIO.asyncSend(header, buffer);
+	    connectionIO.asyncSend(header, buffer, false);
 	} else {
 	    header.putShort((short) 0)
 		  .flip();
@@ -452,7 +681,7 @@ abstract class Mux {
 	ByteBuffer data = (message != null ?
 			   getUTF8BufferFromString(message) : null);
 
-	ByteBuffer header = ByteBuffer.allocate(4);
+	ByteBuffer header = acquireBuffer(4);
 	header.put((byte) Shutdown)
 	      .put((byte) 0);
 
@@ -460,7 +689,7 @@ abstract class Mux {
 	    assert data.remaining() <= 0xFFFF;
 	    header.putShort((short) data.remaining())
 		  .flip();
-	    connectionIO.asyncSend(header, data);
+	    connectionIO.asyncSend(header, data, false);
 	} else {
 	    header.putShort((short) 0)
 		  .flip();
@@ -474,7 +703,7 @@ abstract class Mux {
     final void asyncSendPing(int cookie) {
 	assert cookie >= 0 && cookie <= 0xFFFF;
 
-	ByteBuffer header = ByteBuffer.allocate(4);
+	ByteBuffer header = acquireBuffer(4);
 	header.put((byte) Ping)
               .put((byte) 0)
 	      .putShort((short) cookie)
@@ -488,7 +717,7 @@ abstract class Mux {
     final void asyncSendPingAck(int cookie) {
 	assert cookie >= 0 && cookie <= 0xFFFF;
 
-	ByteBuffer header = ByteBuffer.allocate(4);
+	ByteBuffer header = acquireBuffer(4);
 	header.put((byte) PingAck)
 	      .put((byte) 0)
 	      .putShort((short) cookie)
@@ -505,7 +734,7 @@ abstract class Mux {
 	ByteBuffer data = (message != null ?
 			   getUTF8BufferFromString(message) : null);
 
-	ByteBuffer header = ByteBuffer.allocate(4);
+	ByteBuffer header = acquireBuffer(4);
 	header.put((byte) Error)
 	      .put((byte) 0);
 
@@ -513,7 +742,7 @@ abstract class Mux {
 	    assert data.remaining() <= 0xFFFF;
 	    header.putShort((short) data.remaining())
 		  .flip();
-	    connectionIO.asyncSend(header, data);
+	    connectionIO.asyncSend(header, data, false);
 	} else {
 	    header.putShort((short) 0)
 		  .flip();
@@ -529,7 +758,7 @@ abstract class Mux {
     final IOFuture futureSendError(String message) {
 	ByteBuffer data = getUTF8BufferFromString(message);
 
-	ByteBuffer header = ByteBuffer.allocate(4);
+	ByteBuffer header = acquireBuffer(4);
 	header.put((byte) Error)
 	      .put((byte) 0);
 
@@ -552,7 +781,7 @@ abstract class Mux {
 	assert sessionID >= 0 && sessionID <= MAX_SESSION_ID;
 	assert increment >= 0 && increment <= 0xFFFF;
 
-	ByteBuffer header = ByteBuffer.allocate(4);
+	ByteBuffer header = acquireBuffer(4);
 	header.put((byte) op)
 	      .put((byte) sessionID)
 	      .putShort((short) increment)
@@ -577,7 +806,7 @@ abstract class Mux {
 	assert (op & 0xFD) == Abort;		// validate operation code
 	assert sessionID >= 0 && sessionID <= MAX_SESSION_ID;
 
-	ByteBuffer header = ByteBuffer.allocate(4);
+	ByteBuffer header = acquireBuffer(4);
 	header.put((byte) op)
 	      .put((byte) sessionID);
 
@@ -585,7 +814,7 @@ abstract class Mux {
 	    assert data.remaining() <= 0xFFFF;
 	    header.putShort((short) data.remaining())
 		  .flip();
-	    connectionIO.asyncSend(header, data);
+	    connectionIO.asyncSend(header, data, false);
 	} else {
 	    header.putShort((short) 0)
 		  .flip();
@@ -599,7 +828,7 @@ abstract class Mux {
     final void asyncSendClose(int sessionID) {
 	assert sessionID >= 0 && sessionID <= MAX_SESSION_ID;
 
-	ByteBuffer header = ByteBuffer.allocate(4);
+	ByteBuffer header = acquireBuffer(4);
 	header.put((byte) Close)
 	      .put((byte) sessionID)
 	      .putShort((short) 0)
@@ -613,7 +842,7 @@ abstract class Mux {
     final void asyncSendAcknowledgment(int sessionID) {
 	assert sessionID >= 0 && sessionID <= MAX_SESSION_ID;
 
-	ByteBuffer header = ByteBuffer.allocate(4);
+	ByteBuffer header = acquireBuffer(4);
 	header.put((byte) Acknowledgment)
 	      .put((byte) sessionID)
 	      .putShort((short) 0)
@@ -640,12 +869,27 @@ abstract class Mux {
      * be mutated even after this method has returned.
      */
     final void asyncSendData(int op, int sessionID, ByteBuffer data) {
-	assert (op & 0xE1) == Data;	// validate operation code
+	asyncSendData(op, sessionID, data, false);
+    }
+
+    /**
+     * Sends a Data message as {@link #asyncSendData(int,int,ByteBuffer)
+     * asyncSendData}, optionally handing ownership of the data buffer to
+     * this connection: if releaseData is true, the buffer (which must have
+     * been obtained from {@link #acquireBuffer acquireBuffer}, possibly
+     * duplicated) is returned to the buffer pool once it has been written,
+     * and the caller must not refer to it again.
+     */
+    final void asyncSendData(int op, int sessionID, ByteBuffer data,
+			     boolean releaseData)
+    {
+	assert (op & 0xE0) == Data;	// validate operation code
+	assert (op & Data_compressed) == 0 || compression;
 	assert (op & Data_eof) != 0 ||	// close and ackRequired require eof
 	    (op & Data_close & Data_ackRequired) == 0;
 	assert sessionID >= 0 && sessionID <= MAX_SESSION_ID;
 
-	ByteBuffer header = ByteBuffer.allocate(4);
+	ByteBuffer header = acquireBuffer(4);
 	header.put((byte) op)
 	      .put((byte) sessionID);
 
@@ -653,7 +897,7 @@ abstract class Mux {
 	    assert data.remaining() <= 0xFFFF;
 	    header.putShort((short) data.remaining())
 		  .flip();
-	    connectionIO.asyncSend(header, data);
+	    connectionIO.asyncSend(header, data, releaseData);
 	} else {
 	    header.putShort((short) 0)
 		  .flip();
@@ -685,13 +929,14 @@ abstract class Mux {
      * position may be obtained by calling @link{IOFuture#getPosition()}.
      */
     final IOFuture futureSendData(int op, int sessionID, ByteBuffer data) {
-	assert (op & 0xE1) == Data;	// verify operation code
+	assert (op & 0xE0) == Data;	// verify operation code
+	assert (op & Data_compressed) == 0 || compression;
 	assert (op & Data_eof) != 0 ||	// close and ackRequired require eof
 	    (op & Data_close & Data_ackRequired) == 0;
 	assert sessionID >= 0 && sessionID <= MAX_SESSION_ID;
 	assert data.remaining() <= 0xFFFF;
 
-	ByteBuffer header = ByteBuffer.allocate(4);
+	ByteBuffer header = acquireBuffer(4);
 	header.put((byte) op)
 	      .put((byte) sessionID)
 	      .putShort((short) data.remaining())
@@ -710,18 +955,20 @@ abstract class Mux {
     /*
      * current read state lock and variables
      */
-    private final Object readStateLock = new Object();
+    private final ReentrantLock readStateLock = new ReentrantLock();
     private volatile int readState;
     private int currentOp;
     private int currentSessionID;
     private int currentLengthRemaining;
+    private boolean currentCompressed;
     private ByteBuffer currentDataBuffer = null;
 
     void processIncomingData(ByteBuffer buffer) throws ProtocolException {
 	buffer.flip();	// process data that has been read into buffer
 	assert buffer.hasRemaining();
 
-	synchronized (readStateLock) {
+	readStateLock.lock();
+	try {
 	  stateLoop:
 	    do {
 		switch (readState) {
@@ -745,6 +992,8 @@ abstract class Mux {
 		    throw new AssertionError();
 		}
 	    } while (buffer.hasRemaining());
+	} finally {
+	    readStateLock.unlock();
 	}
 
 	buffer.compact();
@@ -754,7 +1003,7 @@ abstract class Mux {
 	throws ProtocolException
     {
 	assert role == SERVER;
-        assert Thread.holdsLock(readStateLock);
+        assert readStateLock.isHeldByCurrentThread();
 
 	validatePartialMagicNumber(buffer);
 	if (buffer.remaining() < 8) {
@@ -767,8 +1016,19 @@ abstract class Mux {
 	int flags = (buffer.get() & 0xFF);
 	boolean negotiate = (flags & ClientConnectionHeader_negotiate) != 0;
 
-	synchronized (muxLock) {
+	muxLock.lock();
+	try {
 	    initialOutboundRation = ration;
+	    compression = (flags & ClientConnectionHeader_compress) != 0 &&
+		(!confidential ||
+		 (flags & ClientConnectionHeader_compressRequested) != 0);
+	    compactDescriptors = compactDescriptorsAllowed &&
+		(flags & ClientConnectionHeader_compactDescriptors) != 0;
+	    if (descriptorCacheAllowed &&
+		(flags & ClientConnectionHeader_descriptorCache) != 0)
+	    {
+		descriptorCache = new DescriptorCache();
+	    }
 	    asyncSendServerConnectionHeader();
 
 	    if (version == 0) {
@@ -784,6 +1044,8 @@ abstract class Mux {
 	    }
 
 	    serverConnectionReady = true;
+	} finally {
+	    muxLock.unlock();
 	}
 
 	readState = READ_MESSAGE_HEADER;
@@ -794,7 +1056,7 @@ abstract class Mux {
 	throws ProtocolException
     {
 	assert role == CLIENT;
-        assert Thread.holdsLock(readStateLock);
+        assert readStateLock.isHeldByCurrentThread();
         
 	validatePartialMagicNumber(buffer);
 
@@ -807,8 +1069,17 @@ abstract class Mux {
 	int ration = (buffer.getShort() & 0xFFFF) << 8;
 	int flags = (buffer.get() & 0xFF);
 
-	synchronized (muxLock) {
+	muxLock.lock();
+	try {
 	    initialOutboundRation = ration;
+	    compression = (flags & ServerConnectionHeader_compress) != 0;
+	    compactDescriptors = compactDescriptorsAllowed &&
+		(flags & ServerConnectionHeader_compactDescriptors) != 0;
+	    if (descriptorCacheAllowed &&
+		(flags & ServerConnectionHeader_descriptorCache) != 0)
+	    {
+		descriptorCache = new DescriptorCache();
+	    }
 
 	    if (version == 0) {
 		throw new ProtocolException(
@@ -820,7 +1091,9 @@ abstract class Mux {
 	    }
 
 	    clientConnectionReady = true;
-	    muxLock.notifyAll();
+	    muxCondition.signalAll();
+	} finally {
+	    muxLock.unlock();
 	}
 
 	readState = READ_MESSAGE_HEADER;
@@ -849,7 +1122,7 @@ abstract class Mux {
     private boolean readMessageHeader(ByteBuffer buffer)
 	throws ProtocolException
     {
-        assert Thread.holdsLock(readStateLock);
+        assert readStateLock.isHeldByCurrentThread();
 	if (buffer.remaining() < 4) {
 	    return false;		// wait for complete header to arrive
 	}
@@ -861,18 +1134,21 @@ abstract class Mux {
 	}
 
 	int op = (buffer.get() & 0xFF);
-	if ((op & 0xE1) == Data) {
+	if ((op & 0xE1) == Data ||
+	    (compression && (op & 0xE1) == (Data | Data_compressed)))
+	{
 	    int sessionID = (buffer.get() & 0xFF);
 	    if (sessionID > MAX_SESSION_ID) {
 		throw new ProtocolException("bad message header: " +
 		    toHexString(buffer.getInt(headerPosition)));
 	    }
-	    currentOp = op;
+	    currentOp = op & ~Data_compressed;
+	    currentCompressed = (op & Data_compressed) != 0;
 	    currentSessionID = sessionID;
 	    currentLengthRemaining = (buffer.getShort() & 0xFFFF);
 	    if (currentLengthRemaining > 0) {
 		currentDataBuffer =
-		    ByteBuffer.allocate(currentLengthRemaining);
+		    acquireHeapBuffer(currentLengthRemaining);
 		readState = READ_MESSAGE_BODY;
 	    } else {
 		dispatchCurrentMessage();
@@ -902,7 +1178,7 @@ abstract class Mux {
 	    currentLengthRemaining = (buffer.getShort() & 0xFFFF);
 	    if (currentLengthRemaining > 0) {
 		currentDataBuffer =
-		    ByteBuffer.allocate(currentLengthRemaining);
+		    acquireHeapBuffer(currentLengthRemaining);
 		readState = READ_MESSAGE_BODY;
 	    } else {
 		dispatchCurrentMessage();
@@ -936,7 +1212,7 @@ abstract class Mux {
 	    currentLengthRemaining = (buffer.getShort() & 0xFFFF);
 	    if (currentLengthRemaining > 0) {
 		currentDataBuffer =
-		    ByteBuffer.allocate(currentLengthRemaining);
+		    acquireHeapBuffer(currentLengthRemaining);
 		readState = READ_MESSAGE_BODY;
 	    } else {
 		dispatchCurrentMessage();
@@ -973,7 +1249,7 @@ abstract class Mux {
 	    currentLengthRemaining = (buffer.getShort() & 0xFFFF);
 	    if (currentLengthRemaining > 0) {
 		currentDataBuffer =
-		    ByteBuffer.allocate(currentLengthRemaining);
+		    acquireHeapBuffer(currentLengthRemaining);
 		readState = READ_MESSAGE_BODY;
 	    } else {
 		dispatchCurrentMessage();
@@ -1014,7 +1290,7 @@ abstract class Mux {
     private boolean readMessageBody(ByteBuffer buffer)
 	throws ProtocolException
     {
-        assert Thread.holdsLock(readStateLock);
+        assert readStateLock.isHeldByCurrentThread();
 	assert currentLengthRemaining > 0;
 	assert currentDataBuffer == null ||
 	    currentDataBuffer.remaining() == currentLengthRemaining;
@@ -1043,6 +1319,9 @@ abstract class Mux {
 	} else {
 	    currentDataBuffer.flip();
 	    dispatchCurrentMessage();
+	    if ((currentOp & 0xE1) != Data) {
+		releaseBuffer(currentDataBuffer);	// decoded to a String
+	    }
 	    currentDataBuffer = null;		// don't let this linger
 	    readState = READ_MESSAGE_HEADER;
 	    return true;
@@ -1059,8 +1338,9 @@ abstract class Mux {
 	    boolean eof		= (op & Data_eof) != 0;
 	    boolean ackRequired	= (op & Data_ackRequired) != 0;
 	    handleData(currentSessionID, open, close, eof, ackRequired,
+		       currentCompressed,
 		       (currentDataBuffer != null ?
-			currentDataBuffer : ByteBuffer.allocate(0)));
+			currentDataBuffer : EMPTY_BUFFER));
 	    return;
 
 	} else if ((op & 0xFD) == Abort) {
@@ -1124,7 +1404,8 @@ abstract class Mux {
 	    logger.log(Level.FINEST, "PingAck: cookie=" + cookie);
 	}
 
-	synchronized (muxLock) {
+	muxLock.lock();
+	try {
 	    if (cookie != expectedPingCookie) {
 		throw new ProtocolException(
 		    "unexpected ping cookie: " + cookie);
@@ -1132,6 +1413,8 @@ abstract class Mux {
 		expectedPingCookie = -1;
 		// NYI: rest of ping machinery
 	    }
+	} finally {
+	    muxLock.unlock();
 	}
     }
 
@@ -1185,7 +1468,7 @@ abstract class Mux {
 	getSession(sessionID).handleAcknowledgment();
     }
 
-    private void handleData(int sessionID, boolean open, boolean close, boolean eof, boolean ackRequired, ByteBuffer data)
+    private void handleData(int sessionID, boolean open, boolean close, boolean eof, boolean ackRequired, boolean compressed, ByteBuffer data)
 	throws ProtocolException
     {
 	if (logger.isLoggable(Level.FINEST)) {
@@ -1196,12 +1479,13 @@ abstract class Mux {
 	    data.get(bytes);
 	    data.reset();
 	    logger.log(Level.FINEST,
-                    "Data: sessionID={0}{1}{2}{3}{4},length={5}{6}",
+                    "Data: sessionID={0}{1}{2}{3}{4}{5},length={6}{7}",
                     new Object[]{sessionID,
                         open ? ",open" : "",
                         close ? ",close" : "",
                         eof ? ",eof" : "",
                         ackRequired ? ",ackRequired" : "",
+                        compressed ? ",compressed" : "",
                         length, 
                         length > 0 ? ",data=\n" + encoder.encode(bytes) : ""});
 	}
@@ -1216,16 +1500,20 @@ abstract class Mux {
 	    handleOpen(sessionID);
 	}
 
-	getSession(sessionID).handleData(data, eof, close, ackRequired);
+	getSession(sessionID).handleData(data, eof, close, ackRequired,
+					 compressed);
     }
 
     private Session getSession(int sessionID) throws ProtocolException {
-	synchronized (muxLock) {
+	muxLock.lock();
+	try {
 	    if (!busySessions.get(sessionID)) {
 		throw new ProtocolException(
 		    "inactive sessionID: " + sessionID);
 	    }
 	    return sessions[sessionID];
+	} finally {
+	    muxLock.unlock();
 	}
     }
 
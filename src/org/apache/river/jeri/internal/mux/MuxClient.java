@@ -57,6 +57,18 @@ public class MuxClient extends Mux {
 	super(channel, Mux.CLIENT, clientInitialInboundRation, 1024, handshakeTimeout);
     }
 
+    /**
+     * Initiates the client side of the multiplexed connection over the
+     * given TLS/SSL channel, whose initial handshake has completed.
+     *
+     * @param channel the secured channel of the underlying connection
+     * @param handshakeTimeout time in milliseconds to wait for the server
+     * to respond to the mux connection header
+     **/
+    public MuxClient(SSLEngineChannel channel, long handshakeTimeout) throws IOException {
+	super(channel, Mux.CLIENT, clientInitialInboundRation, 1024, handshakeTimeout);
+    }
+
     /**
      * Starts a new request over this connection, returning the
      * corresponding OutboundRequest object.
@@ -64,7 +76,8 @@ public class MuxClient extends Mux {
      * @return the OutboundRequest for the newly created request
      **/
     public OutboundRequest newRequest()	throws IOException {
-	synchronized (muxLock) {
+	muxLock.lock();
+	try {
 	    if (muxDown) {
 		IOException ioe = new IOException(muxDownMessage);
 		ioe.initCause(muxDownCause);
@@ -78,9 +91,50 @@ public class MuxClient extends Mux {
 	    Session session = new Session(this, sessionID, Session.CLIENT);
 	    addSession(sessionID, session);
 	    return session.getOutboundRequest();
+	} finally {
+	    muxLock.unlock();
 	}
     }
 
+    /**
+     * Sets whether the data of the given request, which must have been
+     * returned by this connection's newRequest method, is compressed
+     * before any of it is written.  Data smaller than the compression
+     * threshold is always sent uncompressed.
+     *
+     * @param request the request
+     * @param compress whether to compress the request's data
+     *
+     * @return false if compress is true but the server did not agree to
+     * compression for this connection, true otherwise
+     **/
+    public boolean setCompression(OutboundRequest request, boolean compress) {
+	return Session.setCompression(request, compress);
+    }
+
+    /**
+     * Writes the start of the data of the given request, which must have
+     * been returned by this connection's newRequest method, saying
+     * whether the object streams of the request and its response use the
+     * connection's descriptor cache.  If descriptor caches were enabled
+     * for this connection, this method must be invoked for each request
+     * before any other data is written.
+     *
+     * @param request the request
+     * @param useDescriptorCache whether the request uses the cache
+     *
+     * @return false if useDescriptorCache is true but the server did not
+     * agree to a descriptor cache for this connection, true otherwise
+     *
+     * @throws IOException if an I/O exception occurs
+     **/
+    public boolean writeRequestHeader(OutboundRequest request,
+				      boolean useDescriptorCache)
+	throws IOException
+    {
+	return Session.writeRequestHeader(request, useDescriptorCache);
+    }
+
     /**
      * Returns the current number of requests in progress over this
      * connection.
@@ -94,13 +148,16 @@ public class MuxClient extends Mux {
      * active
      **/
     public int requestsInProgress() throws IOException {
-	synchronized (muxLock) {
+	muxLock.lock();
+	try {
 	    if (muxDown) {
 		IOException ioe = new IOException(muxDownMessage);
 		ioe.initCause(muxDownCause);
 		throw ioe;
 	    }
 	    return busySessions.cardinality();
+	} finally {
+	    muxLock.unlock();
 	}
     }
 
@@ -112,8 +169,11 @@ public class MuxClient extends Mux {
      * IOExceptions thrown from future I/O operations
      **/
     public void shutdown(String message) {
-	synchronized (muxLock) {
+	muxLock.lock();
+	try {
 	    setDown(message, null);
+	} finally {
+	    muxLock.unlock();
 	}
     }
 
@@ -23,13 +23,17 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Output stream returned by OutboundRequests and InboundRequests for
  * a session of a multiplexed connection.
  */
 class MuxInputStream extends InputStream {
-    private final Object sessionLock;
+    private final ReentrantLock sessionLock;
+    private final Condition sessionCondition;
     private final Session session;
     private final Mux mux;
     private final Deque<ByteBuffer> inBufQueue;
@@ -40,10 +44,13 @@ class MuxInputStream extends InputStream {
     private boolean inClosed = false;
     private boolean sentAcknowledgment = false;
 
-    MuxInputStream(Mux mux, Session session, Object sessionLock) {
+    MuxInputStream(Mux mux, Session session, ReentrantLock sessionLock,
+		   Condition sessionCondition)
+    {
         this.mux = mux;
         this.session = session;
         this.sessionLock = sessionLock;
+        this.sessionCondition = sessionCondition;
         this.inBufQueue = new LinkedList<ByteBuffer>();
     }
 
@@ -57,7 +64,8 @@ class MuxInputStream extends InputStream {
 
     @Override
     public int read() throws IOException {
-        synchronized (sessionLock) {
+        sessionLock.lock();
+        try {
             if (inClosed) {
                 throw new IOException("stream closed");
             }
@@ -74,7 +82,7 @@ class MuxInputStream extends InputStream {
                     session.setInRation(session.getInRation() + inc);
                 }
                 try {
-                    sessionLock.wait(5000L); // REMIND: timeout?
+                    sessionCondition.await(5000L, TimeUnit.MILLISECONDS); // REMIND: timeout?
                 } catch (InterruptedException e) {
                     String message = "request I/O interrupted";
                     session.setDown(message, e);
@@ -107,12 +115,15 @@ class MuxInputStream extends InputStream {
                 if (inBufPos == buf.limit()) {
                     inBufQueue.removeFirst();
                     inBufPos = 0;
+                    mux.releaseBuffer(buf);
                 }
             }
             if (!session.inRationInfinite) {
                 checkInboundRation();
             }
             return result;
+        } finally {
+            sessionLock.unlock();
         }
     }
 
@@ -133,7 +144,8 @@ class MuxInputStream extends InputStream {
         } else if ((off < 0) || (off > b.length) || (len < 0) || ((off + len) > b.length) || ((off + len) < 0)) {
             throw new IndexOutOfBoundsException();
         }
-        synchronized (sessionLock) {
+        sessionLock.lock();
+        try {
             if (inClosed) {
                 throw new IOException("stream closed");
             } else if (len == 0) {
@@ -157,7 +169,7 @@ class MuxInputStream extends InputStream {
                     session.setInRation(session.getInRation() + inc);
                 }
                 try {
-                    sessionLock.wait(5000L); // REMIND: timeout?
+                    sessionCondition.await(5000L, TimeUnit.MILLISECONDS); // REMIND: timeout?
                 } catch (InterruptedException e) {
                     String message = "request I/O interrupted";
                     session.setDown(message, e);
@@ -193,12 +205,15 @@ class MuxInputStream extends InputStream {
                 if (inBufPos == buf.limit()) {
                     inBufQueue.removeFirst();
                     inBufPos = 0;
+                    mux.releaseBuffer(buf);
                 }
             }
             if (!session.inRationInfinite) {
                 checkInboundRation();
             }
             return len - remaining;
+        } finally {
+            sessionLock.unlock();
         }
     }
 
@@ -214,7 +229,7 @@ class MuxInputStream extends InputStream {
      * significant area for performance tuning.
      */
     private void checkInboundRation() {
-        assert Thread.holdsLock(sessionLock);
+        assert sessionLock.isHeldByCurrentThread();
         assert !session.inRationInfinite;
         if (session.getInState() >= Session.FINISHED) {
             return;
@@ -230,7 +245,8 @@ class MuxInputStream extends InputStream {
 
     @Override
     public int available() throws IOException {
-        synchronized (sessionLock) {
+        sessionLock.lock();
+        try {
             if (inClosed) {
                 throw new IOException("stream closed");
             }
@@ -240,17 +256,22 @@ class MuxInputStream extends InputStream {
              *     - session was aborted?
              */
             return inBufRemaining;
+        } finally {
+            sessionLock.unlock();
         }
     }
 
     @Override
     public void close() {
-        synchronized (sessionLock) {
+        sessionLock.lock();
+        try {
             if (inClosed) {
                 return;
             }
             inClosed = true;
-            inBufQueue.clear(); // allow GC of unread data
+            while (!inBufQueue.isEmpty()) { // recycle unread data
+                mux.releaseBuffer(inBufQueue.removeFirst());
+            }
             if (session.role == Session.CLIENT && !sentAcknowledgment && session.isReceivedAckRequired() && session.getOutState() < Session.TERMINATED) {
                 mux.asyncSendAcknowledgment(session.sessionID);
                 sentAcknowledgment = true;
@@ -266,7 +287,9 @@ class MuxInputStream extends InputStream {
                     session.setRemoveLater(false);
                 }
             }
-            sessionLock.notifyAll();
+            sessionCondition.signalAll();
+        } finally {
+            sessionLock.unlock();
         }
     }
 
@@ -21,6 +21,8 @@ package org.apache.river.jeri.internal.mux;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 
 /**
@@ -28,20 +30,50 @@ import java.util.logging.Level;
  * a session of a multiplexed connection.
  */
 class MuxOutputStream extends OutputStream {
-    private final ByteBuffer buffer;
-    private final Object sessionLock;
+    /** pooled fragment buffer, acquired on first write */
+    private ByteBuffer buffer = null;
+    private final ReentrantLock sessionLock;
+    private final Condition sessionCondition;
     private final Session session;
     private final Mux mux;
     private boolean fakeOKtoWrite = false; // REMIND
     private IOException sessionDown = null;
 
-    MuxOutputStream(Mux mux, Session session, Object sessionLock) {
+    MuxOutputStream(Mux mux, Session session, ReentrantLock sessionLock,
+		    Condition sessionCondition)
+    {
         this.sessionLock = sessionLock;
+        this.sessionCondition = sessionCondition;
         this.session = session;
         this.mux = mux;
-        this.buffer = mux.directBuffersUseful() 
-                ? ByteBuffer.allocateDirect(mux.maxFragmentSize) 
-                : ByteBuffer.allocate(mux.maxFragmentSize);
+    }
+
+    /**
+     * Acquires this stream's fragment buffer from the mux's buffer pool,
+     * if it does not currently hold one.
+     */
+    private void ensureBuffer() {
+        if (buffer == null) {
+            buffer = mux.acquireBuffer(mux.maxFragmentSize);
+        }
+    }
+
+    /**
+     * Compacts the fragment buffer, limiting it to the maximum fragment
+     * size rather than its (size class rounded) capacity.
+     */
+    private void compactBuffer() {
+        buffer.compact();
+        buffer.limit(mux.maxFragmentSize);
+    }
+
+    /**
+     * Clears the fragment buffer, limiting it to the maximum fragment
+     * size rather than its (size class rounded) capacity.
+     */
+    private void clearBuffer() {
+        buffer.clear();
+        buffer.limit(mux.maxFragmentSize);
     }
 
     void abort() {
@@ -58,12 +90,16 @@ class MuxOutputStream extends OutputStream {
 
     @Override
     public void write(int b) throws IOException {
+        ensureBuffer();
         if (!buffer.hasRemaining()) {
             writeBuffer(false);
         } else {
-            synchronized (sessionLock) {
+            sessionLock.lock();
+            try {
                 // REMIND: necessary?
                 ensureOpen();
+            } finally {
+                sessionLock.unlock();
             }
         }
         buffer.put((byte) b);
@@ -76,16 +112,23 @@ class MuxOutputStream extends OutputStream {
         } else if ((off < 0) || (off > b.length) || (len < 0) || ((off + len) > b.length) || ((off + len) < 0)) {
             throw new IndexOutOfBoundsException();
         } else if (len == 0) {
-            synchronized (sessionLock) {
+            sessionLock.lock();
+            try {
                 ensureOpen();
+            } finally {
+                sessionLock.unlock();
             }
             return;
         }
+        ensureBuffer();
         while (len > 0) {
             int avail = buffer.remaining();
             if (len <= avail) {
-                synchronized (sessionLock) {
+                sessionLock.lock();
+                try {
                     ensureOpen();
+                } finally {
+                    sessionLock.unlock();
                 }
                 buffer.put(b, off, len);
                 return;
@@ -113,9 +156,13 @@ class MuxOutputStream extends OutputStream {
         if (Session.logger.isLoggable(Level.FINEST)) {
             Session.logger.log(Level.FINEST, "STACK TRACE", new Throwable("STACK TRACE"));
         }
-        synchronized (sessionLock) {
+        sessionLock.lock();
+        try {
             ensureOpen();
+        } finally {
+            sessionLock.unlock();
         }
+        ensureBuffer();
         while (!writeBuffer(true)) {
         }
     }
@@ -126,7 +173,7 @@ class MuxOutputStream extends OutputStream {
      * this session's lock.
      */
     private void ensureOpen() throws IOException {
-        assert Thread.holdsLock(sessionLock);
+        assert sessionLock.isHeldByCurrentThread();
         /*
          * While we're faking that the session is still OK when it really
          * isn't (see above comments), return silently from here.
@@ -165,8 +212,10 @@ class MuxOutputStream extends OutputStream {
         origLimit = buffer.limit();
         int toSend;
         IOFuture future = null;
+        ByteBuffer compressed = null;
         boolean eofSent = false;
-        synchronized (sessionLock) {
+        sessionLock.lock();
+        try {
             while (buffer.remaining() > 0 
                     && !session.outRationInfinite 
                     && session.getOutRation() < 1 
@@ -174,7 +223,7 @@ class MuxOutputStream extends OutputStream {
                     && session.getOutState() == Session.OPEN) 
             {
                 try {
-                    sessionLock.wait(); // REMIND: timeout?
+                    sessionCondition.await(); // REMIND: timeout?
                 } catch (InterruptedException e) {
                     String message = "request I/O interrupted";
                     session.setDown(message, e);
@@ -194,7 +243,7 @@ class MuxOutputStream extends OutputStream {
                         && session.getInState() == Session.TERMINATED;
                 if (closeIfComplete) fakeOKtoWrite = false;
                 buffer.position(origLimit);
-                buffer.compact();
+                compactBuffer();
                 return closeIfComplete;
             }
             boolean complete;
@@ -219,6 +268,12 @@ class MuxOutputStream extends OutputStream {
             int op = Mux.Data | (open ? Mux.Data_open : 0) 
                     | (eof ? Mux.Data_eof : 0) | (close ? Mux.Data_close : 0)
                     | (ackRequired ? Mux.Data_ackRequired : 0);
+            if (toSend > 0) {
+                compressed = session.compressData(buffer, eof);
+                if (compressed != null) {
+                    op |= Mux.Data_compressed;
+                }
+            }
             /*
              * If we are the server-side, send even the final Data message
              * for this session synchronously with this method, so that the
@@ -229,11 +284,23 @@ class MuxOutputStream extends OutputStream {
              * Buffers are duplicated to avoid a data race that occurred in
              * StreamConnectionIO.  IOFuture now provides the buffer's position
              * after sending.
+             *
+             * A final Data message sent asynchronously takes the fragment
+             * buffer with it, to be returned to the pool once written.
+             *
+             * Compressed data is sent from its own pooled buffer instead,
+             * leaving the fragment buffer free once this method returns.
              */
             if (!eof || session.role == Session.SERVER) {
-                future = mux.futureSendData(op, session.sessionID, buffer.duplicate());
+                future = mux.futureSendData(op, session.sessionID,
+                        compressed != null ? compressed : buffer.duplicate());
+            } else if (compressed != null) {
+                mux.asyncSendData(op, session.sessionID, compressed, true);
+                mux.releaseBuffer(buffer);
+                buffer = null;
             } else {
-                mux.asyncSendData(op, session.sessionID, buffer.duplicate());
+                mux.asyncSendData(op, session.sessionID, buffer.duplicate(), true);
+                buffer = null;
             }
 
             if (session.getOutState() == Session.IDLE) {
@@ -246,8 +313,10 @@ class MuxOutputStream extends OutputStream {
                 if (ackRequired) {
                     session.setSentAckRequired(true);
                 }
-                sessionLock.notifyAll();
+                sessionCondition.signalAll();
             }
+        } finally {
+            sessionLock.unlock();
         }
         if (future != null) {
             /* StreamConnectionIO uses a dedicated thread for sending buffers, 
@@ -257,14 +326,23 @@ class MuxOutputStream extends OutputStream {
              * reading buffer position depended on a data race.
              */
             hasData = waitForIO(future);
-            if (hasData) {
+            if (compressed != null) {
+                mux.releaseBuffer(compressed);
+            }
+            if (eofSent) {
+                mux.releaseBuffer(buffer);
+                buffer = null;
+            } else if (compressed != null) {
+                buffer.position(buffer.limit()).limit(origLimit);
+                compactBuffer();
+            } else if (hasData) {
                 buffer.position(future.getPosition()).limit(origLimit);
-                buffer.compact();
+                compactBuffer();
             } else {
-                buffer.clear();
+                clearBuffer();
             }
-        } else {
-            buffer.clear();
+        } else if (buffer != null) {
+            clearBuffer();
         }
         return eofSent;
     }
@@ -275,7 +353,7 @@ class MuxOutputStream extends OutputStream {
      * this session's lock.
      */
     private boolean waitForIO(IOFuture future) throws IOException {
-        assert !Thread.holdsLock(sessionLock);
+        assert !sessionLock.isHeldByCurrentThread();
         try {
             return future.waitUntilDone();
         } catch (InterruptedException e) {
@@ -19,6 +19,7 @@
 package org.apache.river.jeri.internal.mux;
 
 import org.apache.river.action.GetIntegerAction;
+import org.apache.river.logging.Levels;
 import org.apache.river.thread.Executor;
 import org.apache.river.thread.GetThreadPoolAction;
 import java.io.IOException;
@@ -99,6 +100,25 @@ public class MuxServer extends Mux {
 	this.securityContext = Security.getContext();
     }
 
+    /**
+     * Initiates the server side of the multiplexed connection over the
+     * given TLS/SSL channel, whose initial handshake has completed.
+     *
+     * @param channel the secured channel of the underlying connection
+     *
+     * @param requestDispatcher the request dispatcher to dispatch
+     * incoming requests received on this multiplexed connection to
+     **/
+    public MuxServer(SSLEngineChannel channel,
+		     RequestDispatcher requestDispatcher)
+	throws IOException
+    {
+	super(channel, Mux.SERVER, serverInitialInboundRation, 1024, 0L);
+
+	this.requestDispatcher = requestDispatcher;
+	this.securityContext = Security.getContext();
+    }
+
     /**
      * Shuts down this multiplexed connection.  Requests in progress
      * will throw IOException for future I/O operations.
@@ -110,7 +130,8 @@ public class MuxServer extends Mux {
      * IOExceptions thrown from future I/O operations
      **/
     public void shutdown(String message) {
-	synchronized (muxLock) {
+	muxLock.lock();
+	try {
 	    /*
 	     * Be graceful, if possible: i.e. if there are no busy sessions.
 	     * REMIND: this current implementation is extremely conservative,
@@ -127,6 +148,8 @@ public class MuxServer extends Mux {
 		asyncSendShutdown(null);
 	    }
 	    setDown(message, null);
+	} finally {
+	    muxLock.unlock();
 	}
     }
 
@@ -140,7 +163,8 @@ public class MuxServer extends Mux {
      * were no requests in progress), and false otherwise
      **/
     public boolean shutdownGracefully() {
-	synchronized (muxLock) {
+	muxLock.lock();
+	try {
 	    if (busySessions.isEmpty()) {
 		asyncSendShutdown(null);
 		setDown("mux connection shut down gracefully", null);
@@ -148,6 +172,8 @@ public class MuxServer extends Mux {
 	    } else {
 		return false;
 	    }
+	} finally {
+	    muxLock.unlock();
 	}
     }
 
@@ -202,10 +228,11 @@ public class MuxServer extends Mux {
      **/
     @Override
     void handleOpen(int sessionID) throws ProtocolException {
-	assert !Thread.holdsLock(muxLock);
+	assert !muxLock.isHeldByCurrentThread();
 
 	Session session;
-	synchronized (muxLock) {
+	muxLock.lock();
+	try {
 	    if (!busySessions.get(sessionID)) {
 		dispatchNewRequest(sessionID);
 		return;
@@ -213,17 +240,22 @@ public class MuxServer extends Mux {
 		session = sessions[sessionID];
 		assert session != null;
 	    }
+	} finally {
+	    muxLock.unlock();
 	}
 
 	session.handleOpen();
 
-	synchronized (muxLock) {
+	muxLock.lock();
+	try {
 	    dispatchNewRequest(sessionID);
+	} finally {
+	    muxLock.unlock();
 	}
     }
 
     private void dispatchNewRequest(int sessionID) throws ProtocolException {
-	assert Thread.holdsLock(muxLock);
+	assert muxLock.isHeldByCurrentThread();
 	if (muxDown) {
 	    throw new ProtocolException(
 		"connection down, cannot add new session");
@@ -240,6 +272,15 @@ public class MuxServer extends Mux {
 		public void run() {
 		    final InboundRequest request = session.getInboundRequest();
 		    try {
+			try {
+			    session.readRequestHeader();
+			} catch (IOException e) {
+			    if (logger.isLoggable(Levels.HANDLED)) {
+				logger.log(Levels.HANDLED,
+				    "failed to read request header", e);
+			    }
+			    return;
+			}
 			AccessController.doPrivileged(securityContext.wrap(
 			    new PrivilegedAction() {
                                 @Override
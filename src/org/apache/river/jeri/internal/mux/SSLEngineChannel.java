@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.mux;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+/**
+ * An SSLEngineChannel pairs a connected SocketChannel with the SSLEngine
+ * that secures it, so that a TLS/SSL connection can be multiplexed by a
+ * {@link MuxClient} or {@link MuxServer} using non-blocking I/O instead of
+ * the threads required by the streams of an SSLSocket.
+ *
+ * The initial handshake is performed by {@link #handshake handshake}, in
+ * blocking mode, before the channel is handed to the mux, so that the
+ * caller can examine the negotiated session and apply its authentication
+ * checks exactly as it would for an SSLSocket.  Any data received beyond
+ * the end of the handshake is retained and processed once the mux starts.
+ *
+ * @since 3.0.0
+ **/
+public final class SSLEngineChannel {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+
+    /** network data received but not yet unwrapped, ready for reading */
+    ByteBuffer netIn;
+
+    /** application data unwrapped but not yet processed, ready for reading */
+    ByteBuffer appIn;
+
+    /**
+     * Creates an instance for the specified connected channel and engine.
+     * The engine's mode and enabled cipher suites should be set before the
+     * handshake is performed.
+     *
+     * @param channel the connected socket channel
+     * @param engine the engine that secures the channel
+     */
+    public SSLEngineChannel(SocketChannel channel, SSLEngine engine) {
+	if (channel == null || engine == null) {
+	    throw new NullPointerException();
+	}
+	this.channel = channel;
+	this.engine = engine;
+	SSLSession session = engine.getSession();
+	netIn = ByteBuffer.allocate(session.getPacketBufferSize());
+	appIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+    }
+
+    /** Returns the underlying socket channel. */
+    public SocketChannel getChannel() {
+	return channel;
+    }
+
+    /** Returns the engine that secures the channel. */
+    public SSLEngine getEngine() {
+	return engine;
+    }
+
+    /** Returns the engine's current session. */
+    public SSLSession getSession() {
+	return engine.getSession();
+    }
+
+    /**
+     * Performs the initial handshake, blocking until it has completed.
+     * The channel is placed in blocking mode for the duration.
+     *
+     * @throws SSLException if the handshake fails
+     * @throws IOException if an I/O failure occurs
+     */
+    public void handshake() throws IOException {
+	channel.configureBlocking(true);
+	ByteBuffer netOut =
+	    ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+	engine.beginHandshake();
+	SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+	while (true) {
+	    switch (status) {
+	      case FINISHED:
+	      case NOT_HANDSHAKING:
+		return;
+
+	      case NEED_TASK:
+		runDelegatedTasks(engine);
+		status = engine.getHandshakeStatus();
+		break;
+
+	      case NEED_WRAP: {
+		netOut.clear();
+		SSLEngineResult result = engine.wrap(EMPTY, netOut);
+		switch (result.getStatus()) {
+		  case BUFFER_OVERFLOW:
+		    netOut = enlarge(netOut,
+			engine.getSession().getPacketBufferSize());
+		    continue;
+		  default:
+		    break;
+		}
+		netOut.flip();
+		while (netOut.hasRemaining()) {
+		    channel.write(netOut);
+		}
+		if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+		    throw new SSLException("engine closed during handshake");
+		}
+		status = result.getHandshakeStatus();
+		break;
+	      }
+
+	      default: {		// NEED_UNWRAP
+		netIn.flip();
+		SSLEngineResult result;
+		try {
+		    result = engine.unwrap(netIn, appIn);
+		} finally {
+		    netIn.compact();
+		}
+		switch (result.getStatus()) {
+		  case BUFFER_UNDERFLOW:
+		    if (!netIn.hasRemaining()) {
+			netIn = enlarge(netIn,
+			    engine.getSession().getPacketBufferSize());
+		    }
+		    if (channel.read(netIn) < 0) {
+			throw new EOFException(
+			    "connection closed during handshake");
+		    }
+		    continue;
+		  case BUFFER_OVERFLOW:
+		    appIn = enlarge(appIn,
+			engine.getSession().getApplicationBufferSize());
+		    continue;
+		  case CLOSED:
+		    throw new SSLException("engine closed during handshake");
+		  default:
+		    break;
+		}
+		status = result.getHandshakeStatus();
+		break;
+	      }
+	    }
+	}
+    }
+
+    /**
+     * Closes the engine's outbound side and the underlying channel.
+     *
+     * @throws IOException if closing the channel fails
+     */
+    public void close() throws IOException {
+	engine.closeOutbound();
+	channel.close();
+    }
+
+    /**
+     * Runs the engine's delegated tasks in the current thread.
+     */
+    static void runDelegatedTasks(SSLEngine engine) {
+	Runnable task;
+	while ((task = engine.getDelegatedTask()) != null) {
+	    task.run();
+	}
+    }
+
+    /**
+     * Returns a buffer with room for at least the specified number of
+     * bytes beyond the contents of the supplied buffer, which is in
+     * ready for reading state and is left in the same state.
+     */
+    static ByteBuffer enlarge(ByteBuffer buffer, int room) {
+	ByteBuffer larger = ByteBuffer.allocate(buffer.position() + room);
+	buffer.flip();
+	larger.put(buffer);
+	return larger;
+    }
+
+    public String toString() {
+	return "SSLEngineChannel[" + channel + "]";
+    }
+}
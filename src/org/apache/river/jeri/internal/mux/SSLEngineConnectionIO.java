@@ -0,0 +1,499 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.mux;
+
+import org.apache.river.jeri.internal.runtime.SelectionManager;
+import org.apache.river.logging.Levels;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+
+/**
+ * SSLEngineConnectionIO implements the ConnectionIO abstraction for a
+ * TLS/SSL connection accessible through a java.nio.channels.SocketChannel
+ * and secured by a javax.net.ssl.SSLEngine, and thus supports
+ * non-blocking I/O for secure connections through the shared
+ * SelectionManager.
+ *
+ * Outgoing buffers are queued in plaintext and wrapped, several at a time,
+ * into TLS records as the channel becomes writable; a buffer counts as
+ * written, for notification and release purposes, once the record that
+ * carries it has been completely written to the channel.  Incoming
+ * records are unwrapped by the read handler and passed to the mux.
+ *
+ * Delegated tasks arising from renegotiation or post-handshake messages
+ * are run inline by the I/O handler; the initial handshake has already
+ * completed, see {@link SSLEngineChannel#handshake}.
+ *
+ * @since 3.0.0
+ **/
+final class SSLEngineConnectionIO extends ConnectionIO {
+
+    /** maximum number of queued buffers gathered into one wrap */
+    private static final int WRAP_MAX = 16;
+
+    /** mux logger */
+    private static final Logger logger =
+	Logger.getLogger("net.jini.jeri.connection.mux");
+
+    /** selection manager used by this implementation */
+    private static final SelectionManager selectionManager;
+    static {
+	try {
+	    selectionManager = SelectionManager.getInstance();
+	} catch (IOException e) {
+	    throw new ExceptionInInitializerError(e);
+	}
+    }
+
+    /** socket channel for underlying connection */
+    private final SocketChannel channel;
+
+    /** engine securing the connection */
+    private final SSLEngine engine;
+
+    private final SelectionManager.Key key;
+
+    /**
+     * queue of plaintext buffers of data to be sent over connection
+     */
+    private final Deque<ByteBuffer> sendQueue = new LinkedList<ByteBuffer>();
+
+    /**
+     * queue of buffers (taken from sendQueue) that have been wrapped into
+     * netOut, and so are complete once netOut has been written
+     */
+    private final Deque<ByteBuffer> wrappedQueue = new LinkedList<ByteBuffer>();
+
+    /**
+     * queue of alternating buffers (that are in sendQueue or wrappedQueue)
+     * and IOFuture objects that need to be notified when those buffers are
+     * written
+     */
+    private final Deque<Object> notifyQueue = new LinkedList<Object>();
+
+    /**
+     * queue of pooled buffers (that are in sendQueue or wrappedQueue) that
+     * are to be returned to the mux's buffer pool when they have been
+     * written
+     */
+    private final Deque<ByteBuffer> releaseQueue = new LinkedList<ByteBuffer>();
+
+    /** encrypted data waiting to be written, ready for draining */
+    private ByteBuffer netOut;
+
+    private final ByteBuffer[] wrapArray = new ByteBuffer[WRAP_MAX];
+
+    /** network data read but not yet unwrapped, ready for reading */
+    private ByteBuffer netIn;
+
+    /** unwrapped data not yet processed by the mux, ready for reading */
+    private ByteBuffer appIn;
+
+    /**
+     * Creates a new SSLEngineConnectionIO for the connection represented
+     * by the supplied SSLEngineChannel, whose initial handshake must have
+     * completed.
+     */
+    SSLEngineConnectionIO(Mux mux, SSLEngineChannel sslChannel)
+	throws IOException
+    {
+	super(mux);
+	channel = sslChannel.getChannel();
+	engine = sslChannel.getEngine();
+	netIn = sslChannel.netIn;
+	appIn = sslChannel.appIn;
+	netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+	netOut.flip();
+	channel.configureBlocking(false);
+	key = selectionManager.register(channel, new Handler());
+    }
+
+    /**
+     * Starts processing connection data, beginning with any data received
+     * beyond the end of the handshake.
+     */
+    void start() throws IOException {
+	if (netIn.position() > 0 || appIn.position() > 0) {
+	    handleInput(false);
+	} else {
+	    key.renewInterestMask(SelectionKey.OP_READ);
+	}
+    }
+
+    void asyncSend(ByteBuffer buffer) {
+	mux.muxLock.lock();
+	try {
+	    if (mux.muxDown) {
+		return;
+	    }
+	    sendQueue.addLast(buffer);
+	    releaseQueue.addLast(buffer);
+	    flushOrSetDown();
+	} finally {
+	    mux.muxLock.unlock();
+	}
+    }
+
+    void asyncSend(ByteBuffer first, ByteBuffer second,
+		   boolean releaseSecond)
+    {
+	mux.muxLock.lock();
+	try {
+	    if (mux.muxDown) {
+		return;
+	    }
+	    sendQueue.addLast(first);
+	    sendQueue.addLast(second);
+	    releaseQueue.addLast(first);
+	    if (releaseSecond) {
+		releaseQueue.addLast(second);
+	    }
+	    flushOrSetDown();
+	} finally {
+	    mux.muxLock.unlock();
+	}
+    }
+
+    IOFuture futureSend(ByteBuffer first, ByteBuffer second) {
+	mux.muxLock.lock();
+	try {
+	    IOFuture future = new IOFuture();
+	    if (mux.muxDown) {
+		IOException ioe = new IOException(mux.muxDownMessage);
+		ioe.initCause(mux.muxDownCause);
+		future.done(ioe);
+		return future;
+	    }
+	    sendQueue.addLast(first);
+	    sendQueue.addLast(second);
+	    releaseQueue.addLast(first);
+	    notifyQueue.addLast(second);
+	    notifyQueue.addLast(future);
+	    flushOrSetDown();
+	    return future;
+	} finally {
+	    mux.muxLock.unlock();
+	}
+    }
+
+    /**
+     * Writes as much queued data as the channel will accept without
+     * blocking, taking the mux connection down if an I/O error occurs.
+     */
+    private void flushOrSetDown() {
+	assert mux.muxLock.isHeldByCurrentThread();
+	try {
+	    flush();
+	} catch (IOException e) {
+	    try {
+		logger.log(Levels.HANDLED, "mux write, I/O error", e);
+	    } catch (Throwable t) {
+	    }
+	    mux.setDown("I/O error writing to mux connection: " +
+			e.toString(), e);
+	    drainNotifyQueue();
+	    try {
+		channel.close();
+	    } catch (IOException ignore) {
+	    }
+	}
+    }
+
+    /**
+     * Writes pending records, and wraps and writes queued buffers, until
+     * everything is written or the channel would block, in which case
+     * write interest is registered.
+     */
+    private void flush() throws IOException {
+	assert mux.muxLock.isHeldByCurrentThread();
+	while (true) {
+	    if (netOut.hasRemaining()) {
+		channel.write(netOut);
+		if (netOut.hasRemaining()) {
+		    key.renewInterestMask(SelectionKey.OP_WRITE);	// ###
+		    return;
+		}
+	    }
+	    completeWrapped();
+	    if (sendQueue.isEmpty() &&
+		engine.getHandshakeStatus() != HandshakeStatus.NEED_WRAP)
+	    {
+		return;
+	    }
+	    if (!wrap()) {
+		return;		// awaiting handshake data from the peer
+	    }
+	}
+    }
+
+    /**
+     * Wraps up to WRAP_MAX queued buffers into netOut, which must be
+     * empty.  Returns false if no progress could be made.
+     */
+    private boolean wrap() throws IOException {
+	int len = 0;
+	for (Iterator<ByteBuffer> i = sendQueue.iterator();
+	     i.hasNext() && len < wrapArray.length; )
+	{
+	    wrapArray[len++] = i.next();
+	}
+	netOut.clear();
+	SSLEngineResult result;
+	try {
+	    result = engine.wrap(wrapArray, 0, len, netOut);
+	} finally {
+	    netOut.flip();
+	    for (int i = 0; i < len; i++) {
+		wrapArray[i] = null;
+	    }
+	}
+	while (!sendQueue.isEmpty() &&
+	       !sendQueue.getFirst().hasRemaining())
+	{
+	    wrappedQueue.addLast(sendQueue.removeFirst());
+	}
+	switch (result.getStatus()) {
+	  case BUFFER_OVERFLOW:
+	    netOut = ByteBuffer.allocate(
+		engine.getSession().getPacketBufferSize());
+	    netOut.flip();
+	    return true;
+	  case CLOSED:
+	    throw new IOException("TLS/SSL engine closed");
+	  default:
+	    break;
+	}
+	if (result.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
+	    SSLEngineChannel.runDelegatedTasks(engine);
+	    return true;
+	}
+	return result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+    }
+
+    /**
+     * Notifies futures and releases pooled buffers for all buffers whose
+     * records have been completely written.
+     */
+    private void completeWrapped() {
+	while (!wrappedQueue.isEmpty()) {
+	    ByteBuffer bb = wrappedQueue.removeFirst();
+	    if (!notifyQueue.isEmpty() && bb == notifyQueue.getFirst()) {
+		notifyQueue.removeFirst();
+		IOFuture future = (IOFuture) notifyQueue.removeFirst();
+		future.done(bb.position());
+	    }
+	    if (!releaseQueue.isEmpty() && bb == releaseQueue.getFirst()) {
+		releaseQueue.removeFirst();
+		mux.releaseBuffer(bb);
+	    }
+	}
+    }
+
+    private void handleWriteReady() {
+	mux.muxLock.lock();
+	try {
+	    if (!mux.muxDown) {
+		flushOrSetDown();
+	    }
+	} finally {
+	    mux.muxLock.unlock();
+	}
+    }
+
+    private void drainNotifyQueue() {
+	mux.muxLock.lock();
+	try {
+	    assert mux.muxDown;
+	    releaseQueue.clear();
+	    while (!notifyQueue.isEmpty()) {
+		notifyQueue.removeFirst();
+		IOFuture future = (IOFuture) notifyQueue.removeFirst();
+		IOException ioe = new IOException(mux.muxDownMessage);
+		ioe.initCause(mux.muxDownCause);
+		future.done(ioe);
+	    }
+	} finally {
+	    mux.muxLock.unlock();
+	}
+    }
+
+    /**
+     * Unwraps as many complete records from netIn as possible, passing
+     * the application data to the mux.
+     */
+    private void unwrap() throws IOException, ProtocolException {
+	if (appIn.position() > 0) {
+	    mux.processIncomingData(appIn);
+	}
+	while (netIn.position() > 0) {
+	    netIn.flip();
+	    SSLEngineResult result;
+	    try {
+		result = engine.unwrap(netIn, appIn);
+	    } finally {
+		netIn.compact();
+	    }
+	    if (appIn.position() > 0) {
+		mux.processIncomingData(appIn);
+	    }
+	    switch (result.getStatus()) {
+	      case BUFFER_UNDERFLOW:
+		if (!netIn.hasRemaining()) {
+		    netIn = SSLEngineChannel.enlarge(netIn,
+			engine.getSession().getPacketBufferSize());
+		}
+		return;
+	      case BUFFER_OVERFLOW:
+		appIn = SSLEngineChannel.enlarge(appIn,
+		    engine.getSession().getApplicationBufferSize());
+		continue;
+	      case CLOSED:
+		throw new EOFException("TLS/SSL connection closed by peer");
+	      default:
+		break;
+	    }
+	    HandshakeStatus status = result.getHandshakeStatus();
+	    if (status == HandshakeStatus.NEED_TASK) {
+		SSLEngineChannel.runDelegatedTasks(engine);
+		status = engine.getHandshakeStatus();
+	    }
+	    if (status == HandshakeStatus.NEED_WRAP ||
+		status == HandshakeStatus.FINISHED)
+	    {
+		mux.muxLock.lock();
+		try {
+		    if (!mux.muxDown) {
+			flushOrSetDown();
+		    }
+		} finally {
+		    mux.muxLock.unlock();
+		}
+	    }
+	    if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+		return;
+	    }
+	}
+    }
+
+    private void handleReadReady() {
+	handleInput(true);
+    }
+
+    private void handleInput(boolean read) {
+	try {
+	    if (read) {
+		int n = channel.read(netIn);
+		if (n == -1) {
+		    throw new EOFException();
+		}
+	    }
+	    unwrap();
+	    key.renewInterestMask(SelectionKey.OP_READ);
+	} catch (ProtocolException e) {
+	    IOFuture future = null;
+	    mux.muxLock.lock();
+	    try {
+		/*
+		 * As for SocketChannelConnectionIO: respond to a real
+		 * protocol violation with an Error message before taking
+		 * down the whole mux connection.
+		 */
+		if (!mux.muxDown) {
+		    try {
+			logger.log(Levels.HANDLED,
+				   "mux read handler, protocol error", e);
+		    } catch (Throwable t) {
+		    }
+		    future = mux.futureSendError(e.getMessage());
+		    mux.setDown("protocol violation detected: " +
+				e.getMessage(), null);
+		} else {
+		    try {
+			logger.log(Level.FINEST,
+				   "mux read handler: " + e.getMessage());
+		    } catch (Throwable t) {
+		    }
+		}
+	    } finally {
+		mux.muxLock.unlock();
+	    }
+	    if (future != null) {
+		try {
+		    future.waitUntilDone();
+		} catch (IOException ignore) {
+		} catch (InterruptedException interrupt) {
+		    Thread.currentThread().interrupt();
+		}
+	    }
+	    try {
+		channel.close();
+	    } catch (IOException ignore) {
+	    }
+	} catch (IOException e) {
+	    try {
+		logger.log(Levels.HANDLED,
+			   "mux read handler, I/O error", e);
+	    } catch (Throwable t) {
+	    }
+	    mux.setDown("I/O error reading from mux connection: " +
+			e.toString(), e);
+	    drainNotifyQueue();
+	    try {
+		channel.close();
+	    } catch (IOException ignore) {
+	    }
+	} catch (Throwable t) {
+	    try {
+		logger.log(Level.WARNING,
+			   "mux read handler, unexpected exception", t);
+	    } catch (Throwable tt) {
+	    }
+	    mux.setDown("unexpected exception in mux read handler: " +
+			t.toString(), t);
+	    drainNotifyQueue();
+	    try {
+		channel.close();
+	    } catch (IOException ignore) {
+	    }
+	}
+    }
+
+    private class Handler implements SelectionManager.SelectionHandler {
+        @Override
+	public void handleSelection(int readyMask, SelectionManager.Key key) {
+	    if ((readyMask & SelectionKey.OP_WRITE) != 0) {
+		handleWriteReady();
+	    }
+	    if ((readyMask & SelectionKey.OP_READ) != 0) {
+		handleReadReady();
+	    }
+	}
+    }
+}
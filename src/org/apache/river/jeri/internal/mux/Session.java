@@ -20,6 +20,7 @@ package org.apache.river.jeri.internal.mux;
 
 import org.apache.river.thread.Executor;
 import org.apache.river.thread.GetThreadPoolAction;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -28,6 +29,8 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.jini.core.constraint.InvocationConstraints;
@@ -35,6 +38,8 @@ import net.jini.io.UnsupportedConstraintException;
 import net.jini.io.context.AcknowledgmentSource;
 import net.jini.jeri.InboundRequest;
 import net.jini.jeri.OutboundRequest;
+import org.apache.river.jeri.internal.runtime.AsyncOutboundRequest;
+import org.apache.river.jeri.internal.runtime.Util;
 
 /**
  * A Session represents a single session of a multiplexed connection,
@@ -85,8 +90,7 @@ final class Session {
      * I/O (reader and writer) threads and other asynchronous tasks
      **/
     private static final Executor systemThreadPool =
-	(Executor) AccessController.doPrivileged(
-	    new GetThreadPoolAction(false));
+	AccessController.doPrivileged(new GetThreadPoolAction(false));
 
     /** mux logger */
     static final Logger logger =
@@ -100,7 +104,10 @@ final class Session {
     private final MuxInputStream in;
 
     /** lock guarding all mutable instance state (below) */
-    private final Object sessionLock;
+    private final ReentrantLock sessionLock;
+
+    /** signalled when session or stream state changes */
+    private final Condition sessionCondition;
     private boolean sessionDown;
 
     private int outState;
@@ -120,6 +127,18 @@ final class Session {
     private boolean sentAckRequired;
     private boolean receivedAcknowledgment;
 
+    /** run once when response input becomes available (client only) */
+    private Runnable responseListener;
+
+    /** whether Data messages sent for this session are compressed */
+    private boolean compressOutput;
+
+    /** compression state, created on first use */
+    private DataCompression compression;
+
+    /** whether this session's streams use the connection's descriptor cache */
+    private volatile boolean useDescriptorCache = false;
+
     /**
      *
      */
@@ -131,7 +150,8 @@ final class Session {
         this.partialDeliveryStatus = false;
         this.sessionDown = false;
         this.ackListeners = new ArrayList<AcknowledgmentSource.Listener>(3);
-        this.sessionLock = new Object();
+        this.sessionLock = new ReentrantLock();
+        this.sessionCondition = sessionLock.newCondition();
 	this.mux = mux;
 	this.sessionID = sessionID;
 	this.role = role;
@@ -143,8 +163,9 @@ final class Session {
 	inState = (role == CLIENT ? IDLE : OPEN);
 	inRation = mux.initialInboundRation;
 	inRationInfinite = (inRation == 0);
-        out = new MuxOutputStream(mux, this, sessionLock);
-	in = new MuxInputStream(mux, this, sessionLock);
+	compressOutput = mux.compressByDefault();
+        out = new MuxOutputStream(mux, this, sessionLock, sessionCondition);
+	in = new MuxInputStream(mux, this, sessionLock, sessionCondition);
     }
 
     /**
@@ -152,33 +173,138 @@ final class Session {
      */
     OutboundRequest getOutboundRequest() {
 	assert role == CLIENT;
-	return new OutboundRequest() {
-            @Override
-	    public void populateContext(Collection context) {
-		((MuxClient) mux).populateContext(context);
+	return new Outbound();
+    }
+
+    /**
+     * The client's view of this session.
+     */
+    private final class Outbound
+	implements OutboundRequest, AsyncOutboundRequest
+    {
+	@Override
+	public void populateContext(Collection context) {
+	    @SuppressWarnings("unchecked")
+	    Collection<Object> ctx = context;
+	    if (mux.compactDescriptorsEnabled()) {
+		Util.populateCompactContext(ctx);
 	    }
-            @Override
-	    public InvocationConstraints getUnfulfilledConstraints() {
-		/*
-		 * NYI: We currently have no request-specific hook
-		 * back to the transport implementation, so we must
-		 * depend on OutboundRequest wrapping for this method.
-		 */
-		throw new AssertionError();
+	    if (useDescriptorCache) {
+		ctx.add(mux.descriptorCache());
 	    }
-            @Override
-	    public OutputStream getRequestOutputStream() { return out; }
-            @Override
-	    public InputStream getResponseInputStream() { return in; }
-            @Override
-	    public boolean getDeliveryStatus() {
-		synchronized (sessionLock) {
-		    return partialDeliveryStatus;
-		}
+	    ((MuxClient) mux).populateContext(ctx);
+	}
+	@Override
+	public InvocationConstraints getUnfulfilledConstraints() {
+	    /*
+	     * NYI: We currently have no request-specific hook
+	     * back to the transport implementation, so we must
+	     * depend on OutboundRequest wrapping for this method.
+	     */
+	    throw new AssertionError();
+	}
+	@Override
+	public OutputStream getRequestOutputStream() { return out; }
+	@Override
+	public InputStream getResponseInputStream() { return in; }
+	@Override
+	public boolean getDeliveryStatus() {
+	    sessionLock.lock();
+	    try {
+		return partialDeliveryStatus;
+	    } finally {
+		sessionLock.unlock();
 	    }
-            @Override
-	    public void abort() { Session.this.abort(); }
-	};
+	}
+	@Override
+	public void abort() { Session.this.abort(); }
+	@Override
+	public void setResponseListener(Runnable listener) {
+	    Session.this.setResponseListener(listener);
+	}
+	Session getSession() { return Session.this; }
+    }
+
+    /**
+     * Sets whether Data messages sent for the given request, which must
+     * have been returned by getOutboundRequest, are compressed.  Returns
+     * false if compression was requested but is not in effect for the
+     * connection.
+     */
+    static boolean setCompression(OutboundRequest request, boolean compress) {
+	return ((Outbound) request).getSession().setCompressOutput(compress);
+    }
+
+    private boolean setCompressOutput(boolean compress) {
+	if (compress && !mux.compressionEnabled()) {
+	    return false;
+	}
+	sessionLock.lock();
+	try {
+	    compressOutput = compress;
+	} finally {
+	    sessionLock.unlock();
+	}
+	return true;
+    }
+
+    /**
+     * Writes the descriptor cache flag at the start of the data of the
+     * given request, which must have been returned by getOutboundRequest,
+     * if a descriptor cache was negotiated for the connection.  Returns
+     * false if use is true but there is no descriptor cache.
+     */
+    static boolean writeRequestHeader(OutboundRequest request, boolean use)
+	throws IOException
+    {
+	return ((Outbound) request).getSession().writeDescriptorCacheFlag(use);
+    }
+
+    private boolean writeDescriptorCacheFlag(boolean use) throws IOException {
+	if (mux.descriptorCache() == null) {
+	    return !use;
+	}
+	out.write(use ? 1 : 0);
+	useDescriptorCache = use;
+	return true;
+    }
+
+    /**
+     * Reads the descriptor cache flag written by writeRequestHeader, if a
+     * descriptor cache was negotiated for the connection.
+     */
+    void readRequestHeader() throws IOException {
+	assert role == SERVER;
+	if (mux.descriptorCache() == null) {
+	    return;
+	}
+	int flag = in.read();
+	if (flag < 0) {
+	    throw new EOFException();
+	}
+	useDescriptorCache = flag != 0;
+    }
+
+    /**
+     * Returns the compressed form of the remaining data in the given
+     * buffer, in a buffer from the mux's pool, or null if this fragment
+     * is to be sent uncompressed.  The given buffer's position is not
+     * changed.  If last is true, no more data will be sent.
+     *
+     * This method must only be invoked while holding this session's lock.
+     */
+    ByteBuffer compressData(ByteBuffer data, boolean last) {
+	assert sessionLock.isHeldByCurrentThread();
+	if (!compressOutput || data.remaining() < mux.compressionThreshold()) {
+	    if (last && compression != null) {
+		compression.endDeflater();
+	    }
+	    return null;
+	}
+	if (compression == null) {
+	    compression = new DataCompression();
+	}
+	return compression.deflate(mux, data, last);
     }
 
     /**
@@ -200,7 +326,9 @@ final class Session {
 	    }
             @Override
 	    public void populateContext(Collection context) {
-		context.add(new AcknowledgmentSource() {
+		@SuppressWarnings("unchecked")
+		Collection<Object> ctx = context;
+		ctx.add(new AcknowledgmentSource() {
                     @Override
 		    public boolean addAcknowledgmentListener(
 			AcknowledgmentSource.Listener listener)
@@ -208,17 +336,26 @@ final class Session {
 			if (listener == null) {
 			    throw new NullPointerException();
 			}
-			synchronized (sessionLock) {
+			sessionLock.lock();
+			try {
 			    if (getOutState() < FINISHED) {
 				ackListeners.add(listener);
 				return true;
 			    } else {
 				return false;
 			    }
+			} finally {
+			    sessionLock.unlock();
 			}
 		    }
 		});
-		((MuxServer) mux).populateContext(context);
+		if (mux.compactDescriptorsEnabled()) {
+		    Util.populateCompactContext(ctx);
+		}
+		if (useDescriptorCache) {
+		    ctx.add(mux.descriptorCache());
+		}
+		((MuxServer) mux).populateContext(ctx);
 	    }
             @Override
 	    public InputStream getRequestInputStream() { return in; }
@@ -233,7 +370,8 @@ final class Session {
      *
      */
     void abort() {
-	synchronized (sessionLock) {
+	sessionLock.lock();
+	try {
 	    if (!sessionDown) {
 		if (logger.isLoggable(Level.FINEST)) {
 		    logger.log(Level.FINEST,
@@ -286,6 +424,8 @@ final class Session {
 		mux.removeSession(sessionID);
 		removeLater = false;
 	    }
+	} finally {
+	    sessionLock.unlock();
 	}
     }
 
@@ -293,14 +433,22 @@ final class Session {
      *
      */
     void setDown(String message, Throwable cause) {
-	synchronized (sessionLock) {
+	sessionLock.lock();
+	try {
 	    if (!sessionDown) {
 		sessionDown = true;
                 IOException ex = new IOException(message, cause);
                 out.down(ex);
                 in.down(ex);
-		sessionLock.notifyAll();
+		sessionCondition.signalAll();
+		fireResponseListener();
+	    }
+	    if (compression != null) {
+		compression.end();
+		compression = null;
 	    }
+	} finally {
+	    sessionLock.unlock();
 	}
     }
 
@@ -308,7 +456,8 @@ final class Session {
      *
      */
     void handleIncrementRation(int increment) throws ProtocolException {
-	synchronized (sessionLock) {
+	sessionLock.lock();
+	try {
 	    if (inState == IDLE || inState == TERMINATED) {
 		throw new ProtocolException("IncrementRation on " +
 		    stateNames[inState] + " session: " + sessionID);
@@ -320,12 +469,14 @@ final class Session {
 		if (getOutState() == OPEN) {
 		    if (increment > 0) {
 			if (outRation == 0) {
-			    sessionLock.notifyAll();
+			    sessionCondition.signalAll();
 			}
 			outRation += increment;
 		    }
 		}
 	    } // ignore message if outbound ration is infinite
+	} finally {
+	    sessionLock.unlock();
 	}
     }
 
@@ -333,7 +484,8 @@ final class Session {
      *
      */
     void handleAbort(boolean partial) throws ProtocolException {
-	synchronized (sessionLock) {
+	sessionLock.lock();
+	try {
 	    if (inState == IDLE || inState == TERMINATED) {
 		throw new ProtocolException("Abort on " +
 		    stateNames[inState] + " session: " + sessionID);
@@ -370,6 +522,8 @@ final class Session {
 	    }	// REMIND: what about other dangling acknowledgments?
 
 	    mux.removeSession(sessionID);
+	} finally {
+	    sessionLock.unlock();
 	}
     }
 
@@ -381,7 +535,8 @@ final class Session {
 	    throw new ProtocolException("Close sent by client");
 	}
 
-	synchronized (sessionLock) {
+	sessionLock.lock();
+	try {
 	    if (inState != FINISHED) {
 		throw new ProtocolException("Close on " +
 		    stateNames[inState] + " session: " + sessionID);
@@ -430,6 +585,8 @@ final class Session {
 	    } else {
 		removeLater = true;
 	    }
+	} finally {
+	    sessionLock.unlock();
 	}
     }
 
@@ -441,7 +598,8 @@ final class Session {
 	    throw new ProtocolException("Acknowledgment sent by server");
 	}
 
-	synchronized (sessionLock) {
+	sessionLock.lock();
+	try {
 	    if (inState == IDLE || inState == TERMINATED) {
 		throw new ProtocolException("Acknowledgment on " +
 		    stateNames[inState] + " session: " + sessionID);
@@ -459,14 +617,16 @@ final class Session {
 	    receivedAcknowledgment = true;
 
 	    notifyAcknowledgmentListeners(true);
+	} finally {
+	    sessionLock.unlock();
 	}
     }
 
     /**
      *
      */
-    void handleData(ByteBuffer data,
-		    boolean eof, boolean close, boolean ackRequired)
+    void handleData(ByteBuffer data, boolean eof, boolean close,
+		    boolean ackRequired, boolean compressed)
 	throws ProtocolException
     {
 	assert eof || (!close && !ackRequired);
@@ -475,13 +635,27 @@ final class Session {
 	    throw new ProtocolException("Data/ackRequired sent by client");
 	}
 
-	synchronized (sessionLock) {
+	sessionLock.lock();
+	try {
 	    boolean notified = close;	// close always causes notification
 
 	    if (inState != OPEN) {
 		throw new ProtocolException("Data on " +
 		    stateNames[inState] + " session: " + sessionID);
 	    }
+	    if (compressed) {
+		if (compression == null) {
+		    compression = new DataCompression();
+		}
+		ByteBuffer inflated = compression.inflate(mux, data, eof);
+		mux.releaseBuffer(data);
+		data = inflated;
+		if (role == SERVER) {
+		    compressOutput = true;	// mirror the client's choice
+		}
+	    } else if (eof && compression != null) {
+		compression.endInflater();
+	    }
 	    int length = data.remaining();
 	    if (!inRationInfinite && length > inRation) {
 		throw new ProtocolException("input ration exceeded");
@@ -489,7 +663,7 @@ final class Session {
 	    if (!in.isClosed() && getOutState() < TERMINATED) {
 		if (length > 0) {
 		    if (in.getBufRemaining() == 0) {
-			sessionLock.notifyAll();
+			sessionCondition.signalAll();
 			notified = true;
 		    }
 		    in.appendToBufQueue(data);
@@ -504,7 +678,7 @@ final class Session {
 		in.setEOF(true);
 		setInState(FINISHED);
 		if (!notified) {
-		    sessionLock.notifyAll();
+		    sessionCondition.signalAll();
 		}
 
 		if (ackRequired) {
@@ -517,6 +691,49 @@ final class Session {
 		}
 		// REMIND: send Close if appropriate?
 	    }
+	    if (length > 0 || eof) {
+		fireResponseListener();
+	    }
+	} finally {
+	    sessionLock.unlock();
+	}
+    }
+
+    /**
+     * Arranges for the listener to be run once response data, EOF or a
+     * failure is available to this client session's input stream, running
+     * it immediately if one already is.
+     */
+    void setResponseListener(Runnable listener) {
+	assert role == CLIENT;
+	if (listener == null) {
+	    throw new NullPointerException();
+	}
+	boolean ready;
+	sessionLock.lock();
+	try {
+	    ready = sessionDown || in.getBufRemaining() > 0 || inState >= FINISHED;
+	    if (!ready) {
+		responseListener = listener;
+	    }
+	} finally {
+	    sessionLock.unlock();
+	}
+	if (ready) {
+	    listener.run();
+	}
+    }
+
+    /**
+     * Runs and clears the response listener, if any.  The listener only
+     * hands off to an executor, so it is run with this session's lock held.
+     */
+    private void fireResponseListener() {
+	assert sessionLock.isHeldByCurrentThread();
+	Runnable listener = responseListener;
+	if (listener != null) {
+	    responseListener = null;
+	    listener.run();
 	}
     }
 
@@ -525,7 +742,8 @@ final class Session {
      */
     void handleOpen() throws ProtocolException {
 	assert role == SERVER;
-	synchronized (sessionLock) {
+	sessionLock.lock();
+	try {
 	    if (inState < FINISHED || getOutState() < TERMINATED) {
 		throw new ProtocolException(
                     inState < FINISHED ?
@@ -538,9 +756,11 @@ final class Session {
 	    // REMIND: process dangling acknowledgments here?
 
 	    setDown("old request", null);	// extraneous?
-	    sessionLock.notifyAll();
+	    sessionCondition.signalAll();
 
 	    mux.removeSession(sessionID);
+	} finally {
+	    sessionLock.unlock();
 	}
     }
 
@@ -548,7 +768,7 @@ final class Session {
      *
      */
     void setOutState(int newState) {
-        assert Thread.holdsLock(sessionLock);
+        assert sessionLock.isHeldByCurrentThread();
 	assert newState > outState;
 	outState = newState;
     }
@@ -557,13 +777,13 @@ final class Session {
      *
      */
     void setInState(int newState) {
-        assert Thread.holdsLock(sessionLock);
+        assert sessionLock.isHeldByCurrentThread();
 	assert newState > inState;
 	inState = newState;
     }
     
     boolean ackListeners(){
-        assert Thread.holdsLock(sessionLock);
+        assert sessionLock.isHeldByCurrentThread();
         return !ackListeners.isEmpty();
     }
 
@@ -599,7 +819,7 @@ final class Session {
      * @return the outState
      */
     int getOutState() {
-        assert Thread.holdsLock(sessionLock);
+        assert sessionLock.isHeldByCurrentThread();
         return outState;
     }
 
@@ -607,7 +827,7 @@ final class Session {
      * @return the outRation
      */
     int getOutRation() {
-        assert Thread.holdsLock(sessionLock);
+        assert sessionLock.isHeldByCurrentThread();
         return outRation;
     }
 
@@ -615,7 +835,7 @@ final class Session {
      * @param outRation the outRation to set
      */
     void setOutRation(int outRation) {
-        assert Thread.holdsLock(sessionLock);
+        assert sessionLock.isHeldByCurrentThread();
         this.outRation = outRation;
     }
 
@@ -623,7 +843,7 @@ final class Session {
      * @return the inState
      */
     int getInState() {
-        assert Thread.holdsLock(sessionLock);
+        assert sessionLock.isHeldByCurrentThread();
         return inState;
     }
 
@@ -631,7 +851,7 @@ final class Session {
      * @param partialDeliveryStatus the partialDeliveryStatus to set
      */
     void setPartialDeliveryStatus(boolean partialDeliveryStatus) {
-        assert Thread.holdsLock(sessionLock);
+        assert sessionLock.isHeldByCurrentThread();
         this.partialDeliveryStatus = partialDeliveryStatus;
     }
 
@@ -639,7 +859,7 @@ final class Session {
      * @return the sentAckRequired
      */
     boolean isSentAckRequired() {
-        assert Thread.holdsLock(sessionLock);
+        assert sessionLock.isHeldByCurrentThread();
         return sentAckRequired;
     }
 
@@ -647,7 +867,7 @@ final class Session {
      * @param sentAckRequired the sentAckRequired to set
      */
     void setSentAckRequired(boolean sentAckRequired) {
-        assert Thread.holdsLock(sessionLock);
+        assert sessionLock.isHeldByCurrentThread();
         this.sentAckRequired = sentAckRequired;
     }
 
@@ -655,7 +875,7 @@ final class Session {
      * @return the inRation
      */
     int getInRation() {
-        assert Thread.holdsLock(sessionLock);
+        assert sessionLock.isHeldByCurrentThread();
         return inRation;
     }
 
@@ -663,7 +883,7 @@ final class Session {
      * @param inRation the inRation to set
      */
     void setInRation(int inRation) {
-        assert Thread.holdsLock(sessionLock);
+        assert sessionLock.isHeldByCurrentThread();
         this.inRation = inRation;
     }
 
@@ -671,7 +891,7 @@ final class Session {
      * @return the removeLater
      */
     boolean isRemoveLater() {
-        assert Thread.holdsLock(sessionLock);
+        assert sessionLock.isHeldByCurrentThread();
         return removeLater;
     }
 
@@ -679,7 +899,7 @@ final class Session {
      * @param removeLater the removeLater to set
      */
     void setRemoveLater(boolean removeLater) {
-        assert Thread.holdsLock(sessionLock);
+        assert sessionLock.isHeldByCurrentThread();
         this.removeLater = removeLater;
     }
 
@@ -687,7 +907,7 @@ final class Session {
      * @return the receivedAckRequired
      */
     boolean isReceivedAckRequired() {
-        assert Thread.holdsLock(sessionLock);
+        assert sessionLock.isHeldByCurrentThread();
         return receivedAckRequired;
     }
 }
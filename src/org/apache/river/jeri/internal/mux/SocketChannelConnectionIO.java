@@ -49,9 +49,9 @@ final class SocketChannelConnectionIO extends ConnectionIO {
 
     /** selection manager used by this implementation */
     private static final SelectionManager selectionManager;
-    static {					// REMIND: share more widely?
+    static {
 	try {
-	    selectionManager = new SelectionManager();
+	    selectionManager = SelectionManager.getInstance();
 	} catch (IOException e) {
 	    throw new ExceptionInInitializerError(e);
 	}
@@ -92,9 +92,18 @@ final class SocketChannelConnectionIO extends ConnectionIO {
      */
     private final Deque notifyQueue = new LinkedList();
 
-    /** buffer for reading incoming data from connection */
-    private final ByteBuffer inputBuffer =
-	ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);	// ready for reading
+    /**
+     * queue of pooled buffers (that are in sendQueue) that are to be
+     * returned to the mux's buffer pool when they have been written
+     */
+    private final Deque<ByteBuffer> releaseQueue = new LinkedList<ByteBuffer>();
+
+    /**
+     * buffer for reading incoming data from connection, returned to the
+     * shared pool when reading terminates
+     */
+    private ByteBuffer inputBuffer =
+	BufferPool.DIRECT.acquire(RECEIVE_BUFFER_SIZE);	// ready for reading
 
     private final ByteBuffer[] bufferPair = new ByteBuffer[2];
 
@@ -121,7 +130,8 @@ final class SocketChannelConnectionIO extends ConnectionIO {
     }
 
     void asyncSend(ByteBuffer buffer) {
-	synchronized (mux.muxLock) {
+	mux.muxLock.lock();
+	try {
 	    if (mux.muxDown) {
 		return;
 	    }
@@ -131,7 +141,10 @@ final class SocketChannelConnectionIO extends ConnectionIO {
 		}
 		if (buffer.hasRemaining()) {
 		    sendQueue.addLast(buffer);
+		    releaseQueue.addLast(buffer);
 		    key.renewInterestMask(SelectionKey.OP_WRITE);	// ###
+		} else {
+		    mux.releaseBuffer(buffer);
 		}
 	    } catch (IOException e) {
 		mux.setDown("I/O error writing to mux connection: " +
@@ -141,12 +154,17 @@ final class SocketChannelConnectionIO extends ConnectionIO {
 		} catch (IOException ignore) {
 		}
 	    }
+	} finally {
+	    mux.muxLock.unlock();
 	}
     }
 
     @Override
-    void asyncSend(ByteBuffer first, ByteBuffer second) {
-	synchronized (mux.muxLock) {
+    void asyncSend(ByteBuffer first, ByteBuffer second,
+		   boolean releaseSecond)
+    {
+	mux.muxLock.lock();
+	try {
 	    if (mux.muxDown) {
 		return;
 	    }
@@ -170,13 +188,23 @@ final class SocketChannelConnectionIO extends ConnectionIO {
 		    }
 		}
 		if (!first.hasRemaining()) {
+		    mux.releaseBuffer(first);
 		    if (second.hasRemaining()) {
 			sendQueue.addLast(second);
+			if (releaseSecond) {
+			    releaseQueue.addLast(second);
+			}
 			key.renewInterestMask(SelectionKey.OP_WRITE);	// ###
+		    } else if (releaseSecond) {
+			mux.releaseBuffer(second);
 		    }
 		} else {
 		    sendQueue.addLast(first);
 		    sendQueue.addLast(second);
+		    releaseQueue.addLast(first);
+		    if (releaseSecond) {
+			releaseQueue.addLast(second);
+		    }
 		    key.renewInterestMask(SelectionKey.OP_WRITE);	// ###
 		}
 	    } catch (IOException e) {
@@ -190,12 +218,15 @@ final class SocketChannelConnectionIO extends ConnectionIO {
 		bufferPair[0] = null;
 		bufferPair[1] = null;
 	    }
+	} finally {
+	    mux.muxLock.unlock();
 	}
     }
 
     @Override
     IOFuture futureSend(ByteBuffer first, ByteBuffer second) {
-	synchronized (mux.muxLock) {
+	mux.muxLock.lock();
+	try {
 	    IOFuture future = new IOFuture();
 	    if (mux.muxDown) {
 		IOException ioe = new IOException(mux.muxDownMessage);
@@ -223,6 +254,7 @@ final class SocketChannelConnectionIO extends ConnectionIO {
 		    }
 		}
 		if (!first.hasRemaining()) {
+		    mux.releaseBuffer(first);
 		    if (second.hasRemaining()) {
 			sendQueue.addLast(second);
 			key.renewInterestMask(SelectionKey.OP_WRITE);	// ###
@@ -234,6 +266,7 @@ final class SocketChannelConnectionIO extends ConnectionIO {
 		} else {
 		    sendQueue.addLast(first);
 		    sendQueue.addLast(second);
+		    releaseQueue.addLast(first);
 		    key.renewInterestMask(SelectionKey.OP_WRITE);	// ###
 		    notifyQueue.addLast(second);
 		    notifyQueue.addLast(future);
@@ -247,10 +280,12 @@ final class SocketChannelConnectionIO extends ConnectionIO {
 		} catch (IOException ignore) {
 		}
 	    } finally {
-		bufferPair[0] = first;
-		bufferPair[1] = second;
+		bufferPair[0] = null;
+		bufferPair[1] = null;
 	    }
 	    return future;
+	} finally {
+	    mux.muxLock.unlock();
 	}
 	/*
 	 * REMIND: Can/should we implement any sort of
@@ -260,7 +295,8 @@ final class SocketChannelConnectionIO extends ConnectionIO {
 
     private void handleWriteReady() {
 	try {
-	    synchronized (mux.muxLock) {
+	    mux.muxLock.lock();
+	    try {
 //		ByteBuffer[] buffers =
 //		    (ByteBuffer[]) sendQueue.toArray(preallocBufferArray);
 //		channel.write(buffers);
@@ -330,12 +366,20 @@ final class SocketChannelConnectionIO extends ConnectionIO {
 				    (IOFuture) notifyQueue.removeFirst();
 				future.done(bb.position());
 			    }
+			    if (!releaseQueue.isEmpty() &&
+				bb == releaseQueue.getFirst())
+			    {
+				releaseQueue.removeFirst();
+				mux.releaseBuffer(bb);
+			    }
 			} else {
 			    key.renewInterestMask(SelectionKey.OP_WRITE);// ###
 			    break gatherLoop;
 			}
 		    }
 		}
+	    } finally {
+mux.muxLock.unlock();
 	    }
 	} catch (IOException e) {
 	    try {
@@ -367,8 +411,10 @@ final class SocketChannelConnectionIO extends ConnectionIO {
     }
 
     private void drainNotifyQueue() {
-	synchronized (mux.muxLock) {
+	mux.muxLock.lock();
+	try {
 	    assert mux.muxDown;
+	    releaseQueue.clear();
 	    while (!notifyQueue.isEmpty()) {
 		notifyQueue.removeFirst();
 		IOFuture future = (IOFuture) notifyQueue.removeFirst();
@@ -376,10 +422,15 @@ final class SocketChannelConnectionIO extends ConnectionIO {
 		ioe.initCause(mux.muxDownCause);
 		future.done(ioe);
 	    }
+	} finally {
+	    mux.muxLock.unlock();
 	}
     }
 
     private void handleReadReady() {
+	if (inputBuffer == null) {	// reading already terminated
+	    return;
+	}
 	try {
 	    int n = channel.read(inputBuffer);
 	    if (n == -1) {
@@ -392,7 +443,8 @@ final class SocketChannelConnectionIO extends ConnectionIO {
 	    key.renewInterestMask(SelectionKey.OP_READ);
 	} catch (ProtocolException e) {
 	    IOFuture future = null;
-	    synchronized (mux.muxLock) {
+	    mux.muxLock.lock();
+	    try {
 		/*
 		 * If mux connection is already down, then we probably got
 		 * here because of the receipt of a normal protocol-ending
@@ -417,6 +469,8 @@ final class SocketChannelConnectionIO extends ConnectionIO {
 		    } catch (Throwable t) {
 		    }
 		}
+	    } finally {
+		mux.muxLock.unlock();
 	    }
 	    if (future != null) {
 		try {
@@ -430,6 +484,7 @@ final class SocketChannelConnectionIO extends ConnectionIO {
 		channel.close();
 	    } catch (IOException ignore) {
 	    }
+	    releaseInputBuffer();
 	} catch (IOException e) {
 	    try {
 		logger.log(Levels.HANDLED,
@@ -442,6 +497,7 @@ final class SocketChannelConnectionIO extends ConnectionIO {
 		channel.close();
 	    } catch (IOException ignore) {
 	    }
+	    releaseInputBuffer();
 	} catch (Throwable t) {
 	    try {
 		logger.log(Level.WARNING,
@@ -454,6 +510,19 @@ final class SocketChannelConnectionIO extends ConnectionIO {
 		channel.close();
 	    } catch (IOException ignore) {
 	    }
+	    releaseInputBuffer();
+	}
+    }
+
+    /**
+     * Returns the receive buffer to the shared pool.  Must only be invoked
+     * by the read handler once it will not be invoked again.
+     */
+    private void releaseInputBuffer() {
+	ByteBuffer buffer = inputBuffer;
+	if (buffer != null) {
+	    inputBuffer = null;
+	    BufferPool.DIRECT.release(buffer);
 	}
     }
 
@@ -31,6 +31,7 @@ import java.nio.channels.WritableByteChannel;
 import java.security.AccessController;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,6 +46,12 @@ final class StreamConnectionIO extends ConnectionIO {
 
     private static final int RECEIVE_BUFFER_SIZE = 2048;
 
+    /**
+     * size of the buffer in which the writer coalesces queued message
+     * headers and data, so that each is not a separate stream write
+     */
+    private static final int SEND_BUFFER_SIZE = 8192;
+
     /**
      * pool of threads for executing tasks in system thread group:
      * used for I/O (reader and writer) threads
@@ -73,6 +80,13 @@ final class StreamConnectionIO extends ConnectionIO {
      */
     private final Deque sendQueue;
 
+    /**
+     * queue of pooled buffers (that are in sendQueue) that are to be
+     * returned to the mux's buffer pool when they have been written
+     *
+     * Synchronised on super.mux.muxLock;
+     */
+    private final Deque<ByteBuffer> releaseQueue;
     
     /**
      * Creates a new StreamConnectionIO for the connection represented by
@@ -87,6 +101,7 @@ final class StreamConnectionIO extends ConnectionIO {
 	outChannel = newChannel(out);
 	inChannel = newChannel(in);
         sendQueue = new LinkedList();
+        releaseQueue = new LinkedList<ByteBuffer>();
     }
 
     /**
@@ -110,30 +125,44 @@ final class StreamConnectionIO extends ConnectionIO {
 
     @Override
     void asyncSend(ByteBuffer buffer) {
-	synchronized (mux.muxLock) {
+	mux.muxLock.lock();
+	try {
 	    if (mux.muxDown) {
 		return;
 	    }
 	    sendQueue.addLast(buffer);
-	    mux.muxLock.notifyAll();
+	    releaseQueue.addLast(buffer);
+	    mux.muxCondition.signalAll();
+	} finally {
+	    mux.muxLock.unlock();
 	}
     }
 
     @Override
-    void asyncSend(ByteBuffer first, ByteBuffer second) {
-	synchronized (mux.muxLock) {
+    void asyncSend(ByteBuffer first, ByteBuffer second,
+		   boolean releaseSecond)
+    {
+	mux.muxLock.lock();
+	try {
 	    if (mux.muxDown) {
 		return;
 	    }
 	    sendQueue.addLast(first);
 	    sendQueue.addLast(second);
-	    mux.muxLock.notifyAll();
+	    releaseQueue.addLast(first);
+	    if (releaseSecond) {
+		releaseQueue.addLast(second);
+	    }
+	    mux.muxCondition.signalAll();
+	} finally {
+	    mux.muxLock.unlock();
 	}
     }
 
     @Override
     IOFuture futureSend(ByteBuffer first, ByteBuffer second) {
-	synchronized (mux.muxLock) {
+	mux.muxLock.lock();
+	try {
 	    IOFuture future = new IOFuture();
 	    if (mux.muxDown) {
 		IOException ioe = new IOException(mux.muxDownMessage);
@@ -144,8 +173,11 @@ final class StreamConnectionIO extends ConnectionIO {
 	    sendQueue.addLast(first);
 	    sendQueue.addLast(second);
 	    sendQueue.addLast(future);
-	    mux.muxLock.notifyAll();
+	    releaseQueue.addLast(first);
+	    mux.muxCondition.signalAll();
 	    return future;
+	} finally {
+	    mux.muxLock.unlock();
 	}
 	/*
 	 * REMIND: Can/should we implement any sort of
@@ -159,16 +191,19 @@ final class StreamConnectionIO extends ConnectionIO {
         @Override
 	public void run() {
 	    Deque localQueue = null;
+	    Deque<ByteBuffer> localReleaseQueue = null;
+	    ByteBuffer sendBuffer = BufferPool.HEAP.acquire(SEND_BUFFER_SIZE);
 	    try {
 		while (true) {
-		    synchronized (mux.muxLock) {
+		    mux.muxLock.lock();
+		    try {
 			while (!mux.muxDown && sendQueue.isEmpty()) {
 			    /*
 			     * REMIND: Should we use a timeout here, to send
 			     * occasional PING messages during periods of
 			     * inactivity, to make sure connection is alive?
 			     */
-			    mux.muxLock.wait();
+			    mux.muxCondition.await();
 			    /*
 			     * Let an interrupt during the wait just kill this
 			     * thread, because an interrupt during an I/O write
@@ -184,6 +219,10 @@ final class StreamConnectionIO extends ConnectionIO {
                         /* Clone an unshared copy and clear the queue while synchronized */
 			localQueue = new LinkedList(sendQueue);
 			sendQueue.clear();
+			localReleaseQueue = new LinkedList<ByteBuffer>(releaseQueue);
+			releaseQueue.clear();
+		    } finally {
+			mux.muxLock.unlock();
 		    }
 
 		    boolean needToFlush = false;
@@ -193,13 +232,20 @@ final class StreamConnectionIO extends ConnectionIO {
 			Object next = localQueue.getFirst();
 			if (next instanceof ByteBuffer) {
                             ByteBuffer buffer = (ByteBuffer) next;
-			    outChannel.write((buffer));
+			    write(buffer, sendBuffer);
                             last = buffer;
                             lastIndex = i;
 			    needToFlush = true;
+			    if (!localReleaseQueue.isEmpty() &&
+				buffer == localReleaseQueue.getFirst())
+			    {
+				localReleaseQueue.removeFirst();
+				mux.releaseBuffer(buffer);
+			    }
 			} else {
 			    assert next instanceof IOFuture;
 			    if (needToFlush) {
+				flush(sendBuffer);
 				out.flush();
 				needToFlush = false;
 			    }
@@ -212,6 +258,7 @@ final class StreamConnectionIO extends ConnectionIO {
 			localQueue.removeFirst();
 		    }
 		    if (needToFlush) {
+			flush(sendBuffer);
 			out.flush();
 		    }
 		}
@@ -239,19 +286,53 @@ final class StreamConnectionIO extends ConnectionIO {
 		mux.setDown("unexpected exception in mux writer thread: " +
 			    t.toString(), t);
 	    } finally {
-		synchronized (mux.muxLock) {
+		mux.muxLock.lock();
+		try {
 		    assert mux.muxDown;
 		    if (localQueue != null) {
 			drainQueue(localQueue);
 		    }
 		    drainQueue(sendQueue);
+		    releaseQueue.clear();
+		} finally {
+		    mux.muxLock.unlock();
 		}
+		BufferPool.HEAP.release(sendBuffer);
 		try {
 		    outChannel.close();
 		} catch (IOException e) {
 		}
 	    }
 	}
+
+	/**
+	 * Copies the buffer's contents into the send buffer, writing out the
+	 * send buffer first if there is not enough room; buffers too large
+	 * to be coalesced are written directly.
+	 */
+	private void write(ByteBuffer buffer, ByteBuffer sendBuffer)
+	    throws IOException
+	{
+	    if (buffer.remaining() > sendBuffer.remaining()) {
+		flush(sendBuffer);
+		if (buffer.remaining() > sendBuffer.remaining()) {
+		    outChannel.write(buffer);
+		    return;
+		}
+	    }
+	    sendBuffer.put(buffer);
+	}
+
+	/**
+	 * Writes out the contents of the send buffer.
+	 */
+	private void flush(ByteBuffer sendBuffer) throws IOException {
+	    if (sendBuffer.position() > 0) {
+		sendBuffer.flip();
+		outChannel.write(sendBuffer);
+		sendBuffer.clear();
+	    }
+	}
     }
 
     private void drainQueue(Deque queue) {
@@ -268,7 +349,7 @@ final class StreamConnectionIO extends ConnectionIO {
     private class Reader implements Runnable {
         /** buffer for reading incoming data from connection */
         private final ByteBuffer inputBuffer =
-            ByteBuffer.allocate(RECEIVE_BUFFER_SIZE);	// ready for reading
+            BufferPool.HEAP.acquire(RECEIVE_BUFFER_SIZE);	// ready for reading
 
 	Reader() { }
 
@@ -285,7 +366,8 @@ final class StreamConnectionIO extends ConnectionIO {
 		}
 	    } catch (ProtocolException e) {
 		IOFuture future = null;
-		synchronized (mux.muxLock) {
+		mux.muxLock.lock();
+		try {
 		    /*
 		     * If mux connection is already down, then we probably got
 		     * here because of the receipt of a normal protocol-ending
@@ -310,6 +392,8 @@ final class StreamConnectionIO extends ConnectionIO {
 			} catch (Throwable t) {
 			}
 		    }
+		} finally {
+		    mux.muxLock.unlock();
 		}
 		if (future != null) {
 		    try {
@@ -340,6 +424,7 @@ final class StreamConnectionIO extends ConnectionIO {
 		    inChannel.close();
 		} catch (IOException e) {
 		}
+		BufferPool.HEAP.release(inputBuffer);
 	    }
 	}
     }
@@ -355,9 +440,24 @@ final class StreamConnectionIO extends ConnectionIO {
 	return new ReadableByteChannel() {
 	    private boolean open = true;
 
-            // must be synchronized as per ReadableByteChannel contract
+	    /*
+	     * Guards reads and close; a lock rather than a monitor so that a
+	     * virtual thread blocked reading does not pin its carrier.
+	     */
+	    private final ReentrantLock lock = new ReentrantLock();
+
+            // must be mutually exclusive as per ReadableByteChannel contract
             @Override
-	    public synchronized int read(ByteBuffer dst) throws IOException {
+	    public int read(ByteBuffer dst) throws IOException {
+		lock.lock();
+		try {
+		    return read0(dst);
+		} finally {
+		    lock.unlock();
+		}
+	    }
+
+	    private int read0(ByteBuffer dst) throws IOException {
 		assert dst.hasArray();
 		byte[] array = dst.array();
 		int arrayOffset = dst.arrayOffset();
@@ -386,15 +486,25 @@ final class StreamConnectionIO extends ConnectionIO {
 	    }
                 
             @Override
-	    public synchronized boolean isOpen() {
-		return open;
+	    public boolean isOpen() {
+		lock.lock();
+		try {
+		    return open;
+		} finally {
+		    lock.unlock();
+		}
 	    }
             
             // Blocking as per Channel contract
             @Override
-	    public synchronized void close() throws IOException {
-		in.close();
-		open = false;
+	    public void close() throws IOException {
+		lock.lock();
+		try {
+		    in.close();
+		    open = false;
+		} finally {
+		    lock.unlock();
+		}
 	    }
 	};
     }
@@ -402,10 +512,18 @@ final class StreamConnectionIO extends ConnectionIO {
     public static WritableByteChannel newChannel(final OutputStream out) {
 	return new WritableByteChannel() {
 	    private volatile boolean open = true;
+
+	    /*
+	     * Guards writes and close; a lock rather than a monitor so that a
+	     * virtual thread blocked writing does not pin its carrier.
+	     */
+	    private final ReentrantLock lock = new ReentrantLock();
             
             // This method must block while writing as per WritableByteChannel contract.
             @Override
-	    public synchronized int write(ByteBuffer src) throws IOException {
+	    public int write(ByteBuffer src) throws IOException {
+                lock.lock();
+                try {
                     assert src.hasArray();
 
                     int len = src.remaining();
@@ -415,7 +533,10 @@ final class StreamConnectionIO extends ConnectionIO {
                         src.position(pos + len);
                     }
                     return len;
+                } finally {
+                    lock.unlock();
                 }
+            }
                 
             @Override
 	    public boolean isOpen() {
@@ -424,9 +545,14 @@ final class StreamConnectionIO extends ConnectionIO {
 
             // This method must block as per the Channel contract
             @Override
-	    public synchronized void close() throws IOException {
-		out.close();
-		open = false;
+	    public void close() throws IOException {
+		lock.lock();
+		try {
+		    out.close();
+		    open = false;
+		} finally {
+		    lock.unlock();
+		}
 	    }
 	};
     }
@@ -85,27 +85,47 @@ import java.util.concurrent.atomic.AtomicInteger;
  * type-safe equivalent of "registerRefs" that delegates to this
  * class's "registerRefs" method.
  *
+ * Dirty calls for registrations are coalesced per endpoint: while one
+ * registration's dirty call is in progress, the refs of concurrent
+ * registrations are collected and sent together in a single dirty call
+ * once it completes, optionally after a further batching window.  Each
+ * registration still returns only after a dirty call for its refs has
+ * been made.  Likewise, the renew/clean thread waits for a short window
+ * after the first phantom reference is enqueued, so that refs cleared by
+ * the same garbage collection are cleaned in a single call.  Activity is
+ * recorded in {@link DgcStats}.
+ *
  * @author Sun Microsystems, Inc.
  **/
 abstract class AbstractDgcClient {
 
     /** lease duration to request (usually ignored by server) */
     private static final long leaseValue =		// default 10 minutes
-	((Long) AccessController.doPrivileged(new GetLongAction(
-	    "org.apache.river.jeri.dgc.leaseValue", 600000)))
-	    .longValue();
+	AccessController.doPrivileged(new GetLongAction(
+	    "org.apache.river.jeri.dgc.leaseValue", 600000)).longValue();
 
     /** maximum interval between retries of failed clean calls */
     private static final long cleanInterval =		// default 3 minutes
-	((Long) AccessController.doPrivileged(new GetLongAction(
-	    "org.apache.river.jeri.dgc.cleanInterval", 180000)))
-	    .longValue();
+	AccessController.doPrivileged(new GetLongAction(
+	    "org.apache.river.jeri.dgc.cleanInterval", 180000)).longValue();
 
     /** minimum lease duration that we bother to honor */
     private static final long minimumDuration =		// default 5 seconds
-	((Long) AccessController.doPrivileged(new GetLongAction(
-	    "org.apache.river.jeri.dgc.minimumDuration", 5000)))
-	    .longValue();
+	AccessController.doPrivileged(new GetLongAction(
+	    "org.apache.river.jeri.dgc.minimumDuration", 5000)).longValue();
+
+    /** time to wait for more registrations to join a dirty call */
+    private static final long dirtyBatchWindow =	// default 0
+	AccessController.doPrivileged(new GetLongAction(
+	    "org.apache.river.jeri.dgc.dirtyBatchWindow", 0)).longValue();
+
+    /** time to wait for more phantom references before a clean call */
+    private static final long cleanBatchWindow =	// default 100 ms
+	AccessController.doPrivileged(new GetLongAction(
+	    "org.apache.river.jeri.dgc.cleanBatchWindow", 100)).longValue();
+
+    /** DGC activity counters */
+    private static final DgcStats stats = DgcStats.getInstance();
 
     /** minimum retry count for dirty calls that fail */
     private static final int dirtyFailureRetries = 5;
@@ -261,6 +281,11 @@ abstract class AbstractDgcClient {
 	/** true if renew/clean thread may be interrupted */
 	private boolean interruptible = false;
 
+	/** true while a dirty call for a registration is in progress */
+	private boolean dirtyInProgress = false;
+	/** refs waiting for the next registration dirty call, or null */
+	private DirtyBatch pendingDirty = null;
+
 	/** set of clean calls that need to be made, changed Set to an
          * underlying ConcurrentHashMap because no lock is held while 
          * iterating and processing pending Clean Requests*/
@@ -304,6 +329,8 @@ abstract class AbstractDgcClient {
 
 	    Set refsToDirty = null;	// entries for refs needing dirty
 	    long sequenceNum;		// sequence number for dirty call
+	    DirtyBatch batch = null;	// batch sent by this thread, if any
+	    boolean interrupted = false; // interrupted while waiting
 
 	    synchronized (this) {
 		if (removed) {
@@ -320,6 +347,7 @@ abstract class AbstractDgcClient {
 		    if (refEntry == null) {
 			refEntry = new RefEntry(objectID);
 			refTable.put(objectID, refEntry);
+			stats.refAdded();
 			if (refsToDirty == null) {
 			    refsToDirty = new HashSet(5);
 			}
@@ -333,16 +361,85 @@ abstract class AbstractDgcClient {
 		    return true;
 		}
 
+		if (pendingDirty != null) {
+		    /*
+		     * Join the batch waiting for the dirty call in progress,
+		     * and wait for the thread that started it to send it.
+		     */
+		    batch = pendingDirty;
+		    batch.refEntries.addAll(refsToDirty);
+		    stats.coalescedRegistration();
+		    while (!batch.done) {
+			interrupted |= waitForBatch(0);
+		    }
+		    if (interrupted) {
+			Thread.currentThread().interrupt();
+		    }
+		    return true;
+		} else if (dirtyInProgress) {
+		    /*
+		     * Start a batch that later registrations can join, and
+		     * send it when the dirty call in progress completes.
+		     */
+		    batch = new DirtyBatch(refsToDirty);
+		    pendingDirty = batch;
+		    while (dirtyInProgress) {
+			interrupted |= waitForBatch(0);
+		    }
+		    if (dirtyBatchWindow > 0) {
+			long deadline =
+			    System.currentTimeMillis() + dirtyBatchWindow;
+			long t = dirtyBatchWindow;
+			do {
+			    interrupted |= waitForBatch(t);
+			    t = deadline - System.currentTimeMillis();
+			} while (t > 0);
+		    }
+		    pendingDirty = null;
+		}
+		dirtyInProgress = true;
+
 		refsToDirty.addAll(invalidRefs);
 		invalidRefs.clear();
 
 		sequenceNum = getNextSequenceNum();
 	    }
 
-	    makeDirtyCall(refsToDirty, sequenceNum);
+	    try {
+		makeDirtyCall(refsToDirty, sequenceNum);
+	    } finally {
+		synchronized (this) {
+		    dirtyInProgress = false;
+		    if (batch != null) {
+			batch.done = true;
+		    }
+		    notifyAll();
+		}
+		if (interrupted) {
+		    Thread.currentThread().interrupt();
+		}
+	    }
 	    return true;
 	}
 
+	/**
+	 * Waits on this entry's lock for at most the given time (zero
+	 * meaning indefinitely) and returns true if the wait was
+	 * interrupted.  Registrations defer interrupts until they complete.
+	 *
+	 * This method must ONLY be invoked while synchronized on this
+	 * EndpointEntry.
+	 */
+	private boolean waitForBatch(long timeout) {
+	    assert Thread.holdsLock(this);
+	    try {
+		wait(timeout);
+		return false;
+	    } catch (InterruptedException e) {
+		return true;
+	    }
+	}
+
 	/**
 	 * Removes the given RefEntry from the ref table.  If that makes
 	 * the ref table empty, remove this entry from the global endpoint
@@ -357,6 +454,7 @@ abstract class AbstractDgcClient {
 
 	    refTable.remove(refEntry.getObjectID());
 	    invalidRefs.remove(refEntry);
+	    stats.refRemoved();
 	    if (refTable.isEmpty()) {
 		synchronized (endpointTable) {
 		    endpointTable.remove(endpoint);
@@ -394,6 +492,7 @@ abstract class AbstractDgcClient {
 	    long startTime = System.currentTimeMillis();
 	    try {
 		long duration = dgcProxy.dirty(sequenceNum, ids, leaseValue);
+		stats.dirtyCall(ids.length, false);
 
 		synchronized (this) {
 		    dirtyFailures = 0;
@@ -411,11 +510,13 @@ abstract class AbstractDgcClient {
 		}
 
 	    } catch (NoSuchObjectException e) {
+		stats.dirtyCall(ids.length, true);
 		synchronized (this) {
 		    setRenewTime(Long.MAX_VALUE);
 		    invalidRefs.addAll(refTable.values());
 		}
 	    } catch (Exception e) {
+		stats.dirtyCall(ids.length, true);
 		long endTime = System.currentTimeMillis();
 
 		synchronized (this) {
@@ -579,6 +680,14 @@ abstract class AbstractDgcClient {
 			 */
 			phantom = (RefEntry.PhantomLiveRef)
 			    refQueue.remove(timeToWait);
+			if (phantom != null && cleanBatchWindow > 0) {
+			    /*
+			     * Give the garbage collector time to enqueue the
+			     * rest of the refs it cleared, so that they are
+			     * cleaned in one call.
+			     */
+			    Thread.sleep(cleanBatchWindow);
+			}
 		    } catch (InterruptedException e) {
 		    }
 
@@ -607,6 +716,7 @@ abstract class AbstractDgcClient {
 			long currentTime = System.currentTimeMillis();
 			if (currentTime > renewTime) {
 			    needRenewal = true;
+			    stats.renewal(currentTime - renewTime);
 			    if (currentTime >= expirationTime) {
 				invalidRefs.addAll(refTable.values());
 			    }
@@ -697,10 +807,13 @@ abstract class AbstractDgcClient {
 		try {
 		    dgcProxy.clean(request.sequenceNum, request.objectIDs,
 				  request.strong);
+		    stats.cleanCall(request.objectIDs.length, false);
 		    iter.remove();
 		} catch (NoSuchObjectException e) {
+		    stats.cleanCall(request.objectIDs.length, true);
 		    iter.remove();
 		} catch (Exception e) {
+		    stats.cleanCall(request.objectIDs.length, true);
 		    if (e instanceof ConnectException ||
 			e instanceof ConnectIOException)
 		    {
@@ -716,6 +829,7 @@ abstract class AbstractDgcClient {
 			 * ConnectIOException.
 			 */
 			if (request.connectFailures.incrementAndGet() >= cleanConnectRetries) {
+			    stats.cleanAbandoned();
 			    iter.remove();
 			}
 		    } else {
@@ -863,6 +977,22 @@ abstract class AbstractDgcClient {
 	}
     }
 
+    /**
+     * DirtyBatch holds the refs of registrations waiting to be sent
+     * together in one dirty call.
+     */
+    private static class DirtyBatch {
+
+	/** RefEntry instances to dirty (guarded by the EndpointEntry) */
+	final Set refEntries;
+	/** true once the dirty call has been made (guarded likewise) */
+	boolean done = false;
+
+	DirtyBatch(Set refEntries) {
+	    this.refEntries = refEntries;
+	}
+    }
+
     /**
      * CleanRequest holds the data for the arguments of a clean call
      * that needs to be made.
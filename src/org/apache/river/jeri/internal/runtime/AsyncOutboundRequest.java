@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.jeri.internal.runtime;
+
+import net.jini.jeri.OutboundRequest;
+
+/**
+ * Implemented by {@link OutboundRequest} implementations that can notify
+ * a listener when the response may be read without waiting for the
+ * server, so that a caller need not dedicate a blocked thread to a remote
+ * call while it executes.
+ *
+ * @since 3.0.0
+ */
+public interface AsyncOutboundRequest {
+
+    /**
+     * Arranges for the specified listener to be run exactly once, when
+     * response data, the end of the response, or a failure of the request
+     * becomes available to the response input stream, or immediately if
+     * one already has.  The listener may be run by a transport thread,
+     * possibly while transport locks are held, so it must not block;
+     * typically it hands the response off to an executor.
+     *
+     * @param listener the listener to run
+     * @throws NullPointerException if <code>listener</code> is
+     * <code>null</code>
+     */
+    void setResponseListener(Runnable listener);
+}
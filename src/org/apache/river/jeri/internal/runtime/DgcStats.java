@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.runtime;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for distributed garbage collection activity in this virtual
+ * machine: the client side, maintained by {@link AbstractDgcClient}, and
+ * the server side, maintained by {@link ObjectTable}.
+ * <p>
+ * Counters are updated without locking, so a snapshot obtained through
+ * the accessors is only approximately consistent. The server side logs a
+ * snapshot at level <code>FINE</code> to the
+ * <code>net.jini.jeri.BasicJeriExporter</code> logger each time it checks
+ * for expired leases.
+ *
+ * @since 3.0.0
+ */
+public final class DgcStats {
+
+    private static final DgcStats instance = new DgcStats();
+
+    /* client side */
+    private final AtomicInteger liveRefs = new AtomicInteger();
+    private final AtomicLong dirtyCalls = new AtomicLong();
+    private final AtomicLong dirtyIds = new AtomicLong();
+    private final AtomicLong failedDirtyCalls = new AtomicLong();
+    private final AtomicLong coalescedRegistrations = new AtomicLong();
+    private final AtomicLong renewals = new AtomicLong();
+    private final AtomicLong renewLagMillis = new AtomicLong();
+    private final AtomicLong maxRenewLagMillis = new AtomicLong();
+    private final AtomicLong cleanCalls = new AtomicLong();
+    private final AtomicLong cleanIds = new AtomicLong();
+    private final AtomicLong failedCleanCalls = new AtomicLong();
+    private final AtomicLong abandonedCleans = new AtomicLong();
+
+    /* server side */
+    private final AtomicInteger liveLeases = new AtomicInteger();
+    private final AtomicLong dirtyCallsReceived = new AtomicLong();
+    private final AtomicLong cleanCallsReceived = new AtomicLong();
+    private final AtomicLong expiredLeases = new AtomicLong();
+
+    private DgcStats() {
+    }
+
+    /**
+     * Returns the counters for this virtual machine.
+     */
+    public static DgcStats getInstance() {
+        return instance;
+    }
+
+    void refAdded() {
+        liveRefs.incrementAndGet();
+    }
+
+    void refRemoved() {
+        liveRefs.decrementAndGet();
+    }
+
+    void dirtyCall(int ids, boolean failed) {
+        dirtyCalls.incrementAndGet();
+        dirtyIds.addAndGet(ids);
+        if (failed) failedDirtyCalls.incrementAndGet();
+    }
+
+    void coalescedRegistration() {
+        coalescedRegistrations.incrementAndGet();
+    }
+
+    void renewal(long lag) {
+        renewals.incrementAndGet();
+        renewLagMillis.addAndGet(lag);
+        long max = maxRenewLagMillis.get();
+        while (lag > max) {
+            if (maxRenewLagMillis.compareAndSet(max, lag)) break;
+            max = maxRenewLagMillis.get();
+        }
+    }
+
+    void cleanCall(int ids, boolean failed) {
+        cleanCalls.incrementAndGet();
+        cleanIds.addAndGet(ids);
+        if (failed) failedCleanCalls.incrementAndGet();
+    }
+
+    void cleanAbandoned() {
+        abandonedCleans.incrementAndGet();
+    }
+
+    void leaseGranted() {
+        liveLeases.incrementAndGet();
+    }
+
+    void leaseRemoved(boolean expired) {
+        liveLeases.decrementAndGet();
+        if (expired) expiredLeases.incrementAndGet();
+    }
+
+    void dirtyCallReceived() {
+        dirtyCallsReceived.incrementAndGet();
+    }
+
+    void cleanCallReceived() {
+        cleanCallsReceived.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of distinct remote objects this virtual machine
+     * currently holds references to through DGC.
+     */
+    public int getLiveRefs() {
+        return liveRefs.get();
+    }
+
+    /** Returns the number of dirty calls made, including renewals. */
+    public long getDirtyCalls() {
+        return dirtyCalls.get();
+    }
+
+    /** Returns the number of object IDs sent in dirty calls. */
+    public long getDirtyIds() {
+        return dirtyIds.get();
+    }
+
+    /** Returns the number of dirty calls that failed. */
+    public long getFailedDirtyCalls() {
+        return failedDirtyCalls.get();
+    }
+
+    /**
+     * Returns the number of reference registrations that were sent in a
+     * dirty call made for another registration.
+     */
+    public long getCoalescedRegistrations() {
+        return coalescedRegistrations.get();
+    }
+
+    /** Returns the number of scheduled lease renewals. */
+    public long getRenewals() {
+        return renewals.get();
+    }
+
+    /**
+     * Returns the mean delay, in milliseconds, between the time a lease
+     * renewal was scheduled and the time it was made, or zero if no
+     * renewal has been made.
+     */
+    public double getMeanRenewLagMillis() {
+        long n = renewals.get();
+        return n == 0 ? 0.0 : renewLagMillis.get() / (double) n;
+    }
+
+    /** Returns the longest renewal delay, in milliseconds. */
+    public long getMaxRenewLagMillis() {
+        return maxRenewLagMillis.get();
+    }
+
+    /** Returns the number of clean calls made, including retries. */
+    public long getCleanCalls() {
+        return cleanCalls.get();
+    }
+
+    /** Returns the number of object IDs sent in clean calls. */
+    public long getCleanIds() {
+        return cleanIds.get();
+    }
+
+    /** Returns the number of clean calls that failed. */
+    public long getFailedCleanCalls() {
+        return failedCleanCalls.get();
+    }
+
+    /**
+     * Returns the number of clean requests given up after repeated
+     * connection failures.
+     */
+    public long getAbandonedCleans() {
+        return abandonedCleans.get();
+    }
+
+    /**
+     * Returns the number of clients that currently hold a lease on
+     * objects exported by this virtual machine.
+     */
+    public int getLiveLeases() {
+        return liveLeases.get();
+    }
+
+    /** Returns the number of dirty calls received. */
+    public long getDirtyCallsReceived() {
+        return dirtyCallsReceived.get();
+    }
+
+    /** Returns the number of clean calls received. */
+    public long getCleanCallsReceived() {
+        return cleanCallsReceived.get();
+    }
+
+    /** Returns the number of client leases that expired. */
+    public long getExpiredLeases() {
+        return expiredLeases.get();
+    }
+
+    public String toString() {
+        return "DgcStats[client={liveRefs=" + getLiveRefs() +
+            ", dirtyCalls=" + getDirtyCalls() +
+            ", dirtyIds=" + getDirtyIds() +
+            ", failedDirtyCalls=" + getFailedDirtyCalls() +
+            ", coalescedRegistrations=" + getCoalescedRegistrations() +
+            ", renewals=" + getRenewals() +
+            ", meanRenewLagMs=" + getMeanRenewLagMillis() +
+            ", maxRenewLagMs=" + getMaxRenewLagMillis() +
+            ", cleanCalls=" + getCleanCalls() +
+            ", cleanIds=" + getCleanIds() +
+            ", failedCleanCalls=" + getFailedCleanCalls() +
+            ", abandonedCleans=" + getAbandonedCleans() +
+            "}, server={liveLeases=" + getLiveLeases() +
+            ", dirtyCallsReceived=" + getDirtyCallsReceived() +
+            ", cleanCallsReceived=" + getCleanCallsReceived() +
+            ", expiredLeases=" + getExpiredLeases() + "}]";
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.jeri.internal.runtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import net.jini.io.MarshalInputStream;
+import net.jini.io.MarshalOutputStream;
+
+/**
+ * Passes classes by reference between the two ends of a request that
+ * never leaves this virtual machine.
+ *
+ * Streams created by a table annotate each class descriptor with the
+ * index of the class in the table instead of its codebase, so no
+ * codebase annotation is computed when marshalling and no class is
+ * loaded when unmarshalling; the receiving end resolves exactly the
+ * Class the sending end serialized.  Object state is still copied by
+ * serialization.  Both ends of a request must use streams from the
+ * same table.
+ *
+ * @since 3.0.0
+ */
+public final class LocalClassTable {
+
+    /**
+     * Implemented by in-virtual-machine requests whose ends share a
+     * LocalClassTable.
+     */
+    public interface Source {
+
+        /**
+         * Returns the class table shared by both ends of the request.
+         */
+        LocalClassTable getLocalClassTable();
+    }
+
+    /** classes written so far, indexed by annotation */
+    private final List<Class<?>> classes = new ArrayList<Class<?>>();
+
+    /**
+     * Returns the class table of the given request, or null if it does
+     * not have one.
+     */
+    public static LocalClassTable get(Object request) {
+        if (request instanceof Source) {
+            return ((Source) request).getLocalClassTable();
+        }
+        return null;
+    }
+
+    /**
+     * Returns a MarshalOutputStream that writes class annotations to
+     * this table.
+     */
+    public ObjectOutputStream createOutputStream(OutputStream out,
+                                                 Collection<?> context)
+        throws IOException
+    {
+        return new Output(out, context);
+    }
+
+    /**
+     * Returns a MarshalInputStream that resolves class annotations
+     * written by a stream from createOutputStream against this table.
+     */
+    public ObjectInputStream createInputStream(InputStream in,
+                                               ClassLoader defaultLoader,
+                                               boolean integrity,
+                                               Collection<?> context)
+        throws IOException
+    {
+        return new Input(in, defaultLoader, integrity, context);
+    }
+
+    private int add(Class<?> cl) {
+        synchronized (classes) {
+            classes.add(cl);
+            return classes.size() - 1;
+        }
+    }
+
+    private Class<?> get(int index) throws IOException {
+        synchronized (classes) {
+            if (index < 0 || index >= classes.size()) {
+                throw new IOException("invalid class index " + index);
+            }
+            return classes.get(index);
+        }
+    }
+
+    private final class Output extends MarshalOutputStream {
+
+        Output(OutputStream out, Collection<?> context) throws IOException {
+            super(out, context);
+        }
+
+        @Override
+        protected void annotateClass(Class cl) throws IOException {
+            writeInt(add(cl));
+        }
+
+        @Override
+        protected void annotateProxyClass(Class cl) throws IOException {
+            writeInt(add(cl));
+        }
+    }
+
+    private final class Input extends MarshalInputStream {
+
+        Input(InputStream in, ClassLoader defaultLoader, boolean integrity,
+              Collection<?> context)
+            throws IOException
+        {
+            super(in, defaultLoader, integrity, defaultLoader, context);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass classDesc)
+            throws IOException
+        {
+            return get(readInt());
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaceNames)
+            throws IOException
+        {
+            return get(readInt());
+        }
+    }
+}
@@ -45,6 +45,9 @@ final class ObjectTable {
     private static final Logger logger =
 	Logger.getLogger("net.jini.jeri.BasicJeriExporter");
 
+    /** DGC activity counters */
+    private static final DgcStats stats = DgcStats.getInstance();
+
     /**
      * lock to serialize request dispatcher reservation per export, so
      * that a partial export will not cause another export to fail
@@ -131,8 +134,11 @@ final class ObjectTable {
 	return rd;
     }
 
-    void registerTarget(Target target, Uuid clientID) {
-        Lease lease = leaseTable.get(clientID);
+    /**
+     * Registers the target with the given lease of the client, which the
+     * caller has looked up once for all targets of a DGC call.
+     */
+    void registerTarget(Target target, Uuid clientID, Lease lease) {
         if (lease == null) {
             target.leaseExpired(clientID);
         } else {
@@ -173,13 +179,17 @@ final class ObjectTable {
                     });
             }
 
+            stats.dirtyCallReceived();
             long duration = Jeri.leaseValue;
 
             Lease lease = leaseTable.get(clientID);
             if (lease == null) {
                 lease = new Lease(clientID, duration);
                 Lease existed = leaseTable.putIfAbsent(clientID,lease);
-                if (existed != null){
+                if (existed == null) {
+                    stats.leaseGranted();
+                } else {
+                    lease = existed;
                     assert clientID.equals(existed.getClientID());
                     boolean renewed = existed.renew(duration);
                     if (!renewed){
@@ -208,10 +218,14 @@ final class ObjectTable {
                     // renewed by another thread, which would risk a renewed
                     // lease being removed from the table.  
                     // An expired lease must be replaced.
-                    leaseTable.remove(clientID, lease); // Another thread could remove it first.
+                    if (leaseTable.remove(clientID, lease)) { // Another thread could remove it first.
+                        stats.leaseRemoved(true);
+                    }
                     lease = new Lease(clientID, duration);
                     Lease existed = leaseTable.putIfAbsent(clientID, lease);
-                    if (existed != null){
+                    if (existed == null) {
+                        stats.leaseGranted();
+                    } else {
                         lease = existed;
                         assert clientID.equals(lease.getClientID());
                         renewed = lease.renew(duration);
@@ -306,10 +320,15 @@ final class ObjectTable {
                     }
                 }
             }
+            /*
+             * Process the whole batch of ids in one pass, registering
+             * each target with the lease obtained above rather than
+             * looking it up again per target.
+             */
             for (int i = 0; i < ids.length; i++) {
                 Target target = dgcRequestDispatcher.get(ids[i]);
                 if (target != null) {
-                    target.referenced(clientID, sequenceNum);
+                    target.referenced(clientID, sequenceNum, lease);
                 }
             }
             return duration;
@@ -329,10 +348,12 @@ final class ObjectTable {
                     });
             }
 
+            stats.cleanCallReceived();
+            Lease lease = leaseTable.get(clientID);
             for (int i = 0; i < ids.length; i++) {
                 Target target = dgcRequestDispatcher.get(ids[i]);
                 if (target != null) {
-                    target.unreferenced(clientID, sequenceNum, strong);
+                    target.unreferenced(clientID, sequenceNum, strong, lease);
                 }
             }
         }
@@ -353,8 +374,12 @@ final class ObjectTable {
                         boolean expired = lease.notifyIfExpired(now);
                         if (expired) {			    
                             i.remove();
+                            stats.leaseRemoved(true);
                         }
                     }
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.log(Level.FINE, "{0}", stats);
+                    }
                     if (leaseTable.isEmpty()) {
                         done = true;
                     }		
@@ -21,6 +21,7 @@ package org.apache.river.jeri.internal.runtime;
 import org.apache.river.logging.Levels;
 import org.apache.river.thread.Executor;
 import org.apache.river.thread.GetThreadPoolAction;
+import org.apache.river.thread.NewThreadAction;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
@@ -133,6 +134,24 @@ public final class SelectionManager {
     /** holder used for pass-by-reference invocations */
     private final int[] renewMaskRef = new int[1];
 
+    /** instance shared by the Jini ERI transport providers */
+    private static SelectionManager sharedInstance = null;
+
+    /**
+     * Returns the SelectionManager shared by the Jini ERI transport
+     * providers, creating it if necessary.  Sharing a single instance
+     * keeps the number of select threads independent of the number of
+     * listen operations and connections.
+     */
+    public static synchronized SelectionManager getInstance()
+	throws IOException
+    {
+	if (sharedInstance == null) {
+	    sharedInstance = new SelectionManager();
+	}
+	return sharedInstance;
+    }
+
     /**
      * Creates a new SelectionManager.
      *
@@ -153,8 +172,17 @@ public final class SelectionManager {
 						  SelectionKey.OP_READ);
 
 	for (int i = 0; i < concurrency; i++) {
-	    systemThreadPool.execute(new SelectLoop(),
-				     "I/O SelectionManager-" + i);
+	    String name = "I/O SelectionManager-" + i;
+	    if (GetThreadPoolAction.usesVirtualThreads()) {
+		/*
+		 * A virtual thread blocked in Selector.select would hold its
+		 * carrier thread, so select loops run on platform threads.
+		 */
+		AccessController.doPrivileged(
+		    new NewThreadAction(new SelectLoop(), name, true)).start();
+	    } else {
+		systemThreadPool.execute(new SelectLoop(), name);
+	    }
 	}
 
 	// REMIND: How do these threads and other resources get cleaned up?
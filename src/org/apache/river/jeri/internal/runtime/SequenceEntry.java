@@ -52,6 +52,14 @@ final class SequenceEntry {
         }
     }
     
+    /**
+     * Returns true if the passed in sequence number is greater than the
+     * current number, so that {@link #update update} might succeed.
+     */
+    boolean isBefore(long seqNum){
+        return sequenceNum < seqNum;
+    }
+    
     boolean keep(){
         return keep;
     }
@@ -30,11 +30,11 @@ import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
@@ -110,7 +110,7 @@ final class Target {
         ccl = contextCl;
         if (allowDGC) {
             referencedSet = new HashSet<Uuid>(3);
-            sequenceTable = new HashMap<Uuid, SequenceEntry>(3);
+            sequenceTable = new ConcurrentHashMap<Uuid, SequenceEntry>(3);
         } else {
             referencedSet = null;
             sequenceTable = null;
@@ -290,16 +290,25 @@ final class Target {
         return ccl;
     }
 
-    void referenced(Uuid clientID, long sequenceNum) {
+    /**
+     * Records a dirty call from the client, registering this target with
+     * the client's lease, which the caller has already looked up.
+     */
+    void referenced(Uuid clientID, long sequenceNum, Lease lease) {
         if (!allowDGC) return;
         if (!exported) return;
         if (logger.isLoggable(Level.FINEST)) {
             logger.log(Level.FINEST, "this={0}, clientID={1}, sequenceNum={2}", new Object[]{this, clientID, Long.valueOf(sequenceNum)});
         }
+        SequenceEntry entry = sequenceTable.get(clientID);
+        if (entry != null && !entry.isBefore(sequenceNum)) {
+            /* Late dirty call; the sequence table can be read unlocked. */
+            return;
+        }
         lock.lock();
         try {
             
-            SequenceEntry entry = (SequenceEntry) sequenceTable.get(clientID);
+            entry = sequenceTable.get(clientID);
             if (entry == null) {
                 entry = new SequenceEntry(sequenceNum);
                 sequenceTable.put(clientID, entry);
@@ -319,14 +328,19 @@ final class Target {
                 }
                 referencedSet.add(clientID);
 
-                objTable.registerTarget(this, clientID);
+                objTable.registerTarget(this, clientID, lease);
             }
         } finally {
             lock.unlock();
         }
     }
 
-    void unreferenced(Uuid clientID, long sequenceNum, boolean strong) {
+    /**
+     * Records a clean call from the client, removing this target from the
+     * client's lease, which the caller has already looked up, or null.
+     */
+    void unreferenced(Uuid clientID, long sequenceNum, boolean strong,
+                      Lease lease) {
         if (!allowDGC) return;
         if (!exported) return;
         if (logger.isLoggable(Level.FINEST)) {
@@ -346,7 +360,9 @@ final class Target {
                 sequenceTable.remove(clientID);
             }
 
-            objTable.unregisterTarget(this, clientID);
+            if (lease != null) {
+                lease.remove(this);
+            }
 
             if (referencedSet.remove(clientID) && referencedSet.isEmpty()) {
                 implRef.unpin(this);
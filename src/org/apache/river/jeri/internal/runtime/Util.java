@@ -51,6 +51,7 @@ import javax.security.auth.Subject;
 import net.jini.export.ServerContext;
 import net.jini.io.context.ClientHost;
 import net.jini.io.context.ClientSubject;
+import net.jini.io.context.CompactClassDescriptors;
 import net.jini.io.context.ContextPermission;
 import net.jini.io.context.IntegrityEnforcement;
 import net.jini.security.proxytrust.TrustEquivalence;
@@ -737,6 +738,24 @@ public class Util {
 	context.add(new IntegrityEnforcementImpl(integrity));
     }
 
+    /**
+     * Adds an element to the context indicating that compact class
+     * descriptors are in effect for the request.
+     */
+    public static void populateCompactContext(
+	Collection<? super CompactClassDescriptors> context)
+    {
+	if (context == null) {
+	    throw new NullPointerException("context is null");
+	}
+	context.add(COMPACT_CLASS_DESCRIPTORS);
+    }
+
+    private static final CompactClassDescriptors COMPACT_CLASS_DESCRIPTORS =
+	new CompactClassDescriptors() {
+	    public boolean compactClassDescriptors() { return true; }
+	};
+
     private static class ClientHostImpl
     	implements ClientHost
     {
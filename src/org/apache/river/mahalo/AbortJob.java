@@ -29,6 +29,7 @@ import java.rmi.ConnectIOException;
 import java.rmi.AccessException;
 import java.rmi.ConnectException;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
  
 import java.util.logging.Level;
@@ -71,20 +72,28 @@ class AbortJob extends Job implements TransactionConstants {
      * @param pool The <code>TaskManager</code> which provides the
      *             threads used for interacting with participants.
      *
+     * @param fanout The <code>ExecutorService</code> which runs first
+     *               attempts for a caller waiting on this job.
+     *
      * @param log  The <code>ClientLog</code> used for recording
      *             recovery data.
      *
      * @param handles The array of participants which will be contacted
      *                and informed to roll-back.
      *
+     * @param stats Per-participant latency counters, or
+     *              <code>null</code>
+     *
      * @see org.apache.river.thread.TaskManager
      * @see org.apache.river.mahalo.log.ClientLog
      * @see net.jini.core.transaction.server.TransactionParticipant
      */
     public AbortJob(Transaction tr, ExecutorService pool,
+		      ExecutorService fanout,
 		      WakeupManager wm, ClientLog log,
-		      ParticipantHandle[] handles) {
-	super(pool, wm);
+		      ParticipantHandle[] handles,
+		      ConcurrentMap<TransactionParticipant,ParticipantStats> stats) {
+	super(pool, fanout, wm, stats);
 
 	if (log == null)
 	    throw new IllegalArgumentException("AbortJob: AbortJob: " +
@@ -198,6 +207,7 @@ class AbortJob extends Job implements TransactionConstants {
  
         Object response = null;
  
+        long start = System.nanoTime();
         try {
             par.abort(tr.mgr, tr.id);
             response = Integer.valueOf(ABORTED);
@@ -239,6 +249,8 @@ class AbortJob extends Job implements TransactionConstants {
 	    response = Integer.valueOf(ABORTED);
         }
  
+        recordCall(par, ParticipantStats.ABORT, start, response != null);
+
         if (response != null) {
 	    handle.setPrepState(ABORTED);
             try {
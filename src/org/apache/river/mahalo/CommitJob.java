@@ -29,6 +29,7 @@ import java.rmi.ConnectIOException;
 import java.rmi.AccessException;
 import java.rmi.ConnectException;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 
 import java.util.logging.Level;
@@ -68,20 +69,28 @@ class CommitJob extends Job implements TransactionConstants {
      * @param pool The <code>TaskManager</code> which provides the
      *             threads used for interacting with participants.
      *
+     * @param fanout The <code>ExecutorService</code> which runs first
+     *               attempts for a caller waiting on this job.
+     *
      * @param log  The <code>ClientLog</code> used for recording
      *             recovery data.
      *
      * @param handles The array of participants which will be contacted
      *                and informed to roll-forward.
      *
+     * @param stats Per-participant latency counters, or
+     *              <code>null</code>
+     *
      * @see org.apache.river.thread.TaskManager
      * @see org.apache.river.mahalo.log.ClientLog
      * @see net.jini.core.transaction.server.TransactionParticipant
      */
     public CommitJob(Transaction tr, ExecutorService pool,
+		      ExecutorService fanout,
 		      WakeupManager wm, ClientLog log,
-		      ParticipantHandle[] handles) {
-	super(pool, wm);
+		      ParticipantHandle[] handles,
+		      ConcurrentMap<TransactionParticipant,ParticipantStats> stats) {
+	super(pool, fanout, wm, stats);
 
 	if (log == null)
 	    throw new IllegalArgumentException("CommitJob: CommitJob: " +
@@ -174,6 +183,7 @@ class CommitJob extends Job implements TransactionConstants {
  
         Object response = null;
  
+        long start = System.nanoTime();
         try {
             par.commit(tr.mgr, tr.id);
             response = Integer.valueOf(COMMITTED);
@@ -216,6 +226,8 @@ class CommitJob extends Job implements TransactionConstants {
         }
  
  
+        recordCall(par, ParticipantStats.COMMIT, start, response != null);
+
         if (response != null) {
 	    handle.setPrepState(COMMITTED);
             try {
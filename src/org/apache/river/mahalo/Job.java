@@ -18,12 +18,14 @@
 package org.apache.river.mahalo;
 
 import org.apache.river.thread.WakeupManager;
+import net.jini.core.transaction.server.TransactionParticipant;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.logging.Level;
@@ -39,6 +41,7 @@ import java.util.logging.Logger;
  */
 abstract class Job {
     private final ExecutorService pool;
+    private final ExecutorService fanout;
     private final WakeupManager wm;
     private final AtomicInteger pend;
     final ConcurrentMap<Integer,Object> results;
@@ -47,18 +50,27 @@ abstract class Job {
 					//of the tasks for which
 					//the job is responsible
                                         // sync on tasks.
+    private final ConcurrentMap<TransactionParticipant,ParticipantStats> stats;
     static final Logger logger = TxnManagerImpl.participantLogger;
-    
+
     /**
      * Create the <code>Job</code> object giving it the
      * <code>ExecutorService</code> responsible for the pool of
      * threads which perform the necessary work.
      *
      * @param pool the <code>ExecutorService</code> which provides the threads
+     *
+     * @param fanout the <code>ExecutorService</code> which runs first
+     *        attempts on behalf of a thread waiting for this job
+     *
+     * @param stats per-participant latency counters, or <code>null</code>
      */
-    Job(ExecutorService pool, WakeupManager wm) {
+    Job(ExecutorService pool, ExecutorService fanout, WakeupManager wm,
+        ConcurrentMap<TransactionParticipant,ParticipantStats> stats) {
         this.wm = wm;
 	this.pool = pool;
+        this.fanout = fanout;
+        this.stats = stats;
         pend = new AtomicInteger(-1);
         results = new ConcurrentHashMap<Integer,Object>();
         tasks = new ConcurrentHashMap<Runnable,Integer>();
@@ -186,6 +198,7 @@ abstract class Job {
             }
 
 	    if (waitFor == Long.MAX_VALUE) {
+		helpPending();
 		while (pend.get() > 0) {
                     synchronized (this){
                         wait();
@@ -215,6 +228,78 @@ abstract class Job {
         }
     }
 
+    /**
+     * Starts the first attempt of every task which the pool has not
+     * started yet, each in a fan-out thread except the last, which runs
+     * in the calling thread. A caller prepared to wait indefinitely would
+     * otherwise sit idle while tasks queue behind other transactions'
+     * work, so contacting participants concurrently is not limited by
+     * the size of the pool. An attempt the fan-out pool rejects, because
+     * all of its threads are busy or it has been shut down, runs in the
+     * calling thread.
+     */
+    private void helpPending() {
+        ParticipantTask last = null;
+        Iterator<Runnable> it = tasks.keySet().iterator();
+        while (it.hasNext() && pend.get() > 0) {
+            Runnable r = it.next();
+            if (r instanceof ParticipantTask &&
+                ((ParticipantTask) r).claimFirstAttempt())
+            {
+                if (last != null) dispatchFirstAttempt(last);
+                last = (ParticipantTask) r;
+            }
+        }
+        if (last != null) last.runFirstAttempt();
+    }
+
+    private void dispatchFirstAttempt(final ParticipantTask task) {
+        try {
+            fanout.execute(new Runnable() {
+                public void run() {
+                    task.runFirstAttempt();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            task.runFirstAttempt();
+        }
+    }
+
+    /**
+     * Records the duration of a call made to a participant.
+     *
+     * @param par the participant
+     * @param phase one of the <code>ParticipantStats</code> phase indices
+     * @param start value of <code>System.nanoTime</code> before the call
+     * @param completed <code>true</code> if the call produced an outcome
+     */
+    void recordCall(TransactionParticipant par, int phase, long start,
+                    boolean completed) 
+    {
+        ParticipantStats s = ParticipantStats.lookup(stats, par);
+        if (s != null) s.record(phase, System.nanoTime() - start, completed);
+    }
+
+    /**
+     * Logs the latency counters of the participants contacted by this
+     * job, once all of its tasks are done.
+     */
+    private void logStats() {
+        if (stats == null || !logger.isLoggable(Level.FINE)) return;
+        Iterator<Runnable> it = tasks.keySet().iterator();
+        while (it.hasNext()) {
+            Runnable r = it.next();
+            if (!(r instanceof ParticipantTask)) continue;
+            ParticipantHandle handle = ((ParticipantTask) r).handle;
+            if (handle == null) continue;
+            TransactionParticipant par = handle.getPreParedParticipant();
+            ParticipantStats s = par != null ? stats.get(par) : null;
+            if (s != null) {
+                logger.log(Level.FINE, "{0}: {1}", new Object[] {par, s});
+            }
+        }
+    }
+
     private void setPending(int num) {
         pend.set(num);
 
@@ -237,6 +322,7 @@ abstract class Job {
                     "Job:decrementPending notifying, pending = {0}",
 		    Integer.valueOf(pending));
             }
+            if (pending == 0) logStats();
             synchronized (this){
                 notifyAll();
             }
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.mahalo;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import net.jini.core.transaction.server.TransactionParticipant;
+
+/**
+ * Per-participant latency counters for each phase of the two-phase
+ * commit protocol, maintained by the <code>Job</code>s which contact
+ * participants.
+ * <p>
+ * Participants are keyed by their prepared proxy, so all transactions
+ * a participant joins share a single instance. Counters are updated
+ * without locking, so a snapshot obtained through the accessors is only
+ * approximately consistent.
+ *
+ * @since 3.0.0
+ */
+class ParticipantStats {
+
+    /** Phase index of <code>prepare</code> calls */
+    static final int PREPARE = 0;
+
+    /** Phase index of <code>commit</code> calls */
+    static final int COMMIT = 1;
+
+    /** Phase index of <code>abort</code> calls */
+    static final int ABORT = 2;
+
+    /** Phase index of <code>prepareAndCommit</code> calls */
+    static final int PREPARE_AND_COMMIT = 3;
+
+    private static final String[] PHASES = 
+        { "prepare", "commit", "abort", "prepareAndCommit" };
+
+    /** Maximum number of participants for which counters are kept */
+    static final int MAX_PARTICIPANTS = 4096;
+
+    /** Number of calls which produced an outcome, per phase */
+    private final AtomicLongArray calls = new AtomicLongArray(PHASES.length);
+
+    /** Number of calls which failed and will be retried, per phase */
+    private final AtomicLongArray failures = 
+        new AtomicLongArray(PHASES.length);
+
+    /** Cumulative time spent in calls, in nanoseconds, per phase */
+    private final AtomicLongArray nanos = new AtomicLongArray(PHASES.length);
+
+    /** Longest call observed, in nanoseconds, per phase */
+    private final AtomicLongArray maxNanos = 
+        new AtomicLongArray(PHASES.length);
+
+    /**
+     * Returns the counters for the given participant, creating them if
+     * necessary. Returns <code>null</code> if <code>registry</code> is
+     * <code>null</code> or already holds <code>MAX_PARTICIPANTS</code>
+     * entries.
+     */
+    static ParticipantStats lookup(
+        ConcurrentMap<TransactionParticipant,ParticipantStats> registry,
+        TransactionParticipant participant)
+    {
+        if (registry == null || participant == null) return null;
+        ParticipantStats stats = registry.get(participant);
+        if (stats == null) {
+            if (registry.size() >= MAX_PARTICIPANTS) return null;
+            stats = new ParticipantStats();
+            ParticipantStats existing = 
+                registry.putIfAbsent(participant, stats);
+            if (existing != null) stats = existing;
+        }
+        return stats;
+    }
+
+    /**
+     * Records a call made during the given phase which took
+     * <code>elapsed</code> nanoseconds.
+     *
+     * @param completed <code>true</code> if the call produced an outcome,
+     *                  <code>false</code> if it will be retried
+     */
+    void record(int phase, long elapsed, boolean completed) {
+        if (completed) {
+            calls.incrementAndGet(phase);
+        } else {
+            failures.incrementAndGet(phase);
+        }
+        nanos.addAndGet(phase, elapsed);
+        long max = maxNanos.get(phase);
+        while (elapsed > max) {
+            if (maxNanos.compareAndSet(phase, max, elapsed)) break;
+            max = maxNanos.get(phase);
+        }
+    }
+
+    long getCalls(int phase) {
+        return calls.get(phase);
+    }
+
+    long getFailures(int phase) {
+        return failures.get(phase);
+    }
+
+    /**
+     * Returns the mean duration of a call made during the given phase,
+     * in milliseconds, or zero if no call has been made yet.
+     */
+    double getMeanMillis(int phase) {
+        long count = calls.get(phase) + failures.get(phase);
+        if (count == 0) return 0.0;
+        return (nanos.get(phase) / (double) count) / 1000000.0;
+    }
+
+    /**
+     * Returns the longest call made during the given phase, in
+     * milliseconds.
+     */
+    double getMaxMillis(int phase) {
+        return maxNanos.get(phase) / 1000000.0;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder(160);
+        sb.append("ParticipantStats[");
+        for (int i = 0; i < PHASES.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(PHASES[i]).append("={calls=").append(getCalls(i))
+              .append(", failures=").append(getFailures(i))
+              .append(", meanMs=").append(getMeanMillis(i))
+              .append(", maxMs=").append(getMaxMillis(i))
+              .append('}');
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+}
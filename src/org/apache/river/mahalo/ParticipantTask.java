@@ -21,6 +21,7 @@ import org.apache.river.thread.RetryTask;
 import org.apache.river.thread.WakeupManager;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.jini.core.transaction.server.TransactionParticipant;
@@ -36,6 +37,15 @@ import net.jini.core.transaction.server.TransactionParticipant;
 class ParticipantTask extends RetryTask {
     final ParticipantHandle handle;
     final Job myjob;
+    /** First attempt not started yet */
+    private static final int NEW = 0;
+    /** First attempt started by the pool */
+    private static final int STARTED = 1;
+    /** First attempt run by a thread waiting for the job */
+    private static final int HELPED = 2;
+    /** Initial submission to the pool discarded after HELPED */
+    private static final int DISCARDED = 3;
+    private final AtomicInteger state = new AtomicInteger(NEW);
     private static final Logger operationsLogger = 
         TxnManagerImpl.operationsLogger;
 	
@@ -68,6 +78,39 @@ class ParticipantTask extends RetryTask {
         return false;
     }
 
+    /**
+     * Runs the task unless the initial submission to the pool has been
+     * superseded by {@link #runFirstAttempt}.
+     */
+    public void run() {
+        if (state.compareAndSet(NEW, STARTED)) {
+            super.run();
+        } else if (!state.compareAndSet(HELPED, DISCARDED)) {
+            // A retry
+            super.run();
+        }
+    }
+
+    /**
+     * Claims the first attempt of this task for a thread other than the
+     * pool, if no thread has started it yet. The pending submission to
+     * the pool becomes a no-op.
+     *
+     * @return <code>true</code> if the caller must now run
+     *         {@link #runFirstAttempt}
+     */
+    boolean claimFirstAttempt() {
+        return state.compareAndSet(NEW, HELPED);
+    }
+
+    /**
+     * Runs the first attempt of this task, which the caller claimed with
+     * {@link #claimFirstAttempt}.
+     */
+    void runFirstAttempt() {
+        super.run();
+    }
+
     public boolean tryOnce() {
         if (operationsLogger.isLoggable(Level.FINER)) {
             operationsLogger.entering(ParticipantTask.class.getName(), 
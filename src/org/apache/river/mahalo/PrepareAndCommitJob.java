@@ -18,10 +18,10 @@
 package org.apache.river.mahalo;
 
 import org.apache.river.logging.Levels;
-import org.apache.river.mahalo.log.ClientLog;
 import org.apache.river.thread.TaskManager;
 import org.apache.river.thread.WakeupManager;
 import java.rmi.RemoteException;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -47,7 +47,6 @@ import net.jini.core.transaction.server.TransactionParticipant;
  */
 class PrepareAndCommitJob extends Job implements TransactionConstants {
     final ServerTransaction tr;
-    final ClientLog log;
     final ParticipantHandle handle;
     final int maxtries = 5;
     
@@ -67,9 +66,6 @@ class PrepareAndCommitJob extends Job implements TransactionConstants {
     private static final Logger operationsLogger = 
        TxnManagerImpl.operationsLogger;
 
-    /** Logger for persistence related messages */
-    private static final Logger persistenceLogger = 
-        TxnManagerImpl.persistenceLogger;
 
     /**
      * Constructs a <code>PrepareAndCommitJob</code>.
@@ -81,26 +77,24 @@ class PrepareAndCommitJob extends Job implements TransactionConstants {
      * @param pool The <code>TaskManager</code> which provides the
      *             threads used for interacting with participants.
      *
-     * @param log  The <code>ClientLog</code> used for recording
-     *             recovery data.
+     * @param fanout The <code>ExecutorService</code> which runs first
+     *               attempts for a caller waiting on this job.
      *
      * @param handle The array of participants which will be contacted
      *                and informed to vote and roll-forward/back.
      *
+     * @param stats Per-participant latency counters, or
+     *              <code>null</code>
+     *
      * @see org.apache.river.thread.TaskManager
-     * @see org.apache.river.mahalo.log.ClientLog
      * @see net.jini.core.transaction.server.TransactionParticipant
      */
     public PrepareAndCommitJob(Transaction tr, ExecutorService pool,
-		      WakeupManager wm, ClientLog log,
-		      ParticipantHandle handle) {
-	super(pool, wm);
-
-	if (log == null)
-	    throw new IllegalArgumentException("PrepareAndCommitJob: " +
-					"PrepareAndCommitJob: log is null");
-
-	this.log = log;
+		      ExecutorService fanout,
+		      WakeupManager wm,
+		      ParticipantHandle handle,
+		      ConcurrentMap<TransactionParticipant,ParticipantStats> stats) {
+	super(pool, fanout, wm, stats);
 
 	if (!(tr instanceof ServerTransaction))
 	    throw new IllegalArgumentException("PrepareAndCommitJob: " +
@@ -122,8 +116,9 @@ class PrepareAndCommitJob extends Job implements TransactionConstants {
      * The work to be performed by each <code>TaskManager.Task</code>
      * is provided by the <code>Job</code> that creates it.
      * The work performed by a task belonging to the CommitJob
-     * contacts a participant, instructs it to vote, roll-forward/back
-     * and log appropriately.
+     * contacts a participant and instructs it to vote and
+     * roll-forward/back. Nothing is logged since the participant alone
+     * decides the outcome.
      *
      * @param who The task performing the work
      *
@@ -201,11 +196,11 @@ class PrepareAndCommitJob extends Job implements TransactionConstants {
  
         //Here we actually need to ask the participant to
         //prepare.  Note the RemoteException causes a
-        //retry. Here we only log info for the cases
-        //where a final outcome is available.
+        //retry.
  
         Object response = null;
  
+        long start = System.nanoTime();
         try {
             vote = par.prepareAndCommit(tr.mgr, tr.id);
             response = Integer.valueOf(vote);
@@ -226,19 +221,10 @@ class PrepareAndCommitJob extends Job implements TransactionConstants {
 	    response = Integer.valueOf(vote);
 	}
 
+        recordCall(par, ParticipantStats.PREPARE_AND_COMMIT, start, response != null);
+
         if (response != null) {
 	    handle.setPrepState(vote);
-            try {
-                log.write( new PrepareAndCommitRecord(handle, vote));
-            } catch (org.apache.river.mahalo.log.LogException le) {
-                //the full package name used to disambiguate
-                //the LogException
-                if (persistenceLogger.isLoggable(Level.WARNING)) {
-                    persistenceLogger.log(Level.WARNING,
-	            "Problem writing PrepareAndCommitRecord.", le);
-	        }
-//TODO - ignore?		
-            }
             if (operationsLogger.isLoggable(Level.FINER)) {
                 operationsLogger.exiting(PrepareAndCommitJob.class.getName(), 
 	            "doWork", response);
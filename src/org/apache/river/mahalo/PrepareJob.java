@@ -18,10 +18,10 @@
 
 package org.apache.river.mahalo;
 
-import org.apache.river.mahalo.log.ClientLog;
 import org.apache.river.thread.WakeupManager;
 import java.rmi.RemoteException;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -46,16 +46,12 @@ import net.jini.core.transaction.server.TransactionParticipant;
  */
 class PrepareJob extends Job implements TransactionConstants {
     final ServerTransaction tr;
-    final ClientLog log;
     final ParticipantHandle[] handles;
     final int maxtries = 5;
     /** Logger for operations related messages */
     private static final Logger operationsLogger =
        TxnManagerImpl.operationsLogger;
 
-    /** Logger for persistence related messages */
-    private static final Logger persistenceLogger =
-        TxnManagerImpl.persistenceLogger;
 
     /**
      * Constructs an <code>PrepareJob</code>
@@ -67,26 +63,24 @@ class PrepareJob extends Job implements TransactionConstants {
      * @param pool The <code>TaskManager</code> which provides the
      *             threads used for interacting with participants.
      *
-     * @param log  The <code>ClientLog</code> used for recording
-     *             recovery data.
+     * @param fanout The <code>ExecutorService</code> which runs first
+     *               attempts for a caller waiting on this job.
      *
      * @param handles The array of participants which will be contacted
      *                and informed to vote
      *
+     * @param stats Per-participant latency counters, or
+     *              <code>null</code>
+     *
      * @see org.apache.river.thread.TaskManager
-     * @see org.apache.river.mahalo.log.ClientLog
      * @see net.jini.core.transaction.server.TransactionParticipant
      */
     public PrepareJob(Transaction tr, ExecutorService pool,
-		      WakeupManager wm, ClientLog log,
-		      ParticipantHandle[] handles) {
-	super(pool, wm);
-
-	if (log == null)
-	    throw new IllegalArgumentException("PrepareJob: PrepareJob: " +
-							"log is null");
-
-	this.log = log;
+		      ExecutorService fanout,
+		      WakeupManager wm,
+		      ParticipantHandle[] handles,
+		      ConcurrentMap<TransactionParticipant,ParticipantStats> stats) {
+	super(pool, fanout, wm, stats);
 
 	if (!(tr instanceof ServerTransaction))
 	    throw new IllegalArgumentException("PrepareJob: PrepareJob: " +
@@ -110,8 +104,9 @@ class PrepareJob extends Job implements TransactionConstants {
      * The work to be performed by each <code>TaskManager.Task</code>
      * is provided by the <code>Job</code> that creates it.
      * The work performed by a task belonging to the AbortJob
-     * contacts a participant, instructs it to vote and
-     * log appropriately.
+     * contacts a participant and instructs it to vote. Votes are
+     * not logged individually; the transaction logs the outcome of
+     * the vote as a whole once it is known.
      *
      * @param who The task performing the work
      *
@@ -189,11 +184,11 @@ class PrepareJob extends Job implements TransactionConstants {
  
         //Here we actually need to ask the participant to
         //prepare.  Note the RemoteException causes a
-        //retry. Here we only log info for the cases
-        //where a final outcome is available.
+        //retry.
  
         Object response = null;
  
+        long start = System.nanoTime();
         try {
             vote = par.prepare(tr.mgr, tr.id);
             response = Integer.valueOf(vote);
@@ -206,19 +201,10 @@ class PrepareJob extends Job implements TransactionConstants {
 	    response = Integer.valueOf(vote);
 	}
 
+        recordCall(par, ParticipantStats.PREPARE, start, response != null);
+
         if (response != null) {
 	    handle.setPrepState(vote);
-            try {
-                log.write( new PrepareRecord(handle, vote));
-            } catch (org.apache.river.mahalo.log.LogException le) {
-                //the full package name used to disambiguate
-                //the LogException
-                if (persistenceLogger.isLoggable(Level.WARNING)) {
-                    persistenceLogger.log(Level.WARNING,
-	            "Problem writing PrepareRecord.", le);
-	        }
-//TODO - ignore?		
-            }
             if (operationsLogger.isLoggable(Level.FINER)) {
                 operationsLogger.exiting(
 		   PrepareJob.class.getName(),"doWork", response);
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.mahalo;
+
+import org.apache.river.mahalo.log.CannotRecoverException;
+import net.jini.core.transaction.server.TransactionConstants;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A <code>LogRecord</code> which records the votes of all participants
+ * once the prepare phase of a transaction has produced a
+ * <code>PREPARED</code> outcome, and before any participant is
+ * instructed to roll forward.
+ * <p>
+ * Writing a single record for the vote as a whole replaces a durable
+ * write per participant. Should the manager fail before the record is
+ * written no participant has been told to commit, so recovery may ask
+ * every participant to vote again.
+ *
+ * @since 3.0.0
+ */
+class PrepareOutcomeRecord implements TxnLogRecord, TransactionConstants {
+    static final long serialVersionUID = 1L;
+
+    private static final Logger operationsLogger = 
+        TxnManagerImpl.operationsLogger;
+
+    /**
+     * @serial
+     */
+    private final ParticipantHandle[] parts;
+
+    /**
+     * @serial
+     */
+    private final int[] votes;
+
+    /**
+     * Constructs a <code>PrepareOutcomeRecord</code> from the current
+     * prepare state of the given participants.
+     *
+     * @param parts The participants joined in the transaction
+     */
+    PrepareOutcomeRecord(ParticipantHandle[] parts) {
+	if (parts == null)
+	    throw new IllegalArgumentException("PrepareOutcomeRecord: must " +
+					       "specify a non-null parts array");
+	this.parts = parts;
+	votes = new int[parts.length];
+	for (int i = 0; i < parts.length; i++) {
+	    votes[i] = parts[i].getPrepState();
+	}
+    }
+
+    /**
+     * Recovers the vote of each participant to the given transaction.
+     *
+     * @param tmt  The <code>TxnManagerTransaction</code> to which
+     *             the votes are restored.
+     */
+    public void recover(TxnManagerTransaction tmt)
+	throws CannotRecoverException
+    {
+        if (operationsLogger.isLoggable(Level.FINER)) {
+            operationsLogger.entering(PrepareOutcomeRecord.class.getName(), 
+	        "recover", tmt);
+	}
+	if (tmt == null)
+	    throw new NullPointerException("PrepareOutcomeRecord: recover: " +
+			    "non-null transaction must be specified");
+
+	for (int i = 0; i < parts.length; i++) {
+	    tmt.modifyParticipant(parts[i], votes[i]);
+	}
+
+        if (operationsLogger.isLoggable(Level.FINER)) {
+            operationsLogger.exiting(PrepareOutcomeRecord.class.getName(), 
+	        "recover");
+	}
+    }
+}
@@ -17,6 +17,9 @@
  */
 package org.apache.river.mahalo;
 
+import org.apache.river.concurrent.RC;
+import org.apache.river.concurrent.Ref;
+import org.apache.river.concurrent.Referrer;
 import org.apache.river.landlord.Landlord;
 import org.apache.river.landlord.LandlordUtil;
 import org.apache.river.landlord.LeaseFactory;
@@ -31,6 +34,7 @@ import org.apache.river.mahalo.log.LogRecord;
 import org.apache.river.mahalo.log.LogRecovery;
 import org.apache.river.mahalo.log.MultiLogManager;
 import org.apache.river.mahalo.log.MultiLogManagerAdmin;
+import org.apache.river.mahalo.log.SegmentedLogManager;
 import org.apache.river.start.LifeCycle;
 import org.apache.river.api.util.Startable;
 import org.apache.river.thread.InterruptedStatusThread;
@@ -54,6 +58,7 @@ import java.util.Arrays;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
@@ -155,12 +160,28 @@ class TxnManagerImpl /*extends RemoteServer*/
     private final ExecutorService taskpool;
     /** wakeup manager for <code>ParticipantTask</code> */
     private final WakeupManager taskWakeupMgr;
+    /** runs first participant attempts for callers waiting on a job */
+    private final ExecutorService fanoutpool;
     /* Map of transaction ids are their associated, internal 
      * transaction representations */
     private final ConcurrentMap<Long,TxnManagerTransaction> txns;
     private final Queue<Long> unsettledtxns = new ConcurrentLinkedQueue<Long>();
+    /** 
+     * Per-participant latency counters, keyed weakly by prepared
+     * participant so that counters are dropped along with the proxies of
+     * participants which no longer take part in any transaction
+     */
+    private final ConcurrentMap<TransactionParticipant,ParticipantStats> 
+        participantStats = RC.concurrentMap(
+            new ConcurrentHashMap<Referrer<TransactionParticipant>,
+                                  Referrer<ParticipantStats>>(),
+            Ref.WEAK, Ref.STRONG, 10000L, 10000L);
     private final InterruptedStatusThread settleThread;
     private final String persistenceDirectory;
+    /** Whether all transactions share a single segmented log */
+    private final boolean sharedTransactionLog;
+    /** Segment size of the shared transaction log */
+    private final long logSegmentSize;
     private final ActivationID activationID;
     /** Whether the activation ID has been prepared */
     private final boolean activationPrepared;
@@ -351,6 +372,8 @@ class TxnManagerImpl /*extends RemoteServer*/
                 participantPreparer = init.participantPreparer;
                 txnLeasePeriodPolicy = init.txnLeasePeriodPolicy;
                 persistenceDirectory = init.persistenceDirectory;
+                sharedTransactionLog = init.sharedTransactionLog;
+                logSegmentSize = init.logSegmentSize;
                 joinStateManager = init.joinStateManager;
                 settlerpool 
                         = new ExtensibleExecutorService(
@@ -364,6 +387,7 @@ class TxnManagerImpl /*extends RemoteServer*/
                                 new FutureFactory()
                         );
                 taskWakeupMgr = init.taskWakeupMgr;
+                fanoutpool = init.fanoutpool;
                 topUuid = init.topUuid;
                 context = init.context;
                 settleThread = init.settleThread;
@@ -378,11 +402,14 @@ class TxnManagerImpl /*extends RemoteServer*/
                 participantPreparer = null;
                 txnLeasePeriodPolicy = null;
                 persistenceDirectory = null;
+                sharedTransactionLog = false;
+                logSegmentSize = 0;
                 joinStateManager = null;
                 settlerpool = null;
                 settlerWakeupMgr = null;
                 taskpool = null;
                 taskWakeupMgr = null;
+                fanoutpool = null;
                 topUuid = null;
                 context = null;
                 settleThread = null; // Thread hasn't been started let it get collected by gc.
@@ -432,7 +459,10 @@ class TxnManagerImpl /*extends RemoteServer*/
                     if(initLogger.isLoggable(Level.FINEST)) {
                         initLogger.log(Level.FINEST, "Setting up log manager");
                     }
-                    if (persistent) {
+                    if (persistent && sharedTransactionLog) {
+                        logmgr = new SegmentedLogManager(TxnManagerImpl.this,
+                                persistenceDirectory, logSegmentSize);
+                    } else if (persistent) {
                         logmgr = new MultiLogManager(TxnManagerImpl.this, persistenceDirectory);
                     } else {
                         logmgr = new MultiLogManager();
@@ -531,8 +561,8 @@ class TxnManagerImpl /*extends RemoteServer*/
             }
 
             txntr = new TxnManagerTransaction(
-                txnMgrProxy, logmgr, tid, taskpool, 
-                taskWakeupMgr, this, uuid);
+                txnMgrProxy, logmgr, tid, taskpool, fanoutpool,
+                taskWakeupMgr, this, uuid, participantStats);
             try {
                 Result r = txnLeasePeriodPolicy.grant(txntr, lease);
                 txntr.setExpiration(r.expiration);
@@ -1193,8 +1223,8 @@ class TxnManagerImpl /*extends RemoteServer*/
 	if (tmt == null) {
             Uuid uuid = createLeaseUuid(cookie);
 	    tmt = new TxnManagerTransaction(
-	        txnMgrProxy, logmgr, cookie, taskpool, 
-		taskWakeupMgr, this, uuid);
+	        txnMgrProxy, logmgr, cookie, taskpool, fanoutpool,
+		taskWakeupMgr, this, uuid, participantStats);
 	    noteUnsettledTxn(cookie);
 	    /* Since only aborted or committed txns are persisted,
 	     * their expirations are irrelevant. Therefore, any recovered
@@ -1388,6 +1418,11 @@ class TxnManagerImpl /*extends RemoteServer*/
 	    taskWakeupMgr.stop();
             taskWakeupMgr.cancelAll();
 
+            if(destroyLogger.isLoggable(Level.FINEST)) {
+	        destroyLogger.log(Level.FINEST,"Terminating fanoutpool.");
+            }
+	    fanoutpool.shutdown();
+
 
 	    // Remove persistent store- ask LogManager to clean
 	    // itself up, then clean up the persistence path.
@@ -1728,6 +1763,20 @@ class TxnManagerImpl /*extends RemoteServer*/
 		}		    
             }
         }
+
+	if (fanoutpool != null)  {
+             if(initLogger.isLoggable(Level.FINEST)) {
+	        initLogger.log(Level.FINEST,"Terminating fanoutpool.");
+	     }
+	     try {
+                fanoutpool.shutdown();
+            } catch (Throwable t) {
+                if(initLogger.isLoggable(Levels.HANDLED)) {
+	            initLogger.log(Levels.HANDLED, 
+		        "Trouble terminating fanoutpool", t);
+		}		    
+            }
+        }
 	
 	if (settleThread != null) {
             if(initLogger.isLoggable(Level.FINEST)) {
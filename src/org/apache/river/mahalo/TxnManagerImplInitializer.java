@@ -36,6 +36,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
@@ -64,6 +65,8 @@ class TxnManagerImplInitializer {
     long settlertimeout = 1000 * 15;
     int taskthreads = 5*cores;
     long tasktimeout = 1000 * 15;
+    int fanoutthreads = 5*cores;
+    long fanouttimeout = 1000 * 60;
     ConcurrentMap<Long, TxnManagerTransaction> txns =
             new ConcurrentHashMap<Long, TxnManagerTransaction>();
     /* Retrieve values from properties.          */
@@ -73,11 +76,14 @@ class TxnManagerImplInitializer {
     ProxyPreparer participantPreparer = null;
     LeasePeriodPolicy txnLeasePeriodPolicy = null;
     String persistenceDirectory = null;
+    boolean sharedTransactionLog = false;
+    long logSegmentSize = 16L * 1024 * 1024;
     JoinStateManager joinStateManager = null;
     ExecutorService settlerpool = null;
     WakeupManager settlerWakeupMgr = null;
     ExecutorService taskpool = null;
     WakeupManager taskWakeupMgr = null;
+    ExecutorService fanoutpool = null;
     Uuid topUuid = null;
     AccessControlContext context = null;
     InterruptedStatusThread settleThread =null;
@@ -155,6 +161,16 @@ class TxnManagerImplInitializer {
             if (TxnManagerImpl.initLogger.isLoggable(Level.CONFIG)) {
                 TxnManagerImpl.initLogger.log(Level.CONFIG, "Persistence directory is: {0}", persistenceDirectory);
             }
+            sharedTransactionLog = Config.getNonNullEntry(config, TxnManager.MAHALO, "sharedTransactionLog", Boolean.class, Boolean.FALSE).booleanValue();
+            if (TxnManagerImpl.initLogger.isLoggable(Level.CONFIG)) {
+                TxnManagerImpl.initLogger.log(Level.CONFIG, "sharedTransactionLog is: {0}", Boolean.valueOf(sharedTransactionLog));
+            }
+            if (sharedTransactionLog) {
+                logSegmentSize = Config.getLongEntry(config, TxnManager.MAHALO, "logSegmentSize", logSegmentSize, 64 * 1024, Integer.MAX_VALUE);
+                if (TxnManagerImpl.initLogger.isLoggable(Level.CONFIG)) {
+                    TxnManagerImpl.initLogger.log(Level.CONFIG, "logSegmentSize is: {0}", Long.valueOf(logSegmentSize));
+                }
+            }
         } else {
             // just for insurance
             persistenceDirectory = null;
@@ -224,6 +240,20 @@ class TxnManagerImplInitializer {
                         new NamedThreadFactory("TxnMgr taskPool", false)
                 )
         );
+        fanoutpool = Config.getNonNullEntry(
+                config, 
+                TxnManager.MAHALO,
+                "participantFanOutPool",
+                ExecutorService.class, 
+                new ThreadPoolExecutor(
+                        0,
+                        fanoutthreads,
+                        fanouttimeout,
+                        TimeUnit.MILLISECONDS,
+                        new SynchronousQueue<Runnable>(), /* No queue */
+                        new NamedThreadFactory("TxnMgr participant fan-out", true)
+                )
+        );
         if (TxnManagerImpl.initLogger.isLoggable(Level.FINEST)) {
             TxnManagerImpl.initLogger.log(Level.FINEST, "Recovering state");
         }
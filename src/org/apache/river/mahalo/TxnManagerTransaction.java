@@ -34,6 +34,7 @@ import java.util.Enumeration;
 
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -191,6 +192,12 @@ class TxnManagerTransaction
     */
     private final ExecutorService threadpool;
 
+    /**
+     * Runs the first attempts of participant tasks for a caller
+     * waiting on a job.
+     */
+    private final ExecutorService fanoutpool;
+
     /**
      * @serial
      */
@@ -201,6 +208,12 @@ class TxnManagerTransaction
      */
     private final TxnSettler settler;
 
+    /**
+     * Per-participant latency counters shared by all transactions.
+     */
+    private final ConcurrentMap<TransactionParticipant,ParticipantStats> 
+        participantStats;
+
     /**
      * @serial
      */
@@ -270,12 +283,21 @@ class TxnManagerTransaction
      *			 the pool of threads used to interact with
      *			 participants.
      *
+     * @param fanoutpool The pool of threads used to contact
+     *			 participants concurrently on behalf of a
+     *			 waiting caller.
+     *
      * @param settler	TxnSettler responsible for this transaction if
      *			unsettled.
+     *
+     * @param participantStats Per-participant latency counters, or
+     *			<code>null</code>
      */
     TxnManagerTransaction(TransactionManager mgr, LogManager logmgr, long id,
-        ExecutorService threadpool, WakeupManager wm, TxnSettler settler,
-	Uuid uuid) 
+        ExecutorService threadpool, ExecutorService fanoutpool,
+        WakeupManager wm, TxnSettler settler,
+	Uuid uuid,
+        ConcurrentMap<TransactionParticipant,ParticipantStats> participantStats)
     {
 	if (logmgr == null)
 	    throw new IllegalArgumentException("TxnManagerTransaction: " +
@@ -288,6 +310,10 @@ class TxnManagerTransaction
 	    throw new IllegalArgumentException("TxnManagerTransaction: " +
 			    "threadpool must be non-null");
 
+	if (fanoutpool == null)
+	    throw new IllegalArgumentException("TxnManagerTransaction: " +
+			    "fanoutpool must be non-null");
+
 	if (wm == null)
 	    throw new IllegalArgumentException("TxnManagerTransaction: " +
 			    "wakeup manager must be non-null");
@@ -301,11 +327,13 @@ class TxnManagerTransaction
 			    "uuid must be non-null");
 
 	this.threadpool = threadpool;
+	this.fanoutpool = fanoutpool;
 	this.wm = wm;
 	this.logmgr = logmgr ;
 	str = new ServerTransaction(mgr, id);
 	this.settler = settler;
 	this.uuid = uuid;
+	this.participantStats = participantStats;
 
 	trstate = ACTIVE;  //this is implied since ACTIVE is initial state
 	// Expires is set after object is created when the associated
@@ -374,8 +402,9 @@ class TxnManagerTransaction
 	    throw new NullPointerException("ParticipantHolder: " +
 			"modifyParticipant: cannot modify null handle");
 
-	if (parts.contains(ph))
-	    ph = (ParticipantHandle) parts.get(parts.indexOf(handle));	
+	int index = parts.indexOf(handle);
+	if (index >= 0)
+	    ph = parts.get(index);	
 
 	if (ph == null) {
             if (operationsLogger.isLoggable(Level.FINER)) {
@@ -675,7 +704,13 @@ class TxnManagerTransaction
 
 	    if (modifyTxnState(VOTING)) {
 
-		if (oldstate == ACTIVE)
+		//A single participant decides the outcome by itself
+		//in prepareAndCommit, so there is no intermediate
+		//state worth recovering: should the manager fail,
+		//the participant finds the transaction unknown and
+		//rolls back.
+
+		if (oldstate == ACTIVE && phs.length > 1)
 		    log.write(new CommitRecord(phs));
 
 
@@ -688,9 +723,12 @@ class TxnManagerTransaction
 	                if (phs.length == 1)
 		            job = new
 			      PrepareAndCommitJob(
-				  str, threadpool, wm, log, phs[0]);
+				  str, threadpool, fanoutpool, wm, phs[0],
+				  participantStats);
 	                else
-	                    job = new PrepareJob(str, threadpool, wm, log, phs);
+	                    job = new PrepareJob(str, threadpool, fanoutpool,
+					    wm, phs,
+					    participantStats);
 
 	                job.scheduleTasks();
 		    }
@@ -791,10 +829,17 @@ class TxnManagerTransaction
 		//PREPARED.  In order to inform participants,
 		//a CommitJob must be scheduled.
 
+		//Votes are logged as a whole before any participant
+		//is told to roll forward.  NOTCHANGED participants
+		//take no part in the roll-phase.
+
+		log.write(new PrepareOutcomeRecord(phs));
+
 		if(modifyTxnState(COMMITTED)) {
-//TODO - log committed state record?		
                     synchronized (jobLock) {
-                        job = new CommitJob(str, threadpool, wm, log, phs);
+                        job = new CommitJob(str, threadpool, fanoutpool,
+                                wm, log, phs,
+                                participantStats);
                         job.scheduleTasks();
                     }
 		} else {
@@ -1010,7 +1055,9 @@ class TxnManagerTransaction
 	            if (!(job instanceof AbortJob)) {
 		        if (job != null)
 		            job.stop();
-	                job = new AbortJob(str, threadpool, wm, log, phs);
+	                job = new AbortJob(str, threadpool, fanoutpool,
+					  wm, log, phs,
+					  participantStats);
 	                job.scheduleTasks();
 	            }
 	        }
@@ -0,0 +1,852 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.mahalo.log;
+
+import org.apache.river.logging.Levels;
+import org.apache.river.mahalo.TxnManager;
+import org.apache.river.mahalo.log.MultiLogManager.LogRemovalManager;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+
+import net.jini.admin.Administrable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * A <code>LogManager</code> that keeps the records of all transactions in
+ * a single, segmented write-ahead log instead of one file per transaction.
+ * <p>
+ * Records are appended to the current segment file and made durable with
+ * group commit: a writer waiting for its record to reach the disk either
+ * performs a single <code>force</code> on behalf of every record appended
+ * so far, or waits for the writer that is already doing so. Each record
+ * carries the position of the previous record written for the same
+ * transaction so that recovery can detect a broken chain. Invalidating a
+ * transaction's log appends a small marker record and, once every
+ * transaction with records in the oldest segments has been settled,
+ * those segments are recycled for reuse.
+ * <p>
+ * Per-transaction log files left behind by <code>MultiLogManager</code>
+ * are recovered as well, which allows a persistent directory to be 
+ * migrated to this log manager.
+ *
+ * @see MultiLogManager
+ * @since 3.0.0
+ */
+public class SegmentedLogManager
+        implements LogManager, FileModes, Administrable, MultiLogManagerAdmin {
+    /** Prefix of segment file names */
+    private static final String SEGMENT_FILE = "Wal.";
+
+    /** 
+     * Prefix of settled segment files kept for reuse, which must not be
+     * scanned by recovery.
+     */
+    private static final String FREE_FILE = "Free.";
+
+    /** Prefix of per-transaction log files written by MultiLogManager */
+    private static final String LOG_FILE = "Log.";
+
+    /** Record type of a frame holding a <code>LogRecord</code> */
+    private static final byte RECORD = 1;
+
+    /** Record type of a frame marking a transaction as settled */
+    private static final byte INVALIDATE = 2;
+
+    /** 
+     * Frame header length: payload length, CRC, segment sequence number,
+     * cookie, position of previous record and record type.
+     */
+    private static final int HEADER_LEN = 4 + 4 + 8 + 8 + 8 + 1;
+
+    /** Position value denoting the absence of a previous record */
+    private static final long NO_POSITION = -1L;
+
+    /** Maximum number of settled segment files kept for reuse */
+    private static final int MAX_RECYCLED = 2;
+
+    /** Logger for persistence related messages */
+    private static final Logger persistenceLogger = 
+        Logger.getLogger(TxnManager.MAHALO + ".persistence");
+
+    /** Logger for operations related messages */
+    private static final Logger operationsLogger = 
+        Logger.getLogger(TxnManager.MAHALO + ".operations");
+
+    /** Client called during log recovery to process log objects */
+    private final LogRecovery client;
+
+    /** Persistence directory, ending with a separator */
+    private final String directory;
+
+    /** Size at which the current segment is closed and a new one started */
+    private final long segmentSize;
+
+    /** Map of logs keyed by their associated cookie */
+    private final Map<Long,ClientLog> logByID = new HashMap<Long,ClientLog>();
+
+    /** Lock object used for coordinating access to logByID */
+    private final Object logByIDLock = new Object();
+
+    /** Flag that is set to true upon destruction */
+    private boolean destroyed = false;
+
+    /** 
+     * Lock guarding the segment list, the current segment, and the
+     * chaining and segment membership state of each log.
+     */
+    private final Object appendLock = new Object();
+
+    /** Segments that may still hold live records, oldest first */
+    private final LinkedList<Segment> segments = new LinkedList<Segment>();
+
+    /** Settled segment files available for reuse */
+    private final LinkedList<File> recycled = new LinkedList<File>();
+
+    /** Segment currently being appended to, created on first write */
+    private Segment current;
+
+    /** Sequence number of the next segment */
+    private long nextSegmentSeq = 1;
+
+    /** Number of frames appended so far */
+    private long writeSeq = 0;
+
+    /** Lock guarding the group commit state */
+    private final Object syncLock = new Object();
+
+    /** Number of appended frames known to be on disk */
+    private long durableSeq = 0;
+
+    /** True while some writer is forcing the current segment */
+    private boolean syncing = false;
+
+    /** Filter used to list the files managed by this class */
+    private static final FilenameFilter filter =
+        new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_FILE) 
+                    || name.startsWith(FREE_FILE)
+                    || name.startsWith(LOG_FILE);
+            }
+        };
+
+    /**
+     * Capability object passed to recovered legacy log files, which is 
+     * called back upon log removal. 
+     */ 
+    private final LogRemovalManager logMgrRef = new LogRemovalManager() {
+        public void release(long cookie) {
+            synchronized (logByIDLock) {
+                if (!destroyed) logByID.remove(Long.valueOf(cookie));
+            }
+        }
+    };
+
+    /**
+     * A segment file of the write-ahead log.
+     */
+    private static final class Segment {
+        /** Sequence number, also stored in every frame of the segment */
+        final long seq;
+        /** The segment file */
+        final File file;
+        /** Channel used for appending, null for recovered segments */
+        final FileChannel channel;
+        /** Cookies of unsettled transactions with records in this segment */
+        final Set<Long> live = new HashSet<Long>();
+        /** Number of bytes written to this segment */
+        long size;
+        /** Set once the segment has been forced and closed */
+        volatile boolean rolled;
+
+        Segment(long seq, File file, FileChannel channel) {
+            this.seq = seq;
+            this.file = file;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * The <code>ClientLog</code> handed out for a single transaction.
+     */
+    private final class TxnLog implements ClientLog {
+        /** Cookie of the associated transaction */
+        private final long cookie;
+        /** Position of the last record written, guarded by appendLock */
+        private long lastPosition = NO_POSITION;
+        /** Segments holding records of this log, guarded by appendLock */
+        private final Set<Segment> holding = new HashSet<Segment>();
+        /** Set to false once the log has been invalidated */
+        private volatile boolean valid = true;
+
+        TxnLog(long cookie) {
+            this.cookie = cookie;
+        }
+
+        public void write(LogRecord rec) throws LogException {
+            if (operationsLogger.isLoggable(Level.FINER)) {
+                operationsLogger.entering(TxnLog.class.getName(), 
+                    "write", rec);
+            }
+            if (!valid)
+                throw new InvalidatedLogException("Cannot write to to " +
+                                                  "invalidated log");
+            byte[] payload;
+            try {
+                ByteArrayOutputStream bout = new ByteArrayOutputStream(256);
+                ObjectOutputStream out = new ObjectOutputStream(bout);
+                out.writeObject(rec);
+                out.close();
+                payload = bout.toByteArray();
+            } catch (IOException ioe) {
+                throw logException("Problem serializing LogRecord", ioe);
+            }
+            awaitDurable(append(this, RECORD, payload));
+            if (persistenceLogger.isLoggable(Level.FINEST)) {
+                persistenceLogger.log(Level.FINEST, "Wrote: {0}", rec);
+            }
+            if (operationsLogger.isLoggable(Level.FINER)) {
+                operationsLogger.exiting(TxnLog.class.getName(), "write");
+            }
+        }
+
+        public void invalidate() throws LogException {
+            if (persistenceLogger.isLoggable(Level.FINEST)) {
+                persistenceLogger.log(Level.FINEST,
+                    "Invalidating log for cookie: {0}", Long.valueOf(cookie));
+            }
+            synchronized (this) {
+                if (!valid) return;
+                valid = false;
+            }
+            logMgrRef.release(cookie);
+            boolean written;
+            synchronized (appendLock) {
+                written = lastPosition != NO_POSITION;
+            }
+            // The marker need not be forced; a transaction replayed after
+            // a crash is settled again. A log which holds no records
+            // needs no marker at all.
+            if (written) append(this, INVALIDATE, new byte[0]);
+            settle(this);
+        }
+
+        public String toString() {
+            return "TxnLog[" + cookie + "]";
+        }
+    }
+
+    /**
+     * Create a <code>SegmentedLogManager</code>.
+     *
+     * @param client who to inform during recovery.
+     *
+     * @param path where to store logging information.
+     *
+     * @param segmentSize size in bytes at which a new segment is started.
+     */
+    public SegmentedLogManager(LogRecovery client, String path, 
+                               long segmentSize) 
+    {
+	if (path == null)
+	    throw new IllegalArgumentException("SegmentedLogManager: must " +
+					       "use non-null path");
+	if (client == null)
+	    throw new IllegalArgumentException("SegmentedLogManager: must " +
+					       "use non-null recovery client");
+        if (segmentSize <= HEADER_LEN)
+	    throw new IllegalArgumentException("SegmentedLogManager: " +
+					       "segment size too small");
+        this.client = client;
+        this.segmentSize = segmentSize;
+	directory = path.endsWith(File.separator) ? 
+            path : path.concat(File.separator);
+	if (persistenceLogger.isLoggable(Level.FINEST)) {
+            persistenceLogger.log(Level.FINEST,
+	        "directory = {0}, segment size = {1}", 
+                new Object[] {directory, Long.valueOf(segmentSize)});
+	}
+        File dir = new File(directory);
+        if (!dir.exists() && !dir.mkdirs()) {
+            if (persistenceLogger.isLoggable(Level.SEVERE)) {
+                persistenceLogger.log(Level.SEVERE,
+                    "Could not create {0}", dir);
+            }
+        }
+    }
+
+    // javadoc inherited from supertype
+    public ClientLog logFor(long cookie) throws LogException {
+        if (operationsLogger.isLoggable(Level.FINER)) {
+            operationsLogger.entering(SegmentedLogManager.class.getName(), 
+	        "logFor", Long.valueOf(cookie));
+	}
+        ClientLog cl;
+        synchronized (logByIDLock) {
+	    if (destroyed)
+	        throw new LogException("Manger has been destroyed");
+            Long key = Long.valueOf(cookie);
+            cl = logByID.get(key);
+            if (cl == null) {
+                cl = new TxnLog(cookie);
+                logByID.put(key, cl);
+            }
+        }
+        if (operationsLogger.isLoggable(Level.FINER)) {
+            operationsLogger.exiting(SegmentedLogManager.class.getName(), 
+	        "logFor", cl);
+	}
+        return cl;
+    }
+
+    /**
+     * Appends a frame to the current segment, starting a new segment
+     * if the current one is full.
+     *
+     * @return the sequence number of the appended frame
+     */
+    private long append(TxnLog log, byte type, byte[] payload) 
+        throws LogException 
+    {
+        int frameLen = HEADER_LEN + payload.length;
+        synchronized (appendLock) {
+            synchronized (logByIDLock) {
+                if (destroyed)
+                    throw new LogException("Manger has been destroyed");
+            }
+            try {
+                if (current == null || 
+                    (current.size > 0 && current.size + frameLen > segmentSize))
+                {
+                    roll();
+                }
+                long offset = current.size;
+                ByteBuffer frame = ByteBuffer.allocate(frameLen);
+                frame.putInt(payload.length);
+                frame.putInt(0); // CRC, filled in below
+                frame.putLong(current.seq);
+                frame.putLong(log.cookie);
+                frame.putLong(log.lastPosition);
+                frame.put(type);
+                frame.put(payload);
+                CRC32 crc = new CRC32();
+                crc.update(frame.array(), 8, frameLen - 8);
+                frame.putInt(4, (int) crc.getValue());
+                frame.flip();
+                while (frame.hasRemaining()) {
+                    current.channel.write(frame, offset + frame.position());
+                }
+                current.size += frameLen;
+                if (type == RECORD) {
+                    log.lastPosition = position(current.seq, offset);
+                    log.holding.add(current);
+                    current.live.add(Long.valueOf(log.cookie));
+                }
+                return ++writeSeq;
+            } catch (IOException ioe) {
+                throw logException("Problem persisting LogRecord", ioe);
+            }
+        }
+    }
+
+    /**
+     * Starts a new segment, reusing a recycled segment file when available,
+     * and then forces and closes the previous one, if any. Called while 
+     * holding <code>appendLock</code>.
+     */
+    private void roll() throws IOException {
+        Segment previous = current;
+        if (previous != null) previous.channel.force(false);
+        long seq = nextSegmentSeq;
+        File file = new File(directory + SEGMENT_FILE + seq);
+        File reuse = recycled.poll();
+        if (reuse != null && !reuse.renameTo(file)) {
+            reuse.delete();
+        }
+        // Stale frames left in a reused file carry an older sequence
+        // number and so are ignored by recovery.
+        FileChannel channel = new RandomAccessFile(file, READWRITE).getChannel();
+        // The new segment is open, so a failure above leaves the
+        // previous segment in place as the current one.
+        nextSegmentSeq++;
+        current = new Segment(seq, file, channel);
+        segments.addLast(current);
+        if (previous != null) {
+            previous.rolled = true;
+            previous.channel.close();
+        }
+        if (persistenceLogger.isLoggable(Level.FINEST)) {
+            persistenceLogger.log(Level.FINEST,
+                "Started log segment {0}{1}", new Object[] {file, 
+                    reuse != null ? " (recycled)" : ""});
+        }
+    }
+
+    /**
+     * Waits until the frame with the given sequence number is on disk.
+     * The first waiter forces the current segment for every frame
+     * appended so far while later arrivals wait for it to finish.
+     */
+    private void awaitDurable(long seq) throws LogException {
+        while (true) {
+            synchronized (syncLock) {
+                while (syncing && durableSeq < seq) {
+                    try {
+                        syncLock.wait();
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new LogException(
+                            "Interrupted waiting for log record to be forced");
+                    }
+                }
+                if (durableSeq >= seq) return;
+                syncing = true;
+            }
+            long target = 0;
+            boolean forced = false;
+            try {
+                Segment seg;
+                synchronized (appendLock) {
+                    seg = current;
+                    target = writeSeq;
+                }
+                try {
+                    seg.channel.force(false);
+                } catch (ClosedChannelException e) {
+                    // Segment was rolled, which forced it
+                    if (!seg.rolled) throw e;
+                }
+                forced = true;
+            } catch (IOException ioe) {
+                throw logException("Problem forcing log segment", ioe);
+            } finally {
+                synchronized (syncLock) {
+                    syncing = false;
+                    if (forced && target > durableSeq) {
+                        if (persistenceLogger.isLoggable(Level.FINEST)) {
+                            persistenceLogger.log(Level.FINEST,
+                                "Group commit of {0} records", 
+                                Long.valueOf(target - durableSeq));
+                        }
+                        durableSeq = target;
+                    }
+                    syncLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes a settled log from the segments holding its records and
+     * recycles the oldest segments that no longer hold live records.
+     */
+    private void settle(TxnLog log) {
+        synchronized (appendLock) {
+            Long key = Long.valueOf(log.cookie);
+            Iterator<Segment> it = log.holding.iterator();
+            while (it.hasNext()) {
+                it.next().live.remove(key);
+            }
+            log.holding.clear();
+            // Only a prefix of segments may be released, otherwise the
+            // invalidation marker of a transaction could disappear while
+            // some of its records remain.
+            while (!segments.isEmpty()) {
+                Segment seg = segments.getFirst();
+                if (seg == current || !seg.live.isEmpty()) break;
+                segments.removeFirst();
+                release(seg);
+            }
+        }
+    }
+
+    /**
+     * Keeps a settled segment file for reuse or deletes it. A kept file
+     * is renamed out of the segment namespace: it may hold records of a
+     * transaction whose invalidation marker was in a segment that is
+     * deleted, so recovery must not scan it.
+     */
+    private void release(Segment seg) {
+        if (recycled.size() < MAX_RECYCLED) {
+            File free = new File(directory + FREE_FILE + seg.seq);
+            if (seg.file.renameTo(free)) {
+                recycled.addLast(free);
+            } else {
+                delete(seg.file);
+            }
+        } else {
+            delete(seg.file);
+        }
+        if (persistenceLogger.isLoggable(Level.FINEST)) {
+            persistenceLogger.log(Level.FINEST,
+                "Released log segment {0}", seg.file);
+        }
+    }
+
+    /** Deletes a segment file, logging a failure. */
+    private static void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            if (persistenceLogger.isLoggable(Levels.HANDLED)) {
+                persistenceLogger.log(Levels.HANDLED,
+                    "Could not delete log segment {0}", file);
+            }
+        }
+    }
+
+    /**
+     *  Consumes the log segments, and any per-transaction log files, and 
+     *  re-constructs a system's state.
+     */
+    public void recover() throws LogException {
+        if (operationsLogger.isLoggable(Level.FINER)) {
+            operationsLogger.entering(SegmentedLogManager.class.getName(), 
+	        "recover");
+	}
+        String[] names;
+        try {
+            names = new File(directory).list(filter);
+        } catch (SecurityException se) {
+	    if(persistenceLogger.isLoggable(Level.WARNING)) {
+		persistenceLogger.log(Level.WARNING,
+		"Unable to recover log state", se);
+	    }
+            return;
+        }
+        if (names == null) names = new String[0];
+        List<Long> segmentSeqs = new ArrayList<Long>();
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].startsWith(LOG_FILE)) {
+                recoverLegacy(directory + names[i]);
+            } else if (names[i].startsWith(FREE_FILE)) {
+                // Sequence numbers are never reused, so that stale frames
+                // in a recycled file cannot match the segment it becomes
+                File free = new File(directory + names[i]);
+                try {
+                    long seq = Long.parseLong(
+                        names[i].substring(FREE_FILE.length()));
+                    nextSegmentSeq = Math.max(nextSegmentSeq, seq + 1);
+                } catch (NumberFormatException e) {
+                    delete(free);
+                    continue;
+                }
+                synchronized (appendLock) {
+                    if (recycled.size() < MAX_RECYCLED) {
+                        recycled.addLast(free);
+                    } else {
+                        delete(free);
+                    }
+                }
+            } else {
+                try {
+                    segmentSeqs.add(Long.valueOf(
+                        names[i].substring(SEGMENT_FILE.length())));
+                } catch (NumberFormatException e) {
+                    if (persistenceLogger.isLoggable(Level.WARNING)) {
+                        persistenceLogger.log(Level.WARNING,
+                            "Ignoring unexpected file {0}", names[i]);
+                    }
+                }
+            }
+        }
+        Long[] seqs = segmentSeqs.toArray(new Long[segmentSeqs.size()]);
+        Arrays.sort(seqs);
+
+        Map<Long,List<LogRecord>> records = 
+            new LinkedHashMap<Long,List<LogRecord>>();
+        Map<Long,TxnLog> logs = new HashMap<Long,TxnLog>();
+        Set<Long> broken = new HashSet<Long>();
+        for (int i = 0; i < seqs.length; i++) {
+            long seq = seqs[i].longValue();
+            Segment seg = new Segment(seq, 
+                new File(directory + SEGMENT_FILE + seq), null);
+            seg.rolled = true;
+            scan(seg, records, logs, broken);
+            segments.addLast(seg);
+            nextSegmentSeq = Math.max(nextSegmentSeq, seq + 1);
+        }
+
+        Iterator<Map.Entry<Long,List<LogRecord>>> it = 
+            records.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long,List<LogRecord>> entry = it.next();
+            Long cookie = entry.getKey();
+            TxnLog log = logs.get(cookie);
+            if (broken.contains(cookie)) {
+                if (persistenceLogger.isLoggable(Level.WARNING)) {
+                    persistenceLogger.log(Level.WARNING,
+                        "Skipping log recovery for cookie {0}: "
+                        + "record chain is broken", cookie);
+                }
+                settle(log);
+                continue;
+            }
+            try {
+                List<LogRecord> recs = entry.getValue();
+                for (int i = 0; i < recs.size(); i++) {
+                    client.recover(cookie.longValue(), recs.get(i));
+                }
+                // Called by initialization thread only 
+                synchronized (logByIDLock) {
+                    logByID.put(cookie, log);
+                }
+            } catch (LogException le) {
+                if (persistenceLogger.isLoggable(Level.WARNING)) {
+                    persistenceLogger.log(Level.WARNING,
+                        "Unable to recover log state", le);
+                }
+                settle(log);
+            }
+        }
+        // Release segments holding only settled transactions
+        synchronized (appendLock) {
+            while (!segments.isEmpty() && 
+                   segments.getFirst().live.isEmpty()) 
+            {
+                release(segments.removeFirst());
+            }
+        }
+        if (operationsLogger.isLoggable(Level.FINER)) {
+            operationsLogger.exiting(SegmentedLogManager.class.getName(), 
+	        "recover");
+	}
+    }
+
+    /**
+     * Reads the frames of a recovered segment until the end of the file
+     * or the first frame that is torn, corrupt or stale.
+     */
+    private void scan(Segment seg, Map<Long,List<LogRecord>> records,
+                      Map<Long,TxnLog> logs, Set<Long> broken) 
+    {
+        if (persistenceLogger.isLoggable(Level.FINEST)) {
+            persistenceLogger.log(Level.FINEST,
+                "Recovering log segment: {0}", seg.file);
+        }
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(seg.file, RDONLY);
+            long length = in.length();
+            long offset = 0;
+            byte[] header = new byte[HEADER_LEN];
+            while (offset + HEADER_LEN <= length) {
+                in.seek(offset);
+                in.readFully(header);
+                ByteBuffer hb = ByteBuffer.wrap(header);
+                int payloadLen = hb.getInt();
+                int crcValue = hb.getInt();
+                long segSeq = hb.getLong();
+                long cookie = hb.getLong();
+                long prev = hb.getLong();
+                byte type = hb.get();
+                if (segSeq != seg.seq || payloadLen < 0 || 
+                    offset + HEADER_LEN + payloadLen > length) break;
+                byte[] payload = new byte[payloadLen];
+                in.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(header, 8, HEADER_LEN - 8);
+                crc.update(payload, 0, payloadLen);
+                if ((int) crc.getValue() != crcValue) break;
+
+                Long key = Long.valueOf(cookie);
+                if (type == RECORD) {
+                    TxnLog log = logs.get(key);
+                    if (log == null) {
+                        log = new TxnLog(cookie);
+                        logs.put(key, log);
+                        records.put(key, new ArrayList<LogRecord>());
+                    }
+                    List<LogRecord> recs = records.get(key);
+                    if (recs != null) {
+                        if (prev != log.lastPosition) broken.add(key);
+                        try {
+                            recs.add((LogRecord) new ObjectInputStream(
+                                new ByteArrayInputStream(payload)).readObject());
+                        } catch (ClassNotFoundException cnfe) {
+                            broken.add(key);
+                        } catch (ClassCastException cce) {
+                            broken.add(key);
+                        } catch (IOException ioe) {
+                            broken.add(key);
+                        }
+                    }
+                    log.lastPosition = position(seg.seq, offset);
+                    log.holding.add(seg);
+                    seg.live.add(key);
+                } else if (type == INVALIDATE) {
+                    records.remove(key);
+                    broken.remove(key);
+                    TxnLog log = logs.remove(key);
+                    if (log != null) {
+                        log.valid = false;
+                        settle(log);
+                    }
+                }
+                offset += HEADER_LEN + payloadLen;
+            }
+            seg.size = offset;
+        } catch (EOFException eofe) {
+            // OK. Assume we've hit the end of the segment
+        } catch (IOException ioe) {
+	    if (persistenceLogger.isLoggable(Level.WARNING)) {
+                persistenceLogger.log(Level.WARNING,
+		"Problem recovering log segment", ioe);
+	    }
+        } finally {
+            try {
+                if (in != null) in.close();
+            } catch (IOException ioe) {
+	        if (persistenceLogger.isLoggable(Levels.HANDLED)) {
+                    persistenceLogger.log(Levels.HANDLED,
+		    "Problem closing recovered log segment", ioe);
+	        }
+            }
+        }
+    }
+
+    /**
+     * Recovers a per-transaction log file written by 
+     * <code>MultiLogManager</code>.
+     */
+    private void recoverLegacy(String logName) {
+        Log log = new SimpleLogFile(logName, logMgrRef);
+        if (persistenceLogger.isLoggable(Level.FINEST)) {
+            persistenceLogger.log(Level.FINEST,
+                "Recovering log: {0}", logName);
+        }
+        try {
+            log.recover(client);
+            synchronized (logByIDLock) {
+                logByID.put(Long.valueOf(log.cookie()), log);
+            }
+        } catch (LogException le) {
+            if(persistenceLogger.isLoggable(Level.WARNING)) {
+                persistenceLogger.log(Level.WARNING,
+                    "Unable to recover log state", le);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the administration interface for the
+     * <code>SegmentedLogManager</code>
+     */
+    public Object getAdmin() {
+	return (MultiLogManagerAdmin)this;
+    }
+
+    /**
+     * Invalidates all logs, closes the current segment and removes all
+     * segment files.
+     *
+     * @see org.apache.river.admin.DestroyAdmin
+     */
+    public void destroy() {
+        if (operationsLogger.isLoggable(Level.FINER)) {
+            operationsLogger.entering(SegmentedLogManager.class.getName(), 
+	        "destroy");
+	}
+        ClientLog[] logs;
+        synchronized (logByIDLock) {
+            if (destroyed) return;
+            logs = logByID.values().toArray(new ClientLog[logByID.size()]);
+        }
+        for (int i = 0; i < logs.length; i++) {
+            // Segments holding these records are deleted below
+            if (logs[i] instanceof TxnLog) continue;
+            try {
+                logs[i].invalidate();
+            } catch (LogException le) {
+                if(persistenceLogger.isLoggable(Levels.HANDLED)) {
+                    persistenceLogger.log(Levels.HANDLED,
+                        "Unable to invalidate log", le);
+                }
+            }
+        }
+        synchronized (logByIDLock) {
+            logByID.clear();
+            destroyed = true;
+        }
+        synchronized (appendLock) {
+            if (current != null) {
+                try {
+                    current.rolled = true;
+                    current.channel.close();
+                } catch (IOException ioe) {
+                    if(persistenceLogger.isLoggable(Levels.HANDLED)) {
+                        persistenceLogger.log(Levels.HANDLED,
+                            "Problem closing log segment", ioe);
+                    }
+                }
+                current = null;
+            }
+            List<File> files = new ArrayList<File>(recycled);
+            for (Iterator<Segment> it = segments.iterator(); it.hasNext();) {
+                files.add(it.next().file);
+            }
+            segments.clear();
+            recycled.clear();
+            for (int i = 0; i < files.size(); i++) {
+                delete(files.get(i));
+            }
+        }
+        if (operationsLogger.isLoggable(Level.FINER)) {
+            operationsLogger.exiting(SegmentedLogManager.class.getName(), 
+	        "destroy");
+	}
+    }
+
+    /** Encodes a segment sequence number and offset as a position. */
+    private static long position(long seq, long offset) {
+        return (seq << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    /** Creates a <code>LogException</code> with the given cause. */
+    private static LogException logException(String msg, Throwable cause) {
+        if (persistenceLogger.isLoggable(Level.WARNING)) {
+            persistenceLogger.log(Level.WARNING, msg, cause);
+        }
+        LogException le = new LogException(msg);
+        le.initCause(cause);
+        return le;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.mercury;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-registration event delivery counters maintained by the
+ * notification engine of <code>MailboxImpl</code>.
+ * <p>
+ * Instances are created when a registration is first scheduled for
+ * delivery and discarded when the registration is removed. All counters
+ * are updated without holding the mailbox lock, so a snapshot
+ * obtained through the accessors is only approximately consistent.
+ * The counters of a registration are logged at <code>FINE</code> on the
+ * delivery logger when it is removed, and at <code>HANDLED</code> when an
+ * event is abandoned after the maximum number of delivery attempts.
+ *
+ * @since 3.0.0
+ */
+class DeliveryStats {
+
+    /** Number of undelivered events observed at the last scheduling pass */
+    private final AtomicLong queueDepth = new AtomicLong();
+
+    /** Largest queue depth observed so far */
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+
+    /** Number of events successfully delivered to the target listener */
+    private final AtomicLong delivered = new AtomicLong();
+
+    /** Number of delivery attempts that failed and will be retried */
+    private final AtomicLong failedAttempts = new AtomicLong();
+
+    /** Number of events dropped after delivery was abandoned */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** Number of delivery turns (scheduled tasks) run for the registration */
+    private final AtomicLong turns = new AtomicLong();
+
+    /** Cumulative time spent inside listener notify calls, in nanoseconds */
+    private final AtomicLong notifyNanos = new AtomicLong();
+
+    /**
+     * Records the number of events waiting to be delivered.
+     */
+    void queueDepth(long depth) {
+        queueDepth.set(depth);
+        long max = maxQueueDepth.get();
+        while (depth > max) {
+            if (maxQueueDepth.compareAndSet(max, depth)) break;
+            max = maxQueueDepth.get();
+        }
+    }
+
+    /**
+     * Records a successful delivery which took <code>nanos</code>
+     * nanoseconds.
+     */
+    void delivered(long nanos) {
+        delivered.incrementAndGet();
+        notifyNanos.addAndGet(nanos);
+    }
+
+    /** Records a failed, retryable, delivery attempt. */
+    void failed() {
+        failedAttempts.incrementAndGet();
+    }
+
+    /** Records an event that was discarded without being delivered. */
+    void dropped() {
+        dropped.incrementAndGet();
+    }
+
+    /** Records the start of a delivery turn. */
+    void turn() {
+        turns.incrementAndGet();
+    }
+
+    long getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    long getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    long getDelivered() {
+        return delivered.get();
+    }
+
+    long getFailedAttempts() {
+        return failedAttempts.get();
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    long getTurns() {
+        return turns.get();
+    }
+
+    /**
+     * Returns the mean time spent delivering a single event, in
+     * milliseconds, or zero if no event has been delivered yet.
+     */
+    double getMeanNotifyMillis() {
+        long count = delivered.get();
+        if (count == 0) return 0.0;
+        return (notifyNanos.get() / (double) count) / 1000000.0;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("DeliveryStats[depth=").append(getQueueDepth())
+          .append(", maxDepth=").append(getMaxQueueDepth())
+          .append(", delivered=").append(getDelivered())
+          .append(", failed=").append(getFailedAttempts())
+          .append(", dropped=").append(getDropped())
+          .append(", turns=").append(getTurns())
+          .append(", meanNotifyMs=").append(getMeanNotifyMillis())
+          .append(']');
+        return sb.toString();
+    }
+}
@@ -87,6 +87,12 @@ interface EventLog {
      * false otherwise.
      */
     boolean isEmpty() throws IOException;
+
+    /**
+     * Returns the number of events in this log that have not yet
+     * been removed.
+     */
+    long size() throws IOException;
     
     /**
      * Effectively removes the last read event from the log.
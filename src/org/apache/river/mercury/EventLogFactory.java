@@ -47,6 +47,30 @@ class EventLogFactory {
     /** <tt>Map</tt> that contains references to generated iterators */
     private HashMap iterators = new HashMap();
 
+    /** Maximum number of events kept in memory by each transient log */
+    private final int transientCapacity;
+
+    /** Directory where transient logs spill events, or null */
+    private final File spillDir;
+
+    /**
+     * Creates a factory whose transient event logs keep all of their
+     * events in memory.
+     */
+    EventLogFactory() {
+        this(Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Creates a factory whose transient event logs keep at most
+     * <tt>transientCapacity</tt> events in memory and spill older events
+     * to files in <tt>spillDir</tt>.
+     */
+    EventLogFactory(int transientCapacity, File spillDir) {
+        this.transientCapacity = transientCapacity;
+        this.spillDir = spillDir;
+    }
+
     /** 
      * Method to return the iterator object for the designated 
      * <tt>Uuid</tt>. The <tt>File</tt> argument determines where the
@@ -86,7 +110,7 @@ class EventLogFactory {
         // Try to get reference from cache
         EventLogIteratorImpl eli = (EventLogIteratorImpl)iterators.get(uuid);
         if (eli == null) { // doesn't exist, so create one
-            eli = new EventLogIteratorImpl(uuid);
+            eli = new EventLogIteratorImpl(uuid, transientCapacity, spillDir);
 	    try { 
 		eli.init(); // initialize the iterator
 	    } catch (IOException ioe) {
@@ -140,11 +164,12 @@ class EventLogFactory {
         /** 
          * Simple constructor that assigns the <tt>Uuid</tt>
          * field to the appropriate internal field and creates
-	 * a transient event log.
+	 * a transient event log holding at most <tt>capacity</tt> events
+	 * in memory.
 	 */
-        EventLogIteratorImpl(Uuid id) {
+        EventLogIteratorImpl(Uuid id, int capacity, File spillDir) {
             uuid = id;
-	    log = new TransientEventLog(id);
+	    log = new TransientEventLog(id, capacity, spillDir);
         }
 
 	// Inherit documentation from supertype
@@ -164,6 +189,11 @@ class EventLogFactory {
             return !log.isEmpty();
         }
 
+        // Inherit documentation from supertype
+        public long size() throws IOException {
+            return log.size();
+        }
+
         // Inherit documentation from supertype
         public RemoteEvent next() throws IOException, 
 		ClassNotFoundException, NoSuchElementException 
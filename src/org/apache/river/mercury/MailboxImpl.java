@@ -88,12 +88,14 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.security.auth.Subject;
 import javax.security.auth.login.LoginContext;
@@ -142,7 +144,7 @@ data structures:
    * regByExpiration - contains a time sorted ordering of 
        Registration objects
    * pendingReg - contains a list of Uuids that have been
-       enabled for event delivery
+       enabled for event delivery, served in round-robin order
    * activeReg - contains a list of Uuids that have an
        event delivery task in progress
 
@@ -295,8 +297,8 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
      * delivery enabled, but don't have any event delivery tasks 
      * currently scheduled.
      */
-    // Using an ArrayList for random access performance. 
-    // ArrayList is unsynchronized, but we are performing external
+    // Using a LinkedList since the notifier serves it as a FIFO queue.
+    // LinkedList is unsynchronized, but we are performing external
     // synchronization via the <code>concurrentObj</code> field. 
     private final List<Uuid> pendingReg;
     /**
@@ -307,6 +309,22 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
     // HashMap is unsynchronized, but we are performing external
     // synchronization via the <code>concurrentObj</code> field. 
     private final Map<Uuid,NotifyTask> activeReg;
+    /** 
+     * Number of delivery tasks currently active for each target listener.
+     * Guarded by synchronizing on the map itself.
+     */
+    private final Map<RemoteEventListener,Integer> targetDeliveries =
+        new HashMap<RemoteEventListener,Integer>();
+    /** Per-registration event delivery statistics */
+    private final ConcurrentMap<Uuid,DeliveryStats> deliveryStats =
+        new ConcurrentHashMap<Uuid,DeliveryStats>();
+    /** Maximum number of events delivered by a task in a single turn */
+    private final int deliveryBatchSize;
+    /** 
+     * Maximum number of delivery tasks that may be active at the same
+     * time for a single target listener.
+     */
+    private final int maxDeliveriesPerTarget;
     /** Reliable loG to hold registration state information */
     // Note that event state is kept separately
     private final ReliableLog log;
@@ -619,6 +637,8 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
         lookupAttrs = init.lookupAttrs;
         maxUnexportDelay = init.maxUnexportDelay;
         unexportRetryDelay = init.unexportRetryDelay;
+        deliveryBatchSize = init.deliveryBatchSize;
+        maxDeliveriesPerTarget = init.maxDeliveriesPerTarget;
         lookupDiscMgr = init.lookupDiscMgr;
         regByExpiration = init.regByExpiration;
         regByID = init.regByID;
@@ -1733,6 +1753,12 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
 	regByExpiration.remove(reg);
 	boolean exists = pendingReg.remove(regID);
 	NotifyTask task = (NotifyTask)activeReg.remove(regID);
+	DeliveryStats stats = deliveryStats.remove(regID);
+	if (stats != null && DELIVERY_LOGGER.isLoggable(Level.FINE)) {
+	    DELIVERY_LOGGER.log(Level.FINE, 
+	        "Delivery statistics for removed registration {0}: {1}",
+	        new Object[] {regID, stats});
+	}
 	if (task != null) { // cancel active task, if any
 	    task.cancel(false);
 	    if(DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
@@ -2575,7 +2601,11 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
     // A TaskManager is used
     // to pool event delivery tasks, but there will only be one active task for
     // any one registration. This allows us to ensure "in order" delivery of 
-    // events. 
+    // events. Pending registrations are served round-robin, each task
+    // delivers at most deliveryBatchSize events before yielding its
+    // worker, and no more than maxDeliveriesPerTarget tasks may be
+    // active for the same listener, so a slow listener cannot starve
+    // the other registrations.
     private class Notifier extends InterruptedStatusThread implements TimeConstants {
         /** 
          * <code>TaskManager</code> that will be handling the 
@@ -2587,12 +2617,6 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
         private final WakeupManager wakeupMgr =
 	    new WakeupManager(new WakeupManager.ThreadDesc(null, true));
 
-        /** 
-         * Random number generator that will be used for implementing
-         * a simple load balancing scheme. Seed it with the current time.
-         */
-        private final Random rand = new Random(System.currentTimeMillis());
-    
         /** Time to wait between notification checks */
         private final static long	PAUSE_TIME = 5000; // 5 seconds
     
@@ -2640,12 +2664,12 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
 			    Integer.valueOf(count));
 		    }
     	            // don't need to check for size() > 0 (below) since
-    	            // we hold the lock. 
-    	            // TODO: optimize loop to ignore indices w/o available events
-    	            // TODO: optimize loop to skip nextInt if only one choice
+    	            // we hold the lock. Registrations are taken from the
+    	            // head of the list and, unless scheduled, put back at
+    	            // the tail, so each one gets its turn.
     	            while (count-- > 0) { 
-    	                int index = rand.nextInt(pendingReg.size());
-    	                Uuid uuid = (Uuid)pendingReg.get(index);
+    	                Uuid uuid = pendingReg.remove(0);
+    	                boolean scheduled = false;
     	                ServiceRegistration reg = null;
         	        try { 
                             // Note: the following method will throw a 
@@ -2654,19 +2678,30 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
                             reg = getServiceRegistration(uuid); 
                             // Check if the registration has any events to 
                             // be delivered
-    	                    if (reg.iterator().hasNext()) {
-    	                        if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
+                            long depth = reg.iterator().size();
+                            DeliveryStats stats = getDeliveryStats(uuid);
+                            stats.queueDepth(depth);
+    	                    if (depth > 0) {
+                                RemoteEventListener target = 
+                                    reg.getEventTarget();
+                                if (acquireTarget(target)) {
+    	                            if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
+                                        DELIVERY_LOGGER.log(Level.FINEST,
+				        "Scheduling delivery task for reg: {0}, {1}", 
+                                        new Object[]{reg, stats}); 
+				    }
+				    // Create and schedule a event delivery task
+    	                            NotifyTask t = new NotifyTask(
+                                        taskManager, wakeupMgr, uuid, target);
+    	                            taskManager.execute(t);
+    	                            // Put registration onto active list
+    	                            activeReg.put(uuid, t);
+                                    scheduled = true;
+                                } else if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
                                     DELIVERY_LOGGER.log(Level.FINEST,
-				    "Scheduling delivery task for reg: {0} ", reg); 
-				}
-				// Create and schedule a event delivery task
-    	                        NotifyTask t = 
-				    new NotifyTask(taskManager, wakeupMgr, uuid);
-    	                        taskManager.execute(t);
-    	                        // Put registration onto active list
-    	                        activeReg.put(uuid, t);
-    	                        // Remove registration from pending list
-    	                        pendingReg.remove(index);
+                                        "Target listener busy, deferring reg: {0}",
+                                        uuid);
+                                }
     		            }
 			} catch (ThrowThis tt) {
 			    // Invalid registration ... skip
@@ -2682,7 +2717,11 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
 				    "Notifier: inaccessible registration data for {0}", 
 				    uuid);
 			    }
-			}
+			} finally {
+                            // Put registration back onto the pending list 
+                            // unless it's now on the active list
+                            if (!scheduled) pendingReg.add(uuid);
+                        }
     		    }
 		    try {
                        if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
@@ -2735,6 +2774,54 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
 
     /** The maximum mnumber of times to retry event delivery */
     private final static int	MAX_ATTEMPTS = 5;	// max times to retry
+
+    /**
+     * Returns the delivery statistics for the given registration,
+     * creating them if necessary.
+     */
+    DeliveryStats getDeliveryStats(Uuid regID) {
+        DeliveryStats stats = deliveryStats.get(regID);
+        if (stats == null) {
+            stats = new DeliveryStats();
+            DeliveryStats existing = deliveryStats.putIfAbsent(regID, stats);
+            if (existing != null) stats = existing;
+        }
+        return stats;
+    }
+
+    /**
+     * Attempts to reserve a delivery slot for the given target listener.
+     * Returns <code>false</code> if <code>maxDeliveriesPerTarget</code>
+     * tasks are already active for that listener.
+     */
+    private boolean acquireTarget(RemoteEventListener target) {
+        if (target == null) return true;
+        synchronized (targetDeliveries) {
+            Integer active = targetDeliveries.get(target);
+            int count = active == null ? 0 : active.intValue();
+            if (count >= maxDeliveriesPerTarget) return false;
+            targetDeliveries.put(target, Integer.valueOf(count + 1));
+            return true;
+        }
+    }
+
+    /**
+     * Releases a delivery slot previously obtained with 
+     * <code>acquireTarget</code>.
+     */
+    private void releaseTarget(RemoteEventListener target) {
+        if (target == null) return;
+        synchronized (targetDeliveries) {
+            Integer active = targetDeliveries.get(target);
+            if (active == null) return;
+            int count = active.intValue() - 1;
+            if (count > 0) {
+                targetDeliveries.put(target, Integer.valueOf(count));
+            } else {
+                targetDeliveries.remove(target);
+            }
+        }
+    }
     
     /**
      * A task that represents an event notification task for a particular
@@ -2748,20 +2835,63 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
      * <li> The event could not be successfully retrieved from the 
       registration's event loG iterator.
  </ul>
+     * A task may deliver up to <code>deliveryBatchSize</code> events in
+     * order during a single run before it is returned to the pool.
      * 
      */
     class NotifyTask extends RetryTask {
         /** The Uuid of the associated registration */
         private Uuid	regID;
 
+        /** The target listener whose delivery slot this task holds */
+        private final RemoteEventListener target;
+
+        /** Set once the delivery slot for the target has been released */
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        /** Statistics for the associated registration */
+        private final DeliveryStats stats;
+
+        /** 
+         * Set by <code>deliverNext</code> when another event should be
+         * delivered during the current turn. Only accessed by the thread
+         * running this task.
+         */
+        private boolean continueBatch;
+
     	/**
     	 * Create an object to represent an event notification task.
     	 */
-    	NotifyTask(ExecutorService tm, WakeupManager mgr, Uuid regID) {
+    	NotifyTask(ExecutorService tm, WakeupManager mgr, Uuid regID,
+                RemoteEventListener target) 
+        {
     	    super(tm, mgr);
     	    this.regID = regID;
+            this.target = target;
+            this.stats = getDeliveryStats(regID);
     	}
 
+        /**
+         * Releases the delivery slot held for the target listener.
+         * Safe to call more than once; returns <code>true</code> only
+         * for the call that released the slot.
+         */
+        private boolean releaseTarget() {
+            if (released.compareAndSet(false, true)) {
+                MailboxImpl.this.releaseTarget(target);
+                return true;
+            }
+            return false;
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            // Registrations deferred because the target was busy can
+            // now be scheduled; don't leave them for the next pause.
+            if (releaseTarget()) concurrentObj.waiterNotify(eventNotifier);
+            return cancelled;
+        }
+
     	/**
     	 * This utility function tries to obtain the next event for the
     	 * given registration. If it finds one, the event is returned. 
@@ -2899,10 +3029,38 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
 	        OPERATIONS_LOGGER.entering(NOTIFY_TASK_SOURCE_CLASS, 
 	            "tryOnce");
 	    }
+            stats.turn();
+            int batch = 0;
+            boolean succeeded;
+            do {
+                continueBatch = false;
+                succeeded = deliverNext(++batch < deliveryBatchSize);
+            } while (continueBatch);
+            if (OPERATIONS_LOGGER.isLoggable(Level.FINER)) {
+	        OPERATIONS_LOGGER.exiting(NOTIFY_TASK_SOURCE_CLASS, 
+	            "tryOnce", Boolean.valueOf(succeeded));
+	    }
+            return succeeded;
+        }
+
+    	/**
+    	 * Try to deliver the next event to the target.  Return 
+    	 * <code>true</code> if this task is finished with the registration
+    	 * and <code>false</code> if delivery should be retried. If
+    	 * <code>mayContinue</code> is <code>true</code>, the event was
+    	 * delivered and more events are available, the registration is
+    	 * kept on the active list and <code>continueBatch</code> is set.
+    	 */
+    	private boolean deliverNext(boolean mayContinue) {
+            if (OPERATIONS_LOGGER.isLoggable(Level.FINER)) {
+	        OPERATIONS_LOGGER.entering(NOTIFY_TASK_SOURCE_CLASS, 
+	            "deliverNext", Boolean.valueOf(mayContinue));
+	    }
     
     	    boolean succeeded = false;           // attempt this task again?      
     	    boolean deleteEvent = false;         // delete the retrieved event? 
     	    boolean doNotify = true;             // attempt notification?
+    	    boolean delivered = false;           // did notify() succeed?
     	    ServiceRegistration reg = null;      // 
     	    RemoteEventListener listener = null; // event delivery target
 	    RemoteEvent ev = null;               // event to deliver
@@ -3007,11 +3165,14 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
 		            new Object[] {ev, Long.valueOf(ev.getID()), 
 		            Long.valueOf(ev.getSequenceNumber())});
 	        }
+		long start = System.nanoTime();
 		try {
 		    // Notify target listener and note a successful delivery
 		    listener.notify(ev);
 		    succeeded = true;
     		    deleteEvent = true;
+    		    delivered = true;
+    		    stats.delivered(System.nanoTime() - start);
     	            if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
                         DELIVERY_LOGGER.log(Level.FINEST,
 		            "Delivery was successful");
@@ -3026,6 +3187,7 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
 	            // Add offending event type to this registration's
 	            // "unknown" list and move on to the next task.
 		    addUnknownEvent(regID, new EventID(ev));
+		    stats.dropped();
 		    succeeded = true;
 		    deleteEvent = true;
 	        } catch (Throwable t) {
@@ -3054,6 +3216,7 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
 			}
 		        // Indefinite remote exception means there is
 		        // possibility that a retry attempt will succeed
+		        stats.failed();
 		        succeeded = false;
 		        deleteEvent = false;
 		    } else if (cat == ThrowableConstants.BAD_INVOCATION) {
@@ -3064,6 +3227,7 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
 		        // BAD_INVOCATION exception means there is little 
 			// possibility that a retry attempt with the
 			// same argument will succeed.
+		        stats.dropped();
 		        succeeded = true;
 		        deleteEvent = true;
 		    } else { // uncategorized or bad invocation
@@ -3075,6 +3239,7 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
 			// possibility that a retry attempt will succeed
 			// Note: we've already checked for 
 			// UnknownEventException
+		        stats.failed();
 		        succeeded = false;
 		        deleteEvent = false;
 		    }
@@ -3086,8 +3251,10 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
     	    if (!succeeded && attempt() > MAX_ATTEMPTS) {
     	        if (DELIVERY_LOGGER.isLoggable(Levels.HANDLED)) {
                     DELIVERY_LOGGER.log(Levels.HANDLED,
-		        "Maximum delivery attempts reached");
+		        "Maximum delivery attempts reached for {0}: {1}",
+		        new Object[] {regID, stats});
 		}
+		stats.dropped();
 		succeeded = true;		
 		deleteEvent = true;
 	    }
@@ -3102,7 +3269,21 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
                         // exception if the registration is invalid 
                         // (i.e. expired or non-existent)
                         reg = getServiceRegistration(regID); 
-                        if (succeeded) { 
+        	        if (deleteEvent) {
+    	                    if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
+                                    DELIVERY_LOGGER.log(Level.FINEST,
+		                        "Deleting event ...");
+			    }
+        	            deleteNextEvent(reg); 
+    		        }
+                        if (succeeded && delivered && mayContinue &&
+                            reg.getEventTarget() == listener &&
+                            hasNextEvent(reg)) 
+                        {
+                            // Keep this reg on the active list and
+                            // deliver the next event in this turn
+                            continueBatch = true;
+                        } else if (succeeded) { 
                             // If we are still enabled, then move this reg
                             // from active --> pending list
                             if (reg.hasEventTarget()) { 
@@ -3130,33 +3311,42 @@ class MailboxImpl implements MailboxBackEnd, TimeConstants,
 				}
 			    }
     		        }
-
-        	        if (deleteEvent) {
-    	                    if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
-                                    DELIVERY_LOGGER.log(Level.FINEST,
-		                        "Deleting event ...");
-			    }
-        	            deleteNextEvent(reg); 
-    		        }
     		    } catch (ThrowThis tt) { 
     		        // Registration is gone ... nothing to do
     		    }
-    	            if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
-                        DELIVERY_LOGGER.log(Level.FINEST,
-                            "Waking up notifier");
-		    }
-	            concurrentObj.waiterNotify(eventNotifier);
+                    if (!continueBatch) {
+                        if (succeeded) releaseTarget();
+    	                if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
+                            DELIVERY_LOGGER.log(Level.FINEST,
+                                "Waking up notifier");
+		        }
+	                concurrentObj.waiterNotify(eventNotifier);
+                    }
         	} finally {
                     concurrentObj.writeUnlock();
         	}
 	    }
             if (OPERATIONS_LOGGER.isLoggable(Level.FINER)) {
 	        OPERATIONS_LOGGER.exiting(NOTIFY_TASK_SOURCE_CLASS, 
-	            "tryOnce", Boolean.valueOf(succeeded));
+	            "deliverNext", Boolean.valueOf(succeeded));
 	    }
 
     	    return succeeded;
     	}
+
+        /**
+         * Returns <code>true</code> if the registration has another event
+         * to deliver, recording the queue depth as a side effect.
+         */
+        private boolean hasNextEvent(ServiceRegistration reg) {
+            try {
+                long depth = reg.iterator().size();
+                stats.queueDepth(depth);
+                return depth > 0;
+            } catch (IOException ioe) {
+                return false;
+            }
+        }
     }
 
 
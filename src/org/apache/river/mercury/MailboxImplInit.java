@@ -26,6 +26,7 @@ import org.apache.river.logging.Levels;
 import org.apache.river.reliableLog.LogHandler;
 import org.apache.river.reliableLog.ReliableLog;
 import org.apache.river.thread.InterruptedStatusThread;
+import java.io.File;
 import java.io.IOException;
 import java.rmi.RemoteException;
 import java.rmi.activation.ActivationException;
@@ -38,6 +39,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -80,13 +82,15 @@ class MailboxImplInit {
     Entry[] lookupAttrs;
     long maxUnexportDelay;
     long unexportRetryDelay;
+    int deliveryBatchSize;
+    int maxDeliveriesPerTarget;
     DiscoveryManagement lookupDiscMgr;
     TreeMap<ServiceRegistration, ServiceRegistration> regByExpiration = new TreeMap<ServiceRegistration, ServiceRegistration>();
     HashMap<Uuid, ServiceRegistration> regByID = new HashMap<Uuid, ServiceRegistration>();
     Map<Uuid, MailboxImpl.NotifyTask> activeReg = new HashMap<Uuid, MailboxImpl.NotifyTask>();
     /** <code>EventLogIterator</code> generator */
-    EventLogFactory eventLogFactory = new EventLogFactory();
-    List<Uuid> pendingReg = new ArrayList<Uuid>();
+    EventLogFactory eventLogFactory;
+    List<Uuid> pendingReg = new LinkedList<Uuid>();
     Configuration config;
     AccessControlContext context;
     LoginContext loginContext;
@@ -163,11 +167,29 @@ class MailboxImplInit {
                 MailboxImpl.INIT_LOGGER.log(Level.CONFIG, "Recovered locator preparer is: {0}", recoveredLocatorToJoinPreparer);
             }
             logToSnapshotThreshold = Config.getIntEntry(config, MailboxImpl.MERCURY, "logToSnapshotThreshold", 50, 0, Integer.MAX_VALUE);
-            
+            eventLogFactory = new EventLogFactory();
+        } else {
+            int capacity = Config.getIntEntry(config, MailboxImpl.MERCURY, "transientEventLogCapacity", Integer.MAX_VALUE, 1, Integer.MAX_VALUE);
+            File spillDir = null;
+            if (capacity != Integer.MAX_VALUE) {
+                spillDir = new File(Config.getNonNullEntry(config, MailboxImpl.MERCURY, "transientEventLogSpillDirectory", String.class, System.getProperty("java.io.tmpdir")));
+                if (!spillDir.isDirectory() && !spillDir.mkdirs()) {
+                    throw new ConfigurationException("Cannot create spill directory: " + spillDir);
+                }
+            }
+            if (MailboxImpl.INIT_LOGGER.isLoggable(Level.CONFIG)) {
+                MailboxImpl.INIT_LOGGER.log(Level.CONFIG, "Transient event log capacity is: {0}, spill directory is: {1}", new Object[]{Integer.valueOf(capacity), spillDir});
+            }
+            eventLogFactory = new EventLogFactory(capacity, spillDir);
         }
         
         maxUnexportDelay = Config.getLongEntry(config, MailboxImpl.MERCURY, "maxUnexportDelay", 2 * TimeConstants.MINUTES, 0, Long.MAX_VALUE);
         unexportRetryDelay = Config.getLongEntry(config, MailboxImpl.MERCURY, "unexportRetryDelay", TimeConstants.SECONDS, 1, Long.MAX_VALUE);
+        deliveryBatchSize = Config.getIntEntry(config, MailboxImpl.MERCURY, "deliveryBatchSize", 1, 1, Integer.MAX_VALUE);
+        maxDeliveriesPerTarget = Config.getIntEntry(config, MailboxImpl.MERCURY, "maxDeliveriesPerTarget", Integer.MAX_VALUE, 1, Integer.MAX_VALUE);
+        if (MailboxImpl.INIT_LOGGER.isLoggable(Level.CONFIG)) {
+            MailboxImpl.INIT_LOGGER.log(Level.CONFIG, "Delivery batch size is: {0}, deliveries per target: {1}", new Object[]{Integer.valueOf(deliveryBatchSize), Integer.valueOf(maxDeliveriesPerTarget)});
+        }
     }
     
 }
@@ -564,6 +564,12 @@ class PersistentEventLog implements EventLog {
         return !(rcount < wcount);
     }
 
+    // Inherit documentation from supertype
+    public long size() throws IOException {
+        stateCheck();
+        return wcount - rcount;
+    }
+
     // Inherit documentation from supertype
     public void remove() throws IOException {
         stateCheck();
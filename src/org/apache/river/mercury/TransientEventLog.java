@@ -19,15 +19,22 @@ package org.apache.river.mercury;
 
 import net.jini.id.Uuid;
 import net.jini.core.event.RemoteEvent;
+import net.jini.io.MarshalledInstance;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
 
 import org.apache.river.logging.Levels;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.NoSuchElementException;
@@ -46,6 +53,16 @@ import java.util.concurrent.atomic.AtomicLong;
  *
  * There is also an implicit assumption of external synchronization by the
  * caller. That is, only one calling thread will be accessing the log at a time.
+ * 
+ * At most <tt>capacity</tt> of the most recent events are kept in memory.
+ * When that limit is exceeded the oldest in-memory event is appended
+ * to a spill file in the configured spill directory. Since spilled events
+ * are always older than the events held in memory, events are read from
+ * the spill file first. The spill file is truncated once all of its
+ * events have been removed and is deleted when the log is closed. The
+ * spill file is scratch space only; its contents do not survive a restart.
+ * It is not registered with <tt>File.deleteOnExit</tt>, since that would
+ * retain an entry for every registration for the life of the JVM.
  *
  * @author Sun Microsystems, Inc.
  *
@@ -62,6 +79,9 @@ class TransientEventLog implements EventLog {
     private static final Logger persistenceLogger = 
 	MailboxImpl.PERSISTENCE_LOGGER;
 
+    /** File name suffix used for spill files */
+    private static final String SPILL_SUFFIX = ".spill";
+
     //
     // Object fields
     //
@@ -69,8 +89,35 @@ class TransientEventLog implements EventLog {
     /** The associated <tt>Uuid</tt> for this <tt>EventLog</tt>. */
     private final Uuid uuid;
 
-    /** The associated, non-persistent storage for events */
-    private final List entries;
+    /** The associated, non-persistent storage for the most recent events */
+    private final LinkedList<RemoteEventHolder> entries;
+
+    /** Maximum number of events held in memory */
+    private final int capacity;
+
+    /** Directory in which the spill file is created, or null */
+    private final File spillDir;
+
+    /** Spill file holding the oldest events, created on first use */
+    private RandomAccessFile spill;
+
+    /** <tt>File</tt> object for the spill file */
+    private File spillFile;
+
+    /** Offset of the next unread record in the spill file */
+    private long spillReadPos = 0;
+
+    /** Offset at which the next spilled record will be written */
+    private long spillWritePos = 0;
+
+    /** Number of unremoved events in the spill file */
+    private long spillCount = 0;
+
+    /** Decoded copy of the record at <tt>spillReadPos</tt>, if any */
+    private RemoteEventHolder spillHead;
+
+    /** Length in bytes of the record at <tt>spillReadPos</tt> */
+    private int spillHeadLength;
 
     /** 
      * Flag that is used to determine whether or not this object 
@@ -104,19 +151,41 @@ class TransientEventLog implements EventLog {
     private AtomicLong eventCounter = new AtomicLong(1);
     
     /**
-     * Simple constructor that takes a <tt>Uuid</tt> argument.
+     * Simple constructor that takes a <tt>Uuid</tt> argument. Events are
+     * never spilled to disk.
      *
      * @exception IllegalArgumentException if the argument is null
      */
     TransientEventLog(Uuid uuid) {
+        this(uuid, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Constructor that bounds the number of events held in memory to
+     * <tt>capacity</tt>, spilling older events to a file in 
+     * <tt>spillDir</tt>.
+     *
+     * @exception IllegalArgumentException if <tt>uuid</tt> is null,
+     *     <tt>capacity</tt> is less than one, or <tt>spillDir</tt> is
+     *     null while <tt>capacity</tt> is bounded
+     */
+    TransientEventLog(Uuid uuid, int capacity, File spillDir) {
         if (uuid == null) 
             throw new IllegalArgumentException("Uuid cannot be null");
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+        if (spillDir == null && capacity != Integer.MAX_VALUE)
+            throw new IllegalArgumentException(
+                "spill directory required for a bounded log");
         this.uuid = uuid;
-	entries = Collections.synchronizedList(new LinkedList());
+        this.capacity = capacity;
+        this.spillDir = spillDir;
+	entries = new LinkedList<RemoteEventHolder>();
 
         if (persistenceLogger.isLoggable(Level.FINEST)) {
             persistenceLogger.log(Level.FINEST, 
-	        "TransientEventLog for: {0}", uuid);
+	        "TransientEventLog for: {0}, capacity {1}", 
+                new Object[] {uuid, Integer.valueOf(capacity)});
         }
     }
 
@@ -144,28 +213,38 @@ class TransientEventLog implements EventLog {
     }
 
     // Inherit documentation from supertype
-    public void add(RemoteEvent event) throws IOException {
+    public synchronized void add(RemoteEvent event) throws IOException {
 	stateCheck();
         long id = eventCounter.getAndIncrement(); 
         RemoteEventHolder data = new RemoteEventHolder(id, event);
-	entries.add(data);
+        if (entries.size() >= capacity) {
+            // Only drop the oldest event from memory once it is on disk
+            writeSpill(entries.getFirst());
+            entries.removeFirst();
+        }
+	entries.addLast(data);
         printControlData(persistenceLogger, "TransientEventLog::add");
     }
 
     // Inherit documentation from supertype
-    public RemoteEvent next() throws IOException {
+    public synchronized RemoteEvent next() 
+        throws IOException, ClassNotFoundException 
+    {
 	stateCheck();
         // Check if empty
 	if (isEmpty()) 
 	    throw new NoSuchElementException();
 
         printControlData(persistenceLogger, "TransientEventLog::next");
-        RemoteEventHolder data = (RemoteEventHolder)entries.get(0);
+        RemoteEventHolder data = (spillCount > 0) ? 
+            readSpillHead() : entries.getFirst();
         return (RemoteEvent)data.getRemoteEvent();
     }
     
     // Inherit documentation from supertype
-    public RemoteEventData[] readAhead(int maxEvents) throws IOException {
+    public synchronized RemoteEventData[] readAhead(int maxEvents) 
+        throws IOException, ClassNotFoundException 
+    {
 	stateCheck();
         
         if (maxEvents < 0)
@@ -179,36 +258,51 @@ class TransientEventLog implements EventLog {
 	    throw new NoSuchElementException();
 
         printControlData(persistenceLogger, "TransientEventLog::readAhead");
-        int limit = (maxEvents < entries.size())?maxEvents:entries.size();
-        RemoteEventHolder[] evts = (RemoteEventHolder[])
-            entries.subList(0, limit).toArray(new RemoteEventHolder[0]);
-        RemoteEventData[] set = new RemoteEventData[evts.length];
+        List<RemoteEventHolder> evts = new ArrayList<RemoteEventHolder>(
+            (int) Math.min(maxEvents, size()));
+        if (spillCount > 0) {
+            readSpill(evts, maxEvents);
+        }
+        Iterator<RemoteEventHolder> iter = entries.iterator();
+        while (evts.size() < maxEvents && iter.hasNext()) {
+            evts.add(iter.next());
+        }
+        RemoteEventData[] set = new RemoteEventData[evts.size()];
         for (int i=0; i<set.length; i++) {
+            RemoteEventHolder rh = evts.get(i);
             set[i] = new RemoteEventData(
-                evts[i].getRemoteEvent(), Long.valueOf(evts[i].getID()));
+                rh.getRemoteEvent(), Long.valueOf(rh.getID()));
         }
         return set;
     }
     
     // Inherit documentation from supertype
-    public boolean isEmpty() throws IOException {
+    public synchronized boolean isEmpty() throws IOException {
+	stateCheck();
+        return spillCount == 0 && entries.isEmpty();
+    }
+
+    // Inherit documentation from supertype
+    public synchronized long size() throws IOException {
 	stateCheck();
-        return entries.isEmpty();
+        return spillCount + entries.size();
     }
 
     // Inherit documentation from supertype
-    public void remove() throws IOException {
+    public synchronized void remove() throws IOException {
 	stateCheck();
-	try {
-	    entries.remove(0);
-	} catch (IndexOutOfBoundsException iob) {
+        if (spillCount > 0) {
+            removeSpillHead();
+        } else if (entries.isEmpty()) {
 	    throw new NoSuchElementException();
-	}
+        } else {
+	    entries.removeFirst();
+        }
         printControlData(persistenceLogger, "TransientEventLog::remove");
     }
 
     // Inherit documentation from supertype
-    public void moveAhead(Object cookie) throws IOException {
+    public synchronized void moveAhead(Object cookie) throws IOException {
 	stateCheck();
 
 	if (cookie == null) return;
@@ -225,10 +319,18 @@ class TransientEventLog implements EventLog {
 	    throw new NoSuchElementException();
 	}
         
+        while (spillCount > 0 && peekSpillID() <= lastID) {
+            if (persistenceLogger.isLoggable(Level.FINEST)) {
+                persistenceLogger.log(Level.FINEST, 
+                    "Removing spilled event with ID {0}", 
+                    Long.valueOf(peekSpillID()));
+            }
+            removeSpillHead();
+        }
         RemoteEventHolder rh = null;
-        ListIterator iter = entries.listIterator();
+        Iterator<RemoteEventHolder> iter = entries.iterator();
         while (iter.hasNext()) {
-            rh = (RemoteEventHolder)iter.next();
+            rh = iter.next();
             if (rh.getID() <= lastID) {
                 iter.remove();
                 if (persistenceLogger.isLoggable(Level.FINEST)) {
@@ -245,27 +347,161 @@ class TransientEventLog implements EventLog {
     }
     
     // Inherit documentation from supertype
-    public void close() throws IOException {
+    public synchronized void close() throws IOException {
 	stateCheck();
         closed = true;
 	if (persistenceLogger.isLoggable(Level.FINEST)) {
             persistenceLogger.log(Level.FINEST, 
 	        "TransientEventLog::close for {0}", uuid);
 	}
-	// Do nothing
+        if (spill != null) {
+            spill.close();
+            spill = null;
+        }
+        deleteSpillFile();
     }
 
     // Inherit documentation from supertype
-    public void delete() throws IOException {
+    public synchronized void delete() throws IOException {
         if (!closed)
             throw new IOException("Cannot delete log until it is closed");
 	entries.clear();
+        spillHead = null;
+        spillCount = 0;
+        deleteSpillFile();
 	if (persistenceLogger.isLoggable(Level.FINEST)) {
             persistenceLogger.log(Level.FINEST, 
 	        "TransientEventLog::destroy for {0}", uuid);
 	}
     }
 
+    /**
+     * Deletes the spill file, if one was created. The spill file must
+     * already have been closed.
+     */
+    private void deleteSpillFile() {
+        if (spillFile != null) {
+            if (!spillFile.delete() && spillFile.exists()) {
+                if (persistenceLogger.isLoggable(Levels.HANDLED)) {
+                    persistenceLogger.log(Levels.HANDLED, 
+                        "Could not delete spill file {0}", spillFile);
+                }
+            }
+            spillFile = null;
+        }
+    }
+
+    /**
+     * Appends the given event to the spill file, creating the file
+     * if necessary. Each record consists of the event id, the length of
+     * the serialized event and the serialized <tt>MarshalledInstance</tt>
+     * containing the event.
+     */
+    private void writeSpill(RemoteEventHolder rh) throws IOException {
+        if (spill == null) {
+            spillFile = new File(spillDir, uuid.toString() + SPILL_SUFFIX);
+            spill = new RandomAccessFile(spillFile, "rw");
+            spill.setLength(0);
+            if (persistenceLogger.isLoggable(Level.FINE)) {
+                persistenceLogger.log(Level.FINE, 
+                    "Spilling events for {0} to {1}", 
+                    new Object[] {uuid, spillFile});
+            }
+        }
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(256);
+        ObjectOutputStream out = new ObjectOutputStream(bout);
+        out.writeObject(new MarshalledInstance(rh.getRemoteEvent()));
+        out.close();
+        spill.seek(spillWritePos);
+        spill.writeLong(rh.getID());
+        spill.writeInt(bout.size());
+        spill.write(bout.toByteArray());
+        spillWritePos = spill.getFilePointer();
+        spillCount++;
+    }
+
+    /**
+     * Returns the id of the oldest spilled event without decoding it.
+     */
+    private long peekSpillID() throws IOException {
+        if (spillHead != null) return spillHead.getID();
+        spill.seek(spillReadPos);
+        return spill.readLong();
+    }
+
+    /**
+     * Returns the oldest spilled event, decoding and caching it if 
+     * necessary.
+     */
+    private RemoteEventHolder readSpillHead() 
+        throws IOException, ClassNotFoundException 
+    {
+        if (spillHead == null) {
+            spill.seek(spillReadPos);
+            long id = spill.readLong();
+            int len = spill.readInt();
+            spillHeadLength = len;
+            spillHead = new RemoteEventHolder(id, decode(len));
+        }
+        return spillHead;
+    }
+
+    /**
+     * Reads up to <tt>max</tt> spilled events, oldest first, into 
+     * <tt>evts</tt> without advancing the read position.
+     */
+    private void readSpill(List<RemoteEventHolder> evts, int max) 
+        throws IOException, ClassNotFoundException 
+    {
+        long pos = spillReadPos;
+        for (long i = 0; i < spillCount && evts.size() < max; i++) {
+            spill.seek(pos);
+            long id = spill.readLong();
+            int len = spill.readInt();
+            evts.add(new RemoteEventHolder(id, decode(len)));
+            pos += 12 + len;
+        }
+    }
+
+    /**
+     * Decodes the serialized event of length <tt>len</tt> at the current
+     * position of the spill file.
+     */
+    private RemoteEvent decode(int len) 
+        throws IOException, ClassNotFoundException 
+    {
+        byte[] buf = new byte[len];
+        spill.readFully(buf);
+        ObjectInputStream in = 
+            new ObjectInputStream(new ByteArrayInputStream(buf));
+        try {
+            MarshalledInstance mi = (MarshalledInstance) in.readObject();
+            return (RemoteEvent) mi.get(false);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Advances past the oldest spilled event. Once the spill file has been
+     * drained it is truncated so that its space is reclaimed.
+     */
+    private void removeSpillHead() throws IOException {
+        int len;
+        if (spillHead != null) {
+            len = spillHeadLength;
+        } else {
+            spill.seek(spillReadPos + 8);
+            len = spill.readInt();
+        }
+        spillHead = null;
+        spillReadPos += 12 + len;
+        if (--spillCount == 0) {
+            spill.setLength(0);
+            spillReadPos = 0;
+            spillWritePos = 0;
+        }
+    }
     
     /**
      * Output state information to the given <tt>Logger</tt>.
@@ -276,7 +512,9 @@ class TransientEventLog implements EventLog {
 	    logger.log(Level.FINEST, "{0}", msg);
             logger.log(Level.FINEST, "ID: {0}", uuid);
             logger.log(Level.FINEST, "NumEvents: {0}", 
-	        Long.valueOf(entries.size()));
+	        Long.valueOf(spillCount + entries.size()));
+            logger.log(Level.FINEST, "SpilledEvents: {0}", 
+	        Long.valueOf(spillCount));
 	}
     }
 }
@@ -187,4 +187,20 @@ class Item implements Serializable, Cloneable {
 	}
 	return items;
     }
+
+    /**
+     * Converts an ArrayList of Item to an array of MarshalledServiceItem,
+     * without unmarshalling any service or attribute set.
+     */
+    public static ServiceItem[] toMarshalledServiceItem(List<?> reps)
+    {
+	ServiceItem[] items = null;
+	if (reps != null) {
+	    items = new ServiceItem[reps.size()];
+	    for (int i = items.length; --i >= 0; ) {
+		items[i] = new LazyItem((Item)reps.get(i));
+	    }
+	}
+	return items;
+    }
 }
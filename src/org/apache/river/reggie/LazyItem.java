@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.reggie;
+
+import net.jini.core.entry.Entry;
+import org.apache.river.api.lookup.MarshalledServiceItem;
+
+/**
+ * A MarshalledServiceItem view of an Item, which unmarshals the service
+ * and each attribute set only when first asked for.  Instances are only
+ * created on the client side, from Items received from the registrar.
+ *
+ */
+final class LazyItem extends MarshalledServiceItem {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The item received from the registrar. */
+    private final transient Item item;
+
+    /** Creates a view of the given item. */
+    LazyItem(Item item) {
+	super(item.serviceID);
+	this.item = item;
+    }
+
+    protected Object unmarshalService() {
+	try {
+	    return item.service.get();
+	} catch (Throwable e) {
+	    RegistrarProxy.handleException(e);
+	}
+	return null;
+    }
+
+    protected int entryCount() {
+	return item.attributeSets != null ? item.attributeSets.length : 0;
+    }
+
+    /**
+     * Compares class names first, so that entries of exactly the given
+     * type are recognized without loading any classes; otherwise loads
+     * the entry class, but does not unmarshal its fields.
+     */
+    protected boolean isEntryOfType(int index, Class<? extends Entry> type) {
+	EntryRep rep = item.attributeSets[index];
+	if (type.getName().equals(rep.eclass.getName())) {
+	    return true;
+	}
+	try {
+	    return type.isAssignableFrom(rep.eclass.toClass(rep.codebase));
+	} catch (Throwable e) {
+	    RegistrarProxy.handleException(e);
+	}
+	return false;
+    }
+
+    protected Entry unmarshalEntry(int index) {
+	return item.attributeSets[index].get();
+    }
+}
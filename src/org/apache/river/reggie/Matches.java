@@ -62,4 +62,13 @@ class Matches implements Serializable {
     ServiceMatches get() throws RemoteException {
 	return new ServiceMatches(Item.toServiceItem(items), totalMatches);
     }
+
+    /**
+     * Converts a Matches to a ServiceMatches of MarshalledServiceItem,
+     * which unmarshal their fields on demand.
+     */
+    ServiceMatches getMarshalled() {
+	return new ServiceMatches(Item.toMarshalledServiceItem(items),
+				  totalMatches);
+    }
 }
@@ -24,6 +24,7 @@ import java.rmi.MarshalledObject;
 import net.jini.core.lookup.ServiceEvent;
 import net.jini.core.lookup.ServiceID;
 import net.jini.core.lookup.ServiceItem;
+import org.apache.river.api.lookup.MarshalledServiceEvent;
 
 /**
  * Concrete implementation class for abstract ServiceEvent.
@@ -31,14 +32,14 @@ import net.jini.core.lookup.ServiceItem;
  * @author Sun Microsystems, Inc.
  *
  */
-class RegistrarEvent extends ServiceEvent {
+class RegistrarEvent extends ServiceEvent implements MarshalledServiceEvent {
 
     private static final long serialVersionUID = 2L;
 
     /**
      * The new state of the serviceItem, or null if the serviceItem has been
      * deleted from the lookup service.  This is either a ServiceItem
-     * or an Item (to be converted to a ServiceItem when unmarshalled).
+     * or an Item (to be converted to a LazyItem when unmarshalled).
      *
      * @serial
      */
@@ -86,6 +87,11 @@ class RegistrarEvent extends ServiceEvent {
 	return (ServiceItem)serviceItem;
     }
 
+    // javadoc inherited from MarshalledServiceEvent
+    public ServiceItem getMarshalledServiceItem() {
+	return (ServiceItem)serviceItem;
+    }
+
     // javadoc inherited from ServiceEvent
     public ServiceID getServiceID() {
 	return servID;
@@ -105,7 +111,8 @@ class RegistrarEvent extends ServiceEvent {
      * Reads the default serializable field value for this instance, followed
      * by the serviceItem's service ID encoded as specified by the
      * ServiceID.writeBytes method.  If the value of the serviceItem field is an Item
-     * instance, converts it to a ServiceItem.
+     * instance, converts it to a LazyItem, which unmarshals the service and
+     * attribute sets when they are first asked for.
      */
     private void readObject(ObjectInputStream in)
 	throws IOException, ClassNotFoundException
@@ -113,6 +120,6 @@ class RegistrarEvent extends ServiceEvent {
 	in.defaultReadObject();
 	servID = new ServiceID(in);
 	if (serviceItem instanceof Item)
-	    serviceItem = ((Item)serviceItem).get();
+	    serviceItem = new LazyItem((Item)serviceItem);
     }
 }
@@ -44,16 +44,19 @@ import net.jini.id.ReferentUuid;
 import net.jini.id.ReferentUuids;
 import net.jini.id.Uuid;
 import net.jini.id.UuidFactory;
+import org.apache.river.api.lookup.MarshalledServiceRegistrar;
 
 /**
  * A RegistrarProxy is a proxy for a registrar.  Clients only see instances
- * via the ServiceRegistrar, Administrable and ReferentUuid interfaces.
+ * via the ServiceRegistrar, Administrable, ReferentUuid and
+ * MarshalledServiceRegistrar interfaces.
  *
  * @author Sun Microsystems, Inc.
  *
  */
 class RegistrarProxy 
-    implements ServiceRegistrar, Administrable, ReferentUuid, Serializable
+    implements ServiceRegistrar, Administrable, ReferentUuid,
+	       MarshalledServiceRegistrar, Serializable
 {
     private static final long serialVersionUID = 2L;
 
@@ -128,6 +131,14 @@ class RegistrarProxy
 	return server.lookup(new Template(tmpl), maxMatches).get();
     }
 
+    // Inherit javadoc
+    public ServiceMatches lookupMarshalled(ServiceTemplate tmpl,
+					   int maxMatches)
+	throws RemoteException
+    {
+	return server.lookup(new Template(tmpl), maxMatches).getMarshalled();
+    }
+
     // Inherit javadoc
     public EventRegistration notify(ServiceTemplate tmpl,
 				    int transitions,
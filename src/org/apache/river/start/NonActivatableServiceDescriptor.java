@@ -655,6 +655,7 @@ public class NonActivatableServiceDescriptor
         Class implClass = null;
         implClass = 	
             LoadClass.forName(getImplClassName(), false, newClassLoader);
+        StartupPhases.mark("setup");
         logger.finest("Setting context class loader");
         curThread.setContextClassLoader(newClassLoader);
 
@@ -679,8 +680,10 @@ public class NonActivatableServiceDescriptor
                 constructor);
             constructor.setAccessible(true);
             impl = constructor.newInstance(argParms);
+            StartupPhases.mark("construct");
             if (impl instanceof Startable) {
                 ((Startable) impl).start();
+                StartupPhases.mark("start");
             } else {
                 logger.log( Level.FINE,
                     "Service {0} doesn''t implement {1} {2} {3} {4} {5} {6}", 
@@ -717,6 +720,7 @@ public class NonActivatableServiceDescriptor
         if(proxy != null) {
             proxy = servicePreparer.prepareProxy(proxy);
         }
+        StartupPhases.mark("proxy");
 	Created created = new Created(impl, proxy);   
         logger.exiting(NonActivatableServiceDescriptor.class.getName(), 
 	    "create", created);
@@ -29,9 +29,16 @@ import net.jini.security.ProxyPreparer;
 import java.rmi.activation.ActivationException;
 import java.rmi.activation.ActivationSystem;
 import java.rmi.Naming;
+import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.MissingResourceException;
@@ -42,6 +49,7 @@ import javax.security.auth.Subject;
 
 import org.apache.river.action.GetIntegerAction;
 import org.apache.river.api.security.CombinerSecurityManager;
+import org.apache.river.thread.NamedThreadFactory;
 
 /** 
  * This class provides the main routine for starting shared groups,
@@ -92,6 +100,46 @@ import org.apache.river.api.security.CombinerSecurityManager;
  *     Description: <td> Array of service descriptors to start.
  * </table>
  *
+ * <table summary="Describes the startupThreads configuration entry"
+ *	  border="0" cellpadding="2">
+ *   <tr valign="top">
+ *     <th scope="col" summary="layout"> <font size="+1">&#X2022;</font>
+ *     <th scope="col" align="left" colspan="2"> <font size="+1"><code>
+ *	 startupThreads</code></font>
+ *   <tr valign="top"> <td> &nbsp <th scope="row" align="right">
+ *     Type: <td> <code>int</code>
+ *   <tr valign="top"> <td> &nbsp <th scope="row" align="right">
+ *     Default: <code>1</code>
+ *   <tr valign="top"> <td> &nbsp <th scope="row" align="right">
+ *     Description: <td> Maximum number of service descriptors to create
+ *     at the same time. If <code>1</code>, the descriptors are created
+ *     one after the other, in array order except where a descriptor has
+ *     to follow the descriptors it depends on. Otherwise each descriptor is
+ *     created, on a pool of this many threads, as soon as the descriptors
+ *     it depends on (see <code>serviceDependencies</code>) have been
+ *     created. In either case a descriptor whose dependency could not be
+ *     created is not created either.
+ * </table>
+ *
+ * <table summary="Describes the serviceDependencies configuration entry"
+ *	  border="0" cellpadding="2">
+ *   <tr valign="top">
+ *     <th scope="col" summary="layout"> <font size="+1">&#X2022;</font>
+ *     <th scope="col" align="left" colspan="2"> <font size="+1"><code>
+ *	 serviceDependencies</code></font>
+ *   <tr valign="top"> <td> &nbsp <th scope="row" align="right">
+ *     Type: <td> <code>int[][]</code>
+ *   <tr valign="top"> <td> &nbsp <th scope="row" align="right">
+ *     Default: <code>null</code>
+ *   <tr valign="top"> <td> &nbsp <th scope="row" align="right">
+ *     Description: <td> If not <code>null</code>, element <i>i</i> (if
+ *     present and not <code>null</code>) holds the indexes in
+ *     <code>serviceDescriptors</code> of the descriptors that must be
+ *     created before descriptor <i>i</i>. In addition, each {@link SharedActivatableServiceDescriptor} depends
+ *     on any {@link SharedActivationGroupDescriptor} with the same shared
+ *     group log. Dependencies must not form a cycle.
+ * </table>
+ *
  *
  *<a name="logging">
  *<h3>Loggers and Logging Levels</h3>
@@ -118,6 +166,9 @@ import org.apache.river.api.security.CombinerSecurityManager;
  *  <tr> <td> {@link java.util.logging.Level#WARNING WARNING} <td> 
  *    for problems with service creation that don't prevent further
  *    processing
+ *  <tr> <td> {@link java.util.logging.Level#INFO INFO} <td> 
+ *    for the time taken to create each service, with the phases
+ *    reported by its descriptor, and in total
  *  <tr> <td> {@link java.util.logging.Level#FINER FINER} <td> 
  *    for high level
  *    service creation operation tracing
@@ -172,7 +223,7 @@ public class ServiceStarter {
      * proxy (if any), exception (if any), associated
      * descriptor object. 
      */
-    private static class Result {
+    static class Result {
         /** Service proxy object, if any. */
         public final Object result;
 	/** Service creation exception, if any. */
@@ -235,7 +286,8 @@ public class ServiceStarter {
                         public Result[] run()
                             throws Exception
                         {
-                            return create(descs, config);
+                            return create(descs, config,
+                                loginContext.getSubject());
                         }
                      },
                      null);
@@ -260,6 +312,9 @@ public class ServiceStarter {
     *              the descriptors for the services to start. 
     * @param config The associated <code>Configuration</code> object
     *               used to customize the service creation process.
+    * @param subject The <code>Subject</code> to create the services as
+    *               when they are created by other threads, or
+    *               <code>null</code>.
     * @return Returns a <code>Result[]</code> that is the same length as 
     *         <code>descs</code>, which contains the details for each 
     *         service creation attempt.
@@ -268,36 +323,251 @@ public class ServiceStarter {
     * @see ServiceDescriptor
     * @see net.jini.config.Configuration
     */
-    private static Result[] create(final ServiceDescriptor[] descs, 
-        final Configuration config) 
+    static Result[] create(final ServiceDescriptor[] descs, 
+        final Configuration config, Subject subject) 
         throws Exception
     {
         logger.entering(ServiceStarter.class.getName(), "create", 
 	    new Object[] {descs, config});
-	ArrayList<Result> proxies = new ArrayList<Result>();
+	int threads = config.getEntry(START_PACKAGE,
+	    "startupThreads", int.class, Integer.valueOf(1)).intValue();
+	List<List<Integer>> deps = dependencies(descs, config);
+	List<Integer> order = order(deps);
+	long start = System.nanoTime();
+	Result[] results;
+	if (threads > 1 && descs.length > 1) {
+	    results = createConcurrently(descs, config, subject, threads,
+		deps, order);
+	} else {
+	    threads = 1;
+	    results = new Result[descs.length];
+	    for (Integer index : order) {
+		int i = index.intValue();
+		Result failed = dependencyFailure(i, descs, deps.get(i),
+		    results);
+		results[i] = failed != null ? failed
+		    : createOne(i, descs[i], config);
+	    }
+	}
+	logger.log(Level.INFO, "service.creation.total", new Object[] {
+	    Integer.valueOf(descs.length),
+	    Long.valueOf((System.nanoTime() - start) / 1000000L),
+	    Integer.valueOf(threads)});
+	    
+        logger.exiting(ServiceStarter.class.getName(), "create", results);
+        return results;
+    }
 
+    /**
+     * Creates the given descriptor, if not <code>null</code>, and logs the
+     * time taken.
+     */
+    private static Result createOne(int index, ServiceDescriptor desc,
+        Configuration config)
+    {
 	Object result = null;
 	Exception problem = null;
-        ServiceDescriptor desc = null;
-	for (int i=0; i < descs.length; i++) {
-	    desc = descs[i];
-	    result = null;
-	    problem = null;
+	if (desc != null) {
+	    StartupPhases phases = StartupPhases.begin();
 	    try {
-   	        if (desc != null) {
-		    result = desc.create(config);
-	        } 
+		result = desc.create(config);
 	    } catch (Exception e) {
-	        problem = e;
+		problem = e;
 	    } finally {
-	        proxies.add(new Result(desc, result, problem));
+		phases.end();
 	    }
+	    logger.log(Level.INFO, "service.creation.timing", new Object[] {
+		Integer.valueOf(index), Long.valueOf(phases.elapsed()),
+		phases});
 	}
-	    
-        logger.exiting(ServiceStarter.class.getName(), "create", proxies);
-        return proxies.toArray(new Result[proxies.size()]);
+	return new Result(desc, result, problem);
+    }
+
+    /**
+     * Returns, for each descriptor, the indexes of the descriptors it
+     * depends on: those listed in the <code>serviceDependencies</code>
+     * entry and, for a <code>SharedActivatableServiceDescriptor</code>,
+     * any <code>SharedActivationGroupDescriptor</code> for its group.
+     */
+    private static List<List<Integer>> dependencies(
+        ServiceDescriptor[] descs, Configuration config)
+        throws ConfigurationException
+    {
+	int[][] declared = config.getEntry(START_PACKAGE,
+	    "serviceDependencies", int[][].class, null);
+	List<List<Integer>> deps = new ArrayList<List<Integer>>(descs.length);
+	for (int i = 0; i < descs.length; i++) {
+	    List<Integer> d = new ArrayList<Integer>();
+	    if (declared != null && i < declared.length
+		&& declared[i] != null)
+	    {
+		for (int j : declared[i]) {
+		    if (j < 0 || j >= descs.length || j == i) {
+			throw new ConfigurationException(
+			    "invalid dependency of service descriptor " + i
+			    + ": " + j);
+		    }
+		    d.add(Integer.valueOf(j));
+		}
+	    }
+	    if (descs[i] instanceof SharedActivatableServiceDescriptor) {
+		String log = ((SharedActivatableServiceDescriptor) descs[i])
+		    .getSharedGroupLog();
+		for (int j = 0; j < descs.length; j++) {
+		    if (descs[j] instanceof SharedActivationGroupDescriptor &&
+			log.equals(((SharedActivationGroupDescriptor)
+			    descs[j]).getLog()))
+		    {
+			d.add(Integer.valueOf(j));
+		    }
+		}
+	    }
+	    deps.add(d);
+	}
+	return deps;
+    }
+
+    /**
+     * Creates the given descriptors on a pool of the given number of
+     * threads, each as soon as the descriptors it depends on have been
+     * created. The descriptors are submitted in the given order, which is
+     * consistent with their dependencies, so the pool never fills up with
+     * tasks waiting for tasks queued behind them.
+     */
+    private static Result[] createConcurrently(
+        final ServiceDescriptor[] descs, final Configuration config,
+        final Subject subject, int threads,
+        final List<List<Integer>> deps, List<Integer> order)
+        throws Exception
+    {
+	int n = descs.length;
+	final Result[] results = new Result[n];
+	final CountDownLatch[] done = new CountDownLatch[n];
+	for (int i = 0; i < n; i++) {
+	    done[i] = new CountDownLatch(1);
+	}
+	ExecutorService pool = Executors.newFixedThreadPool(
+	    Math.min(threads, n),
+	    new NamedThreadFactory("ServiceStarter", true));
+	List<Future<?>> futures = new ArrayList<Future<?>>(n);
+	try {
+	    for (final Integer index : order) {
+		final int i = index.intValue();
+		futures.add(pool.submit(new Runnable() {
+		    public void run() {
+			try {
+			    results[i] = createAfter(i, descs, config, subject,
+				deps.get(i), done, results);
+			} finally {
+			    done[i].countDown();
+			}
+		    }
+		}));
+	    }
+	    for (Future<?> f : futures) {
+		try {
+		    f.get();
+		} catch (ExecutionException e) {
+		    Throwable cause = e.getCause();
+		    if (cause instanceof Error) {
+			throw (Error) cause;
+		    }
+		    throw (Exception) cause;
+		}
+	    }
+	} finally {
+	    pool.shutdownNow();
+	}
+	return results;
+    }
+
+    /**
+     * Returns the indexes of the descriptors in array order, except that
+     * each follows the descriptors it depends on.
+     *
+     * @throws ConfigurationException if the dependencies form a cycle
+     */
+    private static List<Integer> order(List<List<Integer>> deps)
+        throws ConfigurationException
+    {
+	int n = deps.size();
+	List<Integer> order = new ArrayList<Integer>(n);
+	int[] state = new int[n]; // 0 unvisited, 1 visiting, 2 ordered
+	for (int i = 0; i < n; i++) {
+	    visit(i, deps, state, order);
+	}
+	return order;
+    }
+
+    /** Adds the given descriptor to order after its dependencies. */
+    private static void visit(int i, List<List<Integer>> deps, int[] state,
+        List<Integer> order)
+        throws ConfigurationException
+    {
+	if (state[i] == 2) {
+	    return;
+	} else if (state[i] == 1) {
+	    throw new ConfigurationException(
+		"cyclic dependency involving service descriptor " + i);
+	}
+	state[i] = 1;
+	for (Integer j : deps.get(i)) {
+	    visit(j.intValue(), deps, state, order);
+	}
+	state[i] = 2;
+	order.add(Integer.valueOf(i));
+    }
+
+    /**
+     * Waits for the dependencies of the given descriptor, then creates it
+     * as the given subject, unless a dependency was not created.
+     */
+    private static Result createAfter(final int i,
+        final ServiceDescriptor[] descs, final Configuration config,
+        Subject subject, List<Integer> deps, CountDownLatch[] done,
+        Result[] results)
+    {
+	for (Integer j : deps) {
+	    try {
+		done[j.intValue()].await();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		return new Result(descs[i], null, e);
+	    }
+	}
+	Result failed = dependencyFailure(i, descs, deps, results);
+	if (failed != null) {
+	    return failed;
+	} else if (subject == null) {
+	    return createOne(i, descs[i], config);
+	}
+	return Subject.doAsPrivileged(subject,
+	    new PrivilegedAction<Result>() {
+		public Result run() {
+		    return createOne(i, descs[i], config);
+		}
+	    },
+	    null);
     }
     
+    /**
+     * Returns the result for the given descriptor if one of the
+     * descriptors it depends on, all of which have been attempted, was
+     * not created, otherwise <code>null</code>.
+     */
+    private static Result dependencyFailure(int i, ServiceDescriptor[] descs,
+        List<Integer> deps, Result[] results)
+    {
+	for (Integer j : deps) {
+	    Result r = results[j.intValue()];
+	    if (r.exception != null || r.descriptor == null) {
+		return new Result(descs[i], null, new Exception(
+		    "service descriptor [" + j + "] was not created"));
+	    }
+	}
+	return null;
+    }
+
     /**
      * Utility routine that sets a security manager if one isn't already
      * present.
@@ -339,7 +609,7 @@ public class ServiceStarter {
 		Naming.lookup("//" + h + ":" + p +
 			      "/java.rmi.activation.ActivationSystem");
             ProxyPreparer activationSystemPreparer =
-		(ProxyPreparer) Config.getNonNullEntry(config,
+		Config.getNonNullEntry(config,
 		    START_PACKAGE, "activationSystemPreparer", 
 		    ProxyPreparer.class, new BasicProxyPreparer());
 	    sys = (ActivationSystem) activationSystemPreparer.prepareProxy(sys);
@@ -363,9 +633,9 @@ public class ServiceStarter {
      * @see java.rmi.activation.ActivationSystem
      */
     static int getActivationSystemPort() {
-        return ((Integer)java.security.AccessController.doPrivileged(
+        return java.security.AccessController.doPrivileged(
                     new GetIntegerAction("java.rmi.activation.port",
-                        ActivationSystem.SYSTEM_PORT))).intValue();
+                        ActivationSystem.SYSTEM_PORT)).intValue();
     }
     
     /**
@@ -429,21 +699,21 @@ public class ServiceStarter {
      */
     private static void processServiceDescriptors( Configuration config ) throws Exception
     {
-       ServiceDescriptor[] descs =  (ServiceDescriptor[])
+       ServiceDescriptor[] descs =
                config.getEntry(START_PACKAGE, "serviceDescriptors",
                    ServiceDescriptor[].class, null);
        if (descs == null || descs.length == 0) {
            logger.warning("service.config.empty");
            return;
        }
-       LoginContext loginContext =  (LoginContext)
+       LoginContext loginContext =
            config.getEntry(START_PACKAGE, "loginContext",
                LoginContext.class, null);
        Result[] results = null;
        if (loginContext != null)
            results = createWithLogin(descs, config, loginContext);
        else
-           results = create(descs, config);
+           results = create(descs, config, null);
        checkResultFailures(results);
        maintainNonActivatableReferences(results);
     }
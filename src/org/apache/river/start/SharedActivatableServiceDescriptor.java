@@ -632,8 +632,10 @@ public class SharedActivatableServiceDescriptor
             aid = ActivateWrapper.register(
 	        gid, adesc, getRestart(), sys);
             aid = (ActivationID) activationIDPreparer.prepareProxy(aid);
+            StartupPhases.mark("register");
 		
             proxy = aid.activate(true);
+            StartupPhases.mark("activate");
 
 	    if(proxy != null) {
                 synchronized (descCreatedLock){
@@ -666,6 +668,7 @@ public class SharedActivatableServiceDescriptor
 	    else 
 	        throw new RuntimeException("Unexpected Exception", e);
 	} 
+        StartupPhases.mark("proxy");
         created = new Created(gid, aid, proxy);
 	logger.exiting(SharedActivatableServiceDescriptor.class.getName(), 
 	    "create", created);
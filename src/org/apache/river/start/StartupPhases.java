@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.start;
+
+/**
+ * Phase timings for the creation of one service, reported by
+ * {@link ServiceStarter}. The service descriptors call {@link #mark mark}
+ * at the end of each phase of their <code>create</code> methods; the
+ * marks are recorded by the instance that the starter made current for
+ * the calling thread, so a descriptor created by other code records
+ * nothing.
+ */
+final class StartupPhases {
+
+    /** The instance recording marks for each thread, if any. */
+    private static final ThreadLocal<StartupPhases> current =
+	new ThreadLocal<StartupPhases>();
+
+    /** The time the creation started, in nanoseconds. */
+    private final long start = System.nanoTime();
+    /** The time of the most recent mark, in nanoseconds. */
+    private long last = start;
+    /** The phases marked so far, with their durations. */
+    private final StringBuilder phases = new StringBuilder();
+
+    private StartupPhases() { }
+
+    /**
+     * Returns a new instance, which records the marks made by the
+     * current thread until {@link #end end} is called.
+     */
+    static StartupPhases begin() {
+	StartupPhases p = new StartupPhases();
+	current.set(p);
+	return p;
+    }
+
+    /** Stops recording the marks made by the current thread. */
+    void end() {
+	current.remove();
+    }
+
+    /**
+     * Records the end of the named phase, which started at the previous
+     * mark (or when the creation started), if the current thread is
+     * recording marks.
+     */
+    static void mark(String phase) {
+	StartupPhases p = current.get();
+	if (p != null) {
+	    long now = System.nanoTime();
+	    if (p.phases.length() > 0) {
+		p.phases.append(", ");
+	    }
+	    p.phases.append(phase).append(' ')
+		.append(millis(now - p.last)).append(" ms");
+	    p.last = now;
+	}
+    }
+
+    /** Returns the time since the creation started, in milliseconds. */
+    long elapsed() {
+	return millis(System.nanoTime() - start);
+    }
+
+    private static long millis(long nanos) {
+	return nanos / 1000000L;
+    }
+
+    /**
+     * Returns the phases marked so far, with their durations, in
+     * parentheses, or an empty string if no phase was marked.
+     */
+    public String toString() {
+	return phases.length() == 0 ? "" : "(" + phases + ")";
+    }
+}
@@ -77,6 +77,22 @@ public final class GetThreadPoolAction implements PrivilegedAction<Executor> {
 	this.user = user;
     }
 
+    /**
+     * Returns true if the pools obtained by this action execute tasks on
+     * virtual threads, as enabled by the
+     * <code>org.apache.river.thread.virtualThreads</code> system property.
+     * This is false if the runtime does not support virtual threads, or a
+     * security manager was installed when the pools were created, since
+     * the pools then use platform threads.
+     * Tasks that block in ways that pin a virtual thread to its carrier for
+     * long periods should use a dedicated platform thread instead.
+     *
+     * @return true if tasks execute on virtual threads
+     */
+    public static boolean usesVirtualThreads() {
+	return systemThreadPool.isVirtual() || userThreadPool.isVirtual();
+    }
+
     public Executor run() {
         if (user){
             getUserThreadPoolPermission.checkGuard(this);
@@ -18,6 +18,8 @@
 
 package org.apache.river.thread;
 
+import org.apache.river.action.GetBooleanAction;
+import java.lang.reflect.Method;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.concurrent.ExecutorService;
@@ -43,6 +45,17 @@ import java.util.logging.Logger;
  * of the task it is currently executing, or "Idle" if it is currently
  * idle.
  *
+ * <p>If the <code>org.apache.river.thread.virtualThreads</code> system
+ * property is <code>true</code> and the runtime supports virtual threads,
+ * each task is instead executed on a new virtual thread, so that tasks
+ * that block for long periods, such as remote calls dispatched by JERI,
+ * do not each consume a platform thread.  Virtual threads are always
+ * daemon threads and do not belong to the thread group passed to the
+ * constructor.  Virtual threads have no permissions when a security
+ * manager is installed, so the property is ignored, and platform threads
+ * are used, if a security manager is installed when the pool is created.
+ * The default is <code>false</code>.
+ *
  * <p>This implementation uses the {@link Logger} named
  * <code>org.apache.river.thread.ThreadPool</code> to
  * log information at the following levels:
@@ -55,6 +68,10 @@ import java.util.logging.Logger;
  * <tr> <td> {@link Level#WARNING WARNING} <td> uncaught exception in
  * worker thread
  *
+ * <tr> <td> {@link Level#CONFIG CONFIG} <td> virtual threads requested
+ * but not supported by the runtime, or not used because a security
+ * manager is installed
+ *
  * </table>
  *
  * @author	Sun Microsystems, Inc.
@@ -63,6 +80,11 @@ final class ThreadPool implements Executor, java.util.concurrent.Executor {
 
     private static final Logger logger =
 	Logger.getLogger("org.apache.river.thread.ThreadPool");
+
+    /** true if tasks should be executed on virtual threads */
+    private static final boolean virtualThreads =
+	AccessController.doPrivileged(new GetBooleanAction(
+	    "org.apache.river.thread.virtualThreads")).booleanValue();
     
     /** 
      * This Executor is used by JERI (and other Jini implementation classes) 
@@ -93,9 +115,22 @@ final class ThreadPool implements Executor, java.util.concurrent.Executor {
      */
     private volatile boolean shutdown = false;
     private final ExecutorService es;
+    /** true if es executes tasks on virtual threads */
+    private final boolean virtual;
     
     ThreadPool(ThreadGroup threadGroup){
-        this(Executors.newCachedThreadPool(new TPThreadFactory(threadGroup))); // Final field freeze
+        this(threadGroup, virtualThreads);
+    }
+
+    /**
+     * Creates a pool whose threads are in the given thread group, or which
+     * executes tasks on virtual threads if <code>virtual</code> is true
+     * and virtual threads can be used.
+     */
+    ThreadPool(ThreadGroup threadGroup, boolean virtual){
+        // Final field freeze
+        this(virtual ? VirtualThreads.newExecutorService() : null,
+             threadGroup);
 //      Thread not started until after constructor completes
 //      this escaping occurs safely anyway because of final field freeze.
         AccessController.doPrivileged(new PrivilegedAction(){
@@ -108,8 +143,15 @@ final class ThreadPool implements Executor, java.util.concurrent.Executor {
         });
     }
  
-    private ThreadPool(ExecutorService es){
-        this.es = es;
+    private ThreadPool(ExecutorService virtualExecutor, ThreadGroup group){
+        virtual = virtualExecutor != null;
+        es = virtual ? virtualExecutor
+            : Executors.newCachedThreadPool(new TPThreadFactory(group));
+    }
+
+    /** Returns true if this pool executes tasks on virtual threads. */
+    boolean isVirtual() {
+        return virtual;
     }
     
     private Thread shutdownHook(){
@@ -195,6 +237,71 @@ final class ThreadPool implements Executor, java.util.concurrent.Executor {
         }
     }
     
+    /**
+     * Holds the virtual thread factory, obtained reflectively so that this
+     * class still runs on platforms without virtual threads, or null if
+     * virtual threads are not supported.
+     */
+    private static class VirtualThreads {
+        static final ThreadFactory factory = init();
+
+        private static ThreadFactory init() {
+            try {
+                Object builder =
+                    Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class)
+                    .invoke(builder, NewThreadAction.NAME_PREFIX + "idle");
+                final ThreadFactory vtf = (ThreadFactory)
+                    builderClass.getMethod("factory").invoke(builder);
+                return new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = vtf.newThread(r);
+                        t.setContextClassLoader(
+                            ClassLoader.getSystemClassLoader());
+                        return t;
+                    }
+                };
+            } catch (Exception e) {
+                if (logger.isLoggable(Level.CONFIG)) {
+                    logger.log(Level.CONFIG,
+                        "virtual threads not supported, using platform threads",
+                        e);
+                }
+                return null;
+            }
+        }
+
+        /**
+         * Returns an executor that starts a new virtual thread for each
+         * task, or null if one cannot be created or a security manager is
+         * installed.
+         */
+        static ExecutorService newExecutorService() {
+            if (System.getSecurityManager() != null) {
+                if (logger.isLoggable(Level.CONFIG)) {
+                    logger.log(Level.CONFIG,
+                        "virtual threads have no permissions under a "
+                        + "security manager, using platform threads");
+                }
+                return null;
+            }
+            if (factory == null) return null;
+            try {
+                Method m = Executors.class.getMethod(
+                    "newThreadPerTaskExecutor", ThreadFactory.class);
+                return (ExecutorService) m.invoke(null, factory);
+            } catch (Exception e) {
+                if (logger.isLoggable(Level.CONFIG)) {
+                    logger.log(Level.CONFIG,
+                        "virtual threads not supported, using platform threads",
+                        e);
+                }
+                return null;
+            }
+        }
+    }
+
     /**
      * Thread stack size hint given to jvm to minimise memory consumption
      * as this executor can create many threads, tasks executed are relatively
@@ -35,6 +35,8 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -44,6 +46,8 @@ import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -187,6 +191,9 @@ public class ClassServer extends Thread implements Startable {
     private final FilePermission[] perms;
     /** Life cycle control */
     private final LifeCycle lifeCycle;
+    /** Map from String (file or JAR entry) to its last computed EntityTag */
+    private final ConcurrentMap<String, EntityTag> tags =
+	new ConcurrentHashMap<String, EntityTag>();
 
     /**
      * Construct a server that does not support network shutdown.
@@ -518,8 +525,12 @@ public class ClassServer extends Thread implements Startable {
 	return path;
     }
 
-    /** Read the request/response and return the initial line. */
-    private static String getInput(Socket sock, boolean isRequest)
+    /**
+     * Read the request/response and return the initial line. If headers is
+     * not null, the remaining header lines are added to it.
+     */
+    private static String getInput(Socket sock, boolean isRequest,
+				   List<String> headers)
 	throws IOException
     {
 	BufferedInputStream in =
@@ -530,16 +541,95 @@ public class ClassServer extends Thread implements Startable {
 		return null;
 	} while (isRequest && buf.length() == 0);
 	String initial = buf.toString();
-	do {
+	while (true) {
 	    buf.setLength(0);
-	} while (readLine(in, buf) && buf.length() > 0);
+	    if (!readLine(in, buf) || buf.length() == 0)
+		break;
+	    if (headers != null)
+		headers.add(buf.toString());
+	}
 	return initial;
     }
 
+    /**
+     * An entity tag, together with the modification time and length of the
+     * content it was computed from.
+     */
+    private static final class EntityTag {
+	final long modified;
+	final long length;
+	final String tag;
+
+	EntityTag(long modified, long length, String tag) {
+	    this.modified = modified;
+	    this.length = length;
+	    this.tag = tag;
+	}
+    }
+
+    /**
+     * Returns the entity tag for the content of the named file or JAR entry,
+     * digesting the content only if the modification time or length differs
+     * from when the tag was last computed.
+     */
+    private String entityTag(String source, long modified, byte[] bytes) {
+	EntityTag t = tags.get(source);
+	if (t == null || t.modified != modified || t.length != bytes.length) {
+	    t = new EntityTag(modified, bytes.length, entityTag(bytes));
+	    tags.put(source, t);
+	}
+	return t.tag;
+    }
+
+    /**
+     * Returns a strong entity tag for the given content, so that clients
+     * that cache downloaded JAR files can revalidate them cheaply.
+     */
+    private static String entityTag(byte[] bytes) {
+	try {
+	    byte[] d = MessageDigest.getInstance("SHA-1").digest(bytes);
+	    StringBuilder sb = new StringBuilder(d.length * 2 + 2);
+	    sb.append('"');
+	    for (int i = 0; i < d.length; i++) {
+		sb.append(Character.forDigit((d[i] >> 4) & 0xf, 16));
+		sb.append(Character.forDigit(d[i] & 0xf, 16));
+	    }
+	    return sb.append('"').toString();
+	} catch (NoSuchAlgorithmException e) {
+	    return null;
+	}
+    }
+
+    /** Returns true if an If-None-Match header lists the entity tag. */
+    private static boolean matches(List<String> headers, String etag) {
+	if (etag == null)
+	    return false;
+	for (String h : headers) {
+	    int colon = h.indexOf(':');
+	    if (colon < 0 ||
+		!h.substring(0, colon).trim().equalsIgnoreCase("If-None-Match"))
+		continue;
+	    String value = h.substring(colon + 1).trim();
+	    if (value.equals("*"))
+		return true;
+	    StringTokenizer st = new StringTokenizer(value, ",");
+	    while (st.hasMoreTokens()) {
+		String t = st.nextToken().trim();
+		if (t.startsWith("W/"))
+		    t = t.substring(2);
+		if (t.equals(etag))
+		    return true;
+	    }
+	}
+	return false;
+    }
+
     /** Simple daemon task thread */
     private class Task extends Thread {
 	/** Socket for the incoming request */
 	private Socket sock;
+	/** Entity tag of the content last returned by getBytes, or null */
+	private String etag;
 
 	/** Simple constructor */
 	public Task(Socket sock) {
@@ -576,7 +666,10 @@ public class ClassServer extends Thread implements Startable {
 	    return path.substring(1);
 	}
 
-	/** Return the bytes of the requested file, or null if not found. */
+	/**
+	 * Return the bytes of the requested file, or null if not found, and
+	 * set etag to their entity tag.
+	 */
 	private byte[] getBytes(String path) throws IOException {
 	    if (map != null) {
 		int i = path.indexOf('/');
@@ -586,9 +679,13 @@ public class ClassServer extends Thread implements Startable {
 			String jpath = path.substring(i + 1);
 			for (i = 0; i < jfs.length; i++) {
 			    JarEntry je = jfs[i].getJarEntry(jpath);
-			    if (je != null)
-				return getBytes(jfs[i].getInputStream(je),
-						je.getSize());
+			    if (je != null) {
+				byte[] bytes = getBytes(
+				    jfs[i].getInputStream(je), je.getSize());
+				etag = entityTag(jfs[i].getName() + "!/" + jpath,
+						 je.getTime(), bytes);
+				return bytes;
+			    }
 			}
 		    }
 		}
@@ -601,7 +698,11 @@ public class ClassServer extends Thread implements Startable {
 		if (perms[i].implies(new FilePermission(f.getPath(), "read")))
 		{
 		    try {
-			return getBytes(new FileInputStream(f), f.length());
+			long modified = f.lastModified();
+			byte[] bytes =
+			    getBytes(new FileInputStream(f), f.length());
+			etag = entityTag(f.getPath(), modified, bytes);
+			return bytes;
 		    } catch (FileNotFoundException e) {
 		    }
 		}
@@ -615,8 +716,9 @@ public class ClassServer extends Thread implements Startable {
 		DataOutputStream out =
 		    new DataOutputStream(sock.getOutputStream());
 		String req;
+		List<String> headers = new ArrayList<String>();
 		try {
-		    req = getInput(sock, true);
+		    req = getInput(sock, true, headers);
 		} catch (Exception e) {
 		    if (verbose) {
 			print("classserver.inputerror",
@@ -715,8 +817,17 @@ public class ClassServer extends Thread implements Startable {
 		    out.flush();
 		    return;
 		}
+		if (matches(headers, etag)) {
+		    logger.log(Level.FINER, "{0} not modified", path);
+		    out.writeBytes("HTTP/1.0 304 Not Modified\r\n");
+		    out.writeBytes("ETag: " + etag + "\r\n\r\n");
+		    out.flush();
+		    return;
+		}
 		out.writeBytes("HTTP/1.0 200 OK\r\n");
 		out.writeBytes("Content-Length: " + bytes.length + "\r\n");
+		if (etag != null)
+		    out.writeBytes("ETag: " + etag + "\r\n");
 		out.writeBytes("Content-Type: application/java\r\n\r\n");
 		if (get)
 		    out.write(bytes);
@@ -875,7 +986,7 @@ public class ClassServer extends Thread implements Startable {
 			new DataOutputStream(sock.getOutputStream());
 		    out.writeBytes("SHUTDOWN *\r\n\r\n");
 		    out.flush();
-		    String status = getInput(sock, false);
+		    String status = getInput(sock, false, null);
 		    if (status != null && status.startsWith("HTTP/")) {
 			status = status.substring(status.indexOf(' ') + 1);
 			if (status.startsWith("403 ")) {
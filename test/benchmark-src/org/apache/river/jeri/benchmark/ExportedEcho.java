@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.jeri.benchmark;
+
+import java.security.Security;
+import net.jini.jeri.BasicILFactory;
+import net.jini.jeri.BasicJeriExporter;
+import net.jini.jeri.ServerEndpoint;
+import net.jini.jeri.http.HttpServerEndpoint;
+import net.jini.jeri.local.LocalServerEndpoint;
+import net.jini.jeri.ssl.SslServerEndpoint;
+import net.jini.jeri.tcp.TcpServerEndpoint;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmark state that exports an {@link Echo} service with
+ * <code>BasicJeriExporter</code> over one of several transports and holds
+ * a proxy for it. The state is shared by all benchmark threads, so all
+ * calls go through the same proxy and, up to the limit of 128 concurrent
+ * sessions per connection, through the same <code>Mux</code> connection.
+ *
+ * <p>The <code>transport</code> parameter selects the server endpoint:
+ * <ul>
+ * <li><code>tcp</code> - <code>TcpServerEndpoint</code>
+ * <li><code>http</code> - <code>HttpServerEndpoint</code>
+ * <li><code>ssl</code> - <code>SslServerEndpoint</code> with no server
+ * subject, which uses anonymous cipher suites
+ * <li><code>local</code> - <code>LocalServerEndpoint</code> delegating to
+ * a <code>TcpServerEndpoint</code>, so calls are short-circuited in
+ * process
+ * </ul>
+ * Kerberos is not included because it needs a KDC.
+ *
+ * <p>Distributed garbage collection is disabled, so that DGC calls do not
+ * disturb the measurements.
+ */
+@State(Scope.Benchmark)
+public class ExportedEcho {
+
+    private static final String DISABLED_ALGORITHMS =
+        "jdk.tls.disabledAlgorithms";
+
+    static class EchoImpl implements Echo {
+        public void ping() {
+        }
+        public byte[] echo(byte[] data) {
+            return data;
+        }
+    }
+
+    @Param({"tcp", "http", "ssl", "local"})
+    public String transport;
+
+    private BasicJeriExporter exporter;
+
+    /** the exported object, held strongly since DGC is disabled */
+    private EchoImpl impl;
+
+    /** the proxy for the exported service */
+    protected Echo proxy;
+
+    /** the disabled TLS algorithms to restore on teardown, or null */
+    private String disabledAlgorithms;
+
+    @Setup
+    public void export() throws Exception {
+        if (transport.equals("ssl")) {
+            /* Anonymous suites are disabled by default in recent JDKs. */
+            disabledAlgorithms = Security.getProperty(DISABLED_ALGORITHMS);
+            Security.setProperty(DISABLED_ALGORITHMS, "SSLv3, RC4");
+        }
+        exporter = new BasicJeriExporter(
+            getServerEndpoint(transport), new BasicILFactory(), false, false);
+        impl = new EchoImpl();
+        proxy = (Echo) exporter.export(impl);
+        proxy.ping();
+    }
+
+    @TearDown
+    public void unexport() {
+        exporter.unexport(true);
+        if (disabledAlgorithms != null) {
+            Security.setProperty(DISABLED_ALGORITHMS, disabledAlgorithms);
+            disabledAlgorithms = null;
+        }
+    }
+
+    static ServerEndpoint getServerEndpoint(String transport) {
+        if (transport.equals("tcp")) {
+            return TcpServerEndpoint.getInstance("localhost", 0);
+        } else if (transport.equals("http")) {
+            return HttpServerEndpoint.getInstance("localhost", 0);
+        } else if (transport.equals("ssl")) {
+            return SslServerEndpoint.getInstance("localhost", 0);
+        } else if (transport.equals("local")) {
+            return LocalServerEndpoint.getInstance(
+                TcpServerEndpoint.getInstance("localhost", 0));
+        }
+        throw new IllegalArgumentException("unknown transport: " + transport);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.jeri.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JERI benchmark suite: {@link NullCallBenchmark} and {@link
+ * PayloadBenchmark} on one thread, then {@link NullCallBenchmark} with 1
+ * to 256 client threads sharing one proxy. All runs use the JMH
+ * <code>gc</code> profiler, whose <code>gc.alloc.rate.norm</code> result
+ * is the number of bytes allocated per call on the client and server
+ * sides together.
+ *
+ * <p>Any arguments are parsed as JMH command line options and applied to
+ * every run, for example <code>-p transport=tcp,local -f 1</code>. To run
+ * a single benchmark with other settings, use <code>org.openjdk.jmh.Main</code>
+ * directly, for example:
+ * <pre>
+ * java -cp ... org.openjdk.jmh.Main NullCall -p transport=tcp -t 64 -prof gc
+ * </pre>
+ */
+public class JeriBenchmarks {
+
+    /** client thread counts for the concurrency runs */
+    private static final int[] THREADS = {1, 4, 16, 64, 256};
+
+    public static void main(String[] args)
+        throws RunnerException, CommandLineOptionException
+    {
+        Options cmd = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+            .parent(cmd)
+            .include(NullCallBenchmark.class.getName())
+            .include(PayloadBenchmark.class.getName())
+            .threads(1)
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+        for (int i = 1; i < THREADS.length; i++) {
+            new Runner(new OptionsBuilder()
+                .parent(cmd)
+                .include(NullCallBenchmark.class.getName())
+                .threads(THREADS[i])
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+        }
+    }
+}
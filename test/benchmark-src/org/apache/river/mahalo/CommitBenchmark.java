@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.mahalo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.jini.core.lease.Lease;
+import net.jini.core.transaction.Transaction;
+import net.jini.core.transaction.TransactionFactory;
+import net.jini.core.transaction.server.ServerTransaction;
+import net.jini.core.transaction.server.TransactionManager;
+import net.jini.core.transaction.server.TransactionParticipant;
+import net.jini.jeri.BasicILFactory;
+import net.jini.jeri.BasicJeriExporter;
+import net.jini.jeri.tcp.TcpServerEndpoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the create/join/commit throughput of the transaction manager
+ * on the commit paths that are optimized for common workloads:
+ * <ul>
+ * <li>a single participant, committed with <code>prepareAndCommit</code>
+ * <li>several participants that all vote <code>PREPARED</code>
+ * <li>several participants that all vote <code>NOTCHANGED</code>
+ * </ul>
+ * Participants are trivial services exported in the same JVM, so the
+ * figures reflect the manager's own overhead rather than participant work.
+ *
+ * <p>The <code>log</code> parameter compares a transient manager, which
+ * logs in memory, with a persistent one, which logs to a temporary
+ * directory. The manager joins no lookup groups.
+ *
+ * <p>This benchmark is in the <code>org.apache.river.mahalo</code>
+ * package because the manager's constructors are package private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CommitBenchmark {
+
+    private static final long CRASH_COUNT = 1;
+
+    static class Participant implements TransactionParticipant {
+        private final int vote;
+
+        Participant(int vote) {
+            this.vote = vote;
+        }
+        public int prepare(TransactionManager mgr, long id) {
+            return vote;
+        }
+        public void commit(TransactionManager mgr, long id) {
+        }
+        public void abort(TransactionManager mgr, long id) {
+        }
+        public int prepareAndCommit(TransactionManager mgr, long id) {
+            return vote == PREPARED ? COMMITTED : vote;
+        }
+    }
+
+    @Param({"1", "5"})
+    public int participants;
+
+    @Param({"PREPARED", "NOTCHANGED"})
+    public String vote;
+
+    @Param({"transient", "persistent"})
+    public String log;
+
+    private TxnManagerImpl impl;
+
+    private TransactionManager mgr;
+
+    private BasicJeriExporter[] exporters;
+
+    /** the exported participants, held strongly since DGC is disabled */
+    private Participant[] parts;
+
+    /** the participant proxies joined to each transaction */
+    private TransactionParticipant[] proxies;
+
+    @Setup
+    public void start() throws Exception {
+        boolean persistent = log.equals("persistent");
+        List<String> args = new ArrayList<String>();
+        args.add("-");
+        args.add(TxnManager.MAHALO + ".initialLookupGroups=new String[] {}");
+        if (persistent) {
+            File dir = File.createTempFile("mahalo", "log");
+            dir.delete();
+            args.add(TxnManager.MAHALO + ".persistenceDirectory=\""
+                + dir.getPath().replace("\\", "\\\\") + '"');
+        }
+        impl = new TxnManagerImpl(
+            args.toArray(new String[args.size()]), null, persistent);
+        impl.start();
+        mgr = (TransactionManager) impl.getServiceProxy();
+
+        int v = vote.equals("PREPARED") ?
+            TransactionParticipant.PREPARED :
+            TransactionParticipant.NOTCHANGED;
+        exporters = new BasicJeriExporter[participants];
+        parts = new Participant[participants];
+        proxies = new TransactionParticipant[participants];
+        for (int i = 0; i < participants; i++) {
+            exporters[i] = new BasicJeriExporter(
+                TcpServerEndpoint.getInstance("localhost", 0),
+                new BasicILFactory(), false, false);
+            parts[i] = new Participant(v);
+            proxies[i] = (TransactionParticipant) exporters[i].export(parts[i]);
+        }
+        commit();
+    }
+
+    @TearDown
+    public void stop() {
+        for (int i = 0; i < exporters.length; i++) {
+            if (exporters[i] != null) {
+                exporters[i].unexport(true);
+            }
+        }
+        impl.destroy();
+    }
+
+    @Benchmark
+    public void commit() throws Exception {
+        Transaction.Created cr = TransactionFactory.create(mgr, Lease.FOREVER);
+        ServerTransaction txn = (ServerTransaction) cr.transaction;
+        for (int i = 0; i < proxies.length; i++) {
+            txn.join(proxies[i], CRASH_COUNT);
+        }
+        txn.commit();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import net.jini.core.lookup.ServiceID;
+import net.jini.id.Uuid;
+import net.jini.id.UuidFactory;
+import net.jini.io.context.CompactClassDescriptors;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CoreClassTableTest {
+
+    static class Holder implements Serializable {
+        private static final long serialVersionUID = 1L;
+        Uuid uuid;
+        ServiceID serviceID;
+        List<Object> values = new ArrayList<Object>();
+    }
+
+    private static final Collection COMPACT = Collections.singletonList(
+        new CompactClassDescriptors() {
+            public boolean compactClassDescriptors() {
+                return true;
+            }
+        });
+
+    private static byte[] marshal(Object obj, Collection context)
+        throws Exception
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        MarshalOutputStream out = new MarshalOutputStream(bout, context);
+        out.writeObject(obj);
+        out.close();
+        return bout.toByteArray();
+    }
+
+    private static Object unmarshal(byte[] bytes, Collection context)
+        throws Exception
+    {
+        MarshalInputStream in = new MarshalInputStream(
+            new ByteArrayInputStream(bytes),
+            CoreClassTableTest.class.getClassLoader(),
+            false, null, context);
+        in.useCodebaseAnnotations();
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Holder holder() {
+        Holder h = new Holder();
+        h.uuid = UuidFactory.generate();
+        h.serviceID = new ServiceID(1L, 2L);
+        h.values.add(Long.valueOf(3L));
+        h.values.add(Integer.valueOf(4));
+        h.values.add(new byte[] { 5 });
+        return h;
+    }
+
+    @Test
+    public void compactRoundTrip() throws Exception {
+        Holder h = holder();
+        Holder copy = (Holder) unmarshal(marshal(h, COMPACT), COMPACT);
+        assertEquals(h.uuid, copy.uuid);
+        assertEquals(h.serviceID, copy.serviceID);
+        assertEquals(h.values.get(0), copy.values.get(0));
+        assertEquals(h.values.get(1), copy.values.get(1));
+        assertArrayEquals((byte[]) h.values.get(2),
+                          (byte[]) copy.values.get(2));
+    }
+
+    @Test
+    public void compactIsSmaller() throws Exception {
+        Holder h = holder();
+        int full = marshal(h, Collections.EMPTY_LIST).length;
+        int compact = marshal(h, COMPACT).length;
+        assertTrue(compact + " >= " + full, compact < full);
+        assertEquals(h.uuid,
+            ((Holder) unmarshal(marshal(h, Collections.EMPTY_LIST),
+                                Collections.EMPTY_LIST)).uuid);
+    }
+
+    @Test
+    public void disabledElementLeavesStandardFormat() throws Exception {
+        Collection off = Collections.singletonList(
+            new CompactClassDescriptors() {
+                public boolean compactClassDescriptors() {
+                    return false;
+                }
+            });
+        Holder h = holder();
+        assertArrayEquals(marshal(h, Collections.EMPTY_LIST),
+                          marshal(h, off));
+    }
+}
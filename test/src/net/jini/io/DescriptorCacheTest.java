@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DescriptorCacheTest {
+
+    static class Value implements Serializable {
+        private static final long serialVersionUID = 1L;
+        String name;
+        int count;
+
+        Value(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+    }
+
+    private static byte[] marshal(Object obj, DescriptorCache cache)
+        throws Exception
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        MarshalOutputStream out = new MarshalOutputStream(
+            bout, Collections.singletonList(cache));
+        out.writeObject(obj);
+        out.close();
+        return bout.toByteArray();
+    }
+
+    private static Object unmarshal(byte[] bytes, DescriptorCache cache)
+        throws Exception
+    {
+        Collection context = Collections.singletonList(cache);
+        MarshalInputStream in = new MarshalInputStream(
+            new ByteArrayInputStream(bytes),
+            DescriptorCacheTest.class.getClassLoader(),
+            false, null, context);
+        in.useCodebaseAnnotations();
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void confirmedDescriptorsAreReferenced() throws Exception {
+        DescriptorCache client = new DescriptorCache();
+        DescriptorCache server = new DescriptorCache();
+        byte[] first = marshal(new Value("a", 1), client);
+        assertEquals(1, ((Value) unmarshal(first, server)).count);
+        /* the response carries the server's acknowledgments */
+        assertNull(unmarshal(marshal(null, server), client));
+        byte[] second = marshal(new Value("b", 2), client);
+        assertTrue(second.length < first.length);
+        Value v = (Value) unmarshal(second, server);
+        assertEquals("b", v.name);
+        assertEquals(2, v.count);
+    }
+
+    @Test
+    public void unconfirmedDescriptorsAreRedefined() throws Exception {
+        DescriptorCache client = new DescriptorCache();
+        DescriptorCache server = new DescriptorCache();
+        byte[] lost = marshal(new Value("a", 1), client);
+        byte[] second = marshal(new Value("b", 2), client);
+        assertEquals(lost.length, second.length);
+        assertEquals(2, ((Value) unmarshal(second, server)).count);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ResolvedClassCacheTest {
+
+    static class Item implements Serializable {
+        private static final long serialVersionUID = 1L;
+        int value;
+    }
+
+    interface Marker {
+    }
+
+    static class Handler implements InvocationHandler, Serializable {
+        private static final long serialVersionUID = 1L;
+        public Object invoke(Object proxy, Method m, Object[] args) {
+            return null;
+        }
+    }
+
+    private static byte[] marshal(Object obj) throws Exception {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        MarshalOutputStream out =
+            new MarshalOutputStream(bout, Collections.EMPTY_LIST);
+        out.writeObject(obj);
+        out.close();
+        return bout.toByteArray();
+    }
+
+    private static Object unmarshal(byte[] bytes) throws Exception {
+        MarshalInputStream in = new MarshalInputStream(
+            new ByteArrayInputStream(bytes),
+            ResolvedClassCacheTest.class.getClassLoader(),
+            false, null, Collections.EMPTY_LIST);
+        in.useCodebaseAnnotations();
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void repeatedResolutionHitsGlobalCache() throws Exception {
+        byte[] bytes = marshal(new Item());
+        ResolveClassStats stats = ResolveClassStats.getInstance();
+        unmarshal(bytes);
+        long hits = stats.getGlobalHits();
+        long misses = stats.getMisses();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Item.class, unmarshal(bytes).getClass());
+        }
+        assertEquals(hits + 10, stats.getGlobalHits());
+        assertEquals(misses, stats.getMisses());
+    }
+
+    @Test
+    public void proxyClassesAreCached() throws Exception {
+        Object proxy = Proxy.newProxyInstance(
+            Marker.class.getClassLoader(), new Class[] { Marker.class },
+            new Handler());
+        byte[] bytes = marshal(proxy);
+        ResolveClassStats stats = ResolveClassStats.getInstance();
+        unmarshal(bytes);
+        long misses = stats.getMisses();
+        assertSame(proxy.getClass(), unmarshal(bytes).getClass());
+        assertEquals(misses, stats.getMisses());
+    }
+
+    @Test
+    public void contextLoaderIsPartOfKey() throws Exception {
+        byte[] bytes = marshal(new Item());
+        unmarshal(bytes);
+        ResolveClassStats stats = ResolveClassStats.getInstance();
+        Thread t = Thread.currentThread();
+        ClassLoader saved = t.getContextClassLoader();
+        t.setContextClassLoader(new URLClassLoader(new URL[0], saved));
+        try {
+            long misses = stats.getMisses();
+            assertEquals(Item.class, unmarshal(bytes).getClass());
+            assertEquals(misses + 1, stats.getMisses());
+        } finally {
+            t.setContextClassLoader(saved);
+        }
+    }
+
+    @Test
+    public void cachedClassDoesNotPinLoader() throws Exception {
+        URL classes = ResolvedClassCacheTest.class.getProtectionDomain()
+            .getCodeSource().getLocation();
+        ClassLoader loader = new URLClassLoader(new URL[] { classes }, null);
+        Class c = loader.loadClass(Item.class.getName());
+        ResolvedClassCache.Key key = ResolvedClassCache.key(c.getName(),
+            false, classes.toString(), loader, false, null);
+        ResolvedClassCache.put(key, c);
+        assertSame(c, ResolvedClassCache.get(ResolvedClassCache.key(
+            c.getName(), false, classes.toString(), loader, false, null)));
+        WeakReference<ClassLoader> ref = new WeakReference<ClassLoader>(loader);
+        loader = null;
+        c = null;
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(ref.get());
+    }
+}
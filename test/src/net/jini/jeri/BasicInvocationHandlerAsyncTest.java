@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.jini.jeri;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.security.AccessController;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.security.auth.Subject;
+import javax.security.auth.x500.X500Principal;
+import net.jini.core.constraint.InvocationConstraints;
+import net.jini.jeri.tcp.TcpServerEndpoint;
+import org.apache.river.thread.FutureObserver;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link BasicInvocationHandler#invokeAsync}.
+ */
+public class BasicInvocationHandlerAsyncTest {
+
+    public interface Service extends Remote {
+        String echo(String s) throws RemoteException;
+        void fail(String message) throws RemoteException;
+        String await(String s) throws RemoteException, InterruptedException;
+    }
+
+    static class ServiceImpl implements Service {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        public String echo(String s) {
+            return s;
+        }
+
+        public void fail(String message) {
+            throw new IllegalStateException(message);
+        }
+
+        public String await(String s) throws InterruptedException {
+            release.await(30, TimeUnit.SECONDS);
+            return s;
+        }
+    }
+
+    private static ServiceImpl impl;
+    private static BasicJeriExporter exporter;
+    private static Service proxy;
+    private static BasicInvocationHandler handler;
+
+    @BeforeClass
+    public static void export() throws Exception {
+        impl = new ServiceImpl();
+        exporter = new BasicJeriExporter(
+            TcpServerEndpoint.getInstance("localhost", 0),
+            new BasicILFactory());
+        proxy = (Service) exporter.export(impl);
+        handler = (BasicInvocationHandler) Proxy.getInvocationHandler(proxy);
+    }
+
+    @AfterClass
+    public static void unexport() {
+        impl.release.countDown();
+        exporter.unexport(true);
+    }
+
+    private static Method method(String name) throws Exception {
+        for (Method m : Service.class.getMethods()) {
+            if (m.getName().equals(name)) return m;
+        }
+        throw new NoSuchMethodException(name);
+    }
+
+    @Test
+    public void returnValues() throws Exception {
+        Method echo = method("echo");
+        List<Future<Object>> results = new ArrayList<Future<Object>>();
+        for (int i = 0; i < 200; i++) {
+            results.add(handler.invokeAsync(proxy, echo,
+                                            new Object[] { "call-" + i }));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals("call-" + i, results.get(i).get(30, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void remoteException() throws Exception {
+        Future<Object> f = handler.invokeAsync(proxy, method("fail"),
+                                               new Object[] { "boom" });
+        try {
+            f.get(30, TimeUnit.SECONDS);
+            fail("expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals("boom", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void localMethod() throws Exception {
+        Future<Object> f = handler.invokeAsync(proxy,
+            Object.class.getMethod("hashCode"), null);
+        assertTrue(f.isDone());
+        assertEquals(Integer.valueOf(handler.hashCode()), f.get());
+    }
+
+    @Test
+    public void observerAndCancel() throws Exception {
+        InvocationFuture f = handler.invokeAsync(proxy, method("await"),
+                                                 new Object[] { "late" });
+        final CountDownLatch observed = new CountDownLatch(1);
+        f.addObserver(new FutureObserver<Object>() {
+            public void futureCompleted(Future<Object> e) {
+                observed.countDown();
+            }
+        });
+        assertFalse(f.isDone());
+        assertTrue(f.cancel(false));
+        assertTrue(observed.await(30, TimeUnit.SECONDS));
+        assertTrue(f.isCancelled());
+        /* the connection remains usable for other calls */
+        assertEquals("after", handler.invokeAsync(proxy, method("echo"),
+            new Object[] { "after" }).get(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void retryKeepsCallerSubject() throws Exception {
+        final RetryEndpoint oe = new RetryEndpoint(handler.getObjectEndpoint());
+        final BasicInvocationHandler retrying =
+            new BasicInvocationHandler(oe, null);
+        final Object retryProxy = Proxy.newProxyInstance(
+            Service.class.getClassLoader(), new Class<?>[] { Service.class },
+            retrying);
+        Subject subject = new Subject();
+        subject.getPrincipals().add(new X500Principal("CN=caller"));
+        final Method echo = method("echo");
+        Future<Object> f = Subject.doAs(subject,
+            new PrivilegedExceptionAction<Future<Object>>() {
+                public Future<Object> run() {
+                    return retrying.invokeAsync(retryProxy, echo,
+                                                new Object[] { "retried" });
+                }
+            });
+        assertEquals("retried", f.get(30, TimeUnit.SECONDS));
+        assertEquals(2, oe.subjects.size());
+        assertSame(subject, oe.subjects.get(0));
+        assertSame(subject, oe.subjects.get(1));
+    }
+
+    /**
+     * Object endpoint whose first request fails while the response is
+     * read, in a way that is safe to retry, and whose second request
+     * goes to the exported service.  Records the subject in effect
+     * each time a request is created.
+     */
+    static class RetryEndpoint implements ObjectEndpoint {
+        final ObjectEndpoint oe;
+        final List<Subject> subjects =
+            Collections.synchronizedList(new ArrayList<Subject>());
+
+        RetryEndpoint(ObjectEndpoint oe) {
+            this.oe = oe;
+        }
+
+        public OutboundRequestIterator newCall(
+            final InvocationConstraints constraints)
+        {
+            return new OutboundRequestIterator() {
+                private int attempts;
+
+                public boolean hasNext() {
+                    return attempts < 2;
+                }
+
+                public OutboundRequest next() throws IOException {
+                    subjects.add(Subject.getSubject(
+                        AccessController.getContext()));
+                    if (attempts++ == 0) {
+                        return new FailingRequest();
+                    }
+                    return oe.newCall(constraints).next();
+                }
+            };
+        }
+
+        public RemoteException executeCall(OutboundRequest call)
+            throws IOException
+        {
+            return call instanceof FailingRequest
+                ? null : oe.executeCall(call);
+        }
+    }
+
+    /**
+     * Request that is never delivered and whose response cannot be
+     * read.
+     */
+    static class FailingRequest implements OutboundRequest {
+        public void populateContext(Collection context) {
+        }
+
+        public InvocationConstraints getUnfulfilledConstraints() {
+            return InvocationConstraints.EMPTY;
+        }
+
+        public OutputStream getRequestOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+        public InputStream getResponseInputStream() {
+            return new InputStream() {
+                public int read() throws IOException {
+                    throw new IOException("connection reset");
+                }
+            };
+        }
+
+        public boolean getDeliveryStatus() {
+            return false;
+        }
+
+        public void abort() {
+        }
+    }
+}
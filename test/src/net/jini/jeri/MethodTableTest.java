@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.jini.jeri;
+
+import java.lang.reflect.Method;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MethodTableTest {
+
+    interface Service extends Remote {
+        void a() throws RemoteException;
+        void b() throws RemoteException;
+        void c(int x) throws RemoteException;
+    }
+
+    @Test
+    public void lookupByHashAndIdentity() throws Exception {
+        Method[] m = Service.class.getDeclaredMethods();
+        long[] hashes = new long[m.length];
+        Object[] values = new Object[m.length];
+        for (int i = 0; i < m.length; i++) {
+            hashes[i] = (i + 1) * 0x100000000L; // same low and high words
+            values[i] = m[i].getName();
+        }
+        MethodTable t = new MethodTable(m, hashes, values);
+        assertEquals(m.length, t.size());
+        for (int i = 0; i < m.length; i++) {
+            assertEquals(i, t.indexOf(hashes[i]));
+            assertEquals(i, t.indexOf(m[i]));
+            assertEquals(m[i].getName(), t.value(t.indexOf(m[i])));
+        }
+        assertEquals(-1, t.indexOf(0L));
+        /* an equal but distinct method instance is not found */
+        assertEquals(-1, t.indexOf(Service.class.getMethod("a")));
+    }
+
+    @Test
+    public void duplicateHashLastWins() throws Exception {
+        Method a = Service.class.getMethod("a");
+        Method b = Service.class.getMethod("b");
+        MethodTable t = MethodTable.EMPTY.with(a, 42L, "a").with(b, 42L, "b");
+        assertEquals(2, t.size());
+        assertSame(b, t.method(t.indexOf(42L)));
+        assertEquals("a", t.value(t.indexOf(a)));
+        assertEquals(-1, MethodTable.EMPTY.indexOf(a));
+    }
+
+    @Test
+    public void growsBeyondInitialCapacity() throws Exception {
+        MethodTable t = MethodTable.EMPTY;
+        Method[] m = new Method[100];
+        for (int i = 0; i < m.length; i++) {
+            m[i] = Service.class.getMethod("c", int.class);
+            t = t.with(m[i], i * 31L, Integer.valueOf(i));
+        }
+        for (int i = 0; i < m.length; i++) {
+            assertEquals(i, t.indexOf(m[i]));
+            assertEquals(Integer.valueOf(i), t.value(t.indexOf(i * 31L)));
+        }
+    }
+}
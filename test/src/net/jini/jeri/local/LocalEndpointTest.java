@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.jini.jeri.local;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import java.net.Socket;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.SocketFactory;
+import net.jini.jeri.BasicILFactory;
+import net.jini.jeri.BasicInvocationHandler;
+import net.jini.jeri.BasicJeriExporter;
+import net.jini.jeri.BasicObjectEndpoint;
+import net.jini.jeri.tcp.TcpServerEndpoint;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests calls through a <code>LocalServerEndpoint</code> from the
+ * virtual machine that exported the remote object.
+ */
+public class LocalEndpointTest {
+
+    public interface Service extends Remote {
+        Value echo(Value v) throws RemoteException;
+        void fail(String message) throws RemoteException;
+    }
+
+    public static class Value implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final String s;
+        Value(String s) { this.s = s; }
+    }
+
+    static class ServiceImpl implements Service {
+        public Value echo(Value v) {
+            return new Value(v.s);
+        }
+        public void fail(String message) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    /** counts the sockets created by clients of the delegate */
+    public static class CountingSocketFactory extends SocketFactory
+        implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+        static final AtomicInteger created = new AtomicInteger();
+
+        public Socket createSocket() {
+            created.incrementAndGet();
+            return new Socket();
+        }
+        public Socket createSocket(String host, int port) throws IOException {
+            created.incrementAndGet();
+            return new Socket(host, port);
+        }
+        public Socket createSocket(String host, int port,
+                                   java.net.InetAddress localHost,
+                                   int localPort) throws IOException
+        {
+            created.incrementAndGet();
+            return new Socket(host, port, localHost, localPort);
+        }
+        public Socket createSocket(java.net.InetAddress host, int port)
+            throws IOException
+        {
+            created.incrementAndGet();
+            return new Socket(host, port);
+        }
+        public Socket createSocket(java.net.InetAddress address, int port,
+                                   java.net.InetAddress localAddress,
+                                   int localPort) throws IOException
+        {
+            created.incrementAndGet();
+            return new Socket(address, port, localAddress, localPort);
+        }
+        public boolean equals(Object obj) {
+            return obj instanceof CountingSocketFactory;
+        }
+        public int hashCode() {
+            return CountingSocketFactory.class.hashCode();
+        }
+    }
+
+    private static ServiceImpl impl, classImpl;
+    private static BasicJeriExporter exporter, classExporter;
+    private static Service proxy, classProxy;
+
+    @BeforeClass
+    public static void export() throws Exception {
+        TcpServerEndpoint tcp = TcpServerEndpoint.getInstance(
+            "localhost", 0, new CountingSocketFactory(), null);
+        impl = new ServiceImpl();
+        exporter = new BasicJeriExporter(
+            LocalServerEndpoint.getInstance(tcp), new BasicILFactory());
+        proxy = (Service) exporter.export(impl);
+        classImpl = new ServiceImpl();
+        classExporter = new BasicJeriExporter(
+            LocalServerEndpoint.getInstance(tcp, true), new BasicILFactory());
+        classProxy = (Service) classExporter.export(classImpl);
+    }
+
+    @AfterClass
+    public static void unexport() {
+        exporter.unexport(true);
+        classExporter.unexport(true);
+    }
+
+    private static LocalEndpoint endpoint(Service s) {
+        BasicInvocationHandler h =
+            (BasicInvocationHandler) Proxy.getInvocationHandler(s);
+        return (LocalEndpoint)
+            ((BasicObjectEndpoint) h.getObjectEndpoint()).getEndpoint();
+    }
+
+    @Test
+    public void callsBypassTransport() throws Exception {
+        int before = CountingSocketFactory.created.get();
+        for (int i = 0; i < 50; i++) {
+            assertEquals("call-" + i, proxy.echo(new Value("call-" + i)).s);
+            assertEquals("pass-" + i,
+                         classProxy.echo(new Value("pass-" + i)).s);
+        }
+        assertEquals(before, CountingSocketFactory.created.get());
+    }
+
+    @Test
+    public void argumentsAreCopied() throws Exception {
+        Value v = new Value("copy");
+        assertNotSame(v, proxy.echo(v));
+        assertNotSame(v, classProxy.echo(v));
+    }
+
+    @Test
+    public void exceptionsPropagate() throws Exception {
+        try {
+            proxy.fail("boom");
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("boom", e.getMessage());
+        }
+    }
+
+    @Test
+    public void asyncInvocation() throws Exception {
+        BasicInvocationHandler h =
+            (BasicInvocationHandler) Proxy.getInvocationHandler(proxy);
+        Object result = h.invokeAsync(proxy,
+            Service.class.getMethod("echo", Value.class),
+            new Object[] { new Value("async") }).get(30, TimeUnit.SECONDS);
+        assertEquals("async", ((Value) result).s);
+    }
+
+    @Test
+    public void endpointSerialization() throws Exception {
+        LocalEndpoint ep = endpoint(proxy);
+        assertFalse(ep.getPassClasses());
+        assertTrue(endpoint(classProxy).getPassClasses());
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bout);
+        out.writeObject(ep);
+        out.close();
+        Object copy = new ObjectInputStream(
+            new ByteArrayInputStream(bout.toByteArray())).readObject();
+        assertEquals(ep, copy);
+        assertTrue(ep.checkTrustEquivalence(copy));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.jini.jeri.ssl;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import net.jini.jeri.BasicILFactory;
+import net.jini.jeri.BasicJeriExporter;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests remote calls through <code>SslEndpoint</code> and
+ * <code>SslServerEndpoint</code> connections secured with an
+ * <code>SSLEngine</code> and multiplexed with non-blocking channels.
+ */
+public class SslEndpointNonBlockingTest {
+
+    public interface Echo extends Remote {
+        String echo(String s) throws RemoteException;
+    }
+
+    static class EchoImpl implements Echo {
+        public String echo(String s) {
+            return s;
+        }
+    }
+
+    private static final String DISABLED_ALGORITHMS =
+        "jdk.tls.disabledAlgorithms";
+
+    private static final String NON_BLOCKING =
+        "org.apache.river.jeri.ssl.nonBlocking";
+
+    private static BasicJeriExporter exporter;
+    private static EchoImpl impl;
+    private static Echo proxy;
+
+    /** the properties to restore once the tests are done */
+    private static String disabledAlgorithms;
+    private static String nonBlocking;
+
+    /** the threads that were running before the tests started */
+    private static Set<Thread> existingThreads;
+
+    @BeforeClass
+    public static void export() throws Exception {
+        existingThreads =
+            new HashSet<Thread>(Thread.getAllStackTraces().keySet());
+        /* Anonymous endpoints need the anon suites the JDK disables. */
+        disabledAlgorithms = Security.getProperty(DISABLED_ALGORITHMS);
+        Security.setProperty(DISABLED_ALGORITHMS, "SSLv3, RC4");
+        nonBlocking = System.setProperty(NON_BLOCKING, "true");
+        exporter = new BasicJeriExporter(
+            SslServerEndpoint.getInstance("localhost", 0),
+            new BasicILFactory());
+        impl = new EchoImpl();
+        proxy = (Echo) exporter.export(impl);
+    }
+
+    @AfterClass
+    public static void unexport() {
+        try {
+            exporter.unexport(true);
+        } finally {
+            if (disabledAlgorithms != null) {
+                Security.setProperty(DISABLED_ALGORITHMS, disabledAlgorithms);
+            }
+            if (nonBlocking == null) {
+                System.clearProperty(NON_BLOCKING);
+            } else {
+                System.setProperty(NON_BLOCKING, nonBlocking);
+            }
+        }
+    }
+
+    @Test
+    public void call() throws Exception {
+        assertEquals("hello", proxy.echo("hello"));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) sb.append((char) ('a' + i % 26));
+        String large = sb.toString();
+        assertEquals(large, proxy.echo(large));
+    }
+
+    @Test
+    public void noStreamThreads() throws Exception {
+        proxy.echo("warm up");
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (existingThreads.contains(t)) continue;
+            String name = t.getName();
+            assertFalse(name, name.indexOf("mux reader") >= 0);
+        }
+    }
+
+    @Test
+    public void concurrentCalls() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 200; i++) {
+                final String s = "call-" + i;
+                results.add(pool.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return proxy.echo(s);
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals("call-" + i, results.get(i).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
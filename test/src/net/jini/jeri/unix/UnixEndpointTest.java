@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.jini.jeri.unix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import net.jini.core.constraint.InvocationConstraints;
+import net.jini.jeri.Endpoint;
+import net.jini.jeri.InboundRequest;
+import net.jini.jeri.OutboundRequest;
+import net.jini.jeri.OutboundRequestIterator;
+import net.jini.jeri.RequestDispatcher;
+import net.jini.jeri.ServerEndpoint.ListenContext;
+import net.jini.jeri.ServerEndpoint.ListenCookie;
+import net.jini.jeri.ServerEndpoint.ListenEndpoint;
+import net.jini.jeri.ServerEndpoint.ListenHandle;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests request round trips through a <code>UnixServerEndpoint</code>.
+ * Skipped on platforms without Unix domain socket support.
+ */
+public class UnixEndpointTest {
+
+    static class EchoDispatcher implements RequestDispatcher {
+        public void dispatch(InboundRequest request) {
+            try {
+                InputStream in = request.getRequestInputStream();
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    data.write(buf, 0, n);
+                }
+                OutputStream out = request.getResponseOutputStream();
+                data.writeTo(out);
+                out.close();
+            } catch (IOException e) {
+                request.abort();
+            }
+        }
+    }
+
+    private File path;
+    private ListenHandle handle;
+
+    @Before
+    public void listen() throws Exception {
+        Assume.assumeTrue(UnixSockets.isSupported());
+        path = File.createTempFile("jeri", ".sock");
+        path.delete();
+    }
+
+    @After
+    public void close() {
+        if (handle != null) {
+            handle.close();
+        }
+    }
+
+    private Endpoint export() throws IOException {
+        UnixServerEndpoint se =
+            UnixServerEndpoint.getInstance(path.getPath());
+        return se.enumerateListenEndpoints(new ListenContext() {
+            public ListenCookie addListenEndpoint(ListenEndpoint le)
+                throws IOException
+            {
+                le.checkPermissions();
+                handle = le.listen(new EchoDispatcher());
+                return handle.getCookie();
+            }
+        });
+    }
+
+    private static byte[] roundTrip(Endpoint ep, byte[] data)
+        throws IOException
+    {
+        OutboundRequestIterator iter =
+            ep.newRequest(InvocationConstraints.EMPTY);
+        OutboundRequest req = iter.next();
+        OutputStream out = req.getRequestOutputStream();
+        out.write(data);
+        out.close();
+        InputStream in = req.getResponseInputStream();
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            result.write(buf, 0, n);
+        }
+        in.close();
+        return result.toByteArray();
+    }
+
+    @Test
+    public void echo() throws Exception {
+        Endpoint ep = export();
+        assertEquals(UnixEndpoint.getInstance(path.getPath()), ep);
+        assertArrayEquals("hello".getBytes("UTF-8"),
+                          roundTrip(ep, "hello".getBytes("UTF-8")));
+        byte[] large = new byte[200000];
+        for (int i = 0; i < large.length; i++) large[i] = (byte) i;
+        assertArrayEquals(large, roundTrip(ep, large));
+    }
+
+    @Test
+    public void socketFileRemovedOnClose() throws Exception {
+        export();
+        assertTrue(path.exists());
+        handle.close();
+        handle = null;
+        assertFalse(path.exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void connectWithoutListener() throws Exception {
+        roundTrip(UnixEndpoint.getInstance(path.getPath()), new byte[1]);
+    }
+}
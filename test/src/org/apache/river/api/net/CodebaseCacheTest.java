@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.api.net;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.jini.url.httpmd.Handler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CodebaseCacheTest {
+
+    private File dir;
+    private ServerSocket server;
+    private volatile byte[] content;
+    private volatile String etag;
+    private volatile String lastModified;
+    private final AtomicInteger fullResponses = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("codebase", "cache");
+        assertTrue(dir.delete() && dir.mkdir());
+        server = new ServerSocket(0);
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                serve();
+            }
+        });
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        File[] files = dir.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void httpRevalidatesWithEntityTag() throws Exception {
+        content = bytes(1000, 1);
+        etag = "\"v1\"";
+        CodebaseCache cache = new CodebaseCache(dir, Long.MAX_VALUE);
+        URL url = new URL("http://localhost:" + server.getLocalPort() + "/a.jar");
+        File first = cache.get(url);
+        assertArrayEquals(content, read(first));
+        File second = cache.get(url);
+        assertEquals(first, second);
+        assertEquals(1, fullResponses.get());
+        assertEquals(1, notModified.get());
+
+        content = bytes(1000, 2);
+        etag = "\"v2\"";
+        File third = cache.get(url);
+        assertFalse(first.equals(third));
+        assertArrayEquals(content, read(third));
+        assertEquals(2, fullResponses.get());
+    }
+
+    @Test
+    public void httpRevalidatesWithLastModified() throws Exception {
+        content = bytes(1000, 10);
+        etag = null;
+        lastModified = "Tue, 15 Nov 1994 12:45:26 GMT";
+        CodebaseCache cache = new CodebaseCache(dir, Long.MAX_VALUE);
+        URL url = new URL("http://localhost:" + server.getLocalPort() + "/e.jar");
+        File first = cache.get(url);
+        assertArrayEquals(content, read(first));
+        assertEquals(first, cache.get(url));
+        assertEquals(1, fullResponses.get());
+        assertEquals(1, notModified.get());
+    }
+
+    @Test
+    public void httpWithoutValidatorIsNotCached() throws Exception {
+        content = bytes(100, 3);
+        etag = null;
+        CodebaseCache cache = new CodebaseCache(dir, Long.MAX_VALUE);
+        URL url = new URL("http://localhost:" + server.getLocalPort() + "/b.jar");
+        File first = cache.get(url);
+        assertTrue(cache.isTransient(first));
+        assertArrayEquals(content, read(first));
+        assertEquals(1, fullResponses.get());
+        assertTrue(first.delete());
+        // nothing to revalidate against, so each lookup downloads once
+        // and leaves nothing behind in the cache
+        File second = cache.get(url);
+        assertTrue(cache.isTransient(second));
+        assertEquals(2, fullResponses.get());
+        assertTrue(second.delete());
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void httpmdHitNeedsNoRequest() throws Exception {
+        content = bytes(5000, 4);
+        etag = null;
+        CodebaseCache cache = new CodebaseCache(dir, Long.MAX_VALUE);
+        URL url = httpmd("/c.jar", "SHA-1", digest("SHA-1", content));
+        File first = cache.get(url);
+        assertArrayEquals(content, read(first));
+        assertEquals(1, fullResponses.get());
+        assertEquals(first, cache.get(url));
+        assertEquals(1, fullResponses.get());
+    }
+
+    @Test
+    public void httpmdMismatchIsNotStored() throws Exception {
+        content = bytes(5000, 5);
+        etag = null;
+        CodebaseCache cache = new CodebaseCache(dir, Long.MAX_VALUE);
+        URL url = httpmd("/d.jar", "SHA-1", digest("SHA-1", bytes(5000, 6)));
+        try {
+            cache.get(url);
+            fail("digest mismatch not detected");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws Exception {
+        etag = null;
+        CodebaseCache cache = new CodebaseCache(dir, 2500);
+        byte[] a = bytes(1000, 7);
+        byte[] b = bytes(1000, 8);
+        byte[] c = bytes(1000, 9);
+        content = a;
+        File fa = cache.get(httpmd("/a.jar", "MD5", digest("MD5", a)));
+        content = b;
+        File fb = cache.get(httpmd("/b.jar", "MD5", digest("MD5", b)));
+        fa.setLastModified(System.currentTimeMillis() - 60000);
+        fb.setLastModified(System.currentTimeMillis() - 120000);
+        // a was used more recently than b
+        content = c;
+        File fc = cache.get(httpmd("/c.jar", "MD5", digest("MD5", c)));
+        assertTrue(fa.exists());
+        assertFalse(fb.exists());
+        assertTrue(fc.exists());
+    }
+
+    private URL httpmd(String path, String alg, String digest) throws Exception {
+        return new URL(null, "httpmd://localhost:" + server.getLocalPort()
+                + path + ";" + alg + "=" + digest, new Handler());
+    }
+
+    private static byte[] bytes(int len, int seed) {
+        byte[] b = new byte[len];
+        for (int i = 0; i < len; i++) {
+            b[i] = (byte) (i * 31 + seed);
+        }
+        return b;
+    }
+
+    private static String digest(String alg, byte[] b) throws Exception {
+        byte[] d = MessageDigest.getInstance(alg).digest(b);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < d.length; i++) {
+            sb.append(String.format("%02x", d[i] & 0xff));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] read(File f) throws IOException {
+        InputStream in = new FileInputStream(f);
+        try {
+            byte[] b = new byte[(int) f.length()];
+            int off = 0;
+            while (off < b.length) {
+                int n = in.read(b, off, b.length - off);
+                if (n < 0) break;
+                off += n;
+            }
+            return Arrays.copyOf(b, off);
+        } finally {
+            in.close();
+        }
+    }
+
+    private void serve() {
+        while (true) {
+            Socket s;
+            try {
+                s = server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            try {
+                InputStream in = s.getInputStream();
+                StringBuilder request = new StringBuilder();
+                int c;
+                while ((c = in.read()) != -1) {
+                    request.append((char) c);
+                    if (request.toString().endsWith("\r\n\r\n")) break;
+                }
+                String tag = etag;
+                String modified = lastModified;
+                byte[] body = content;
+                String header;
+                if ((tag != null && request.indexOf("If-None-Match: " + tag) >= 0)
+                        || (modified != null
+                            && request.indexOf("If-Modified-Since: " + modified) >= 0)) {
+                    notModified.incrementAndGet();
+                    header = "HTTP/1.1 304 Not Modified"
+                            + (tag != null ? "\r\nETag: " + tag : "")
+                            + "\r\nConnection: close\r\n\r\n";
+                    body = new byte[0];
+                } else {
+                    fullResponses.incrementAndGet();
+                    header = "HTTP/1.1 200 OK\r\nContent-Length: " + body.length
+                            + (tag != null ? "\r\nETag: " + tag : "")
+                            + (modified != null ? "\r\nLast-Modified: " + modified : "")
+                            + "\r\nConnection: close\r\n\r\n";
+                }
+                OutputStream out = s.getOutputStream();
+                out.write(header.getBytes("US-ASCII"));
+                out.write(body);
+                out.flush();
+            } catch (IOException e) {
+                // ignore
+            } finally {
+                try {
+                    s.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.discovery.internal;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import net.jini.constraint.BasicMethodConstraints;
+import net.jini.core.constraint.InvocationConstraints;
+import net.jini.core.discovery.LookupLocator;
+import net.jini.discovery.ConstrainableLookupLocator;
+import net.jini.core.lookup.ServiceRegistrar;
+import org.apache.river.discovery.Discovery;
+import org.apache.river.discovery.DiscoveryProtocolVersion;
+import org.apache.river.discovery.UnicastResponse;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class UnicastConnectorTest {
+
+    private static InetSocketAddress closedAddress() throws IOException {
+        ServerSocket ss = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        InetSocketAddress addr =
+            new InetSocketAddress(ss.getInetAddress(), ss.getLocalPort());
+        ss.close();
+        return addr;
+    }
+
+    @Test
+    public void firstReachableAddressWins() throws Exception {
+        ServerSocket ss = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        try {
+            InetSocketAddress open =
+                new InetSocketAddress(ss.getInetAddress(), ss.getLocalPort());
+            Socket s = UnicastConnector.getInstance().connect(
+                new InetSocketAddress[] { closedAddress(), open },
+                System.currentTimeMillis() + 10000);
+            try {
+                assertTrue(s.isConnected());
+                assertEquals(open.getPort(), s.getPort());
+                s.setSoTimeout(100);
+                ss.accept().getOutputStream().write(42);
+                assertEquals(42, s.getInputStream().read());
+            } finally {
+                s.close();
+            }
+        } finally {
+            ss.close();
+        }
+    }
+
+    @Test
+    public void allAddressesRefused() throws Exception {
+        try {
+            UnicastConnector.getInstance().connect(
+                new InetSocketAddress[] { closedAddress(), closedAddress() },
+                System.currentTimeMillis() + 10000).close();
+            fail("connected to closed ports");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void concurrentAttemptsShareOneThread() throws Exception {
+        final ServerSocket ss =
+            new ServerSocket(0, 100, InetAddress.getLoopbackAddress());
+        try {
+            InetSocketAddress[] addrs = new InetSocketAddress[] {
+                new InetSocketAddress(ss.getInetAddress(), ss.getLocalPort())
+            };
+            final int n = 50;
+            final CountDownLatch done = new CountDownLatch(n);
+            final AtomicInteger connected = new AtomicInteger();
+            for (int i = 0; i < n; i++) {
+                UnicastConnector.getInstance().connect(addrs,
+                    System.currentTimeMillis() + 10000,
+                    new UnicastConnector.Callback() {
+                        public void connected(Socket socket) {
+                            connected.incrementAndGet();
+                            try {
+                                socket.close();
+                            } catch (IOException e) {
+                            }
+                            done.countDown();
+                        }
+                        public void failed(IOException e) {
+                            done.countDown();
+                        }
+                    });
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(n, connected.get());
+        } finally {
+            ss.close();
+        }
+    }
+
+    static class Handler implements InvocationHandler, Serializable {
+        private static final long serialVersionUID = 1L;
+        public Object invoke(Object proxy, Method m, Object[] args) {
+            if (m.getName().equals("hashCode")) {
+                return Integer.valueOf(1);
+            } else if (m.getName().equals("equals")) {
+                return Boolean.valueOf(proxy == args[0]);
+            }
+            return null;
+        }
+    }
+
+    @Test
+    public void lookupLocatorDiscovery() throws Exception {
+        final ServerSocket ss =
+            new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final ServiceRegistrar registrar = (ServiceRegistrar)
+            Proxy.newProxyInstance(ServiceRegistrar.class.getClassLoader(),
+                new Class[] { ServiceRegistrar.class }, new Handler());
+        final AtomicReference<Throwable> serverFailure =
+            new AtomicReference<Throwable>();
+        Thread server = new Thread() {
+            public void run() {
+                try {
+                    Socket s = ss.accept();
+                    try {
+                        new DataInputStream(s.getInputStream()).readInt();
+                        Discovery.getProtocol1().handleUnicastDiscovery(
+                            new UnicastResponse("localhost", ss.getLocalPort(),
+                                new String[] { "test" }, registrar),
+                            s, null, null, Collections.EMPTY_LIST);
+                    } finally {
+                        s.close();
+                    }
+                } catch (Throwable e) {
+                    serverFailure.set(e);
+                }
+            }
+        };
+        server.setDaemon(true);
+        server.start();
+        try {
+            LookupLocator loc = new ConstrainableLookupLocator(
+                ss.getInetAddress().getHostAddress(), ss.getLocalPort(),
+                new BasicMethodConstraints(new InvocationConstraints(
+                    DiscoveryProtocolVersion.ONE, null)));
+            ServiceRegistrar r = loc.getRegistrar(10000);
+            assertTrue(Proxy.isProxyClass(r.getClass()));
+            assertTrue(r instanceof ServiceRegistrar);
+            server.join(10000);
+            assertFalse(server.isAlive());
+            if (serverFailure.get() != null) {
+                throw new AssertionError(serverFailure.get());
+            }
+        } finally {
+            ss.close();
+        }
+    }
+}
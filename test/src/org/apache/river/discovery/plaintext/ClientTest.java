@@ -19,9 +19,14 @@
 package org.apache.river.discovery.plaintext;
 
 import org.apache.river.discovery.DatagramBufferFactory;
+import org.apache.river.discovery.Discovery;
 import org.apache.river.discovery.MulticastAnnouncement;
+import org.apache.river.discovery.MulticastAnnouncementDecoder;
+import org.apache.river.discovery.MulticastAnnouncementEncoder;
+import org.apache.river.discovery.MulticastAnnouncementSummary;
 import org.apache.river.discovery.MulticastRequest;
 import org.apache.river.discovery.UnicastResponse;
+import java.net.DatagramPacket;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -31,6 +36,7 @@ import net.jini.core.constraint.Integrity;
 import net.jini.core.constraint.InvocationConstraint;
 import net.jini.core.constraint.InvocationConstraints;
 import net.jini.core.constraint.ServerAuthentication;
+import net.jini.core.lookup.ServiceID;
 import net.jini.io.UnsupportedConstraintException;
 import net.jini.jeri.ssl.ConfidentialityStrength;
 import org.junit.AfterClass;
@@ -104,6 +110,63 @@ public class ClientTest {
 //        fail("The test case is a prototype.");
 //    }
 
+    /**
+     * Test of peekMulticastAnnouncement method, of class Client.
+     */
+    @Test
+    public void peekMulticastAnnouncement() throws Exception {
+        System.out.println("peekMulticastAnnouncement");
+        Discovery disco = Discovery.getProtocol2(null, null,
+            new MulticastAnnouncementEncoder[]{ new Server() },
+            new MulticastAnnouncementDecoder[]{ instance }, null, null);
+        ServiceID id = new ServiceID(0x1234L, 0x5678L);
+        MulticastAnnouncementSummary summary = new MulticastAnnouncementSummary();
+
+        assertTrue(disco.peekMulticastAnnouncement(encode(disco,
+            new MulticastAnnouncement(7, "host", 4160, new String[]{"a", "b"}, id)),
+            summary));
+        assertEquals(7, summary.getSequenceNumber());
+        assertEquals(0x1234L, summary.getServiceIDMostSignificantBits());
+        assertEquals(0x5678L, summary.getServiceIDLeastSignificantBits());
+        long fingerprint = summary.getFingerprint();
+
+        // sequence number is not part of the fingerprint
+        assertTrue(disco.peekMulticastAnnouncement(encode(disco,
+            new MulticastAnnouncement(8, "host", 4160, new String[]{"a", "b"}, id)),
+            summary));
+        assertEquals(8, summary.getSequenceNumber());
+        assertEquals(fingerprint, summary.getFingerprint());
+
+        // member groups are
+        assertTrue(disco.peekMulticastAnnouncement(encode(disco,
+            new MulticastAnnouncement(9, "host", 4160, new String[]{"a"}, id)),
+            summary));
+        assertTrue(fingerprint != summary.getFingerprint());
+
+        // and so is the protocol
+        Discovery v1 = Discovery.getProtocol1();
+        assertTrue(v1.peekMulticastAnnouncement(encode(v1,
+            new MulticastAnnouncement(7, "host", 4160, new String[]{"a", "b"}, id)),
+            summary));
+        assertEquals(-1, summary.getSequenceNumber());
+        assertEquals(0x1234L, summary.getServiceIDMostSignificantBits());
+        assertTrue(fingerprint != summary.getFingerprint());
+
+        // truncated packets are left to the decoder
+        ByteBuffer truncated = encode(disco,
+            new MulticastAnnouncement(7, "host", 4160, new String[]{"a", "b"}, id));
+        truncated.limit(truncated.limit() - 4);
+        assertFalse(disco.peekMulticastAnnouncement(truncated, summary));
+    }
+
+    private static ByteBuffer encode(Discovery disco, MulticastAnnouncement ann)
+        throws Exception
+    {
+        DatagramPacket pkt =
+            disco.encodeMulticastAnnouncement(ann, 512, null).next()[0];
+        return ByteBuffer.wrap(pkt.getData(), pkt.getOffset(), pkt.getLength());
+    }
+
     /**
      * Test of checkUnicastDiscoveryConstraints method, of class Client.
      */
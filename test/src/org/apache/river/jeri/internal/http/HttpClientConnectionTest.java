@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import net.jini.jeri.Endpoint;
+import net.jini.jeri.InboundRequest;
+import net.jini.jeri.OutboundRequest;
+import net.jini.jeri.RequestDispatcher;
+import net.jini.jeri.ServerEndpoint;
+import net.jini.jeri.ServerEndpoint.ListenContext;
+import net.jini.jeri.ServerEndpoint.ListenCookie;
+import net.jini.jeri.ServerEndpoint.ListenEndpoint;
+import net.jini.jeri.ServerEndpoint.ListenHandle;
+import net.jini.jeri.http.HttpEndpoint;
+import net.jini.jeri.http.HttpServerEndpoint;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests request pipelining and connection limits of the HTTP client.
+ */
+public class HttpClientConnectionTest {
+
+    private ListenHandle handle;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        // echoes request content back in the response
+        final RequestDispatcher echo = new RequestDispatcher() {
+            public void dispatch(InboundRequest req) {
+                try {
+                    byte[] b = readFully(req.getRequestInputStream());
+                    OutputStream out = req.getResponseOutputStream();
+                    out.write(b);
+                    out.close();
+                } catch (IOException e) {
+                    req.abort();
+                }
+            }
+        };
+        ServerEndpoint sep = HttpServerEndpoint.getInstance("localhost", 0);
+        Endpoint ep = sep.enumerateListenEndpoints(new ListenContext() {
+            public ListenCookie addListenEndpoint(ListenEndpoint le)
+                throws IOException
+            {
+                handle = le.listen(echo);
+                return handle.getCookie();
+            }
+        });
+        port = ((HttpEndpoint) ep).getPort();
+    }
+
+    @After
+    public void tearDown() {
+        handle.close();
+    }
+
+    @Test
+    public void pipelinedRequests() throws Exception {
+        HttpClientConnection conn = new HttpClientConnection(
+            "localhost", port, new Sockets(), new HttpClientManager(15000, 0, 4));
+        try {
+            OutboundRequest r1 = send(conn, "first");
+            OutboundRequest r2 = send(conn, "second");
+            OutboundRequest r3 = send(conn, "third");
+            assertEquals("first", receive(r1));
+            assertEquals("second", receive(r2));
+            assertEquals("third", receive(r3));
+            assertEquals("fourth", receive(send(conn, "fourth")));
+        } finally {
+            conn.shutdown(true);
+        }
+    }
+
+    @Test
+    public void busyWithoutPipelining() throws Exception {
+        HttpClientConnection conn = new HttpClientConnection(
+            "localhost", port, new Sockets(), new HttpClientManager(15000));
+        try {
+            OutboundRequest r1 = send(conn, "first");
+            try {
+                conn.newRequest();
+                fail("request started on busy connection");
+            } catch (IOException e) {
+            }
+            assertEquals("first", receive(r1));
+            assertEquals("second", receive(send(conn, "second")));
+        } finally {
+            conn.shutdown(true);
+        }
+    }
+
+    @Test
+    public void connectionLimit() throws Exception {
+        HttpClientManager manager = new HttpClientManager(15000, 1, 1);
+        assertEquals(-1, manager.reserveConnection("localhost", port));
+        long events = manager.reserveConnection("localhost", port);
+        assertTrue(events >= 0);
+        assertEquals(-1, manager.reserveConnection("otherhost", port));
+        assertFalse(manager.awaitConnection("localhost", port, events,
+                                            System.currentTimeMillis() + 10));
+        manager.releaseConnection("localhost", port);
+        assertTrue(manager.awaitConnection("localhost", port, events,
+                                           System.currentTimeMillis() + 10));
+        assertEquals(-1, manager.reserveConnection("localhost", port));
+    }
+
+    private static OutboundRequest send(HttpClientConnection conn, String s)
+        throws IOException
+    {
+        OutboundRequest req = conn.newRequest();
+        OutputStream out = req.getRequestOutputStream();
+        out.write(s.getBytes("UTF-8"));
+        out.close();
+        return req;
+    }
+
+    private static String receive(OutboundRequest req) throws IOException {
+        return new String(readFully(req.getResponseInputStream()), "UTF-8");
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        byte[] buf = new byte[256];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            bout.write(buf, 0, n);
+        }
+        in.close();
+        return bout.toByteArray();
+    }
+
+    private static class Sockets implements HttpClientSocketFactory {
+        public Socket createSocket(String host, int port) throws IOException {
+            return new Socket(host, port);
+        }
+
+        public Socket createTunnelSocket(Socket s) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
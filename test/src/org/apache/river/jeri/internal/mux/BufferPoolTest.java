@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.mux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import net.jini.jeri.InboundRequest;
+import net.jini.jeri.OutboundRequest;
+import net.jini.jeri.RequestDispatcher;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests buffer recycling by BufferPool and echoes data over mux
+ * connections that use pooled buffers on both sides.
+ */
+public class BufferPoolTest {
+
+    @Test
+    public void testSizeClasses() {
+	assertEquals(0, BufferPool.sizeClass(1));
+	assertEquals(0, BufferPool.sizeClass(8));
+	assertEquals(1, BufferPool.sizeClass(9));
+	assertEquals(7, BufferPool.sizeClass(1024));
+	assertEquals(13, BufferPool.sizeClass(65536));
+	assertEquals(-1, BufferPool.sizeClass(65537));
+    }
+
+    @Test
+    public void testCacheRecycles() {
+	BufferPool.Cache cache = BufferPool.newCache();
+	ByteBuffer header = cache.acquire(4, true);
+	assertTrue(header.isDirect());
+	assertEquals(0, header.position());
+	assertEquals(4, header.limit());
+	assertEquals(8, header.capacity());
+	header.putInt(0xCAFEBABE);
+	cache.release(header);
+	ByteBuffer again = cache.acquire(3, true);
+	assertSame(header, again);
+	assertEquals(0, again.position());
+	assertEquals(3, again.limit());
+
+	ByteBuffer heap = cache.acquire(1000, false);
+	assertTrue(heap.hasArray());
+	assertEquals(1024, heap.capacity());
+	cache.release(heap);
+	assertNotSame(heap, cache.acquire(1000, true));
+	assertSame(heap, cache.acquire(1024, false));
+    }
+
+    @Test
+    public void testDrainedCacheUsesSharedPool() {
+	BufferPool.Cache cache = BufferPool.newCache();
+	ByteBuffer buffer = cache.acquire(300, false);
+	cache.drain();
+	cache.release(buffer);
+	BufferPool.Cache other = BufferPool.newCache();
+	boolean found = false;
+	for (int i = 0; i < 1024 && !found; i++) {
+	    found = other.acquire(512, false) == buffer;
+	}
+	assertTrue(found);
+    }
+
+    @Test
+    public void testUnpooledSizes() {
+	BufferPool.Cache cache = BufferPool.newCache();
+	ByteBuffer big = cache.acquire(100000, false);
+	assertEquals(100000, big.limit());
+	cache.release(big);		// dropped, not pooled
+	ByteBuffer odd = ByteBuffer.allocate(100);
+	cache.release(odd);		// foreign, not pooled
+	assertNotSame(odd, cache.acquire(100, false));
+    }
+
+    @Test(timeout = 60000)
+    public void testStreamEcho() throws Exception {
+	ServerSocket ss = new ServerSocket(0, 50, InetAddress.getByName(null));
+	try {
+	    Socket c = new Socket(InetAddress.getByName(null), ss.getLocalPort());
+	    Socket s = ss.accept();
+	    MuxServer server = new MuxServer(s.getOutputStream(),
+					     s.getInputStream(), new Echo());
+	    server.start();
+	    MuxClient client = new MuxClient(c.getOutputStream(),
+					     c.getInputStream(), 15000);
+	    client.start();
+	    echo(client);
+	    client.shutdown("done");
+	    server.shutdown("done");
+	    c.close();
+	    s.close();
+	} finally {
+	    ss.close();
+	}
+    }
+
+    @Test(timeout = 60000)
+    public void testChannelEcho() throws Exception {
+	ServerSocketChannel ssc = ServerSocketChannel.open();
+	try {
+	    ssc.socket().bind(
+		new InetSocketAddress(InetAddress.getByName(null), 0));
+	    SocketChannel c = SocketChannel.open(ssc.socket().getLocalSocketAddress());
+	    SocketChannel s = ssc.accept();
+	    MuxServer server = new MuxServer(s, new Echo());
+	    server.start();
+	    MuxClient client = new MuxClient(c, 15000);
+	    client.start();
+	    echo(client);
+	    client.shutdown("done");
+	    server.shutdown("done");
+	    c.close();
+	    s.close();
+	} finally {
+	    ssc.close();
+	}
+    }
+
+    private static void echo(MuxClient client) throws IOException {
+	Random random = new Random(42);
+	int[] sizes = { 0, 1, 4, 1023, 1024, 1025, 8192, 100000 };
+	for (int round = 0; round < 5; round++) {
+	    for (int i = 0; i < sizes.length; i++) {
+		byte[] data = new byte[sizes[i]];
+		random.nextBytes(data);
+		OutboundRequest req = client.newRequest();
+		OutputStream out = req.getRequestOutputStream();
+		out.write(data);
+		out.close();
+		InputStream in = req.getResponseInputStream();
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		byte[] buf = new byte[777];
+		int n;
+		while ((n = in.read(buf)) != -1) {
+		    result.write(buf, 0, n);
+		}
+		in.close();
+		assertArrayEquals(data, result.toByteArray());
+	    }
+	}
+    }
+
+    private static class Echo implements RequestDispatcher {
+	public void dispatch(InboundRequest req) {
+	    try {
+		InputStream in = req.getRequestInputStream();
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		byte[] buf = new byte[333];
+		int n;
+		while ((n = in.read(buf)) != -1) {
+		    data.write(buf, 0, n);
+		}
+		in.close();
+		OutputStream out = req.getResponseOutputStream();
+		out.write(data.toByteArray());
+		out.close();
+	    } catch (IOException e) {
+		req.abort();
+	    }
+	}
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.jeri.internal.mux;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.KeyStore;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManagerFactory;
+import javax.xml.bind.DatatypeConverter;
+import net.jini.jeri.InboundRequest;
+import net.jini.jeri.OutboundRequest;
+import net.jini.jeri.RequestDispatcher;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests compression of Data messages negotiated in the connection header.
+ */
+public class MuxCompressionTest {
+
+    static class EchoDispatcher implements RequestDispatcher {
+        public void dispatch(InboundRequest request) {
+            try {
+                byte[] data = readFully(request.getRequestInputStream());
+                OutputStream out = request.getResponseOutputStream();
+                out.write(data);
+                out.close();
+            } catch (IOException e) {
+                request.abort();
+            }
+        }
+    }
+
+    static class CountingOutputStream extends FilterOutputStream {
+        final AtomicLong count = new AtomicLong();
+        CountingOutputStream(OutputStream out) { super(out); }
+        public void write(int b) throws IOException {
+            out.write(b);
+            count.incrementAndGet();
+        }
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count.addAndGet(len);
+        }
+    }
+
+    /** JKS key store with a self-signed EC key for CN=localhost */
+    private static final String[] KEY_STORE = {
+        "/u3+7QAAAAIAAAABAAAAAQADbXV4AAABoVJwC9kAAAB/MH0wDgYKKwYBBAEq",
+        "AhEBAQUABGv3h36liJKv6NbLCbGMU8CDy3gyo8SKiLe0dPESjGCNqYbXTdZu",
+        "MNpDgzeAqs224c4LN4E3ls3nV8zMUptq6q14nb+fppi3OwlAXigMuPDuA5sl",
+        "jAOS1rxp7ucjpowyvTiPbTv4sls8Gqrh9gAAAAEABVguNTA5AAABQzCCAT8w",
+        "geWgAwIBAgIEVQmZ3DAMBggqhkjOPQQDAgUAMBQxEjAQBgNVBAMTCWxvY2Fs",
+        "aG9zdDAgFw0yNjEwMTkwNDMzNTdaGA8yMTI2MDkyNTA0MzM1N1owFDESMBAG",
+        "A1UEAxMJbG9jYWxob3N0MFkwEwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAEggiL",
+        "AbCRZ1H96eQiX87oERA3+KsVlov7mbsCORPcXBH/Lpgwy0ONVYXYfzmu7wdD",
+        "vxImt2cfN7Auycabo7Lyh6MhMB8wHQYDVR0OBBYEFE+GNrQhCPUIBuxkR4zf",
+        "s74uOk86MAwGCCqGSM49BAMCBQADRwAwRAIgNh7bqwHshIb+nPKISppkZ1Eb",
+        "mUGeNS6Cw+yFqj3l4xwCIEPBPn/bmrtPh2/zAuRAIeyRRQiNs1X/GKlpzomR",
+        "ZXK8Vx/3fR77y5GAI2FD+lrQifGrUdo="
+    };
+
+    private MuxClient client;
+    private MuxServer server;
+    private CountingOutputStream clientOut;
+    private CountingOutputStream serverOut;
+
+    @After
+    public void shutdown() {
+        if (client != null) client.shutdown("end of test");
+        if (server != null) server.shutdown("end of test");
+    }
+
+    private void connectStreams() throws Exception {
+        ServerSocket ss = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        try {
+            Socket cs = new Socket(ss.getInetAddress(), ss.getLocalPort());
+            Socket s = ss.accept();
+            serverOut = new CountingOutputStream(s.getOutputStream());
+            server = new MuxServer(serverOut, s.getInputStream(),
+                                   new EchoDispatcher());
+            server.start();
+            clientOut = new CountingOutputStream(cs.getOutputStream());
+            client = new MuxClient(clientOut, cs.getInputStream(), 15000);
+            client.start();
+        } finally {
+            ss.close();
+        }
+    }
+
+    private void connectChannels() throws Exception {
+        ServerSocketChannel ssc = ServerSocketChannel.open();
+        try {
+            ssc.socket().bind(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), 0));
+            SocketChannel cc = SocketChannel.open(
+                ssc.socket().getLocalSocketAddress());
+            SocketChannel sc = ssc.accept();
+            server = new MuxServer(sc, new EchoDispatcher());
+            server.start();
+            client = new MuxClient(cc, 15000);
+            client.start();
+        } finally {
+            ssc.close();
+        }
+    }
+
+    private static SSLContext sslContext() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (String line : KEY_STORE) sb.append(line);
+        char[] password = "changeit".toCharArray();
+        KeyStore ks = KeyStore.getInstance("JKS");
+        ks.load(new ByteArrayInputStream(
+            DatatypeConverter.parseBase64Binary(sb.toString())), password);
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(
+            KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(ks, password);
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(
+            TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(ks);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+        return context;
+    }
+
+    private void connectSsl(boolean requestCompression) throws Exception {
+        SSLContext context = sslContext();
+        ServerSocketChannel ssc = ServerSocketChannel.open();
+        try {
+            ssc.socket().bind(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), 0));
+            SocketChannel cc = SocketChannel.open(
+                ssc.socket().getLocalSocketAddress());
+            SocketChannel sc = ssc.accept();
+            SSLEngine serverEngine = context.createSSLEngine();
+            serverEngine.setUseClientMode(false);
+            SSLEngine clientEngine = context.createSSLEngine();
+            clientEngine.setUseClientMode(true);
+            final SSLEngineChannel serverChannel =
+                new SSLEngineChannel(sc, serverEngine);
+            SSLEngineChannel clientChannel =
+                new SSLEngineChannel(cc, clientEngine);
+            final Exception[] failure = new Exception[1];
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        serverChannel.handshake();
+                    } catch (Exception e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+            t.start();
+            clientChannel.handshake();
+            t.join();
+            if (failure[0] != null) throw failure[0];
+            server = new MuxServer(serverChannel, new EchoDispatcher());
+            server.start();
+            client = new MuxClient(clientChannel, 15000);
+            if (requestCompression) client.requestCompression();
+            client.start();
+        } finally {
+            ssc.close();
+        }
+    }
+
+    private byte[] roundTrip(byte[] data, boolean compress) throws IOException {
+        OutboundRequest req = client.newRequest();
+        assertTrue(client.setCompression(req, compress));
+        OutputStream out = req.getRequestOutputStream();
+        out.write(data);
+        out.close();
+        InputStream in = req.getResponseInputStream();
+        byte[] result = readFully(in);
+        in.close();
+        return result;
+    }
+
+    static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            bytes.write(buf, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] text(int size) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append("<entry id=\"").append(i % 100).append("\">value</entry>");
+        }
+        return sb.substring(0, size).getBytes();
+    }
+
+    @Test
+    public void compressedRequestAndResponse() throws Exception {
+        connectStreams();
+        assertTrue(client.compressionEnabled());
+        assertTrue(server.compressionEnabled());
+        byte[] data = text(200000);
+        long sent = clientOut.count.get();
+        long received = serverOut.count.get();
+        assertArrayEquals(data, roundTrip(data, true));
+        assertTrue(clientOut.count.get() - sent < data.length / 4);
+        assertTrue(serverOut.count.get() - received < data.length / 4);
+    }
+
+    @Test
+    public void uncompressedRequest() throws Exception {
+        connectStreams();
+        byte[] data = text(50000);
+        long sent = clientOut.count.get();
+        long received = serverOut.count.get();
+        assertArrayEquals(data, roundTrip(data, false));
+        assertTrue(clientOut.count.get() - sent > data.length);
+        assertTrue(serverOut.count.get() - received > data.length);
+    }
+
+    @Test
+    public void refusedOnSsl() throws Exception {
+        connectSsl(false);
+        assertFalse(client.compressionEnabled());
+        assertFalse(server.compressionEnabled());
+        OutboundRequest req = client.newRequest();
+        assertFalse(client.setCompression(req, true));
+        req.abort();
+        byte[] data = text(50000);
+        assertArrayEquals(data, roundTrip(data, false));
+    }
+
+    @Test
+    public void explicitlyRequestedOnSsl() throws Exception {
+        connectSsl(true);
+        assertTrue(client.compressionEnabled());
+        assertTrue(server.compressionEnabled());
+        byte[] data = text(50000);
+        assertArrayEquals(data, roundTrip(data, true));
+    }
+
+    @Test
+    public void notOfferedOnConfidentialStreams() throws Exception {
+        ServerSocket ss = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        try {
+            Socket cs = new Socket(ss.getInetAddress(), ss.getLocalPort());
+            Socket s = ss.accept();
+            server = new MuxServer(s.getOutputStream(), s.getInputStream(),
+                                   new EchoDispatcher());
+            server.start();
+            client = new MuxClient(cs.getOutputStream(), cs.getInputStream(),
+                                   15000);
+            client.setConfidential();
+            client.start();
+        } finally {
+            ss.close();
+        }
+        assertFalse(client.compressionEnabled());
+        assertFalse(server.compressionEnabled());
+    }
+
+    @Test
+    public void concurrentSessionsOverChannels() throws Exception {
+        connectChannels();
+        final byte[] random = new byte[100000];
+        new Random(1).nextBytes(random);
+        final byte[] text = text(100000);
+        Thread[] threads = new Thread[8];
+        final Throwable[] failure = new Throwable[1];
+        for (int i = 0; i < threads.length; i++) {
+            final boolean compress = i % 2 == 0;
+            final byte[] data = i % 4 < 2 ? text : random;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 5; j++) {
+                            assertArrayEquals(data, roundTrip(data, compress));
+                        }
+                    } catch (Throwable t) {
+                        synchronized (failure) { failure[0] = t; }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join(60000);
+        }
+        synchronized (failure) {
+            if (failure[0] != null) throw new AssertionError(failure[0]);
+        }
+    }
+}
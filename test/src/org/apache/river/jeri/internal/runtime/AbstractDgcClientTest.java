@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.jeri.internal.runtime;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that concurrent registrations coalesce into batched dirty calls.
+ */
+public class AbstractDgcClientTest {
+
+    static class Ref {
+        final Object endpoint;
+        final Object id;
+        Ref(Object endpoint, Object id) {
+            this.endpoint = endpoint;
+            this.id = id;
+        }
+    }
+
+    static class TestClient extends AbstractDgcClient {
+        final List<Object[]> dirtyCalls =
+            Collections.synchronizedList(new ArrayList<Object[]>());
+        final CountDownLatch firstCallStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirstCall = new CountDownLatch(1);
+
+        protected DgcProxy getDgcProxy(Object endpoint) {
+            return new DgcProxy() {
+                public long dirty(long sequenceNum, Object[] ids,
+                                  long duration)
+                {
+                    dirtyCalls.add(ids);
+                    if (dirtyCalls.size() == 1) {
+                        firstCallStarted.countDown();
+                        try {
+                            releaseFirstCall.await();
+                        } catch (InterruptedException e) {
+                            throw new AssertionError(e);
+                        }
+                    }
+                    return 600000;
+                }
+                public void clean(long sequenceNum, Object[] ids,
+                                  boolean strong)
+                {
+                }
+            };
+        }
+        protected void freeEndpoint(Object endpoint) {
+        }
+        protected Object getRefEndpoint(Object ref) {
+            return ((Ref) ref).endpoint;
+        }
+        protected Object getRefObjectID(Object ref) {
+            return ((Ref) ref).id;
+        }
+        void register(Ref ref) {
+            registerRefs(ref.endpoint, Collections.singleton(ref));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void concurrentRegistrationsShareOneDirtyCall() throws Exception {
+        final TestClient client = new TestClient();
+        final Object endpoint = "endpoint";
+        final Ref[] refs = new Ref[5];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = new Ref(endpoint, "id" + i);
+        }
+        Thread first = new Thread() {
+            public void run() {
+                client.register(refs[0]);
+            }
+        };
+        first.start();
+        assertTrue(client.firstCallStarted.await(10, TimeUnit.SECONDS));
+
+        DgcStats stats = DgcStats.getInstance();
+        long coalesced = stats.getCoalescedRegistrations();
+        Thread[] others = new Thread[refs.length - 1];
+        for (int i = 0; i < others.length; i++) {
+            final Ref ref = refs[i + 1];
+            others[i] = new Thread() {
+                public void run() {
+                    client.register(ref);
+                }
+            };
+            others[i].start();
+        }
+        /* one thread starts the batch, the rest join it */
+        while (stats.getCoalescedRegistrations() - coalesced <
+               others.length - 1)
+        {
+            Thread.sleep(10);
+        }
+        for (Thread t : others) {
+            assertTrue(t.isAlive());
+        }
+        client.releaseFirstCall.countDown();
+        first.join();
+        for (Thread t : others) {
+            t.join();
+        }
+
+        assertEquals(2, client.dirtyCalls.size());
+        assertEquals(Collections.singletonList("id0"),
+                     Arrays.asList(client.dirtyCalls.get(0)));
+        Set<Object> batched = new HashSet<Object>(
+            Arrays.asList(client.dirtyCalls.get(1)));
+        assertEquals(new HashSet<Object>(Arrays.asList(
+            "id1", "id2", "id3", "id4")), batched);
+
+        /* registering a known ref again needs no dirty call */
+        client.register(new Ref(endpoint, "id1"));
+        assertEquals(2, client.dirtyCalls.size());
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.mahalo;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.jini.core.transaction.server.TransactionManager;
+import net.jini.core.transaction.server.TransactionParticipant;
+import org.apache.river.thread.WakeupManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests how a thread waiting for a <code>Job</code> helps run its
+ * participant tasks.
+ */
+public class JobTest {
+
+    static class NullParticipant implements TransactionParticipant {
+        public int prepare(TransactionManager mgr, long id) {
+            return PREPARED;
+        }
+        public void commit(TransactionManager mgr, long id) {
+        }
+        public void abort(TransactionManager mgr, long id) {
+        }
+        public int prepareAndCommit(TransactionManager mgr, long id) {
+            return COMMITTED;
+        }
+    }
+
+    /**
+     * A job whose tasks only complete once all of them are running at
+     * the same time.
+     */
+    static class RendezvousJob extends Job {
+        final int size;
+        final CountDownLatch running;
+        final AtomicInteger timedOut = new AtomicInteger();
+
+        RendezvousJob(ExecutorService pool, ExecutorService fanout,
+                      WakeupManager wm, int size) {
+            super(pool, fanout, wm, null);
+            this.size = size;
+            this.running = new CountDownLatch(size);
+        }
+
+        Runnable[] createTasks() {
+            Runnable[] tasks = new Runnable[size];
+            for (int i = 0; i < size; i++) {
+                tasks[i] = new ParticipantTask(getPool(), getMgr(), this, null);
+            }
+            return tasks;
+        }
+
+        Object doWork(Runnable who, Object param) {
+            running.countDown();
+            try {
+                if (!running.await(5, TimeUnit.SECONDS)) {
+                    timedOut.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Boolean.TRUE;
+        }
+
+        Object computeResult() {
+            return Integer.valueOf(timedOut.get());
+        }
+    }
+
+    private ExecutorService pool;
+    private ExecutorService fanout;
+    private WakeupManager wm;
+    private CountDownLatch release;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = Executors.newSingleThreadExecutor();
+        fanout = new ThreadPoolExecutor(0, 8, 60, TimeUnit.SECONDS,
+                                        new SynchronousQueue<Runnable>());
+        wm = new WakeupManager(new WakeupManager.ThreadDesc(null, true));
+        // Keep the only pool thread busy, as if serving other transactions
+        release = new CountDownLatch(1);
+        pool.execute(new Runnable() {
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        pool.shutdown();
+        fanout.shutdown();
+        wm.stop();
+    }
+
+    @Test(timeout = 30000)
+    public void waitingThreadRunsPendingTasksConcurrently() throws Exception {
+        RendezvousJob job = new RendezvousJob(pool, fanout, wm, 8);
+        job.scheduleTasks();
+        assertTrue(job.isCompleted(Long.MAX_VALUE));
+        assertEquals(Integer.valueOf(0), job.computeResult());
+        assertEquals(8, job.results.size());
+    }
+
+    @Test(timeout = 30000)
+    public void tasksStartedByPoolAreNotRunTwice() throws Exception {
+        release.countDown();
+        final AtomicInteger runs = new AtomicInteger();
+        Job job = new RendezvousJob(pool, fanout, wm, 1) {
+            Object doWork(Runnable who, Object param) {
+                runs.incrementAndGet();
+                return Boolean.TRUE;
+            }
+        };
+        job.scheduleTasks();
+        assertTrue(job.isCompleted(Long.MAX_VALUE));
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        assertEquals(1, runs.get());
+    }
+
+    @Test(timeout = 30000)
+    public void rejectedFirstAttemptsRunInWaitingThread() throws Exception {
+        fanout.shutdown();
+        final AtomicInteger runs = new AtomicInteger();
+        Job job = new RendezvousJob(pool, fanout, wm, 4) {
+            Object doWork(Runnable who, Object param) {
+                runs.incrementAndGet();
+                return Boolean.TRUE;
+            }
+        };
+        job.scheduleTasks();
+        assertTrue(job.isCompleted(Long.MAX_VALUE));
+        assertEquals(4, runs.get());
+    }
+}
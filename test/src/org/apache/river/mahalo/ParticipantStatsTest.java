@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.mahalo;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.jini.core.transaction.server.TransactionParticipant;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the per-participant latency counters of Mahalo.
+ */
+public class ParticipantStatsTest {
+
+    @Test
+    public void recordsCallsFailuresAndLatency() {
+        ParticipantStats s = new ParticipantStats();
+        s.record(ParticipantStats.PREPARE, 2000000L, true);
+        s.record(ParticipantStats.PREPARE, 4000000L, true);
+        s.record(ParticipantStats.PREPARE, 6000000L, false);
+        assertEquals(2, s.getCalls(ParticipantStats.PREPARE));
+        assertEquals(1, s.getFailures(ParticipantStats.PREPARE));
+        assertEquals(4.0, s.getMeanMillis(ParticipantStats.PREPARE), 1e-9);
+        assertEquals(6.0, s.getMaxMillis(ParticipantStats.PREPARE), 1e-9);
+        assertEquals(0, s.getCalls(ParticipantStats.COMMIT));
+        assertEquals(0.0, s.getMeanMillis(ParticipantStats.COMMIT), 0.0);
+        assertTrue(s.toString().contains("prepare={calls=2, failures=1"));
+    }
+
+    @Test
+    public void lookupSharesCountersPerParticipant() {
+        ConcurrentMap<TransactionParticipant,ParticipantStats> registry =
+            new ConcurrentHashMap<TransactionParticipant,ParticipantStats>();
+        TransactionParticipant a = new JobTest.NullParticipant();
+        TransactionParticipant b = new JobTest.NullParticipant();
+        ParticipantStats s = ParticipantStats.lookup(registry, a);
+        assertNotNull(s);
+        assertSame(s, ParticipantStats.lookup(registry, a));
+        assertNotSame(s, ParticipantStats.lookup(registry, b));
+        assertNull(ParticipantStats.lookup(null, a));
+        assertNull(ParticipantStats.lookup(registry, null));
+    }
+
+    @Test
+    public void lookupIsBounded() {
+        ConcurrentMap<TransactionParticipant,ParticipantStats> registry =
+            new ConcurrentHashMap<TransactionParticipant,ParticipantStats>();
+        for (int i = 0; i < ParticipantStats.MAX_PARTICIPANTS; i++) {
+            assertNotNull(ParticipantStats.lookup(registry,
+                new JobTest.NullParticipant()));
+        }
+        assertNull(ParticipantStats.lookup(registry,
+            new JobTest.NullParticipant()));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.mahalo.log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests recovery and segment recycling of <code>SegmentedLogManager</code>.
+ */
+public class SegmentedLogManagerTest {
+
+    private File dir;
+
+    static class Rec implements LogRecord {
+        private static final long serialVersionUID = 1L;
+        final String value;
+        Rec(String value) { this.value = value; }
+    }
+
+    static class Recorder implements LogRecovery {
+        final List<String> seen = new ArrayList<String>();
+        public void recover(long cookie, LogRecord rec) {
+            seen.add(cookie + ":" + ((Rec) rec).value);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("mahalo", "wal");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) files[i].delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void recoversUnsettledTransactionsInOrder() throws Exception {
+        SegmentedLogManager mgr = new SegmentedLogManager(new Recorder(),
+                dir.getPath(), 64 * 1024);
+        mgr.recover();
+        ClientLog a = mgr.logFor(1L);
+        ClientLog b = mgr.logFor(2L);
+        a.write(new Rec("a1"));
+        b.write(new Rec("b1"));
+        a.write(new Rec("a2"));
+        b.invalidate();
+
+        Recorder recorder = new Recorder();
+        SegmentedLogManager recovered = new SegmentedLogManager(recorder,
+                dir.getPath(), 64 * 1024);
+        recovered.recover();
+        assertEquals(2, recorder.seen.size());
+        assertEquals("1:a1", recorder.seen.get(0));
+        assertEquals("1:a2", recorder.seen.get(1));
+        // Recovered log is handed out again and can be settled
+        recovered.logFor(1L).invalidate();
+
+        recorder = new Recorder();
+        new SegmentedLogManager(recorder, dir.getPath(), 64 * 1024).recover();
+        assertTrue(recorder.seen.isEmpty());
+    }
+
+    @Test
+    public void settledSegmentsAreRecycled() throws Exception {
+        SegmentedLogManager mgr = new SegmentedLogManager(new Recorder(),
+                dir.getPath(), 1024);
+        mgr.recover();
+        char[] filler = new char[300];
+        java.util.Arrays.fill(filler, 'x');
+        for (long cookie = 0; cookie < 50; cookie++) {
+            ClientLog log = mgr.logFor(cookie);
+            log.write(new Rec(new String(filler)));
+            log.invalidate();
+        }
+        // Only the current segment and a bounded number of recycled
+        // segment files remain
+        assertTrue(dir.list().length <= 4);
+
+        ClientLog open = mgr.logFor(100L);
+        open.write(new Rec("open"));
+        Recorder recorder = new Recorder();
+        new SegmentedLogManager(recorder, dir.getPath(), 1024).recover();
+        assertEquals(1, recorder.seen.size());
+        assertEquals("100:open", recorder.seen.get(0));
+    }
+
+    @Test
+    public void recycledSegmentsAreNotReplayed() throws Exception {
+        SegmentedLogManager mgr = new SegmentedLogManager(new Recorder(),
+                dir.getPath(), 1024);
+        mgr.recover();
+        char[] filler = new char[300];
+        java.util.Arrays.fill(filler, 'x');
+        String big = new String(filler);
+        // Two records fill a segment, so the markers of B and C are
+        // written to the segment after the one holding their records
+        ClientLog x = mgr.logFor(1L);
+        x.write(new Rec(big));
+        ClientLog a = mgr.logFor(2L);
+        a.write(new Rec(big));
+        ClientLog b = mgr.logFor(3L);
+        b.write(new Rec(big));
+        a.invalidate();
+        ClientLog c = mgr.logFor(4L);
+        c.write(new Rec(big));
+        ClientLog d = mgr.logFor(5L);
+        d.write(new Rec(big));
+        b.invalidate();
+        c.invalidate();
+        d.invalidate();
+        ClientLog e = mgr.logFor(6L);
+        e.write(new Rec(big + big));
+        // Settling X releases the first three segments at once: two are
+        // kept for reuse and the one holding the markers of B and C is 
+        // deleted. The manager is abandoned as if the process crashed.
+        x.invalidate();
+
+        Recorder recorder = new Recorder();
+        new SegmentedLogManager(recorder, dir.getPath(), 1024).recover();
+        assertEquals(1, recorder.seen.size());
+        assertEquals("6:" + big + big, recorder.seen.get(0));
+    }
+
+    @Test
+    public void destroyRemovesSegments() throws Exception {
+        SegmentedLogManager mgr = new SegmentedLogManager(new Recorder(),
+                dir.getPath(), 64 * 1024);
+        mgr.recover();
+        mgr.logFor(7L).write(new Rec("x"));
+        mgr.destroy();
+        assertEquals(0, dir.list().length);
+        try {
+            mgr.logFor(8L);
+            fail("Expected LogException");
+        } catch (LogException expected) {
+        }
+    }
+}
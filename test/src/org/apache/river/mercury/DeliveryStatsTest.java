@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.mercury;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the per-registration event delivery counters of Mercury.
+ */
+public class DeliveryStatsTest {
+
+    @Test
+    public void countsDeliveryOutcomes() {
+        DeliveryStats stats = new DeliveryStats();
+        stats.turn();
+        stats.delivered(1000000L);
+        stats.delivered(3000000L);
+        stats.failed();
+        stats.dropped();
+        assertEquals(1, stats.getTurns());
+        assertEquals(2, stats.getDelivered());
+        assertEquals(1, stats.getFailedAttempts());
+        assertEquals(1, stats.getDropped());
+        assertEquals(2.0, stats.getMeanNotifyMillis(), 1e-9);
+    }
+
+    @Test
+    public void tracksCurrentAndMaximumQueueDepth() {
+        DeliveryStats stats = new DeliveryStats();
+        assertEquals(0.0, stats.getMeanNotifyMillis(), 0.0);
+        stats.queueDepth(5);
+        stats.queueDepth(12);
+        stats.queueDepth(3);
+        assertEquals(3, stats.getQueueDepth());
+        assertEquals(12, stats.getMaxQueueDepth());
+        String s = stats.toString();
+        assertTrue(s, s.startsWith("DeliveryStats[depth=3, maxDepth=12,"));
+    }
+}
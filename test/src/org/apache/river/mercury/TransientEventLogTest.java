@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.mercury;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import net.jini.core.event.RemoteEvent;
+import net.jini.id.UuidFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests spilling of a bounded <code>TransientEventLog</code>.
+ */
+public class TransientEventLogTest {
+
+    private File dir;
+    private TransientEventLog log;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("mercury", "spill");
+        dir.delete();
+        dir.mkdirs();
+        log = new TransientEventLog(UuidFactory.generate(), 2, dir);
+        log.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) files[i].delete();
+        }
+        dir.delete();
+    }
+
+    private static RemoteEvent event(long seq) {
+        return new RemoteEvent("source", 1L, seq, null);
+    }
+
+    @Test
+    public void testOrderPreservedAcrossSpill() throws Exception {
+        for (long i = 0; i < 5; i++) log.add(event(i));
+        assertEquals(5, log.size());
+        assertEquals(1, dir.listFiles().length);
+        for (long i = 0; i < 5; i++) {
+            assertEquals(i, log.next().getSequenceNumber());
+            // next is idempotent until remove is called
+            assertEquals(i, log.next().getSequenceNumber());
+            log.remove();
+        }
+        assertTrue(log.isEmpty());
+        try {
+            log.next();
+            fail("NoSuchElementException expected");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+        // spilling resumes after the spill file has been drained
+        for (long i = 5; i < 9; i++) log.add(event(i));
+        assertEquals(5, log.next().getSequenceNumber());
+    }
+
+    @Test
+    public void testReadAheadAndMoveAhead() throws Exception {
+        for (long i = 0; i < 6; i++) log.add(event(i));
+        RemoteEventData[] data = log.readAhead(3);
+        assertEquals(3, data.length);
+        assertEquals(0, data[0].getRemoteEvent().getSequenceNumber());
+        assertEquals(2, data[2].getRemoteEvent().getSequenceNumber());
+        // readAhead doesn't advance the read position
+        assertEquals(3, log.readAhead(3).length);
+        log.moveAhead(data[2].getCookie());
+        assertEquals(3, log.size());
+        data = log.readAhead(10);
+        assertEquals(3, data.length);
+        assertEquals(3, data[0].getRemoteEvent().getSequenceNumber());
+        assertEquals(5, data[2].getRemoteEvent().getSequenceNumber());
+        log.moveAhead(data[2].getCookie());
+        assertTrue(log.isEmpty());
+    }
+
+    @Test
+    public void testDeleteRemovesSpillFile() throws Exception {
+        for (long i = 0; i < 4; i++) log.add(event(i));
+        assertEquals(1, dir.listFiles().length);
+        log.close();
+        log.delete();
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void testCloseRemovesSpillFile() throws Exception {
+        for (long i = 0; i < 4; i++) log.add(event(i));
+        assertEquals(1, dir.listFiles().length);
+        log.close();
+        assertEquals(0, dir.listFiles().length);
+        log.delete();
+    }
+
+    @Test
+    public void testFailedSpillLosesNoEvents() throws Exception {
+        // a regular file can't hold the spill file
+        File notDir = new File(dir, "notDir");
+        assertTrue(notDir.createNewFile());
+        TransientEventLog bad =
+            new TransientEventLog(UuidFactory.generate(), 2, notDir);
+        bad.init();
+        bad.add(event(0));
+        bad.add(event(1));
+        try {
+            bad.add(event(2));
+            fail("IOException expected");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(2, bad.size());
+        assertEquals(0, bad.next().getSequenceNumber());
+        bad.remove();
+        assertEquals(1, bad.next().getSequenceNumber());
+        bad.remove();
+        assertTrue(bad.isEmpty());
+        bad.close();
+    }
+}
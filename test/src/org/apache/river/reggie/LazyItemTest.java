@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.reggie;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import net.jini.core.entry.Entry;
+import net.jini.core.lookup.ServiceID;
+import net.jini.core.lookup.ServiceItem;
+import net.jini.entry.AbstractEntry;
+import net.jini.lookup.entry.Name;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LazyItemTest {
+
+    static int reads;
+
+    public static class Counted implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException
+        {
+            in.defaultReadObject();
+            reads++;
+        }
+    }
+
+    public static class Payload extends AbstractEntry {
+        private static final long serialVersionUID = 1L;
+        public Counted value;
+
+        public Payload() {
+        }
+
+        public Payload(Counted value) {
+            this.value = value;
+        }
+    }
+
+    private LazyItem item;
+
+    @Before
+    public void setUp() throws Exception {
+        reads = 0;
+        Item rep = new Item(new ServiceItem(new ServiceID(1L, 2L),
+            new Counted(),
+            new Entry[] { new Name("a"), new Payload(new Counted()) }));
+        item = new LazyItem(rep);
+    }
+
+    @Test
+    public void unmarshalsOnlyWhatIsAskedFor() {
+        assertEquals(new ServiceID(1L, 2L), item.serviceID);
+        Entry[] names = item.getEntries(Name.class);
+        assertEquals(1, names.length);
+        assertEquals("a", ((Name) names[0]).name);
+        assertEquals(0, reads);
+        assertNotNull(item.getService());
+        assertNotNull(item.getService());
+        assertEquals(1, reads);
+        assertEquals(2, item.getEntries().length);
+        assertEquals(2, reads);
+    }
+
+    @Test
+    public void serializesAsServiceItem() throws Exception {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bout);
+        out.writeObject(item);
+        out.close();
+        Object obj = new ObjectInputStream(
+            new ByteArrayInputStream(bout.toByteArray())).readObject();
+        assertEquals(ServiceItem.class, obj.getClass());
+        ServiceItem si = (ServiceItem) obj;
+        assertTrue(si.service instanceof Counted);
+        assertEquals(2, si.attributeSets.length);
+        assertSame(item.unmarshal(), item.unmarshal());
+    }
+}
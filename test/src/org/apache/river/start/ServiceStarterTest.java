@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.start;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.jini.config.AbstractConfiguration;
+import net.jini.config.Configuration;
+import net.jini.config.ConfigurationException;
+import net.jini.config.NoSuchEntryException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ServiceStarterTest {
+
+    private final List<Integer> created =
+            Collections.synchronizedList(new ArrayList<Integer>());
+
+    @Test
+    public void sequentialHonoursDependencies() throws Exception {
+        ServiceStarter.Result[] results = ServiceStarter.create(
+                descriptors(3), config(1, new int[][] {{2}, null, null}), null);
+        assertEquals(3, results.length);
+        for (int i = 0; i < results.length; i++) {
+            assertNull(results[i].exception);
+            assertEquals(Integer.valueOf(i), results[i].result);
+        }
+        assertEquals(Arrays.asList(2, 0, 1), created);
+    }
+
+    @Test
+    public void concurrentHonoursDependencies() throws Exception {
+        ServiceDescriptor[] descs = new ServiceDescriptor[] {
+            new Recording(0, 0), new Recording(1, 200), new Recording(2, 0)
+        };
+        ServiceStarter.Result[] results = ServiceStarter.create(
+                descs, config(3, new int[][] {{1}, null, {0}}), null);
+        for (int i = 0; i < results.length; i++) {
+            assertNull(results[i].exception);
+        }
+        assertTrue(created.indexOf(1) < created.indexOf(0));
+        assertTrue(created.indexOf(0) < created.indexOf(2));
+    }
+
+    @Test
+    public void cycleIsRejected() throws Exception {
+        int[][] deps = {{1}, {2}, {0}};
+        for (int threads = 1; threads <= 2; threads++) {
+            try {
+                ServiceStarter.create(descriptors(3), config(threads, deps),
+                        null);
+                fail("cycle not detected");
+            } catch (ConfigurationException e) {
+                // expected
+            }
+        }
+        assertTrue(created.isEmpty());
+    }
+
+    @Test
+    public void missingDependencyIsRejected() throws Exception {
+        for (int threads = 1; threads <= 2; threads++) {
+            try {
+                ServiceStarter.create(descriptors(2),
+                        config(threads, new int[][] {{5}}), null);
+                fail("missing dependency not detected");
+            } catch (ConfigurationException e) {
+                // expected
+            }
+        }
+        assertTrue(created.isEmpty());
+    }
+
+    @Test
+    public void failurePropagatesToDependents() throws Exception {
+        for (int threads = 1; threads <= 2; threads++) {
+            created.clear();
+            final Exception failure = new Exception("failed");
+            ServiceDescriptor[] descs = new ServiceDescriptor[] {
+                new Recording(0, 0) {
+                    public Object create(Configuration config)
+                            throws Exception {
+                        throw failure;
+                    }
+                },
+                new Recording(1, 0),
+                new Recording(2, 0)
+            };
+            ServiceStarter.Result[] results = ServiceStarter.create(
+                    descs, config(threads, new int[][] {null, {0}}), null);
+            assertSame(failure, results[0].exception);
+            assertNotNull(results[1].exception);
+            assertNull(results[1].result);
+            assertNull(results[2].exception);
+            assertEquals(Collections.singletonList(2), created);
+        }
+    }
+
+    private ServiceDescriptor[] descriptors(int n) {
+        ServiceDescriptor[] descs = new ServiceDescriptor[n];
+        for (int i = 0; i < n; i++) {
+            descs[i] = new Recording(i, 0);
+        }
+        return descs;
+    }
+
+    private static Configuration config(int threads, int[][] deps) {
+        Map<String, Object> entries = new HashMap<String, Object>();
+        entries.put("startupThreads",
+                new AbstractConfiguration.Primitive<Integer>(threads));
+        entries.put("serviceDependencies", deps);
+        return new MapConfiguration(entries);
+    }
+
+    private class Recording implements ServiceDescriptor {
+        private final int index;
+        private final long delay;
+
+        Recording(int index, long delay) {
+            this.index = index;
+            this.delay = delay;
+        }
+
+        public Object create(Configuration config) throws Exception {
+            Thread.sleep(delay);
+            created.add(index);
+            return Integer.valueOf(index);
+        }
+    }
+
+    private static class MapConfiguration extends AbstractConfiguration {
+        private final Map<String, Object> entries;
+
+        MapConfiguration(Map<String, Object> entries) {
+            this.entries = entries;
+        }
+
+        protected <T> Object getEntryInternal(String component, String name,
+                Class<T> type, Object data) throws ConfigurationException {
+            if (!"org.apache.river.start".equals(component)
+                    || !entries.containsKey(name)) {
+                throw new NoSuchEntryException(component + "." + name);
+            }
+            return entries.get(name);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.thread;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the platform and virtual thread modes of {@link ThreadPool}.
+ */
+public class ThreadPoolTest {
+
+    private static final ThreadGroup group = new ThreadGroup("ThreadPoolTest");
+
+    /**
+     * Executes the given number of tasks on the pool and returns the
+     * threads they ran in.
+     */
+    private static List<Thread> runTasks(ThreadPool pool, int count)
+        throws InterruptedException
+    {
+        final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+        final CountDownLatch done = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            final String name = "task-" + i;
+            pool.execute(new Runnable() {
+                public void run() {
+                    Thread t = Thread.currentThread();
+                    assertEquals(NewThreadAction.NAME_PREFIX + name,
+                                 t.getName());
+                    threads.add(t);
+                    done.countDown();
+                }
+            }, name);
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        return threads;
+    }
+
+    /**
+     * Returns whether the given thread is virtual, or false if the runtime
+     * does not support virtual threads.
+     */
+    private static boolean isVirtual(Thread t) throws Exception {
+        Method m;
+        try {
+            m = Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+        return ((Boolean) m.invoke(t)).booleanValue();
+    }
+
+    private static boolean virtualThreadsSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void platformThreadsExecuteTasks() throws Exception {
+        ThreadPool pool = new ThreadPool(group, false);
+        assertFalse(pool.isVirtual());
+        for (Thread t : runTasks(pool, 20)) {
+            assertFalse(isVirtual(t));
+            assertSame(group, t.getThreadGroup());
+        }
+    }
+
+    @Test
+    public void virtualModeExecutesTasks() throws Exception {
+        ThreadPool pool = new ThreadPool(group, true);
+        boolean expectVirtual = virtualThreadsSupported()
+            && System.getSecurityManager() == null;
+        assertEquals(expectVirtual, pool.isVirtual());
+        for (Thread t : runTasks(pool, 20)) {
+            assertEquals(expectVirtual, isVirtual(t));
+            if (!expectVirtual) {
+                // fell back to platform threads in the pool's group
+                assertSame(group, t.getThreadGroup());
+            }
+        }
+    }
+
+    @Test
+    public void defaultPoolsUsePlatformThreads() {
+        if (!Boolean.getBoolean("org.apache.river.thread.virtualThreads")) {
+            assertFalse(GetThreadPoolAction.usesVirtualThreads());
+        }
+    }
+}